@@ -2,47 +2,27 @@ package SmartFeas;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import core.*;
 import search.*;
-import neighborhoods.*;
 import milp.TSP;
 
 
 public class SmartFeas {
-    private static final double penalty = 1000;
 
-    public static void meakFeasibleSmart(List<Shift> shifts, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay, double maxDuration, double maxOvertime, boolean useTSP) {
+    public static void meakFeasibleSmart(List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay, double maxDuration, double maxOvertime, boolean useTSP) {
         
         System.out.println("\nRunning Smart Make Feasible...");
 
         long startTime = System.currentTimeMillis();
         // List<Shift> initialCopy = Utils.deepCopyShifts(shifts);
 
-        List<Neighborhood> neighborhoods = Arrays.asList(
-            new InterShiftInfeas(maxDuration, maxOvertime, penalty)
-            // new Inter2OptStarInfeas(maxDuration, maxOvertime, penalty)
-        );
-
-        AcceptanceFunction accept = Acceptance.alwaysTrue();
-        RouteCompatibility compatibility = Compatibility.sameNightShift();
+        EjectionChainRepair repair = new EjectionChainRepair(maxDuration, maxOvertime);
         ObjectiveFunction objectiveBasic = Objective.totalLength();
 
-        LocalSearch ls = new LocalSearch(
-            neighborhoods, 
-            accept, 
-            compatibility, 
-            ImprovementChoice.BEST, 
-            50, 
-            maxDuration + maxOvertime, 
-            objectiveBasic, 
-            false
-        );
-
         double initial_obj_value = objectiveBasic.shifts(shifts)/60.0;
 
         List<Shift> violatedShifts = new ArrayList<>();
@@ -62,16 +42,14 @@ public class SmartFeas {
         }
 
 
-        List<Shift> improved = ls.runDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
-
-        Utils.recomputeAllShiftsDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
+        repair.repair(shifts, instance, travelTimesNight, travelTimesDay);
 
-        double new_obj_value = objectiveBasic.shifts(improved)/60.0;
+        double new_obj_value = objectiveBasic.shifts(shifts)/60.0;
         double improvement = initial_obj_value - new_obj_value;
         long endTime = System.currentTimeMillis();
         double timeTaken = (endTime-startTime)/1000.0;
 
-        System.out.println("\nLocal search complete.");
+        System.out.println("\nRepair complete.");
         System.out.println("New objective value: " + new_obj_value);
         System.out.println("Improvement: " + improvement);
         System.out.println("Time taken: " + (timeTaken) + " s" );
@@ -81,33 +59,16 @@ public class SmartFeas {
         
     }
 
-    public static int meakFeasibleSmartNumMoves(List<Shift> shifts, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay, double maxDuration, double maxOvertime, boolean useTSP) {
+    public static int meakFeasibleSmartNumMoves(List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay, double maxDuration, double maxOvertime, boolean useTSP) {
         
         // System.out.println("\nRunning Smart Make Feasible Num Moves...");
 
         long startTime = System.currentTimeMillis();
         // List<Shift> initialCopy = Utils.deepCopyShifts(shifts);
 
-        List<Neighborhood> neighborhoods = Arrays.asList(
-            new InterShiftInfeas(maxDuration, maxOvertime, penalty),
-            new Inter2OptStarInfeas(maxDuration, maxOvertime, penalty)
-        );
-
-        AcceptanceFunction accept = Acceptance.alwaysTrue();
-        RouteCompatibility compatibility = Compatibility.sameNightShift();
+        EjectionChainRepair repair = new EjectionChainRepair(maxDuration, maxOvertime);
         ObjectiveFunction objectiveBasic = Objective.totalLength();
 
-        LocalSearch ls = new LocalSearch(
-            neighborhoods, 
-            accept, 
-            compatibility, 
-            ImprovementChoice.BEST, 
-            50, 
-            maxDuration + maxOvertime, 
-            objectiveBasic, 
-            false
-        );
-
         double initial_obj_value = objectiveBasic.shifts(shifts)/60.0;
 
         List<Shift> violatedShifts = new ArrayList<>();
@@ -127,17 +88,14 @@ public class SmartFeas {
         }
 
 
-        List<Shift> improved = ls.runDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
-        int numMoves = ls.getMoveCount();
-
-        Utils.recomputeAllShiftsDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
+        int numMoves = repair.repair(shifts, instance, travelTimesNight, travelTimesDay);
 
-        double new_obj_value = objectiveBasic.shifts(improved)/60.0;
+        double new_obj_value = objectiveBasic.shifts(shifts)/60.0;
         double improvement = initial_obj_value - new_obj_value;
         long endTime = System.currentTimeMillis();
         double timeTaken = (endTime-startTime)/1000.0;
 
-        // System.out.println("\nLocal search complete.");
+        // System.out.println("\nRepair complete.");
         // System.out.println("New objective value: " + new_obj_value);
         // System.out.println("Improvement: " + improvement);
         // System.out.println("Time taken: " + (timeTaken) + " s" );
@@ -199,10 +157,10 @@ public class SmartFeas {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
         List<Shift> initial = Utils.readShiftsFromCSVDiffTimes("src/results/HTM_data_initRes_typeHalte.csv", travelTimesNight, travelTimesDay);
 
         // Utils.makeFeasible(initial, instance, travelTimesNight, travelTimesDay);
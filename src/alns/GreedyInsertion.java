@@ -0,0 +1,48 @@
+package alns;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.RepairOperator;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Repeatedly inserts the pending stop with the cheapest feasible insertion over all shifts.
+ */
+public class GreedyInsertion implements RepairOperator {
+
+    @Override
+    public boolean repair(
+            List<Shift> shifts,
+            int[] removed,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            Random rnd
+    ) {
+        InsertionCosts costs = new InsertionCosts(shifts, removed, instance, travelTimesNight, travelTimesDay, maxShiftDuration);
+
+        while (costs.numPending() > 0) {
+            int bestStop = -1;
+            int bestShift = -1;
+            double best = InsertionCosts.INFEASIBLE;
+            for (int k = 0; k < removed.length; k++) {
+                if (!costs.isPending(k)) continue;
+                double[] row = costs.cost[k];
+                for (int r = 0; r < costs.m; r++) {
+                    if (row[r] < best) {
+                        best = row[r];
+                        bestStop = k;
+                        bestShift = r;
+                    }
+                }
+            }
+            if (bestStop < 0) return false;
+            costs.insert(bestStop, bestShift);
+        }
+        return true;
+    }
+}
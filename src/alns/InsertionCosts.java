@@ -0,0 +1,151 @@
+package alns;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cheapest insertion of every pending stop into every shift, for the repair operators.
+ *
+ * cost[k][r] is the increase in travel time when pending stop k is inserted at its best position[k][r] of
+ * shift r, or INFEASIBLE if the shift would exceed maxShiftDuration or a day shift would turn into a night
+ * shift while the night-shift cap is reached. A night stop turns a day shift into a night shift, so its cost
+ * there includes driving the whole route on the night matrix. After an insertion only the column of the
+ * changed shift is evaluated again, unless the number of night shifts changed.
+ */
+final class InsertionCosts {
+    static final double INFEASIBLE = Double.POSITIVE_INFINITY;
+    private static final int MAX_NIGHT_SHIFTS = 25;
+
+    private final List<Shift> shifts;
+    private final HTMInstance instance;
+    private final TravelTimeMatrix travelTimesNight;
+    private final TravelTimeMatrix travelTimesDay;
+    private final double maxShiftDuration;
+
+    final int m;
+    final int[] stops;
+    final double[][] cost;
+    private final int[][] position;
+    private final boolean[] pending;
+    private int numPending;
+    private int numNightShifts;
+
+    InsertionCosts(
+            List<Shift> shifts,
+            int[] stops,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration
+    ) {
+        this.shifts = shifts;
+        this.instance = instance;
+        this.travelTimesNight = travelTimesNight;
+        this.travelTimesDay = travelTimesDay;
+        this.maxShiftDuration = maxShiftDuration;
+        this.m = shifts.size();
+        this.stops = stops;
+        this.cost = new double[stops.length][m];
+        this.position = new int[stops.length][m];
+        this.pending = new boolean[stops.length];
+        this.numPending = stops.length;
+        this.numNightShifts = Utils.countNightShifts(shifts);
+
+        Arrays.fill(pending, true);
+        for (int r = 0; r < m; r++) {
+            evaluateShift(r);
+        }
+    }
+
+    boolean isPending(int k) {
+        return pending[k];
+    }
+
+    int numPending() {
+        return numPending;
+    }
+
+    // Inserts pending stop k at its best position of shift r, which must be feasible
+    void insert(int k, int r) {
+        Shift s = shifts.get(r);
+        int nightBefore = s.nightShift;
+        s.insertStop(position[k][r], stops[k], instance);
+        Utils.recomputeShiftDiffTimes(s, instance, travelTimesNight, travelTimesDay);
+        pending[k] = false;
+        numPending--;
+
+        if (s.nightShift != nightBefore) {
+            // The cap decides which day shifts are still open to night stops
+            numNightShifts += s.nightShift - nightBefore;
+            for (int other = 0; other < m; other++) {
+                evaluateShift(other);
+            }
+        } else {
+            evaluateShift(r);
+        }
+    }
+
+    private void evaluateShift(int r) {
+        Shift s = shifts.get(r);
+        IntRoute route = s.route;
+        if (route.size() < 2) {
+            for (int k = 0; k < stops.length; k++) cost[k][r] = INFEASIBLE;
+            return;
+        }
+
+        // Extra travel time if the shift has to be driven on the night matrix
+        double toNight = Double.NaN;
+
+        for (int k = 0; k < stops.length; k++) {
+            if (!pending[k]) continue;
+            int u = stops[k];
+            boolean becomesNight = s.nightShift != 1 && instance.nightFlag[u] == 1;
+            if (becomesNight && numNightShifts >= MAX_NIGHT_SHIFTS) {
+                cost[k][r] = INFEASIBLE;
+                continue;
+            }
+
+            double base = 0.0;
+            if (becomesNight) {
+                if (Double.isNaN(toNight)) toNight = nightTravel(s) - s.travelTime;
+                base = toNight;
+            }
+
+            TravelTimeMatrix travelTimes = (s.nightShift == 1 || becomesNight) ? travelTimesNight : travelTimesDay;
+            double best = INFEASIBLE;
+            int bestPosition = -1;
+            for (int j = 1; j < route.size(); j++) {
+                int prev = route.getInt(j - 1);
+                int next = route.getInt(j);
+                double delta = travelTimes.get(prev, u) + travelTimes.get(u, next) - travelTimes.get(prev, next);
+                if (delta < best) {
+                    best = delta;
+                    bestPosition = j;
+                }
+            }
+
+            double increase = base + best;
+            if (s.totalTime + instance.serviceTime[u] + increase > maxShiftDuration) {
+                cost[k][r] = INFEASIBLE;
+            } else {
+                cost[k][r] = increase;
+                position[k][r] = bestPosition;
+            }
+        }
+    }
+
+    // Travel time of the shift on the night matrix, computed as in Utils.recomputeShift
+    private double nightTravel(Shift s) {
+        s.ensurePrefixSums(travelTimesNight, instance);
+        int last = s.route.size() - 1;
+        return travelTimesNight.get(0, s.route.getInt(0))
+                + s.travelBetween(travelTimesNight, 0, last)
+                + travelTimesNight.get(s.route.getInt(last), 0);
+    }
+}
@@ -0,0 +1,83 @@
+package alns;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The stops of a solution with their shift and position, for the destroy operators. Selected positions are
+ * removed all at once, so the positions stay valid while an operator selects them.
+ */
+final class Positions {
+    final int size;
+    final int[] stop;
+    final int[] shift;
+    final int[] position;
+    private final boolean[] selected;
+    private int numSelected = 0;
+
+    Positions(List<Shift> shifts) {
+        int n = 0;
+        for (Shift s : shifts) {
+            n += Math.max(0, s.route.size() - 2);
+        }
+        size = n;
+        stop = new int[n];
+        shift = new int[n];
+        position = new int[n];
+        selected = new boolean[n];
+
+        int k = 0;
+        for (int r = 0; r < shifts.size(); r++) {
+            IntRoute route = shifts.get(r).route;
+            for (int p = 1; p < route.size() - 1; p++) {
+                stop[k] = route.getInt(p);
+                shift[k] = r;
+                position[k] = p;
+                k++;
+            }
+        }
+    }
+
+    void select(int k) {
+        if (!selected[k]) {
+            selected[k] = true;
+            numSelected++;
+        }
+    }
+
+    boolean isSelected(int k) {
+        return selected[k];
+    }
+
+    int numSelected() {
+        return numSelected;
+    }
+
+    // Removes the selected stops from their shifts and returns them
+    int[] removeSelected(List<Shift> shifts, HTMInstance instance) {
+        int[] removed = new int[numSelected];
+        int count = 0;
+        // Backwards, so the positions still to remove in a shift do not move
+        for (int k = size - 1; k >= 0; k--) {
+            if (!selected[k]) continue;
+            removed[count++] = shifts.get(shift[k]).removeStopAt(position[k], instance);
+        }
+        for (Shift s : shifts) {
+            s.updateNightShift(instance);
+        }
+        return removed;
+    }
+
+    // Indices of the positions that are not selected yet
+    List<Integer> unselected() {
+        List<Integer> result = new ArrayList<>(size - numSelected);
+        for (int k = 0; k < size; k++) {
+            if (!selected[k]) result.add(k);
+        }
+        return result;
+    }
+}
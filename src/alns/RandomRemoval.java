@@ -0,0 +1,42 @@
+package alns;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.DestroyOperator;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Removes stops chosen uniformly at random.
+ */
+public class RandomRemoval implements DestroyOperator {
+
+    @Override
+    public int[] destroy(
+            List<Shift> shifts,
+            int count,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            Random rnd
+    ) {
+        Positions positions = new Positions(shifts);
+        int[] order = new int[positions.size];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+
+        // Partial Fisher-Yates shuffle: the first count entries are a uniform sample
+        int q = Math.min(count, order.length);
+        for (int k = 0; k < q; k++) {
+            int j = k + rnd.nextInt(order.length - k);
+            int tmp = order[k];
+            order[k] = order[j];
+            order[j] = tmp;
+            positions.select(order[k]);
+        }
+        return positions.removeSelected(shifts, instance);
+    }
+}
@@ -0,0 +1,91 @@
+package alns;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.RepairOperator;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Regret-k insertion: inserts first the pending stop that would lose the most by waiting, measured as the sum
+ * of the differences between its cheapest insertion and its next k - 1 cheapest insertions into other shifts.
+ * Stops with fewer than k feasible shifts go first (fewest options first), then the largest regret, then the
+ * cheapest insertion.
+ */
+public class RegretInsertion implements RepairOperator {
+    private final int k;
+
+    public RegretInsertion(int k) {
+        if (k < 2) {
+            throw new IllegalArgumentException("Regret insertion needs k >= 2, got " + k);
+        }
+        this.k = k;
+    }
+
+    @Override
+    public boolean repair(
+            List<Shift> shifts,
+            int[] removed,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            Random rnd
+    ) {
+        InsertionCosts costs = new InsertionCosts(shifts, removed, instance, travelTimesNight, travelTimesDay, maxShiftDuration);
+        double[] cheapest = new double[k];
+        int[] cheapestShift = new int[k];
+
+        while (costs.numPending() > 0) {
+            int bestStop = -1;
+            int bestShift = -1;
+            int bestOptions = Integer.MAX_VALUE;
+            double bestRegret = Double.NEGATIVE_INFINITY;
+            double bestCost = InsertionCosts.INFEASIBLE;
+
+            for (int s = 0; s < removed.length; s++) {
+                if (!costs.isPending(s)) continue;
+                int options = cheapest(costs.cost[s], cheapest, cheapestShift);
+                if (options == 0) return false;
+
+                double regret = 0.0;
+                for (int i = 1; i < options; i++) {
+                    regret += cheapest[i] - cheapest[0];
+                }
+                if (options < bestOptions
+                        || (options == bestOptions && (regret > bestRegret
+                            || (regret == bestRegret && cheapest[0] < bestCost)))) {
+                    bestStop = s;
+                    bestShift = cheapestShift[0];
+                    bestOptions = options;
+                    bestRegret = regret;
+                    bestCost = cheapest[0];
+                }
+            }
+            costs.insert(bestStop, bestShift);
+        }
+        return true;
+    }
+
+    // The (up to) k cheapest feasible costs of a row in increasing order, with their shifts; returns how many there are
+    private int cheapest(double[] row, double[] cheapest, int[] cheapestShift) {
+        int count = 0;
+        for (int r = 0; r < row.length; r++) {
+            double c = row[r];
+            if (c == InsertionCosts.INFEASIBLE) continue;
+            if (count == k && c >= cheapest[k - 1]) continue;
+
+            int i = (count < k) ? count++ : k - 1;
+            while (i > 0 && cheapest[i - 1] > c) {
+                cheapest[i] = cheapest[i - 1];
+                cheapestShift[i] = cheapestShift[i - 1];
+                i--;
+            }
+            cheapest[i] = c;
+            cheapestShift[i] = r;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+package alns;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.DestroyOperator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Empties whole shifts, in random order, until at least count stops are removed. The emptied shifts stay in
+ * the solution (as depot-only routes) and may be refilled by the repair.
+ */
+public class RouteRemoval implements DestroyOperator {
+
+    @Override
+    public int[] destroy(
+            List<Shift> shifts,
+            int count,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            Random rnd
+    ) {
+        List<Integer> order = new ArrayList<>();
+        for (int r = 0; r < shifts.size(); r++) {
+            order.add(r);
+        }
+        Collections.shuffle(order, rnd);
+
+        boolean[] emptied = new boolean[shifts.size()];
+        int removed = 0;
+        for (int r : order) {
+            if (removed >= count) break;
+            int stops = shifts.get(r).route.size() - 2;
+            if (stops <= 0) continue;
+            emptied[r] = true;
+            removed += stops;
+        }
+
+        Positions positions = new Positions(shifts);
+        for (int k = 0; k < positions.size; k++) {
+            if (emptied[positions.shift[k]]) positions.select(k);
+        }
+        return positions.removeSelected(shifts, instance);
+    }
+}
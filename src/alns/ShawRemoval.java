@@ -0,0 +1,97 @@
+package alns;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.DestroyOperator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shaw removal: removes stops that are related to each other, so the repair can recombine them.
+ *
+ * Starting from a random stop, every step takes one of the removed stops as reference and ranks the others by
+ * relatedness, a weighted sum of the distance between the coordinates and the travel time in both directions
+ * (night matrix if either stop is a night stop), each divided by its largest value in that step. The stop of
+ * rank floor(y^randomness * remaining) is removed next.
+ */
+public class ShawRemoval implements DestroyOperator {
+    private final double distanceWeight;
+    private final double travelTimeWeight;
+    private final double randomness;
+
+    public ShawRemoval() {
+        this(1.0, 1.0, 6.0);
+    }
+
+    public ShawRemoval(double distanceWeight, double travelTimeWeight, double randomness) {
+        if (randomness < 1.0) {
+            throw new IllegalArgumentException("Randomness must be at least 1, got " + randomness);
+        }
+        this.distanceWeight = distanceWeight;
+        this.travelTimeWeight = travelTimeWeight;
+        this.randomness = randomness;
+    }
+
+    @Override
+    public int[] destroy(
+            List<Shift> shifts,
+            int count,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            Random rnd
+    ) {
+        Positions positions = new Positions(shifts);
+        if (positions.size == 0) return new int[0];
+
+        List<Integer> removed = new ArrayList<>();
+        int first = rnd.nextInt(positions.size);
+        positions.select(first);
+        removed.add(first);
+
+        int q = Math.min(count, positions.size);
+        double[] distance = new double[positions.size];
+        double[] travel = new double[positions.size];
+        double[] relatedness = new double[positions.size];
+
+        while (removed.size() < q) {
+            int reference = positions.stop[removed.get(rnd.nextInt(removed.size()))];
+            List<Integer> candidates = positions.unselected();
+
+            double maxDistance = 0.0;
+            double maxTravel = 0.0;
+            for (int k : candidates) {
+                int other = positions.stop[k];
+                TravelTimeMatrix travelTimes = (instance.nightFlag[reference] == 1 || instance.nightFlag[other] == 1)
+                        ? travelTimesNight : travelTimesDay;
+                distance[k] = distance(instance, reference, other);
+                travel[k] = travelTimes.get(reference, other) + travelTimes.get(other, reference);
+                maxDistance = Math.max(maxDistance, distance[k]);
+                maxTravel = Math.max(maxTravel, travel[k]);
+            }
+            for (int k : candidates) {
+                relatedness[k] = ((maxDistance > 0) ? distanceWeight * distance[k] / maxDistance : 0.0)
+                        + ((maxTravel > 0) ? travelTimeWeight * travel[k] / maxTravel : 0.0);
+            }
+
+            // Most related (smallest value) first
+            candidates.sort((a, b) -> Double.compare(relatedness[a], relatedness[b]));
+            int rank = (int) (Math.pow(rnd.nextDouble(), randomness) * candidates.size());
+            int next = candidates.get(rank);
+            positions.select(next);
+            removed.add(next);
+        }
+        return positions.removeSelected(shifts, instance);
+    }
+
+    // Equirectangular approximation of the distance in km, accurate enough at the scale of a city
+    private static double distance(HTMInstance instance, int a, int b) {
+        double meanLat = Math.toRadians(0.5 * (instance.lat[a] + instance.lat[b]));
+        double dx = Math.toRadians(instance.lon[b] - instance.lon[a]) * Math.cos(meanLat);
+        double dy = Math.toRadians(instance.lat[b] - instance.lat[a]);
+        return 6371.0 * Math.sqrt(dx * dx + dy * dy);
+    }
+}
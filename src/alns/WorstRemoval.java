@@ -0,0 +1,63 @@
+package alns;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.DestroyOperator;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Removes the stops that save the most travel time when taken out of their shift, with the gain computed
+ * once on the matrix of the shift. The stop of rank floor(y^randomness * remaining) is taken for uniform y,
+ * so larger randomness sticks closer to the worst stops.
+ */
+public class WorstRemoval implements DestroyOperator {
+    private final double randomness;
+
+    public WorstRemoval() {
+        this(3.0);
+    }
+
+    public WorstRemoval(double randomness) {
+        if (randomness < 1.0) {
+            throw new IllegalArgumentException("Randomness must be at least 1, got " + randomness);
+        }
+        this.randomness = randomness;
+    }
+
+    @Override
+    public int[] destroy(
+            List<Shift> shifts,
+            int count,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            Random rnd
+    ) {
+        Positions positions = new Positions(shifts);
+        double[] gain = new double[positions.size];
+        for (int k = 0; k < positions.size; k++) {
+            Shift s = shifts.get(positions.shift[k]);
+            TravelTimeMatrix travelTimes = (s.nightShift == 1) ? travelTimesNight : travelTimesDay;
+            IntRoute route = s.route;
+            int p = positions.position[k];
+            int prev = route.getInt(p - 1);
+            int node = route.getInt(p);
+            int next = route.getInt(p + 1);
+            gain[k] = travelTimes.get(prev, node) + travelTimes.get(node, next) - travelTimes.get(prev, next);
+        }
+
+        List<Integer> ranked = positions.unselected();
+        ranked.sort((a, b) -> Double.compare(gain[b], gain[a]));
+
+        int q = Math.min(count, positions.size);
+        for (int k = 0; k < q; k++) {
+            int rank = (int) (Math.pow(rnd.nextDouble(), randomness) * ranked.size());
+            positions.select(ranked.remove(rank));
+        }
+        return positions.removeSelected(shifts, instance);
+    }
+}
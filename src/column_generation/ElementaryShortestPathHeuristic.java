@@ -9,14 +9,18 @@ import core.*;
  */
 public class ElementaryShortestPathHeuristic {
     public static List<Shift> generateShiftPool(List<Stop> stops,
-        double[][] travelTimes,
-        double[][] reducedCosts,
+        TravelTimeMatrix travelTimes,
+        TravelTimeMatrix reducedCosts,
         double maxShiftDuration,
         double minShiftDuration,
         int maxShifts) throws IOException {
 
         int n = stops.size();
 
+        // Per-stop data as primitive arrays, shared read-only by all start nodes
+        double[] serviceTimes = HTMInstance.serviceTimes(stops);
+        byte[] nightFlags = HTMInstance.nightFlags(stops);
+
         List<Integer> startNodes = new ArrayList<>();
         for (int i = 1; i < n; i++) startNodes.add(i);
 
@@ -36,9 +40,9 @@ public class ElementaryShortestPathHeuristic {
 
         if (shiftPool.size() >= maxShifts) return;
 
-        try {
         Shift s = generateShiftFromNode(
-        stops,
+        serviceTimes,
+        nightFlags,
         travelTimes,
         reducedCosts,
         maxShiftDuration,
@@ -50,10 +54,6 @@ public class ElementaryShortestPathHeuristic {
         if (s != null) {
         shiftPool.add(s);
         }
-
-        } catch (IOException e) {
-        throw new RuntimeException(e);
-        }
         }
         });
 
@@ -62,15 +62,16 @@ public class ElementaryShortestPathHeuristic {
 
 
     private static Shift generateShiftFromNode(
-        List<Stop> stops,
-        double[][] travelTimes,
-        double[][] reducedCosts,
+        double[] serviceTimes,
+        byte[] nightFlags,
+        TravelTimeMatrix travelTimes,
+        TravelTimeMatrix reducedCosts,
         double maxShiftDuration,
         double minShiftDuration,
         int startNode,
         double alpha,
-        Random rnd) throws IOException {
-            int n = stops.size();
+        Random rnd) {
+            int n = serviceTimes.length;
             boolean[] visited = new boolean[n];
             List<Integer> route = new ArrayList<>();
 
@@ -81,8 +82,8 @@ public class ElementaryShortestPathHeuristic {
             route.add(depot);
             visited[depot] = true;
 
-            double travelTime = travelTimes[depot][startNode];
-            double serviceTime = stops.get(startNode).serviceTime;
+            double travelTime = travelTimes.get(depot, startNode);
+            double serviceTime = serviceTimes[startNode];
 
 
             route.add(startNode);
@@ -99,17 +100,17 @@ public class ElementaryShortestPathHeuristic {
             
                     if (visited[j]) continue;
             
-                    double newTravel = travelTime + travelTimes[current][j];
-                    double newService = serviceTime + stops.get(j).serviceTime;
+                    double newTravel = travelTime + travelTimes.get(current, j);
+                    double newService = serviceTime + serviceTimes[j];
             
                     double newTotalTime = FIXED_TIME
                             + newTravel
                             + newService
-                            + travelTimes[j][depot];
+                            + travelTimes.get(j, depot);
             
                     if (newTotalTime <= maxShiftDuration) {
             
-                        double rc = reducedCosts[current][j];
+                        double rc = reducedCosts.get(current, j);
             
                         if (rc < bestCost) {
                             bestCost = rc;
@@ -126,7 +127,7 @@ public class ElementaryShortestPathHeuristic {
             
                 List<Integer> rcl = new ArrayList<>();
                 for (int j : feasible) {
-                    if (reducedCosts[current][j] <= threshold) {
+                    if (reducedCosts.get(current, j) <= threshold) {
                         rcl.add(j);
                     }
                 }
@@ -136,8 +137,8 @@ public class ElementaryShortestPathHeuristic {
             
                 int nextNode = rcl.get(rnd.nextInt(rcl.size()));
             
-                travelTime += travelTimes[current][nextNode];
-                serviceTime += stops.get(nextNode).serviceTime;
+                travelTime += travelTimes.get(current, nextNode);
+                serviceTime += serviceTimes[nextNode];
             
                 route.add(nextNode);
                 visited[nextNode] = true;
@@ -145,15 +146,18 @@ public class ElementaryShortestPathHeuristic {
                 current = nextNode;
             }
             
-            travelTime += travelTimes[current][depot];
+            travelTime += travelTimes.get(current, depot);
             route.add(depot);
 
             double totalTime = FIXED_TIME + travelTime + serviceTime;
 
-            String instancePath = "src/core/data_all.txt";
-
-            HTMInstance instance = Utils.readInstance(instancePath, "abri", "Night_shift");
-            int nightShift = (Utils.containsNightStop(route, instance)) ? 1 : 0;
+            int nightShift = 0;
+            for (int id : route) {
+                if (nightFlags[id] == 1) {
+                    nightShift = 1;
+                    break;
+                }
+            }
 
             if (totalTime < minShiftDuration)
                 return null;
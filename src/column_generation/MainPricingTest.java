@@ -14,9 +14,9 @@ public class MainPricingTest {
 
         HTMInstance instance = Utils.readInstance(instancePath, "abri", "Night_shift");
         List<Stop> stops = instance.getStops();
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        int numNodes = travelTimes.length;
+        int numNodes = travelTimes.size();
 
         double[] duals = new double[numNodes + 1]; 
         duals[0] = 25.0; // shift dual
@@ -38,8 +38,14 @@ public class PricingHeuristic {
         }
     }    
 
+    /** @deprecated Use {@link #generateShifts(List, TravelTimeMatrix, double[])}. */
+    @Deprecated
     public List<Shift> generateShifts(List<Stop> stops, double[][] travelTimes, double[] duals) throws IOException {
-        double[][] reducedCosts = ReducedCost.computeReducedCost(travelTimes, duals);
+        return generateShifts(stops, TravelTimeMatrix.of(travelTimes), duals);
+    }
+
+    public List<Shift> generateShifts(List<Stop> stops, TravelTimeMatrix travelTimes, double[] duals) throws IOException {
+        TravelTimeMatrix reducedCosts = ReducedCost.computeReducedCost(travelTimes, duals);
 
         List<Shift> pool = ElementaryShortestPathHeuristic.generateShiftPool(
                 stops,
@@ -58,7 +64,7 @@ public class PricingHeuristic {
                 List<Shift> improved =
                         localSearchOnSingleShift(tmp, travelTimes, neighborhoods);
         
-                shift.route = improved.get(0).route;
+                shift.setRoute(improved.get(0).route);
         
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -162,7 +168,7 @@ public class PricingHeuristic {
             return nodes;
         }
     
-    private List<Shift> localSearchOnSingleShift(List<Shift> shifts, double[][] travelTimes, List<Neighborhood> neighborhoods) throws IOException {
+    private List<Shift> localSearchOnSingleShift(List<Shift> shifts, TravelTimeMatrix travelTimes, List<Neighborhood> neighborhoods) throws IOException {
         ObjectiveFunction objectiveFunction = Objective.totalLength();
         LocalSearch ls = new LocalSearch(
                 neighborhoods,
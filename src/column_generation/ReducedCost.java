@@ -28,6 +28,26 @@ public class ReducedCost {
         return reducedCosts;
     }
 
+    /**
+     * Same as computeReducedCost(double[][], double[]), but on the flat matrix layout used by the heuristic pricing.
+     */
+    public static TravelTimeMatrix computeReducedCost(TravelTimeMatrix travelTimes, double[] duals) {
+        int n = travelTimes.size();
+        double[] reducedCosts = new double[n * n];
+
+        for (int i = 1; i < n; i++) {
+            double nodeDual = duals[i]; // skip first dual (shift dual)
+            for (int j = 0; j < n; j++) {
+                if (i == j) {
+                    reducedCosts[i * n + j] = Double.POSITIVE_INFINITY; // no self loops
+                } else {
+                    reducedCosts[i * n + j] = travelTimes.get(i, j) - nodeDual;
+                }
+            }
+        }
+        return new TravelTimeMatrix(n, reducedCosts);
+    }
+
     public static double computeShiftReducedCost(
         Shift shift,
         double[][] reducedCosts,
@@ -44,4 +64,20 @@ public class ReducedCost {
     return cost;
 }
 
+    public static double computeShiftReducedCost(
+        Shift shift,
+        TravelTimeMatrix reducedCosts,
+        double shiftDual) {
+
+    double cost = -shiftDual;   // subtract shift dual once
+
+    List<Integer> r = shift.route;
+
+    for (int i = 0; i < r.size() - 1; i++) {
+        cost += reducedCosts.get(r.get(i), r.get(i + 1));
+    }
+
+    return cost;
+}
+
 }
@@ -18,6 +18,9 @@ public class SuperPricingHeuristic implements RCESPP {
     private AcceptanceFunction acceptFunction;
     private RouteCompatibility compatibility;
     private HTMInstance instance;
+    // The RMP passes the same matrix every round, so it is converted only once
+    private double[][] convertedFrom;
+    private TravelTimeMatrix converted;
 
     private static final double HIGH_DUAL_THRESHOLD = 40.0;
 
@@ -62,10 +65,18 @@ public class SuperPricingHeuristic implements RCESPP {
 
             } else {
                 System.out.println("Using spamming Heuristic");
-                return localSearchHeur.generateShifts(stops, distances, duals);
+                return localSearchHeur.generateShifts(stops, travelTimeMatrix(distances), duals);
             }
         } catch (IOException e) {
             throw new RuntimeException("Error generating shifts", e);
         }
     }
+
+    private TravelTimeMatrix travelTimeMatrix(double[][] distances) {
+        if (distances != convertedFrom) {
+            converted = TravelTimeMatrix.of(distances);
+            convertedFrom = distances;
+        }
+        return converted;
+    }
 }
@@ -1,6 +1,5 @@
 package column_generation.exact_cluster;
 
-import core.Stop;
 
 import java.util.BitSet;
 import java.util.List;
@@ -18,11 +17,11 @@ public class Dominance {
      */
     public static void initLowerBounds(double[][] travelTimes,
                                        double[][] reducedCosts,
-                                       List<Stop> stops,
+                                       double[] serviceTimes,
                                        int depot,
                                        double breakAndPrep) {
 
-        int n = stops.size();
+        int n = serviceTimes.length;
         minReturnTime = new double[n];
         minOutgoingTime = new double[n];
         minOutgoingCost = new double[n];
@@ -39,7 +38,7 @@ public class Dominance {
             for (int j = 0; j < n; j++) {
                 if (i == j) continue;
 
-                double t = travelTimes[i][j] + stops.get(j).serviceTime;
+                double t = travelTimes[i][j] + serviceTimes[j];
                 if (t < bestTime) bestTime = t;
 
                 double c = reducedCosts[i][j];
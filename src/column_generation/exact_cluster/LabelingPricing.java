@@ -1,5 +1,6 @@
 package column_generation.exact_cluster;
 
+import core.HTMInstance;
 import core.Shift;
 import core.Stop;
 
@@ -21,9 +22,10 @@ public class LabelingPricing {
                                                 int maxShifts) {
 
         int n = stops.size(); // depot = 0
+        double[] serviceTimes = HTMInstance.serviceTimes(stops);
 
         // Initialize lower bounds for dominance (safe)
-        Dominance.initLowerBounds(travelTimes, reducedCosts, stops, 0, BREAK_AND_PREP);
+        Dominance.initLowerBounds(travelTimes, reducedCosts, serviceTimes, 0, BREAK_AND_PREP);
 
         // Labels stored per node
         @SuppressWarnings("unchecked")
@@ -57,7 +59,7 @@ public class LabelingPricing {
                     route.add(0);
 
                     double travel = computeTravelTime(route, travelTimes);
-                    double service = computeServiceTime(route, stops);
+                    double service = computeServiceTime(route, serviceTimes);
 
                     Shift s = new Shift(route, travel, service, 0);
                     shifts.add(s);
@@ -72,7 +74,7 @@ public class LabelingPricing {
                 if (L.visited.get(j)) continue; // elementary
 
                 double travel = travelTimes[L.lastNode][j];
-                double service = stops.get(j).serviceTime;
+                double service = serviceTimes[j];
                 double newTime = L.time + travel + service;
 
                 // Hard time feasibility (no break yet)
@@ -119,10 +121,10 @@ public class LabelingPricing {
         return tt;
     }
 
-    private static double computeServiceTime(List<Integer> route, List<Stop> stops) {
+    private static double computeServiceTime(List<Integer> route, double[] serviceTimes) {
         double st = 0.0;
         for (int i = 1; i < route.size() - 1; i++) {
-            st += stops.get(route.get(i)).serviceTime;
+            st += serviceTimes[route.get(i)];
         }
         return st;
     }
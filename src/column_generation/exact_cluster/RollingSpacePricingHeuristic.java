@@ -74,16 +74,18 @@ public class RollingSpacePricingHeuristic {
                 minShiftDuration,
                 maxShifts
         );
-        
+
+            // Converted once per cluster, not once per pooled shift
+            TravelTimeMatrix clusterTimes = TravelTimeMatrix.of(ci.travelTimes);
 
             pool.parallelStream().forEach(shift -> {
                 try {
                     List<Shift> tmp = List.of(shift);
                     List<Shift> improved =
-                            localSearchOnSingleShift(tmp, ci.travelTimes, neighborhoods);
+                            localSearchOnSingleShift(tmp, clusterTimes, neighborhoods);
 
-                    shift.route = RouteMapper.mapBackRoute(
-                            improved.get(0).route, ci.localToGlobal);
+                    shift.setRoute(RouteMapper.mapBackRoute(
+                            improved.get(0).route, ci.localToGlobal));
 
                     shift.recomputeTotalTime();
 
@@ -188,7 +190,7 @@ public class RollingSpacePricingHeuristic {
             return nodes;
         }
     
-    private List<Shift> localSearchOnSingleShift(List<Shift> shifts, double[][] travelTimes, List<Neighborhood> neighborhoods) throws IOException {
+    private List<Shift> localSearchOnSingleShift(List<Shift> shifts, TravelTimeMatrix travelTimes, List<Neighborhood> neighborhoods) throws IOException {
         ObjectiveFunction objectiveFunction = Objective.totalLength();
         LocalSearch ls = new LocalSearch(
                 neighborhoods,
@@ -0,0 +1,200 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary format for the (square) travel time matrices.
+ *
+ * Layout (little endian):
+ *   int    magic      "HTMT"
+ *   int    version
+ *   int    n          number of rows (= number of columns)
+ *   int    units      UNITS_MINUTES or UNITS_SECONDS
+ *   long   checksum   CRC32 over the n*n values
+ *   double values[n*n] row-major
+ *
+ * The values are read through a memory-mapped buffer, so loading a matrix does not parse any text
+ * and several JVMs reading the same file share the page cache. The checksum is verified by the converter
+ * after writing; readers only check it on request, since that touches every page.
+ */
+public class BinaryTravelTimes {
+    public static final int MAGIC = 0x544D5448; // "HTMT" in little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 24;
+
+    public static final int UNITS_SECONDS = 0;
+    public static final int UNITS_MINUTES = 1;
+
+    public static final String EXTENSION = ".bin";
+
+    public static boolean isBinary(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    /**
+     * Writes a matrix (in minutes, as returned by Utils.readTravelTimes) to the binary format.
+     *
+     * @param matrix square travel time matrix in minutes
+     * @param path   output file
+     */
+    public static void write(double[][] matrix, Path path) throws IOException {
+        int n = matrix.length;
+        ByteBuffer values = ByteBuffer.allocate(8 * n * n).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < n; i++) {
+            if (matrix[i].length != n) {
+                throw new IllegalArgumentException("Matrix is not square: row " + i + " has " + matrix[i].length + " values, expected " + n);
+            }
+            for (int j = 0; j < n; j++) {
+                values.putDouble(matrix[i][j]);
+            }
+        }
+        values.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(values.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(n);
+        header.putInt(UNITS_MINUTES);
+        header.putLong(crc.getValue());
+        header.flip();
+
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) ch.write(header);
+            while (values.hasRemaining()) ch.write(values);
+        }
+    }
+
+    /**
+     * Maps the values of a binary matrix file read-only into memory.
+     *
+     * @param path           the binary matrix file
+     * @param verifyChecksum whether to check the CRC32 of the values (touches every page once)
+     * @return buffer with the n*n values in row-major order, always in minutes
+     */
+    public static DoubleBuffer map(Path path, boolean verifyChecksum) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) {
+                throw new IOException("File too small to be a binary travel time matrix: " + path);
+            }
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            int magic = mapped.getInt(0);
+            int version = mapped.getInt(4);
+            int n = mapped.getInt(8);
+            int units = mapped.getInt(12);
+            long checksum = mapped.getLong(16);
+
+            if (magic != MAGIC) {
+                throw new IOException("Not a binary travel time matrix (bad magic): " + path);
+            }
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary matrix version " + version + " in " + path);
+            }
+            long expectedSize = HEADER_BYTES + 8L * n * n;
+            if (ch.size() != expectedSize) {
+                throw new IOException("Truncated binary matrix: expected " + expectedSize + " bytes, got " + ch.size() + " in " + path);
+            }
+
+            ByteBuffer valueBytes = mapped.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN);
+
+            if (verifyChecksum) {
+                CRC32 crc = new CRC32();
+                crc.update(valueBytes.duplicate());
+                if (crc.getValue() != checksum) {
+                    throw new IOException("Checksum mismatch in binary matrix " + path);
+                }
+            }
+
+            DoubleBuffer values = valueBytes.asDoubleBuffer();
+            if (units == UNITS_MINUTES) {
+                return values;
+            }
+            if (units != UNITS_SECONDS) {
+                throw new IOException("Unknown units code " + units + " in " + path);
+            }
+
+            // Seconds on disk: convert once to minutes on the heap
+            double[] minutes = new double[n * n];
+            values.get(minutes);
+            for (int k = 0; k < minutes.length; k++) minutes[k] /= 60.0;
+            return DoubleBuffer.wrap(minutes);
+        }
+    }
+
+    /**
+     * Reads a binary matrix file into the row-based layout used throughout the code.
+     */
+    public static double[][] read(Path path) throws IOException {
+        DoubleBuffer values = map(path, false);
+        int n = (int) Math.round(Math.sqrt(values.remaining()));
+
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            values.get(matrix[i]);
+        }
+        return matrix;
+    }
+
+    /**
+     * Converts a text matrix (seconds, comma or whitespace separated) to the binary format.
+     */
+    public static void convert(String textPath, String binaryPath) throws IOException {
+        double[][] matrix = Utils.readTravelTimes(textPath);
+        write(matrix, Path.of(binaryPath));
+        map(Path.of(binaryPath), true);
+        System.out.println("Converted " + textPath + " (" + matrix.length + "x" + matrix.length + ") to " + binaryPath + ", checksum verified");
+    }
+
+    public static String binaryPathFor(String textPath) {
+        int dot = textPath.lastIndexOf('.');
+        String base = (dot > textPath.lastIndexOf('/')) ? textPath.substring(0, dot) : textPath;
+        return base + EXTENSION;
+    }
+
+    /**
+     * The converted binary file next to a text matrix, or null if there is none or the text was changed after
+     * the conversion.
+     */
+    public static Path upToDateBinary(String textPath) throws IOException {
+        Path text = Path.of(textPath);
+        Path binary = Path.of(binaryPathFor(textPath));
+        if (!Files.exists(binary)) return null;
+        if (Files.exists(text) && Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(text)) < 0) {
+            return null;
+        }
+        return binary;
+    }
+
+    // Converts the given text matrices (default: the collapsed day and night matrices) next to the originals
+    public static void main(String[] args) throws IOException {
+        String[] paths = args.length > 0 ? args : new String[]{
+                "data/inputs/cleaned/travel_time_night_collapsedv2.txt",
+                "data/inputs/cleaned/travel_time_day_collapsedv2.txt",
+                "src/core/travel_times_collapsedv2.txt"
+        };
+
+        for (String textPath : paths) {
+            if (!Files.exists(Path.of(textPath))) {
+                System.out.println("Skipping missing file " + textPath);
+                continue;
+            }
+            convert(textPath, binaryPathFor(textPath));
+        }
+    }
+}
@@ -7,15 +7,56 @@ import java.util.Comparator;
 import java.util.List;
 public class HTMInstance {
     private final List<Stop> stops;
+    private final List<Stop> stopsView;
+
+    // Primitive per-stop data, indexed like getStops(), for the evaluation loops of the searches.
+    // Built once when the instance is created; read-only for everyone outside this class.
+    public final double[] serviceTime;
+    public final byte[] nightFlag;
+    public final double[] lat;
+    public final double[] lon;
 
     // Constructor
     public HTMInstance(List<Stop> stops) {
         this.stops = stops;
+        this.stopsView = Collections.unmodifiableList(stops);
+
+        int n = stops.size();
+        this.serviceTime = serviceTimes(stops);
+        this.nightFlag = nightFlags(stops);
+        this.lat = new double[n];
+        this.lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = stops.get(i).latitude;
+            lon[i] = stops.get(i).longitude;
+        }
     }
 
     // Get methods
     public List<Stop> getStops() {
-        return Collections.unmodifiableList(stops);
+        return stopsView;
+    }
+
+    public boolean isNightStop(int stop) {
+        return nightFlag[stop] == 1;
+    }
+
+    // Service times of a list of stops, for the code that works on a plain list of stops
+    public static double[] serviceTimes(List<Stop> stops) {
+        double[] times = new double[stops.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = stops.get(i).serviceTime;
+        }
+        return times;
+    }
+
+    // Night flags (1 for a night stop, 0 otherwise) of a list of stops
+    public static byte[] nightFlags(List<Stop> stops) {
+        byte[] flags = new byte[stops.size()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = (byte) (stops.get(i).nightShift == 1 ? 1 : 0);
+        }
+        return flags;
     }
 
     public int getNStops() {
@@ -34,6 +75,7 @@ public class HTMInstance {
      */
     public void changeCollapsedCleaningTimes(double fix, double var) {
         stops.get(0).serviceTime = 0.0;
+        serviceTime[0] = 0.0;
 
         // Get unique cleaning times
         java.util.Set<Double> uniqueTimes = new java.util.HashSet<>();
@@ -58,6 +100,7 @@ public class HTMInstance {
             Double newTime = map.get(stops.get(i).serviceTime);
             if (newTime != null) {
                 stops.get(i).serviceTime = newTime;
+                serviceTime[i] = newTime;
             }
         }
     }
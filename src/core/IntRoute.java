@@ -0,0 +1,217 @@
+package core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Route of stop IDs backed by a growable int[].
+ *
+ * Implements List<Integer> so existing code keeps working, but the hot paths of the local search
+ * should use the primitive accessors (getInt, insert, removeAt, swap, reverse) which do not box.
+ * Every mutation bumps a version counter, which Shift uses to detect stale cached prefix sums.
+ */
+public final class IntRoute extends AbstractList<Integer> implements RandomAccess {
+    private int[] data;
+    private int size;
+    private int version;
+
+    public IntRoute() {
+        this(16);
+    }
+
+    public IntRoute(int capacity) {
+        data = new int[Math.max(capacity, 4)];
+    }
+
+    public IntRoute(Collection<Integer> values) {
+        if (values instanceof IntRoute) {
+            IntRoute other = (IntRoute) values;
+            data = Arrays.copyOf(other.data, Math.max(other.size, 4));
+            size = other.size;
+            return;
+        }
+        data = new int[Math.max(values.size(), 4)];
+        for (int v : values) {
+            data[size++] = v;
+        }
+    }
+
+    public static IntRoute of(int... values) {
+        IntRoute route = new IntRoute(values.length);
+        System.arraycopy(values, 0, route.data, 0, values.length);
+        route.size = values.length;
+        return route;
+    }
+
+    // ---------------- Primitive access ----------------
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return data[index];
+    }
+
+    public int setInt(int index, int value) {
+        checkIndex(index);
+        int old = data[index];
+        data[index] = value;
+        version++;
+        return old;
+    }
+
+    public void addInt(int value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+        modCount++;
+        version++;
+    }
+
+    /**
+     * Inserts value at index, shifting the elements from index onwards one position to the right.
+     */
+    public void insert(int index, int value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = value;
+        size++;
+        modCount++;
+        version++;
+    }
+
+    /**
+     * Removes and returns the element at index.
+     */
+    public int removeAt(int index) {
+        checkIndex(index);
+        int old = data[index];
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        modCount++;
+        version++;
+        return old;
+    }
+
+    public void swap(int i, int j) {
+        checkIndex(i);
+        checkIndex(j);
+        int tmp = data[i];
+        data[i] = data[j];
+        data[j] = tmp;
+        version++;
+    }
+
+    /**
+     * Reverses the elements between positions from and to (both inclusive).
+     */
+    public void reverse(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        while (from < to) {
+            int tmp = data[from];
+            data[from++] = data[to];
+            data[to--] = tmp;
+        }
+        version++;
+    }
+
+    /**
+     * Replaces the full content of the route.
+     */
+    public void setAll(Collection<Integer> values) {
+        if (values == this) return;
+        int n = values.size();
+        if (data.length < n) data = new int[n];
+        size = 0;
+        if (values instanceof IntRoute) {
+            IntRoute other = (IntRoute) values;
+            System.arraycopy(other.data, 0, data, 0, n);
+            size = n;
+        } else {
+            for (int v : values) data[size++] = v;
+        }
+        modCount++;
+        version++;
+    }
+
+    /**
+     * Exchanges the tails of two routes: a becomes a[0..aFrom) + b[bFrom..] and b becomes b[0..bFrom) + a[aFrom..].
+     */
+    public static void swapTails(IntRoute a, int aFrom, IntRoute b, int bFrom) {
+        int[] tailA = Arrays.copyOfRange(a.data, aFrom, a.size);
+        int[] tailB = Arrays.copyOfRange(b.data, bFrom, b.size);
+        a.replaceTail(aFrom, tailB);
+        b.replaceTail(bFrom, tailA);
+    }
+
+    private void replaceTail(int from, int[] tail) {
+        ensureCapacity(from + tail.length);
+        System.arraycopy(tail, 0, data, from, tail.length);
+        size = from + tail.length;
+        modCount++;
+        version++;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public int version() {
+        return version;
+    }
+
+    // ---------------- List<Integer> ----------------
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        return setInt(index, value);
+    }
+
+    @Override
+    public void add(int index, Integer value) {
+        insert(index, value);
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        addInt(value);
+        return true;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        return removeAt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+        version++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
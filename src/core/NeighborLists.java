@@ -0,0 +1,160 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Granular neighbor lists: for every stop the k stops closest to it, separately for the night and day matrices.
+ *
+ * The inter-route neighborhoods use them in granular mode to only generate moves that place a stop next to
+ * one of its neighbors: they go from each stop to its neighbors (or to the stops that have it as a neighbor)
+ * and look up where those are in the solution (StopPositions), so a scan takes O(n k) instead of trying every
+ * pair of positions. Membership is also stored as a bitset, so isNeighbor is a constant-time check.
+ *
+ * The depot is never a neighbor.
+ */
+public final class NeighborLists {
+    private final int n;
+    private final int k;
+
+    // neighbors[t][stop * k + rank], bits[t] row-major n x n, with t = 1 for night and 0 for day
+    private final int[][] neighbors = new int[2][];
+    private final long[][] bits = new long[2][];
+    // Inverse lists: the stops that have stop as a neighbor are neighborOf[t][neighborOfStart[t][stop] ..< neighborOfStart[t][stop + 1]]
+    private final int[][] neighborOf = new int[2][];
+    private final int[][] neighborOfStart = new int[2][];
+
+    private NeighborLists(int n, int k) {
+        this.n = n;
+        this.k = k;
+    }
+
+    /**
+     * Builds the neighbor lists from the night and day matrices.
+     *
+     * @param k number of neighbors per stop (capped at n - 2, the other stops without the depot)
+     */
+    public static NeighborLists build(TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay, int k) {
+        int n = travelTimesDay.size();
+        if (travelTimesNight.size() != n) {
+            throw new IllegalArgumentException("Night and day matrices differ in size: " + travelTimesNight.size() + " vs " + n);
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of neighbors must be positive, got " + k);
+        }
+
+        NeighborLists lists = new NeighborLists(n, Math.max(0, Math.min(k, n - 2)));
+        lists.fill(1, travelTimesNight);
+        if (travelTimesNight == travelTimesDay) {
+            lists.neighbors[0] = lists.neighbors[1];
+            lists.bits[0] = lists.bits[1];
+            lists.neighborOf[0] = lists.neighborOf[1];
+            lists.neighborOfStart[0] = lists.neighborOfStart[1];
+        } else {
+            lists.fill(0, travelTimesDay);
+        }
+        return lists;
+    }
+
+    // Same lists for day and night, for the searches that use a single matrix
+    public static NeighborLists build(TravelTimeMatrix travelTimes, int k) {
+        return build(travelTimes, travelTimes, k);
+    }
+
+    private void fill(int t, TravelTimeMatrix travelTimes) {
+        int[] nb = new int[n * k];
+        long[] set = new long[(int) (((long) n * n + 63) / 64)];
+
+        // Per stop, keep the k closest other stops in a sorted buffer (insertion, k is small)
+        int[] best = new int[k];
+        double[] bestTime = new double[k];
+
+        for (int a = 0; a < n; a++) {
+            int size = 0;
+            for (int b = 1; b < n; b++) {
+                if (a == b) continue;
+                double time = travelTimes.get(a, b);
+                if (size == k && time >= bestTime[k - 1]) continue;
+
+                int pos = (size < k) ? size++ : k - 1;
+                while (pos > 0 && bestTime[pos - 1] > time) {
+                    best[pos] = best[pos - 1];
+                    bestTime[pos] = bestTime[pos - 1];
+                    pos--;
+                }
+                best[pos] = b;
+                bestTime[pos] = time;
+            }
+
+            for (int r = 0; r < k; r++) {
+                int b = best[r];
+                nb[a * k + r] = b;
+                long bit = (long) a * n + b;
+                set[(int) (bit >>> 6)] |= 1L << (bit & 63);
+            }
+        }
+
+        // Inverse lists by counting sort on the neighbor
+        int[] start = new int[n + 1];
+        for (int b : nb) {
+            start[b + 1]++;
+        }
+        for (int b = 0; b < n; b++) {
+            start[b + 1] += start[b];
+        }
+        int[] inverse = new int[n * k];
+        int[] next = Arrays.copyOf(start, n);
+        for (int a = 0; a < n; a++) {
+            for (int r = 0; r < k; r++) {
+                inverse[next[nb[a * k + r]]++] = a;
+            }
+        }
+
+        neighbors[t] = nb;
+        bits[t] = set;
+        neighborOf[t] = inverse;
+        neighborOfStart[t] = start;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    /**
+     * @param nightShift 1 for the night lists, 0 for the day lists
+     * @param rank       0 for the closest neighbor, up to k - 1
+     */
+    public int neighbor(int nightShift, int stop, int rank) {
+        return neighbors[nightShift == 1 ? 1 : 0][stop * k + rank];
+    }
+
+    // Number of stops that have stop among their k nearest neighbors
+    public int numNeighborOf(int nightShift, int stop) {
+        int[] start = neighborOfStart[nightShift == 1 ? 1 : 0];
+        return start[stop + 1] - start[stop];
+    }
+
+    /**
+     * @param nightShift 1 for the night lists, 0 for the day lists
+     * @param index      0 up to numNeighborOf(nightShift, stop) - 1
+     * @return a stop that has stop among its k nearest neighbors
+     */
+    public int neighborOf(int nightShift, int stop, int index) {
+        int t = nightShift == 1 ? 1 : 0;
+        return neighborOf[t][neighborOfStart[t][stop] + index];
+    }
+
+    // True if the night and day lists are the same, built from one matrix
+    public boolean sameForDayAndNight() {
+        return neighbors[0] == neighbors[1];
+    }
+
+    // True if other is one of the k stops closest to stop
+    public boolean isNeighbor(int nightShift, int stop, int other) {
+        long bit = (long) stop * n + other;
+        return (bits[nightShift == 1 ? 1 : 0][(int) (bit >>> 6)] & (1L << (bit & 63))) != 0;
+    }
+}
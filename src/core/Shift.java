@@ -3,7 +3,7 @@ import java.util.Arrays;
 import java.util.List;
 
 public class Shift {
-    public List<Integer> route;
+    public final IntRoute route;
     public double travelTime;
     public double serviceTime;
     public double totalTime;
@@ -16,15 +16,35 @@ public class Shift {
     private int[] uniqueStopsSorted;
     private int shiftSignature;
 
+    // Cached cumulative data along the route, for up to two matrices (day and night):
+    // forwardTravel[slot][k] = travel time of the arcs route[0] -> ... -> route[k],
+    // reverseTravel[slot][k] = travel time of the reversed arcs route[k] -> ... -> route[0],
+    // prefixService[k]       = service time of positions 0..k.
+    // Suffix sums follow as differences with the value at the last position.
+    private final TravelTimeMatrix[] slotMatrix = new TravelTimeMatrix[2];
+    private final int[] slotVersion = {-1, -1};
+    private final double[][] forwardTravel = {new double[0], new double[0]};
+    private final double[][] reverseTravel = {new double[0], new double[0]};
+    private double[] prefixService = new double[0];
+    private int[] prefixNight = new int[0];
+    private int serviceVersion = -1;
+    private int nextSlot = 0;
 
+    // Number of night stops on the route, valid while nightVersion equals the route version.
+    // The stop mutators below keep it current in constant time; other route changes trigger a recount.
+    private int nightStops;
+    private int nightVersion = -1;
+
+
+    // The route is copied into the shift's own IntRoute
     public Shift(List<Integer> route, double travelTime, double serviceTime, int nightShift) {
-        this.route = route;
+        this.route = new IntRoute(route);
         this.travelTime = travelTime;
         this.serviceTime = serviceTime;
         this.totalTime = travelTime + serviceTime + breakTime + prepTime;
         this.nightShift = nightShift;
         this.totalTimeNoBreak = travelTime + serviceTime;
-        this.uniqueStopsSorted = route.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        this.uniqueStopsSorted = computeUniqueStopsSorted();
         this.shiftSignature = Arrays.hashCode(uniqueStopsSorted);
     }
 
@@ -34,10 +54,22 @@ public class Shift {
 
     public void updateSignature() {
         totalTime = travelTime + serviceTime + breakTime + prepTime;
-        uniqueStopsSorted = route.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        uniqueStopsSorted = computeUniqueStopsSorted();
         shiftSignature = Arrays.hashCode(uniqueStopsSorted);
     }
 
+    private int[] computeUniqueStopsSorted() {
+        int[] stops = route.toIntArray();
+        Arrays.sort(stops);
+        int unique = 0;
+        for (int k = 0; k < stops.length; k++) {
+            if (k == 0 || stops[k] != stops[k - 1]) {
+                stops[unique++] = stops[k];
+            }
+        }
+        return Arrays.copyOf(stops, unique);
+    }
+
     public int getSignature() {
         return shiftSignature;
     }
@@ -46,8 +78,215 @@ public class Shift {
         return uniqueStopsSorted;
     }
 
-    public List<Integer> getRoute() {
+    public IntRoute getRoute() {
         return route;
     }
-}
 
+    // Replaces the stops of the route (the shift keeps its own IntRoute)
+    public void setRoute(List<Integer> newRoute) {
+        route.setAll(newRoute);
+    }
+
+    /**
+     * Recomputes the cached prefix sums of travel (forward and reversed) and service time along the route.
+     *
+     * @param travelTimes the matrix the travel prefix sums are computed with
+     * @param instance    the instance providing the service times
+     */
+    public void refreshPrefixSums(TravelTimeMatrix travelTimes, HTMInstance instance) {
+        int n = route.size();
+        int slot = slotOf(travelTimes);
+        if (slot < 0) {
+            slot = nextSlot;
+            nextSlot = 1 - nextSlot;
+        }
+
+        if (forwardTravel[slot].length < n) {
+            forwardTravel[slot] = new double[n];
+            reverseTravel[slot] = new double[n];
+        }
+        double[] fwd = forwardTravel[slot];
+        double[] rev = reverseTravel[slot];
+        if (n > 0) {
+            fwd[0] = 0.0;
+            rev[0] = 0.0;
+        }
+        for (int k = 1; k < n; k++) {
+            int a = route.getInt(k - 1);
+            int b = route.getInt(k);
+            fwd[k] = fwd[k - 1] + travelTimes.get(a, b);
+            rev[k] = rev[k - 1] + travelTimes.get(b, a);
+        }
+        slotMatrix[slot] = travelTimes;
+        slotVersion[slot] = route.version();
+
+        if (serviceVersion != route.version()) {
+            refreshServiceSums(instance);
+        }
+    }
+
+    // Refreshes the prefix sums for both matrices, e.g. after a move changed the route
+    public void refreshPrefixSums(TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay, HTMInstance instance) {
+        refreshPrefixSums(travelTimesNight, instance);
+        if (travelTimesDay != travelTimesNight) {
+            refreshPrefixSums(travelTimesDay, instance);
+        }
+    }
+
+    // Recomputes the prefix sums for the given matrix only if they are stale
+    public void ensurePrefixSums(TravelTimeMatrix travelTimes, HTMInstance instance) {
+        if (!hasPrefixSums(travelTimes)) {
+            refreshPrefixSums(travelTimes, instance);
+        }
+    }
+
+    private void refreshServiceSums(HTMInstance instance) {
+        int n = route.size();
+        if (prefixService.length < n) {
+            prefixService = new double[n];
+            prefixNight = new int[n];
+        }
+        double[] service = instance.serviceTime;
+        byte[] nightFlag = instance.nightFlag;
+        double sum = 0.0;
+        int night = 0;
+        for (int k = 0; k < n; k++) {
+            int stop = route.getInt(k);
+            sum += service[stop];
+            night += nightFlag[stop];
+            prefixService[k] = sum;
+            prefixNight[k] = night;
+        }
+        serviceVersion = route.version();
+        nightStops = night;
+        nightVersion = route.version();
+    }
+
+    private int slotOf(TravelTimeMatrix travelTimes) {
+        if (slotMatrix[0] == travelTimes) return 0;
+        if (slotMatrix[1] == travelTimes) return 1;
+        return -1;
+    }
+
+    // True if the service prefix sums match the current route
+    public boolean hasPrefixSums() {
+        return serviceVersion == route.version();
+    }
+
+    // True if the prefix sums match the current route and were computed with the given matrix
+    public boolean hasPrefixSums(TravelTimeMatrix travelTimes) {
+        int slot = slotOf(travelTimes);
+        return slot >= 0 && slotVersion[slot] == route.version() && serviceVersion == route.version();
+    }
+
+    // Travel time of the arcs between positions from and to (from <= to), prefix sums must be valid for the matrix
+    public double travelBetween(TravelTimeMatrix travelTimes, int from, int to) {
+        double[] fwd = forwardTravel[slotOf(travelTimes)];
+        return fwd[to] - fwd[from];
+    }
+
+    // Travel time of the positions from..to traversed backwards, i.e. route[to] -> ... -> route[from]
+    public double reverseTravelBetween(TravelTimeMatrix travelTimes, int from, int to) {
+        double[] rev = reverseTravel[slotOf(travelTimes)];
+        return rev[to] - rev[from];
+    }
+
+    // Service time of the positions from..to (both inclusive)
+    public double serviceBetween(int from, int to) {
+        return prefixService[to] - (from == 0 ? 0.0 : prefixService[from - 1]);
+    }
+
+    /**
+     * Number of night stops on the route; constant time unless the route was changed without the stop
+     * mutators of this class, in which case the stops are counted again.
+     */
+    public int nightStops(HTMInstance instance) {
+        if (nightVersion != route.version()) {
+            byte[] nightFlag = instance.nightFlag;
+            int count = 0;
+            for (int k = 0; k < route.size(); k++) {
+                count += nightFlag[route.getInt(k)];
+            }
+            nightStops = count;
+            nightVersion = route.version();
+        }
+        return nightStops;
+    }
+
+    // Number of night stops at the positions from..to (both inclusive, empty if from > to), refreshes stale prefix sums
+    public int nightStopsBetween(int from, int to, HTMInstance instance) {
+        if (from > to) return 0;
+        if (serviceVersion != route.version()) {
+            refreshServiceSums(instance);
+        }
+        return prefixNight[to] - (from == 0 ? 0 : prefixNight[from - 1]);
+    }
+
+    // Sets nightShift to 1 if the route contains a night stop and to 0 otherwise
+    public void updateNightShift(HTMInstance instance) {
+        nightShift = nightStops(instance) > 0 ? 1 : 0;
+    }
+
+    // Inserts a stop at the given position, keeping the night-stop count current
+    public void insertStop(int index, int stop, HTMInstance instance) {
+        boolean counted = nightVersion == route.version();
+        route.insert(index, stop);
+        if (counted) {
+            nightStops += instance.nightFlag[stop];
+            nightVersion = route.version();
+        }
+    }
+
+    // Removes and returns the stop at the given position, keeping the night-stop count current
+    public int removeStopAt(int index, HTMInstance instance) {
+        boolean counted = nightVersion == route.version();
+        int stop = route.removeAt(index);
+        if (counted) {
+            nightStops -= instance.nightFlag[stop];
+            nightVersion = route.version();
+        }
+        return stop;
+    }
+
+    // Replaces the stop at the given position, keeping the night-stop count current
+    public void setStopAt(int index, int stop, HTMInstance instance) {
+        boolean counted = nightVersion == route.version();
+        int old = route.setInt(index, stop);
+        if (counted) {
+            nightStops += instance.nightFlag[stop] - instance.nightFlag[old];
+            nightVersion = route.version();
+        }
+    }
+
+    // Swaps the stops at positions i and j; the night-stop count does not change
+    public void swapStops(int i, int j) {
+        boolean counted = nightVersion == route.version();
+        route.swap(i, j);
+        if (counted) nightVersion = route.version();
+    }
+
+    // Reverses the positions from..to (both inclusive); the night-stop count does not change
+    public void reverseStops(int from, int to) {
+        boolean counted = nightVersion == route.version();
+        route.reverse(from, to);
+        if (counted) nightVersion = route.version();
+    }
+
+    /**
+     * Exchanges the tails a[aFrom..] and b[bFrom..] of two shifts (IntRoute.swapTails), carrying the
+     * night-stop counts over with the tails.
+     */
+    public static void swapTails(Shift a, int aFrom, Shift b, int bFrom, HTMInstance instance) {
+        int aTail = a.nightStopsBetween(aFrom, a.route.size() - 1, instance);
+        int bTail = b.nightStopsBetween(bFrom, b.route.size() - 1, instance);
+        int aNight = a.nightStops(instance) - aTail + bTail;
+        int bNight = b.nightStops(instance) - bTail + aTail;
+
+        IntRoute.swapTails(a.route, aFrom, b.route, bFrom);
+
+        a.nightStops = aNight;
+        a.nightVersion = a.route.version();
+        b.nightStops = bNight;
+        b.nightVersion = b.route.version();
+    }
+}
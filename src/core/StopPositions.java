@@ -0,0 +1,45 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shift and position of every stop of a solution, so a granular neighborhood can go from a stop to where its
+ * neighbors (see NeighborLists) are instead of trying every pair of positions. Built in O(n) per scan.
+ */
+public final class StopPositions {
+    private final int[] shift;
+    private final int[] position;
+
+    public StopPositions(List<Shift> shifts) {
+        int maxStop = 0;
+        for (Shift s : shifts) {
+            IntRoute route = s.route;
+            for (int p = 1; p < route.size() - 1; p++) {
+                maxStop = Math.max(maxStop, route.getInt(p));
+            }
+        }
+
+        shift = new int[maxStop + 1];
+        position = new int[maxStop + 1];
+        Arrays.fill(shift, -1);
+
+        for (int r = 0; r < shifts.size(); r++) {
+            IntRoute route = shifts.get(r).route;
+            for (int p = 1; p < route.size() - 1; p++) {
+                shift[route.getInt(p)] = r;
+                position[route.getInt(p)] = p;
+            }
+        }
+    }
+
+    // Index of the shift that visits the stop, -1 for the depot and for stops in no shift
+    public int shift(int stop) {
+        return (stop < shift.length) ? shift[stop] : -1;
+    }
+
+    // Position of the stop in its shift's route, only defined if shift(stop) >= 0
+    public int position(int stop) {
+        return position[stop];
+    }
+}
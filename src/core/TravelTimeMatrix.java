@@ -0,0 +1,96 @@
+package core;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+
+/**
+ * Square travel time matrix stored in one contiguous row-major array.
+ *
+ * Replaces the jagged double[][] in the hot loops of the local search: an arc lookup is a single
+ * array access instead of a row dereference plus two bounds checks.
+ *
+ * A matrix read from a binary file (see BinaryTravelTimes) is bulk-copied from the read-only mapping onto
+ * the heap once at load, which skips all text parsing; lookups then never go through the mapped buffer.
+ */
+public final class TravelTimeMatrix {
+    private final int n;
+    private final double[] values;
+
+    public TravelTimeMatrix(int n, double[] values) {
+        if (values.length != n * n) {
+            throw new IllegalArgumentException("Expected " + (n * n) + " values for a " + n + "x" + n + " matrix, got " + values.length);
+        }
+        this.n = n;
+        this.values = values;
+    }
+
+    public static TravelTimeMatrix of(double[][] matrix) {
+        int n = matrix.length;
+        double[] values = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            if (matrix[i].length != n) {
+                throw new IllegalArgumentException("Matrix is not square: row " + i + " has " + matrix[i].length + " values, expected " + n);
+            }
+            System.arraycopy(matrix[i], 0, values, i * n, n);
+        }
+        return new TravelTimeMatrix(n, values);
+    }
+
+    public static TravelTimeMatrix read(String path) throws IOException {
+        return read(path, false);
+    }
+
+    /**
+     * Reads a matrix from a binary file (see BinaryTravelTimes) or a text file in seconds. For a text file
+     * the converted binary file next to it is read instead, if it is at least as new as the text.
+     *
+     * @param verifyChecksum whether to check the CRC32 of a binary file, which reads every page of it
+     */
+    public static TravelTimeMatrix read(String path, boolean verifyChecksum) throws IOException {
+        Path binary = BinaryTravelTimes.isBinary(path) ? Path.of(path) : BinaryTravelTimes.upToDateBinary(path);
+        if (binary == null) {
+            return of(Utils.readTravelTimes(path));
+        }
+
+        DoubleBuffer buffer = BinaryTravelTimes.map(binary, verifyChecksum);
+        int n = (int) Math.round(Math.sqrt(buffer.remaining()));
+        // Files in seconds are already converted to minutes on the heap by BinaryTravelTimes.map
+        if (buffer.hasArray()) {
+            return new TravelTimeMatrix(n, buffer.array());
+        }
+        double[] values = new double[buffer.remaining()];
+        buffer.get(values);
+        return new TravelTimeMatrix(n, values);
+    }
+
+    public double get(int i, int j) {
+        // The flat index stays in range for j >= n, so only the assertion catches a bad column
+        assert i >= 0 && i < n && j >= 0 && j < n : "(" + i + ", " + j + ") outside a " + n + "x" + n + " matrix";
+        return values[i * n + j];
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Returns a heap copy with every travel time multiplied by the given factor, e.g. for scenarios
+     * with slower traffic.
+     */
+    public TravelTimeMatrix scaled(double factor) {
+        double[] result = new double[n * n];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = values[k] * factor;
+        }
+        return new TravelTimeMatrix(n, result);
+    }
+
+    public double[][] toArray() {
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(values, i * n, matrix[i], 0, n);
+        }
+        return matrix;
+    }
+}
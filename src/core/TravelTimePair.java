@@ -0,0 +1,26 @@
+package core;
+
+/**
+ * The night and day travel time matrices, selected by Shift.nightShift.
+ */
+public final class TravelTimePair {
+    public final TravelTimeMatrix night;
+    public final TravelTimeMatrix day;
+
+    public TravelTimePair(TravelTimeMatrix night, TravelTimeMatrix day) {
+        this.night = night;
+        this.day = day;
+    }
+
+    public static TravelTimePair of(double[][] travelTimesNight, double[][] travelTimesDay) {
+        return new TravelTimePair(TravelTimeMatrix.of(travelTimesNight), TravelTimeMatrix.of(travelTimesDay));
+    }
+
+    public TravelTimeMatrix get(int nightShift) {
+        return nightShift == 1 ? night : day;
+    }
+
+    public TravelTimeMatrix forShift(Shift s) {
+        return get(s.nightShift);
+    }
+}
@@ -6,9 +6,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
-import neighborhoods.InterShift;
+import search.EjectionChainRepair;
 import search.Evaluation;
-import search.Move;
 import search.ObjectiveFunction;
 
 public class Utils {
@@ -22,6 +21,11 @@ public class Utils {
     }
 
     public static double[][] readTravelTimes(String path) throws IOException {
+        // Binary matrices (see BinaryTravelTimes) are memory-mapped instead of parsed
+        if (BinaryTravelTimes.isBinary(path)) {
+            return BinaryTravelTimes.read(Path.of(path));
+        }
+
         File file = new File(path);
         ArrayList<double[]> rows = new ArrayList<>();
         int cols = -1;
@@ -54,12 +58,16 @@ public class Utils {
         return matrix;
     }
 
+    public static TravelTimeMatrix readTravelTimeMatrix(String path) throws IOException {
+        return TravelTimeMatrix.read(path);
+    }
+
 
     public static List<Integer> getAllowedIndices(HTMInstance instance, int nightFlag) {
         List<Integer> id = new ArrayList<>();
         for (int i = 0; i < instance.getNStops(); i++) {
             if (i == 0) continue;
-            if (instance.getStops().get(i).nightShift == nightFlag) {
+            if (instance.nightFlag[i] == nightFlag) {
                 id.add(i);
             }
         }
@@ -248,7 +256,9 @@ public static Map<String, Integer> loadSeasonalityMap(String baseFilePath) throw
  * @param travelTimesDay     day travel time matrix
  * @param instance           HTMInstance (used for checkFeasibility)
  * @param maxShiftMinutes    shift duration limit passed to checkFeasibility
+ * @deprecated Use {@link #generateAndCheckSeasonalityScenario(String, String, String, double, TravelTimeMatrix, TravelTimeMatrix, HTMInstance, double)}.
  */
+@Deprecated
 public static void generateAndCheckSeasonalityScenario(
         String solutionCsvPath,
         String baseDataPath,
@@ -259,6 +269,20 @@ public static void generateAndCheckSeasonalityScenario(
         HTMInstance instance,
         double maxShiftMinutes
 ) throws IOException {
+    generateAndCheckSeasonalityScenario(solutionCsvPath, baseDataPath, outputCsvPath, delta,
+            TravelTimeMatrix.of(travelTimesNight), TravelTimeMatrix.of(travelTimesDay), instance, maxShiftMinutes);
+}
+
+public static void generateAndCheckSeasonalityScenario(
+        String solutionCsvPath,
+        String baseDataPath,
+        String outputCsvPath,
+        double delta,
+        TravelTimeMatrix travelTimesNight,
+        TravelTimeMatrix travelTimesDay,
+        HTMInstance instance,
+        double maxShiftMinutes
+) throws IOException {
 
     // 1. Build ID_MAXIMO -> seasonality lookup
     Map<String, Integer> seasonalityMap = loadSeasonalityMap(baseDataPath);
@@ -390,85 +414,42 @@ public static void generateAndCheckSeasonalityScenario(
          */
     }
 
+    /** @deprecated Use {@link #makeFeasible(List, HTMInstance, TravelTimeMatrix, TravelTimeMatrix)}. */
+    @Deprecated
     public static void makeFeasible(List<Shift>  shifts, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay) {
-        InterShift interShift = new InterShift();
-
-        while (true) {
-            // Get violated shifts 
-            List<Integer> violatedIdx = new ArrayList<>();
-            for (int i = 0; i < shifts.size(); i++) {
-                if (shifts.get(i).totalTime > 480.0) {
-                    violatedIdx.add(i);
-                }
-            }
+        makeFeasible(shifts, instance, TravelTimeMatrix.of(travelTimesNight), TravelTimeMatrix.of(travelTimesDay));
+    }
 
-            if (violatedIdx.isEmpty()) break;
-
-            // Pick one violated shift 
-            int vIdx = violatedIdx.get(0);
-            Shift vShift = shifts.get(vIdx);
-            int vNight = vShift.nightShift;
-
-            // Find current shortest shift
-            int shortestIdx = -1;
-            double shortestTime = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < shifts.size(); i++) {
-                // Different shift 
-                if (i == vIdx) continue;                 
-                // Same type only 
-                if (shifts.get(i).nightShift != vNight) continue;
-
-                double t = shifts.get(i).totalTime;
-                if (t < shortestTime) {
-                    shortestTime = t;
-                    shortestIdx = i;
-                }
+    // Shortens every shift to at most 480 minutes by moving stops along ejection chains, see EjectionChainRepair.
+    // Unlike the earlier repair, which only moved stops into the shortest shift of the same type, a stop may
+    // move between a day and a night shift (and turn the day shift into a night shift) as long as there are
+    // at most 25 night shifts. Warns if shifts are still too long when no chain is left.
+    public static void makeFeasible(List<Shift>  shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) {
+        int moved = new EjectionChainRepair(480.0, 0.0).repair(shifts, instance, travelTimesNight, travelTimesDay);
+        if (!feasibleTime(shifts, instance, 480.0)) {
+            int tooLong = 0;
+            for (Shift s : shifts) {
+                if (s.totalTime > 480.0) tooLong++;
             }
-
-            Shift shortestShift = shifts.get(shortestIdx);
-
-            // last stop in the route 
-            int fromIndex = vShift.route.size() - 2;
-
-            // Insert before depot 
-            int toIndex   = shortestShift.route.size() - 1; 
-
-        
-            if (fromIndex <= 0) break;
-
-            Move m = new Move(
-                    vIdx,
-                    shortestIdx,
-                    fromIndex,
-                    toIndex,
-                    Move.MoveType.INTER_SHIFT
-            );
-
-            shifts = interShift.applyMove(m, shifts, instance, travelTimesNight, travelTimesDay);
-            Utils.recomputeAllShiftsDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
+            System.out.println("WARNING: makeFeasible moved " + moved + " stops but " + tooLong
+                    + " shifts are still longer than 480 minutes");
         }
     }
-    
 
-    public static void recomputeShift(Shift s, HTMInstance instance, double[][] travelTimes) {
+    public static void recomputeShift(Shift s, HTMInstance instance, TravelTimeMatrix travelTimes) {
         double travel = 0.0;
         double service = 0.0;
     
         if (!s.route.isEmpty()) {
-    
-            travel += travelTimes[0][s.route.get(0)];
+            // Also refreshes the cached prefix sums used by the neighborhoods (only if the route changed)
+            s.ensurePrefixSums(travelTimes, instance);
+            int last = s.route.size() - 1;
 
-            for (int k = 0; k < s.route.size() - 1; k++) {
-                int a = s.route.get(k);
-                int b = s.route.get(k + 1);
-                travel += travelTimes[a][b];
-            }
-    
-            travel += travelTimes[s.route.get(s.route.size() - 1)][0];
-        }
-    
-        for (int id : s.route) {
-            service += instance.getStops().get(id).serviceTime;
+            travel += travelTimes.get(0, s.route.getInt(0));
+            travel += s.travelBetween(travelTimes, 0, last);
+            travel += travelTimes.get(s.route.getInt(last), 0);
+
+            service = s.serviceBetween(0, last);
         }
     
         s.travelTime = travel;
@@ -477,64 +458,69 @@ public static void generateAndCheckSeasonalityScenario(
     }
     
     
+    /** @deprecated Use {@link #recomputeAllShifts(List, HTMInstance, TravelTimeMatrix)}. */
+    @Deprecated
     public static void recomputeAllShifts(List<Shift> shifts, HTMInstance instance, double[][] travelTimes) {
+        recomputeAllShifts(shifts, instance, TravelTimeMatrix.of(travelTimes));
+    }
+
+    public static void recomputeAllShifts(List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimes) {
         for (Shift s : shifts) {
             recomputeShift(s, instance, travelTimes);
         }
     }
 
-    public static void recomputeShiftDiffTimes(Shift s, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay) {
-        double travel = 0.0;
-        double service = 0.0;
-    
-        if (!s.route.isEmpty()) {
-            if (containsNightStop(s.route, instance)) {
-                s.nightShift = 1;
-                travel += travelTimesNight[0][s.route.get(0)];
-
-                for (int k = 0; k < s.route.size() - 1; k++) {
-                int a = s.route.get(k);
-                int b = s.route.get(k + 1);
-                travel += travelTimesNight[a][b];
-            }
-    
-                travel += travelTimesNight[s.route.get(s.route.size() - 1)][0];
-            } else {
-                s.nightShift = 0;
-                travel += travelTimesDay[0][s.route.get(0)];
-
-                for (int k = 0; k < s.route.size() - 1; k++) {
-                int a = s.route.get(k);
-                int b = s.route.get(k + 1);
-                travel += travelTimesDay[a][b];
-            }
-    
-                travel += travelTimesDay[s.route.get(s.route.size() - 1)][0];
-            }
+    // Recomputes only the shifts at the given indices, e.g. the dirty shifts of a MoveResult
+    public static void recomputeShifts(List<Shift> shifts, int[] indices, HTMInstance instance, TravelTimeMatrix travelTimes) {
+        for (int idx : indices) {
+            recomputeShift(shifts.get(idx), instance, travelTimes);
         }
-    
-        for (int id : s.route) {
-            service += instance.getStops().get(id).serviceTime;
+    }
+
+    public static void recomputeShiftDiffTimes(Shift s, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) {
+        if (!s.route.isEmpty()) {
+            s.updateNightShift(instance);
         }
-    
-        s.travelTime = travel;
-        s.serviceTime = service;
-        s.recomputeTotalTime();
+        recomputeShift(s, instance, s.nightShift == 1 ? travelTimesNight : travelTimesDay);
     }
     
     
+    public static void recomputeShiftsDiffTimes(List<Shift> shifts, int[] indices, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) {
+        for (int idx : indices) {
+            recomputeShiftDiffTimes(shifts.get(idx), instance, travelTimesNight, travelTimesDay);
+        }
+    }
+
+    /** @deprecated Use {@link #recomputeAllShiftsDiffTimes(List, HTMInstance, TravelTimeMatrix, TravelTimeMatrix)}. */
+    @Deprecated
     public static void recomputeAllShiftsDiffTimes(List<Shift> shifts, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay) {
+        recomputeAllShiftsDiffTimes(shifts, instance, TravelTimeMatrix.of(travelTimesNight), TravelTimeMatrix.of(travelTimesDay));
+    }
+
+    public static void recomputeAllShiftsDiffTimes(List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) {
         for (Shift s : shifts) {
             recomputeShiftDiffTimes(s, instance, travelTimesNight, travelTimesDay);
         }
     }
     
+    /** @deprecated Use {@link #buildGreedyShifts(HTMInstance, TravelTimeMatrix, List, int, double)}. */
+    @Deprecated
     public static List<Shift> buildGreedyShifts(
             HTMInstance instance,
             double[][] travelTimes,
             List<Integer> allowed,
             int nightFlag,
             double shiftLength
+    ) {
+        return buildGreedyShifts(instance, TravelTimeMatrix.of(travelTimes), allowed, nightFlag, shiftLength);
+    }
+
+    public static List<Shift> buildGreedyShifts(
+            HTMInstance instance,
+            TravelTimeMatrix travelTimes,
+            List<Integer> allowed,
+            int nightFlag,
+            double shiftLength
     ) {
         int n = instance.getNStops();
         int depot = 0;
@@ -549,8 +535,8 @@ public static void generateAndCheckSeasonalityScenario(
         List<Shift> shifts = new ArrayList<>();
 
         while (remaining > 0) {
-            List<Integer> route = new ArrayList<>();
-            route.add(depot);
+            IntRoute route = new IntRoute();
+            route.addInt(depot);
 
             int current = depot;
             double travelTime = 0.0;
@@ -564,10 +550,10 @@ public static void generateAndCheckSeasonalityScenario(
                 for (int j = 1; j < n; j++) {
                     if (!isAllowed[j] || visited[j]) continue;
 
-                    double toJ = travelTimes[current][j];
-                    double back = travelTimes[j][depot];
+                    double toJ = travelTimes.get(current, j);
+                    double back = travelTimes.get(j, depot);
 
-                    double elapsedIfGoAndClean = elapsed + toJ + instance.getStops().get(j).serviceTime;
+                    double elapsedIfGoAndClean = elapsed + toJ + instance.serviceTime[j];
                     double totalIfReturn = elapsedIfGoAndClean + back;
 
                     if (totalIfReturn <= shiftLength && toJ < best) {
@@ -577,23 +563,23 @@ public static void generateAndCheckSeasonalityScenario(
                 }
 
                 if (next == -1) {
-                    double back = travelTimes[current][depot];
+                    double back = travelTimes.get(current, depot);
                     travelTime += back;
-                    route.add(depot);
+                    route.addInt(depot);
 
                     shifts.add(new Shift(route, travelTime, serviceTime, nightFlag));
                     break;
                 }
 
-                double toNext = travelTimes[current][next];
-                double cleanNext = instance.getStops().get(next).serviceTime;
+                double toNext = travelTimes.get(current, next);
+                double cleanNext = instance.serviceTime[next];
 
                 travelTime += toNext;
                 serviceTime += cleanNext;
                 elapsed += toNext + cleanNext;
 
                 current = next;
-                route.add(current);
+                route.addInt(current);
                 visited[current] = true;
                 remaining--;
             }
@@ -694,7 +680,7 @@ public static void generateAndCheckSeasonalityScenario(
         for (int id : s.route) {
             if (id == 0) continue;
 
-            if (instance.getStops().get(id).nightShift == 1) {
+            if (instance.nightFlag[id] == 1) {
                 isNight = true;
                 break;
             }
@@ -729,9 +715,28 @@ public static void generateAndCheckSeasonalityScenario(
         return count;
     }
 
+    public static boolean containsNightStop(IntRoute route, HTMInstance instance) {
+        return containsNightStop(route, 0, route.size(), instance);
+    }
+
+    // True if one of the stops at positions from (inclusive) to to (exclusive) of the route is a night stop
+    public static boolean containsNightStop(IntRoute route, int from, int to, HTMInstance instance) {
+        byte[] nightFlag = instance.nightFlag;
+        for (int k = from; k < to; k++) {
+            if (nightFlag[route.getInt(k)] == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static boolean containsNightStop(List<Integer> route, HTMInstance instance) {
+        if (route instanceof IntRoute) {
+            return containsNightStop((IntRoute) route, instance);
+        }
+        byte[] nightFlag = instance.nightFlag;
         for (int id : route) {
-            if (instance.getStops().get(id).nightShift == 1) {
+            if (nightFlag[id] == 1) {
                 return true;
             }
         }
@@ -740,8 +745,8 @@ public static void generateAndCheckSeasonalityScenario(
     public static List<Shift> deepCopyShifts(List<Shift> shifts) {
         List<Shift> copy = new ArrayList<>();
         for (Shift s : shifts) {
-            List<Integer> routeCopy = new ArrayList<>(s.route);
-            copy.add(new Shift(routeCopy, s.travelTime, s.serviceTime, s.nightShift));
+            // The Shift constructor copies the route
+            copy.add(new Shift(s.route, s.travelTime, s.serviceTime, s.nightShift));
         }
         return copy;
     }
@@ -843,7 +848,13 @@ public static void generateAndCheckSeasonalityScenario(
         return "\"" + s.replace("\"", "\"\"") + "\"";
     }
 
+    /** @deprecated Use {@link #readShiftsFromCSV(String, TravelTimeMatrix)}. */
+    @Deprecated
     public static List<Shift> readShiftsFromCSV(String pathToCsv, double[][] travelTimes) throws IOException {
+        return readShiftsFromCSV(pathToCsv, TravelTimeMatrix.of(travelTimes));
+    }
+
+    public static List<Shift> readShiftsFromCSV(String pathToCsv, TravelTimeMatrix travelTimes) throws IOException {
         List<Shift> shifts = new ArrayList<>();
 
         File csvFile = new File(pathToCsv);
@@ -907,8 +918,8 @@ public static void generateAndCheckSeasonalityScenario(
             rows.sort(Comparator.comparingDouble(r -> r[1])); // sort by Order
 
             // ---- route includes depot at start and end ----
-            List<Integer> route = new ArrayList<>(rows.size() + 2);
-            route.add(0); // start at depot
+            IntRoute route = new IntRoute(rows.size() + 2);
+            route.addInt(0); // start at depot
 
             double serviceSum = 0.0;
             boolean hasNightStop = false;
@@ -918,26 +929,26 @@ public static void generateAndCheckSeasonalityScenario(
                 int night  = (int) r[2];
                 double serv = r[3];
 
-                route.add(stopId);
+                route.addInt(stopId);
                 serviceSum += serv;
                 if (night == 1) hasNightStop = true;
             }
 
-            route.add(0); // end at depot
+            route.addInt(0); // end at depot
 
             // ---- travel time includes depot legs (0->first and last->0) ----
             double travelSum = 0.0;
             for (int i = 0; i < route.size() - 1; i++) {
-                int a = route.get(i);
-                int b = route.get(i + 1);
+                int a = route.getInt(i);
+                int b = route.getInt(i + 1);
 
-                if (a < 0 || a >= travelTimes.length || b < 0 || b >= travelTimes[a].length) {
+                if (a < 0 || a >= travelTimes.size() || b < 0 || b >= travelTimes.size()) {
                     throw new IllegalArgumentException(
                             "travelTimes index out of bounds for edge " + a + "->" + b +
                                     " in route=" + entry.getKey() + " file=" + csvFile.getName()
                     );
                 }
-                travelSum += travelTimes[a][b];
+                travelSum += travelTimes.get(a, b);
             }
 
             // This Shift constructor will add prep+break itself via totalTime
@@ -947,7 +958,13 @@ public static void generateAndCheckSeasonalityScenario(
         return shifts;
     }
 
+    /** @deprecated Use {@link #readShiftsFromCSVDiffTimes(String, TravelTimeMatrix, TravelTimeMatrix)}. */
+    @Deprecated
     public static List<Shift> readShiftsFromCSVDiffTimes(String pathToCsv, double[][] travelTimesNight, double[][] travelTimesDay) throws IOException {
+        return readShiftsFromCSVDiffTimes(pathToCsv, TravelTimeMatrix.of(travelTimesNight), TravelTimeMatrix.of(travelTimesDay));
+    }
+
+    public static List<Shift> readShiftsFromCSVDiffTimes(String pathToCsv, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) throws IOException {
         List<Shift> shifts = new ArrayList<>();
 
         File csvFile = new File(pathToCsv);
@@ -1011,8 +1028,8 @@ public static void generateAndCheckSeasonalityScenario(
             rows.sort(Comparator.comparingDouble(r -> r[1])); // sort by Order
 
             // ---- route includes depot at start and end ----
-            List<Integer> route = new ArrayList<>(rows.size() + 2);
-            route.add(0); // start at depot
+            IntRoute route = new IntRoute(rows.size() + 2);
+            route.addInt(0); // start at depot
 
             double serviceSum = 0.0;
             boolean hasNightStop = false;
@@ -1022,40 +1039,40 @@ public static void generateAndCheckSeasonalityScenario(
                 int night  = (int) r[2];
                 double serv = r[3];
 
-                route.add(stopId);
+                route.addInt(stopId);
                 serviceSum += serv;
                 if (night == 1) hasNightStop = true;
             }
 
-            route.add(0); // end at depot
+            route.addInt(0); // end at depot
 
             // ---- travel time includes depot legs (0->first and last->0) ----
             double travelSum = 0.0;
             if (hasNightStop) {
                 for (int i = 0; i < route.size() - 1; i++) {
-                int a = route.get(i);
-                int b = route.get(i + 1);
+                int a = route.getInt(i);
+                int b = route.getInt(i + 1);
 
-                if (a < 0 || a >= travelTimesNight.length || b < 0 || b >= travelTimesNight[a].length) {
+                if (a < 0 || a >= travelTimesNight.size() || b < 0 || b >= travelTimesNight.size()) {
                     throw new IllegalArgumentException(
                             "travelTimes index out of bounds for edge " + a + "->" + b +
                                     " in route=" + entry.getKey() + " file=" + csvFile.getName()
                         );
                     }
-                travelSum += travelTimesNight[a][b];
+                travelSum += travelTimesNight.get(a, b);
                 }
             } else {
                 for (int i = 0; i < route.size() - 1; i++) {
-                int a = route.get(i);
-                int b = route.get(i + 1);
+                int a = route.getInt(i);
+                int b = route.getInt(i + 1);
 
-                if (a < 0 || a >= travelTimesDay.length || b < 0 || b >= travelTimesDay[a].length) {
+                if (a < 0 || a >= travelTimesDay.size() || b < 0 || b >= travelTimesDay.size()) {
                     throw new IllegalArgumentException(
                             "travelTimes index out of bounds for edge " + a + "->" + b +
                                     " in route=" + entry.getKey() + " file=" + csvFile.getName()
                         );
                     }
-                travelSum += travelTimesDay[a][b];
+                travelSum += travelTimesDay.get(a, b);
                 }
             }
 
@@ -9,6 +9,9 @@ import core.*;
 public class PricingProblem implements RCESPP {
 
     private final PricingHeuristic heuristic;
+    // The RMP passes the same matrix every round, so it is converted only once
+    private double[][] convertedFrom;
+    private TravelTimeMatrix converted;
 
     public PricingProblem(PricingHeuristic heuristic) {
         this.heuristic = heuristic;
@@ -22,7 +25,7 @@ public class PricingProblem implements RCESPP {
             try {
                 newShifts = heuristic.generateShifts(
                     stops,
-                    travelTimes,
+                    travelTimeMatrix(travelTimes),
                     duals
       );
             } catch (IOException e) {
@@ -33,6 +36,14 @@ public class PricingProblem implements RCESPP {
         return newShifts;
     }
 
+    private TravelTimeMatrix travelTimeMatrix(double[][] travelTimes) {
+        if (travelTimes != convertedFrom) {
+            converted = TravelTimeMatrix.of(travelTimes);
+            convertedFrom = travelTimes;
+        }
+        return converted;
+    }
+
     // @Override
     // public List<Shift> getNewShifts(double[][] distances, List<Stop> stops, double[] duals, double maxDuration,
     //         double minDuration) {
@@ -74,7 +74,7 @@ public class RollingSpaceRCESPP implements RCESPP {
 
             // Map back to global IDs
             for (Shift s : pool) {
-                s.route = RouteMapper.mapBackRoute(s.route, ci.localToGlobal);
+                s.setRoute(RouteMapper.mapBackRoute(s.route, ci.localToGlobal));
                 s.recomputeTotalTime();
 
                 double rc = ReducedCost.computeShiftReducedCost(s, reducedCosts, duals[0]);
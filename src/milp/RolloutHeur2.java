@@ -41,6 +41,7 @@ public class RolloutHeur2 implements RCESPP {
 
         final int depot = 0; // stops.get(0)
         Random rng = new Random(seed);
+        double[] serviceTimes = HTMInstance.serviceTimes(stops);
 
         Set<String> seen = Collections.synchronizedSet(new HashSet<>());
 
@@ -50,7 +51,7 @@ public class RolloutHeur2 implements RCESPP {
                     // Each thread gets its own Random to avoid contention
                     Random threadRng = new Random(seed + r);
 
-                    RouteCandidate cand = rolloutSingle(distances, stops, duals, depot, maxDuration, minDuration, threadRng);
+                    RouteCandidate cand = rolloutSingle(distances, serviceTimes, duals, depot, maxDuration, minDuration, threadRng);
                     if (cand == null || cand.reducedCost >= -1e-6) return null;
                     // System.out.println("Reduced cost: " + cand.reducedCost);
 
@@ -120,14 +121,14 @@ public class RolloutHeur2 implements RCESPP {
 
     private RouteCandidate rolloutSingle(
             double[][] d,
-            List<Stop> stops,
+            double[] serviceTimes,
             double[] duals,
             int depot,
             double maxDuration,
             double minDuration,
             Random rng
     ) {
-        int n = stops.size();
+        int n = serviceTimes.length;
 
         List<Integer> partial = new ArrayList<>();
         partial.add(depot);
@@ -139,7 +140,6 @@ public class RolloutHeur2 implements RCESPP {
         double travel = 0.0;
         double service = 0.0;
 
-        Integer shiftNight = null;
         RouteCandidate bestFound = null;
 
         while (true) {
@@ -151,11 +151,11 @@ public class RolloutHeur2 implements RCESPP {
                 if (visited[j]) continue;
 
 
-                if (!feasibleToAdd(current, j, travel, service, d, stops, depot, maxDuration))
+                if (!feasibleToAdd(current, j, travel, service, d, serviceTimes, depot, maxDuration))
                     continue;
 
                 double dualJ = (j < duals.length) ? duals[j] : 0.0;
-                double score = d[current][j] + stops.get(j).serviceTime - dualJ;
+                double score = d[current][j] + serviceTimes[j] - dualJ;
 
                 candidates.add(new ScoredNode(j, score));
             }
@@ -183,7 +183,7 @@ public class RolloutHeur2 implements RCESPP {
                 startRoute.add(j);
 
                 double travel2 = travel + d[current][j];
-                double service2 = service + stops.get(j).serviceTime;
+                double service2 = service + serviceTimes[j];
 
                 RouteCandidate completed = greedyCompleteFrom(
                         startRoute,
@@ -192,7 +192,7 @@ public class RolloutHeur2 implements RCESPP {
                         travel2,
                         service2,
                         d,
-                        stops,
+                        serviceTimes,
                         duals,
                         depot,
                         maxDuration
@@ -234,11 +234,9 @@ public class RolloutHeur2 implements RCESPP {
             visited[chosenNext] = true;
 
             travel += d[current][chosenNext];
-            service += stops.get(chosenNext).serviceTime;
+            service += serviceTimes[chosenNext];
             current = chosenNext;
 
-            if (shiftNight == null)
-                shiftNight = stops.get(chosenNext).nightShift;
 
             double closeTravel = travel + d[current][depot];
             double closeService = service;
@@ -252,7 +250,7 @@ public class RolloutHeur2 implements RCESPP {
 
                 double rc = reducedCost(
                         closed,
-                        stops,
+                        serviceTimes,
                         d,
                         duals,
                         depot,
@@ -299,7 +297,7 @@ public class RolloutHeur2 implements RCESPP {
 
             double rc = reducedCost(
                     closed,
-                    stops,
+                    serviceTimes,
                     d,
                     duals,
                     depot,
@@ -327,12 +325,12 @@ public class RolloutHeur2 implements RCESPP {
             double travel,
             double service,
             double[][] d,
-            List<Stop> stops,
+            double[] serviceTimes,
             double[] duals,
             int depot,
             double maxDuration
     ) {
-        int n = stops.size();
+        int n = serviceTimes.length;
         List<Integer> route = new ArrayList<>(startRoute);
 
         while (true) {
@@ -342,10 +340,10 @@ public class RolloutHeur2 implements RCESPP {
                 if (visited[j]) continue;
                 //if (stops.get(j).nightShift != shiftNight) continue;
 
-                if (!feasibleToAdd(current, j, travel, service, d, stops, depot, maxDuration)) continue;
+                if (!feasibleToAdd(current, j, travel, service, d, serviceTimes, depot, maxDuration)) continue;
 
                 double dualJ = (j < duals.length) ? duals[j] : 0.0;
-                double score = d[current][j] + stops.get(j).serviceTime - dualJ;
+                double score = d[current][j] + serviceTimes[j] - dualJ;
                 candidates.add(new ScoredNode(j, score));
             }
 
@@ -360,7 +358,7 @@ public class RolloutHeur2 implements RCESPP {
             visited[chosen] = true;
 
             travel += d[current][chosen];
-            service += stops.get(chosen).serviceTime;
+            service += serviceTimes[chosen];
 
             current = chosen;
         }
@@ -373,7 +371,7 @@ public class RolloutHeur2 implements RCESPP {
         double totalTime = travel + service + FIXED_OVERHEAD;
         if (totalTime > maxDuration + 1e-9) return null;
 
-        double rc = reducedCost(route, stops, d, duals, depot, travel, service);
+        double rc = reducedCost(route, serviceTimes, d, duals, depot, travel, service);
         return new RouteCandidate(route, travel, service, rc);
     }
 
@@ -387,12 +385,12 @@ public class RolloutHeur2 implements RCESPP {
             double travel,
             double service,
             double[][] d,
-            List<Stop> stops,
+            double[] serviceTimes,
             int depot,
             double maxDuration
     ) {
         double newTravel = travel + d[current][next];
-        double newService = service + stops.get(next).serviceTime;
+        double newService = service + serviceTimes[next];
 
         // must still be able to return to depot
         double travelWithReturn = newTravel + d[next][depot];
@@ -407,7 +405,7 @@ public class RolloutHeur2 implements RCESPP {
      */
     private double reducedCost(
         List<Integer> routeIdx,
-        List<Stop> stops,
+        double[] serviceTimes,
         double[][] d,
         double[] duals,
         int depot,
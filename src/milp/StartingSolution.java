@@ -16,7 +16,7 @@ public class StartingSolution {
         String travelPath   = "src/core/travel_times_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "abri", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
         List<Integer> nightIdx = Utils.getAllowedIndices(instance, 1);
         List<Integer> dayIdx   = Utils.getAllowedIndices(instance, 0);
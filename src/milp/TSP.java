@@ -4,6 +4,7 @@ import com.gurobi.gurobi.*;
 import java.util.*;
 
 import core.Shift;
+import core.TravelTimeMatrix;
 import core.Utils;
 import core.HTMInstance;
 
@@ -209,7 +210,7 @@ public class TSP extends GRBCallback{
             }
             updatedRoute.add(0);
 
-            shift.route = updatedRoute;
+            shift.setRoute(updatedRoute);
             shift.travelTime = model.get(GRB.DoubleAttr.ObjVal);
             shift.recomputeTotalTime();
 
@@ -226,7 +227,7 @@ public class TSP extends GRBCallback{
         }
     }
 
-    public static void optimizeShift(Shift shift, double[][] distances, GRBEnv env, int flag) {
+    public static void optimizeShift(Shift shift, TravelTimeMatrix distances, GRBEnv env, int flag) {
 
         int n = shift.route.size() - 1;
 
@@ -242,7 +243,7 @@ public class TSP extends GRBCallback{
             for (int i = 0; i < n; i++) {
                 for (int j = 0; j < n; j++) {
                     
-                    double obj = distances[shift.route.get(i)][shift.route.get(j)];
+                    double obj = distances.get(shift.route.getInt(i), shift.route.getInt(j));
                     vars[i][j] = model.addVar(0.0, 1.0, obj, GRB.BINARY, ("x[" + i + "," + j + "]"));
 
                     if (j == i + 1) {
@@ -297,7 +298,7 @@ public class TSP extends GRBCallback{
 
             updatedRoute.add(0);
 
-            shift.route = updatedRoute;
+            shift.setRoute(updatedRoute);
             shift.travelTime = model.get(GRB.DoubleAttr.ObjVal);
             shift.recomputeTotalTime();
 
@@ -311,7 +312,21 @@ public class TSP extends GRBCallback{
 
     }
 
+    /** @deprecated Use {@link #optimizeAllShifts(List, TravelTimeMatrix, TravelTimeMatrix, HTMInstance)}. */
+    @Deprecated
     public static void optimizeAllShifts(List<Shift> shifts, double[][] travelTimesDay, double[][] travelTimesNight, HTMInstance instance) {
+        optimizeAllShifts(shifts, TravelTimeMatrix.of(travelTimesDay), TravelTimeMatrix.of(travelTimesNight), instance);
+    }
+
+    public static void optimizeAllShifts(List<Shift> shifts, TravelTimeMatrix travelTimesDay, TravelTimeMatrix travelTimesNight, HTMInstance instance) {
+        optimizeAllShifts(shifts, travelTimesDay, travelTimesNight, instance, 0);
+    }
+
+    /**
+     * @param threads number of threads Gurobi may use per model, 0 for its default (all cores); callers that
+     *                optimize shifts from several threads at once should bound it
+     */
+    public static void optimizeAllShifts(List<Shift> shifts, TravelTimeMatrix travelTimesDay, TravelTimeMatrix travelTimesNight, HTMInstance instance, int threads) {
         
         try {
 
@@ -323,6 +338,7 @@ public class TSP extends GRBCallback{
             GRBEnv env = new GRBEnv();
             env.set(GRB.IntParam.LogToConsole, flag);
             env.set(GRB.IntParam.OutputFlag, flag);
+            env.set(GRB.IntParam.Threads, threads);
 
             for (Shift shift : shifts) {
 
@@ -365,16 +381,13 @@ public class TSP extends GRBCallback{
         
         
         String instancePath = "src/core/data_all_feas_typeHalte.txt";
-        String travelPath   = "src/core/travel_times_collapsedv2.txt";
 
         String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
-
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         //ObjectiveFunction objectiveBalanced = Objective.balancedObj(0.05, 0.05);
         ObjectiveFunction objectiveBasic = Objective.totalLength();
@@ -0,0 +1,433 @@
+package neighborhoods;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.NeighborLists;
+import core.Shift;
+import core.StopPositions;
+import core.TravelTimeMatrix;
+import search.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * CROSS-exchange: swaps a segment of 1 up to maxSegmentLength consecutive stops of one shift with a segment of
+ * another shift, keeping the order of both segments. Segments of one stop give InterSwap. Tails of at most
+ * maxSegmentLength stops give the 2-opt* moves that exchange short tails; longer tails are left to
+ * Inter2OptStar.
+ *
+ * index1 and index2 are the first stops of the segments in route1 and route2 (route1 < route2), variant holds
+ * both segment lengths (see variant()). Every move is evaluated in constant time from the travel, service and
+ * night-stop prefix sums of the two shifts; a shift whose night status changes is evaluated on its new matrix.
+ * The neighborhood grows with the square of the segment length, so it is meant to be used with neighbor lists:
+ * then only the swaps that put one of the segments next to a neighbor of its end stop are generated, and they
+ * are found from the neighbor lists of the segment ends, O(n k maxSegmentLength^2) per scan.
+ */
+public class CrossExchange implements Neighborhood {
+    private static final double EPS = 1e-6;
+    private final int MAX_NIGHT_SHIFTS = 25;
+
+    public final double breakTime = 30.0;
+    public final double prepTime = 30.0;
+
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
+
+    private final int maxSegmentLength;
+
+    // Granular mode when set: only moves that create an arc to one of the k nearest neighbors of a segment end
+    private final NeighborLists neighbors;
+
+    public CrossExchange(NeighborLists neighbors) {
+        this(3, neighbors);
+    }
+
+    /**
+     * @param neighbors neighbor lists for granular generation, or null to generate all swaps of segments
+     */
+    public CrossExchange(int maxSegmentLength, NeighborLists neighbors) {
+        if (maxSegmentLength < 1) {
+            throw new IllegalArgumentException("Maximum segment length must be positive, got " + maxSegmentLength);
+        }
+        this.maxSegmentLength = maxSegmentLength;
+        this.neighbors = neighbors;
+    }
+
+    // Move.variant of swapping a segment of length1 stops of route1 with one of length2 stops of route2
+    static int variant(int length1, int length2) {
+        return (length1 << 8) | length2;
+    }
+
+    static int length1(Move move) {
+        return move.variant >> 8;
+    }
+
+    static int length2(Move move) {
+        return move.variant & 0xFF;
+    }
+
+    @Override
+    public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
+        List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, 0, Move.MoveType.CROSS_EXCHANGE);
+        int numNightShifts = context.numNightShifts;
+
+        if (numNightShifts > MAX_NIGHT_SHIFTS) {
+            return true;
+        }
+        if (neighbors != null) {
+            return forEachGranularMove(shifts, compatibility, instance, fromRoute, toRoute, visitor);
+        }
+
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
+            for (int r2 = r1 + 1; r2 < shifts.size(); r2++) {
+                if (context.skipPair(r1, r2)) continue;
+
+                Shift s1 = shifts.get(r1);
+                Shift s2 = shifts.get(r2);
+                int n1 = s1.route.size();
+                int n2 = s2.route.size();
+
+                for (int i = 1; i < n1 - 1; i++) {
+                    for (int length1 = 1; length1 <= maxSegmentLength && i + length1 < n1; length1++) {
+                        for (int j = 1; j < n2 - 1; j++) {
+                            for (int length2 = 1; length2 <= maxSegmentLength && j + length2 < n2; length2++) {
+                                if (!generates(s1, s2, i, length1, j, length2, compatibility, instance, numNightShifts)) continue;
+                                if (!visitor.visit(cursor.set(r1, r2, i, j, variant(length1, length2)))) return false;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The moves of forEachMove in granular mode, from the four new arcs that can connect a segment end to one of
+     * its neighbors, in this order: the first and the last stop of segment 1 next to a neighbor in s2 (from the
+     * neighbor lists of the stops of s1), then the first and the last stop of segment 2 next to a neighbor in s1
+     * (from the stops of s2 that have a stop of s1 as a neighbor). Each arc fixes one end of both segments, the
+     * lengths are enumerated. A swap is generated by the first arc that applies to it.
+     */
+    private boolean forEachGranularMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, 0, Move.MoveType.CROSS_EXCHANGE);
+        StopPositions positions = context.positions();
+        int types = neighbors.sameForDayAndNight() ? 1 : 2;
+
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
+            Shift s1 = shifts.get(r1);
+            IntRoute ids1 = s1.route;
+
+            // Arcs 0 and 1: stop p of s1 becomes the first (after v) or the last (before v) stop of segment 1
+            for (int p = 1; p < ids1.size() - 1; p++) {
+                int u = ids1.getInt(p);
+
+                for (int t = 0; t < types; t++) {
+                    for (int rank = 0; rank < neighbors.k(); rank++) {
+                        int v = neighbors.neighbor(t, u, rank);
+                        int r2 = positions.shift(v);
+                        if (r2 <= r1) continue;
+
+                        Shift s2 = shifts.get(r2);
+                        // Only the lists of s2's type count for these arcs, as in generates
+                        if (types == 2 && (s2.nightShift == 1 ? 1 : 0) != t) continue;
+                        if (context.skipPair(r1, r2)) continue;
+
+                        int q = positions.position(v);
+                        if (!visitLengths(cursor, r1, r2, s1, s2, p, q + 1, false, 0, compatibility, instance, visitor)) return false;
+                        if (!visitLengths(cursor, r1, r2, s1, s2, p, q - 1, true, 1, compatibility, instance, visitor)) return false;
+                    }
+                }
+            }
+
+            // Arcs 2 and 3: stop w of s2 becomes the first (after x) or the last (before x) stop of segment 2
+            for (int p = 1; p < ids1.size() - 1; p++) {
+                int x = ids1.getInt(p);
+
+                for (int idx = 0; idx < neighbors.numNeighborOf(s1.nightShift, x); idx++) {
+                    int w = neighbors.neighborOf(s1.nightShift, x, idx);
+                    int r2 = positions.shift(w);
+                    if (r2 <= r1) continue;
+                    if (context.skipPair(r1, r2)) continue;
+
+                    Shift s2 = shifts.get(r2);
+                    int q = positions.position(w);
+                    if (!visitLengths(cursor, r1, r2, s1, s2, p + 1, q, false, 2, compatibility, instance, visitor)) return false;
+                    if (!visitLengths(cursor, r1, r2, s1, s2, p - 1, q, true, 3, compatibility, instance, visitor)) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits the swaps whose segments start (or, if fromEnds, end) at position1 of s1 and position2 of s2, for
+     * all segment lengths, skipping those that an arc before the given one generates.
+     */
+    private boolean visitLengths(Move cursor, int r1, int r2, Shift s1, Shift s2, int position1, int position2, boolean fromEnds,
+                                 int arc, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        int n1 = s1.route.size();
+        int n2 = s2.route.size();
+        int numNightShifts = context.numNightShifts;
+
+        for (int length1 = 1; length1 <= maxSegmentLength; length1++) {
+            int i = fromEnds ? position1 - length1 + 1 : position1;
+            int last1 = i + length1 - 1;
+            if (i < 1 || last1 > n1 - 2) break;
+
+            for (int length2 = 1; length2 <= maxSegmentLength; length2++) {
+                int j = fromEnds ? position2 - length2 + 1 : position2;
+                int last2 = j + length2 - 1;
+                if (j < 1 || last2 > n2 - 2) break;
+
+                boolean earlier = false;
+                for (int a = 0; a < arc && !earlier; a++) {
+                    earlier = createsNeighborArc(a, s1, s2, i, last1, j, last2);
+                }
+                if (earlier) continue;
+                if (!generates(s1, s2, i, length1, j, length2, compatibility, instance, numNightShifts)) continue;
+                if (!visitor.visit(cursor.set(r1, r2, i, j, variant(length1, length2)))) return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether the given new arc of the swap (numbered as in forEachGranularMove) connects a segment end to one of its neighbors
+    private boolean createsNeighborArc(int arc, Shift s1, Shift s2, int i, int last1, int j, int last2) {
+        IntRoute ids1 = s1.route;
+        IntRoute ids2 = s2.route;
+        switch (arc) {
+            case 0:
+                return neighbors.isNeighbor(s2.nightShift, ids1.getInt(i), ids2.getInt(j - 1));
+            case 1:
+                return neighbors.isNeighbor(s2.nightShift, ids1.getInt(last1), ids2.getInt(last2 + 1));
+            case 2:
+                return neighbors.isNeighbor(s1.nightShift, ids2.getInt(j), ids1.getInt(i - 1));
+            default:
+                return neighbors.isNeighbor(s1.nightShift, ids2.getInt(last2), ids1.getInt(last1 + 1));
+        }
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        int m = shifts.size();
+        if (m < 2 || context.numNightShifts > MAX_NIGHT_SHIFTS) return null;
+
+        // forEachMove only generates the pairs with r1 < r2
+        int a = rnd.nextInt(m);
+        int b = rnd.nextInt(m - 1);
+        if (b >= a) b++;
+        int r1 = Math.min(a, b);
+        int r2 = Math.max(a, b);
+
+        Shift s1 = shifts.get(r1);
+        Shift s2 = shifts.get(r2);
+        int n1 = s1.route.size();
+        int n2 = s2.route.size();
+        if (n1 < 3 || n2 < 3) return null;
+
+        int i = 1 + rnd.nextInt(n1 - 2);
+        int j = 1 + rnd.nextInt(n2 - 2);
+        int length1 = 1 + rnd.nextInt(maxSegmentLength);
+        int length2 = 1 + rnd.nextInt(maxSegmentLength);
+        if (i + length1 >= n1 || j + length2 >= n2) return null;
+        if (!generates(s1, s2, i, length1, j, length2, compatibility, instance, context.numNightShifts)) return null;
+
+        return new Move(r1, r2, i, j, variant(length1, length2), Move.MoveType.CROSS_EXCHANGE);
+    }
+
+    // Whether forEachMove generates the swap: granular mode and the night-shift rules of Inter2OptStar
+    private boolean generates(Shift s1, Shift s2, int i, int length1, int j, int length2,
+                              RouteCompatibility compatibility, HTMInstance instance, int numNightShifts) {
+        IntRoute ids1 = s1.route;
+        IntRoute ids2 = s2.route;
+        int last1 = i + length1 - 1;
+        int last2 = j + length2 - 1;
+
+        if (neighbors != null) {
+            // Granular: one of the four new arcs must connect a segment end to one of its neighbors
+            if (!neighbors.isNeighbor(s1.nightShift, ids2.getInt(j), ids1.getInt(i - 1))
+                    && !neighbors.isNeighbor(s1.nightShift, ids2.getInt(last2), ids1.getInt(last1 + 1))
+                    && !neighbors.isNeighbor(s2.nightShift, ids1.getInt(i), ids2.getInt(j - 1))
+                    && !neighbors.isNeighbor(s2.nightShift, ids1.getInt(last1), ids2.getInt(last2 + 1))) {
+                return false;
+            }
+        }
+
+        if (compatibility.compatible(s1, s2) || numNightShifts < MAX_NIGHT_SHIFTS) {
+            return true;
+        }
+
+        if (s1.nightShift != 1 && s2.nightStopsBetween(j, last2, instance) > 0) {
+            return false;
+        }
+
+        if (s2.nightShift != 1 && s1.nightStopsBetween(i, last1, instance) > 0) {
+            return false;
+        }
+        return true;
+    }
+
+    // The moves between two shifts and their new lengths only depend on these two shifts
+    @Override
+    public boolean cacheableByRoutePair() {
+        return true;
+    }
+
+    @Override
+    public Evaluation evaluateMove(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimes,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
+    ) {
+        return evaluate(move, shifts, instance, travelTimes, travelTimes, maxShiftDuration, objectiveFunction, result);
+    }
+
+    @Override
+    public Evaluation evaluateMoveDiffTimes(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
+    ) {
+        return evaluate(move, shifts, instance, travelTimesNight, travelTimesDay, maxShiftDuration, objectiveFunction, result);
+    }
+
+    // With a single matrix, pass it as both the night and the day matrix
+    private Evaluation evaluate(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
+    ) {
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
+
+        Shift s1 = shifts.get(move.route1);
+        Shift s2 = shifts.get(move.route2);
+        int i = move.index1;
+        int j = move.index2;
+        int last1 = i + length1(move) - 1;
+        int last2 = j + length2(move) - 1;
+
+        int night1 = s1.nightStopsBetween(i, last1, instance);
+        int night2 = s2.nightStopsBetween(j, last2, instance);
+        TravelTimeMatrix times1 = (s1.nightStops(instance) - night1 + night2 > 0) ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix times2 = (s2.nightStops(instance) - night2 + night1 > 0) ? travelTimesNight : travelTimesDay;
+
+        double service1 = s1.serviceBetween(i, last1);
+        double service2 = s2.serviceBetween(j, last2);
+        double newC1 = s1.serviceTime - service1 + service2;
+        double newC2 = s2.serviceTime - service2 + service1;
+        double newL1 = swappedTravel(s1, i, last1, s2, j, last2, instance, times1) + newC1 + breakTime + prepTime;
+        double newL2 = swappedTravel(s2, j, last2, s1, i, last1, instance, times2) + newC2 + breakTime + prepTime;
+
+        if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
+            return Evaluation.INFEASIBLE;
+        }
+
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
+
+        double improvement = -objectiveDelta;
+        if (Math.abs(improvement) < EPS) improvement = 0.0;
+
+        return result.set(improvement, newL1, newC1, newL2, newC2);
+    }
+
+    // Travel time of the route of target with positions from..to replaced by positions otherFrom..otherTo of other
+    private double swappedTravel(Shift target, int from, int to, Shift other, int otherFrom, int otherTo,
+                                 HTMInstance instance, TravelTimeMatrix travelTimes) {
+        target.ensurePrefixSums(travelTimes, instance);
+        other.ensurePrefixSums(travelTimes, instance);
+        IntRoute ids = target.route;
+        IntRoute seg = other.route;
+        int end = ids.size() - 1;
+
+        return travelTimes.get(0, ids.getInt(0))
+                + target.travelBetween(travelTimes, 0, from - 1)
+                + travelTimes.get(ids.getInt(from - 1), seg.getInt(otherFrom))
+                + other.travelBetween(travelTimes, otherFrom, otherTo)
+                + travelTimes.get(seg.getInt(otherTo), ids.getInt(to + 1))
+                + target.travelBetween(travelTimes, to + 1, end)
+                + travelTimes.get(ids.getInt(end), 0);
+    }
+
+    @Override
+    public MoveResult applyMove(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
+
+        Shift s1 = newShifts.get(move.route1);
+        Shift s2 = newShifts.get(move.route2);
+        int i = move.index1;
+        int j = move.index2;
+
+        int[] segment1 = new int[length1(move)];
+        for (int k = 0; k < segment1.length; k++) {
+            segment1[k] = s1.removeStopAt(i, instance);
+        }
+        int[] segment2 = new int[length2(move)];
+        for (int k = 0; k < segment2.length; k++) {
+            segment2[k] = s2.removeStopAt(j, instance);
+        }
+        for (int k = 0; k < segment2.length; k++) {
+            s1.insertStop(i + k, segment2[k], instance);
+        }
+        for (int k = 0; k < segment1.length; k++) {
+            s2.insertStop(j + k, segment1[k], instance);
+        }
+
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
+
+        return result;
+    }
+}
@@ -1,12 +1,16 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
+import core.NeighborLists;
 import core.Shift;
-import core.Utils;
+import core.StopPositions;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class Inter2OptStar implements Neighborhood {
 
@@ -16,58 +20,196 @@ public class Inter2OptStar implements Neighborhood {
     public final double breakTime = 30.0;
     public final double prepTime = 30.0;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
+
+    // Granular mode when set: only moves that place a new arc between a stop and one of its k nearest neighbors
+    private final NeighborLists neighbors;
+
+    public Inter2OptStar() {
+        this(null);
+    }
+
+    public Inter2OptStar(NeighborLists neighbors) {
+        this.neighbors = neighbors;
+    }
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        calculateGlobalSums(shifts);
         List<Move> moves = new ArrayList<>();
-        int numNightShifts = Utils.countNightShifts(shifts);
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_2OPT_STAR);
+        int numNightShifts = context.numNightShifts;
 
         if (numNightShifts > MAX_NIGHT_SHIFTS) {
-            System.out.println("Too many night shifts: " + numNightShifts);
-            return moves;
+            return true;
+        }
+        if (neighbors != null) {
+            return forEachGranularMove(shifts, compatibility, instance, fromRoute, toRoute, visitor);
         }
 
-        for (int r1 = 0; r1 < shifts.size(); r1++) {
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
             for (int r2 = r1 + 1; r2 < shifts.size(); r2++) {
                 if (r1 == r2) continue;
+                if (context.skipPair(r1, r2)) continue;
                 Shift s1 = shifts.get(r1);
                 Shift s2 = shifts.get(r2);
 
 
-                List<Integer> ids1 = shifts.get(r1).route;
-                List<Integer> ids2 = shifts.get(r2).route;
+                IntRoute ids1 = shifts.get(r1).route;
+                IntRoute ids2 = shifts.get(r2).route;
 
                 if (ids1.size() < 2 || ids2.size() < 2) continue;
 
                 for (int i = 1; i < ids1.size() - 1; i++) {
                     for (int j = 1; j < ids2.size() - 1; j++) {
+                        if (!generates(s1, s2, i, j, compatibility, instance, numNightShifts)) continue;
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                    }
+                }
 
-                        if (compatibility.compatible(s1, s2) || numNightShifts < MAX_NIGHT_SHIFTS) {
-                            moves.add(new Move(r1, r2, i, j, Move.MoveType.INTER_2OPT_STAR));
-                            continue;
-                        }
+            }
+        }
+        return true;
+    }
 
-                        if (Utils.containsNightStop(s2.route.subList(j + 1, s2.route.size()), instance) && s1.nightShift != 1) {
-                            continue;
-                        }
+    /**
+     * The moves of forEachMove in granular mode, O(k) per stop of r1: first the exchanges whose new arc
+     * (i, j + 1) goes from stop i of s1 to one of its neighbors, then those whose new arc (j, i + 1) goes from
+     * a stop of s2 to a stop of s1 it has as a neighbor, unless the first arc already generated them.
+     */
+    private boolean forEachGranularMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_2OPT_STAR);
+        int numNightShifts = context.numNightShifts;
+        StopPositions positions = context.positions();
+        int types = neighbors.sameForDayAndNight() ? 1 : 2;
+
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
+            Shift s1 = shifts.get(r1);
+            IntRoute ids1 = s1.route;
+
+            for (int i = 1; i < ids1.size() - 1; i++) {
+                int u = ids1.getInt(i);
+
+                for (int rank = 0; rank < neighbors.k(); rank++) {
+                    int v = neighbors.neighbor(s1.nightShift, u, rank);
+                    int r2 = positions.shift(v);
+                    if (r2 <= r1) continue;
+                    if (context.skipPair(r1, r2)) continue;
+
+                    Shift s2 = shifts.get(r2);
+                    int j = positions.position(v) - 1;
+                    if (j >= 1 && generates(s1, s2, i, j, compatibility, instance, numNightShifts)) {
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                    }
+                }
+            }
 
-                        if (Utils.containsNightStop(s1.route.subList(i + 1, s1.route.size()), instance) && s2.nightShift != 1) {
-                            continue;
-                        }
+            for (int i = 1; i < ids1.size() - 2; i++) {
+                int x = ids1.getInt(i + 1);
+
+                for (int t = 0; t < types; t++) {
+                    for (int idx = 0; idx < neighbors.numNeighborOf(t, x); idx++) {
+                        int w = neighbors.neighborOf(t, x, idx);
+                        int r2 = positions.shift(w);
+                        if (r2 <= r1) continue;
+
+                        Shift s2 = shifts.get(r2);
+                        // Only the lists of s2's type count for the arc leaving s2, as in generates
+                        if (types == 2 && (s2.nightShift == 1 ? 1 : 0) != t) continue;
+                        if (context.skipPair(r1, r2)) continue;
 
-                        moves.add(new Move(r1, r2, i, j, Move.MoveType.INTER_2OPT_STAR));
+                        int j = positions.position(w);
+                        if (!neighbors.isNeighbor(s1.nightShift, ids1.getInt(i), s2.route.getInt(j + 1))
+                                && generates(s1, s2, i, j, compatibility, instance, numNightShifts)) {
+                            if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                        }
                     }
                 }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        int m = shifts.size();
+        if (m < 2 || context.numNightShifts > MAX_NIGHT_SHIFTS) return null;
+
+        // forEachMove only generates the pairs with r1 < r2
+        int a = rnd.nextInt(m);
+        int b = rnd.nextInt(m - 1);
+        if (b >= a) b++;
+        int r1 = Math.min(a, b);
+        int r2 = Math.max(a, b);
+
+        Shift s1 = shifts.get(r1);
+        Shift s2 = shifts.get(r2);
+        if (s1.route.size() < 3 || s2.route.size() < 3) return null;
+
+        int i = 1 + rnd.nextInt(s1.route.size() - 2);
+        int j = 1 + rnd.nextInt(s2.route.size() - 2);
+        if (!generates(s1, s2, i, j, compatibility, instance, context.numNightShifts)) return null;
+
+        return new Move(r1, r2, i, j, Move.MoveType.INTER_2OPT_STAR);
+    }
+
+    // Whether forEachMove generates exchanging the tails after i in s1 and after j in s2: granular mode and the night rules
+    private boolean generates(Shift s1, Shift s2, int i, int j, RouteCompatibility compatibility, HTMInstance instance, int numNightShifts) {
+        IntRoute ids1 = s1.route;
+        IntRoute ids2 = s2.route;
 
+        if (neighbors != null) {
+            // Granular: one of the two new arcs must connect a stop to one of its neighbors
+            if (!neighbors.isNeighbor(s1.nightShift, ids1.getInt(i), ids2.getInt(j + 1))
+                    && !neighbors.isNeighbor(s2.nightShift, ids2.getInt(j), ids1.getInt(i + 1))) {
+                return false;
             }
         }
-        return moves;
+
+        if (compatibility.compatible(s1, s2) || numNightShifts < MAX_NIGHT_SHIFTS) {
+            return true;
+        }
+
+        if (s1.nightShift != 1 && s2.nightStopsBetween(j + 1, ids2.size() - 1, instance) > 0) {
+            return false;
+        }
+
+        if (s2.nightShift != 1 && s1.nightStopsBetween(i + 1, ids1.size() - 1, instance) > 0) {
+            return false;
+        }
+        return true;
+    }
+
+    // The moves between two shifts and their new lengths only depend on these two shifts
+    @Override
+    public boolean cacheableByRoutePair() {
+        return true;
     }
 
     @Override
@@ -75,67 +217,45 @@ public class Inter2OptStar implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        List<Integer> r1 = s1.route;
-        List<Integer> r2 = s2.route;
+        IntRoute r1 = s1.route;
+        IntRoute r2 = s2.route;
 
         int i = move.index1;
         int j = move.index2;
 
-        // Build hypothetical new routes (same logic as applyMove)
-        List<Integer> newR1 = new ArrayList<>();
-        newR1.addAll(r1.subList(0, i + 1));
-        newR1.addAll(r2.subList(j + 1, r2.size()));
-
-        List<Integer> newR2 = new ArrayList<>();
-        newR2.addAll(r2.subList(0, j + 1));
-        newR2.addAll(r1.subList(i + 1, r1.size()));
+        // Hypothetical new routes (same logic as applyMove), evaluated without building them:
+        // new route 1 = r1[0..i] + r2[j+1..], new route 2 = r2[0..j] + r1[i+1..]
+        double travel1 = joinedTravel(s1, i, s2, j + 1, instance, travelTimes);
+        double travel2 = joinedTravel(s2, j, s1, i + 1, instance, travelTimes);
 
-        double[] new1 = computeRouteDuration(newR1, instance, travelTimes);
-        double[] new2 = computeRouteDuration(newR2, instance, travelTimes);
+        double newC1 = joinedService(s1, i, s2, j + 1);
+        double newC2 = joinedService(s2, j, s1, i + 1);
 
-        double newL1 = new1[0];
-        double newL2 = new2[0];
+        double newL1 = travel1 + newC1 + breakTime + prepTime;
+        double newL2 = travel2 + newC2 + breakTime + prepTime;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double newC1 = new1[1];
-        double newC2 = new2[1];
-
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement, newL1, newC1, newL2, newC2);
     }
 
     @Override
@@ -143,14 +263,13 @@ public class Inter2OptStar implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         int s1Night = s1.nightShift;
@@ -158,67 +277,50 @@ public class Inter2OptStar implements Neighborhood {
         Shift s2 = shifts.get(move.route2);
         int s2Night = s2.nightShift;
 
-        List<Integer> r1 = s1.route;
-        List<Integer> r2 = s2.route;
+        IntRoute r1 = s1.route;
+        IntRoute r2 = s2.route;
 
         int i = move.index1;
         int j = move.index2;
 
-        // Build hypothetical new routes (same logic as applyMove)
-        List<Integer> newR1 = new ArrayList<>();
-        newR1.addAll(r1.subList(0, i + 1));
-        newR1.addAll(r2.subList(j + 1, r2.size()));
+        // Hypothetical new routes (same logic as applyMove), evaluated without building them:
+        // new route 1 = r1[0..i] + r2[j+1..], new route 2 = r2[0..j] + r1[i+1..]
+        TravelTimeMatrix times1 = (s1Night == 1) ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix times2 = (s2Night == 1) ? travelTimesNight : travelTimesDay;
 
-        List<Integer> newR2 = new ArrayList<>();
-        newR2.addAll(r2.subList(0, j + 1));
-        newR2.addAll(r1.subList(i + 1, r1.size()));
+        double travel1 = joinedTravel(s1, i, s2, j + 1, instance, times1);
+        double travel2 = joinedTravel(s2, j, s1, i + 1, instance, times2);
 
-        double[] new1 = computeRouteDurationDiffTimes(newR1, instance, travelTimesNight, travelTimesDay, s1Night);
-        double[] new2 = computeRouteDurationDiffTimes(newR2, instance, travelTimesNight, travelTimesDay, s2Night);
+        double newC1 = joinedService(s1, i, s2, j + 1);
+        double newC2 = joinedService(s2, j, s1, i + 1);
 
-        double newL1 = new1[0];
-        double newL2 = new2[0];
+        double newL1 = travel1 + newC1 + breakTime + prepTime;
+        double newL2 = travel2 + newC2 + breakTime + prepTime;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double newC1 = new1[1];
-        double newC2 = new2[1];
-
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement, newL1, newC1, newL2, newC2);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
 
         Shift s1 = shifts.get(move.route1);
         int s1Night = s1.nightShift;
@@ -226,147 +328,58 @@ public class Inter2OptStar implements Neighborhood {
         Shift s2 = shifts.get(move.route2);
         int s2Night = s2.nightShift;
 
-        List<Integer> r1 = s1.route;
-        List<Integer> r2 = s2.route;
-
         int i = move.index1;
         int j = move.index2;
 
-        // Build new routes
-        List<Integer> newR1 = new ArrayList<>();
-        newR1.addAll(r1.subList(0, i + 1));
-        newR1.addAll(r2.subList(j + 1, r2.size()));
-
-        List<Integer> newR2 = new ArrayList<>();
-        newR2.addAll(r2.subList(0, j + 1));
-        newR2.addAll(r1.subList(i + 1, r1.size()));
+        TravelTimeMatrix times1 = (s1Night == 1) ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix times2 = (s2Night == 1) ? travelTimesNight : travelTimesDay;
 
-        s1.route = newR1;
-        s2.route = newR2;
+        // Durations of the new routes, computed before the tails are exchanged
+        double travel1 = joinedTravel(s1, i, s2, j + 1, instance, times1);
+        double travel2 = joinedTravel(s2, j, s1, i + 1, instance, times2);
+        double newC1 = joinedService(s1, i, s2, j + 1);
+        double newC2 = joinedService(s2, j, s1, i + 1);
+        double newL1 = travel1 + newC1 + breakTime + prepTime;
+        double newL2 = travel2 + newC2 + breakTime + prepTime;
 
-        double[] d1 = computeRouteDurationDiffTimes(newR1, instance, travelTimesNight, travelTimesDay, s1Night);
-        double[] d2 = computeRouteDurationDiffTimes(newR2, instance, travelTimesNight, travelTimesDay, s2Night);
+        // New routes: r1[0..i] + r2[j+1..] and r2[0..j] + r1[i+1..]
+        Shift.swapTails(s1, i + 1, s2, j + 1, instance);
 
-        s1.totalTime = d1[0];
-        s1.serviceTime = d1[1];
+        s1.totalTime = newL1;
+        s1.serviceTime = newC1;
 
-        s2.totalTime = d2[0];
-        s2.serviceTime = d2[1];
+        s2.totalTime = newL2;
+        s2.serviceTime = newC2;
 
-        s1.nightShift = Utils.containsNightStop(newR1, instance) ? 1 : 0;
-        s2.nightShift = Utils.containsNightStop(newR2, instance) ? 1 : 0;
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
 
-        return newShifts;
+        return result;
     }
 
 
-    private double[] computeRouteDuration(
-            List<Integer> route,
-            HTMInstance instance,
-            double[][] travelTimes
-    ) {
-        double t = 0;
-
-        // Depot → first
-        t += travelTimes[0][route.get(0)];
-
-        // Internal arcs
-        for (int i = 0; i < route.size() - 1; i++)
-            t += travelTimes[route.get(i)][route.get(i + 1)];
-
-        // Last → depot
-        t += travelTimes[route.get(route.size() - 1)][0];
-
-        // Service times
-        double s = 0;
-        for (int id : route) {
-            t += instance.getStops().get(id).serviceTime;
-            s += instance.getStops().get(id).serviceTime;
-        }
+    /**
+     * Travel time of the route head[0..headEnd] + tail[tailStart..], including the depot arcs.
+     * Constant time using the prefix sums of both shifts (computed once per route version and matrix).
+     */
+    private double joinedTravel(Shift head, int headEnd, Shift tail, int tailStart, HTMInstance instance, TravelTimeMatrix travelTimes) {
+        head.ensurePrefixSums(travelTimes, instance);
+        tail.ensurePrefixSums(travelTimes, instance);
 
+        IntRoute h = head.route;
+        IntRoute r = tail.route;
+        int tailEnd = r.size() - 1;
 
-        // Add break and prep time
-        t = t + breakTime + prepTime;
-
-        return new double[]{t, s};
-    }
-
-    private double[] computeRouteDurationDiffTimes(
-            List<Integer> route,
-            HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
-            int nightShift
-    ) {
-        double t = 0;
-        
-        if (nightShift == 1) {
-            // Depot → first
-        t += travelTimesNight[0][route.get(0)];
-
-        // Internal arcs
-        for (int i = 0; i < route.size() - 1; i++)
-            t += travelTimesNight[route.get(i)][route.get(i + 1)];
-
-        // Last → depot
-        t += travelTimesNight[route.get(route.size() - 1)][0];
-
-        // Service times
-        double s = 0;
-        for (int id : route) {
-            t += instance.getStops().get(id).serviceTime;
-            s += instance.getStops().get(id).serviceTime;
-        }
-
-
-        // Add break and prep time
-        t = t + breakTime + prepTime;
-
-        return new double[]{t, s};
-        }
-
-        // Depot → first
-        t += travelTimesDay[0][route.get(0)];
-
-        // Internal arcs
-        for (int i = 0; i < route.size() - 1; i++)
-            t += travelTimesDay[route.get(i)][route.get(i + 1)];
-
-        // Last → depot
-        t += travelTimesDay[route.get(route.size() - 1)][0];
-
-        // Service times
-        double s = 0;
-        for (int id : route) {
-            t += instance.getStops().get(id).serviceTime;
-            s += instance.getStops().get(id).serviceTime;
-        }
-
-
-        // Add break and prep time
-        t = t + breakTime + prepTime;
-
-        return new double[]{t, s};
+        return travelTimes.get(0, h.getInt(0))
+                + head.travelBetween(travelTimes, 0, headEnd)
+                + travelTimes.get(h.getInt(headEnd), r.getInt(tailStart))
+                + tail.travelBetween(travelTimes, tailStart, tailEnd)
+                + travelTimes.get(r.getInt(tailEnd), 0);
     }
 
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
-
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+    // Service time of the route head[0..headEnd] + tail[tailStart..], call after joinedTravel
+    private double joinedService(Shift head, int headEnd, Shift tail, int tailStart) {
+        return head.serviceBetween(0, headEnd) + tail.serviceBetween(tailStart, tail.route.size() - 1);
     }
 
     
@@ -1,8 +1,9 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
 import core.Shift;
-import core.Utils;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
@@ -16,14 +17,11 @@ public class Inter2OptStarInfeas implements Neighborhood {
     public final double breakTime = 30.0;
     public final double prepTime = 30.0;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
     private final double maxDuration;
     private final double maxOvertime;
     private final double penalty;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
 
     public Inter2OptStarInfeas(double maxDuration, double maxOvertime, double penalty) {
         this.penalty = penalty;
@@ -33,11 +31,37 @@ public class Inter2OptStarInfeas implements Neighborhood {
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        
-        calculateGlobalSums(shifts);
         List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_2OPT_STAR);
 
-        int numNightShifts = Utils.countNightShifts(shifts);
+        int numNightShifts = context.numNightShifts;
         int numShifts = shifts.size();
         int numViolated = 0;
         boolean[] violated = new boolean[numShifts];
@@ -50,18 +74,17 @@ public class Inter2OptStarInfeas implements Neighborhood {
         }
 
         if (numViolated == 0) {
-            return moves;
+            return true;
         }
 
         if (numNightShifts > MAX_NIGHT_SHIFTS) {
-            System.out.println("Too many night shifts: " + numNightShifts);
-            return moves;
+            return true;
         }
         
         // System.out.println("Using inter2opt");
         // System.out.println("number of shifts: " + numShifts + " violated: " + numViolated);
 
-        for (int r1 = 0; r1 < shifts.size(); r1++) {
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
             for (int r2 = r1 + 1; r2 < shifts.size(); r2++) {
                 if (r1 == r2) continue;
                 
@@ -69,12 +92,14 @@ public class Inter2OptStarInfeas implements Neighborhood {
                     continue;
                 }
 
+                if (context.skipPair(r1, r2)) continue;
+
                 Shift s1 = shifts.get(r1);
                 Shift s2 = shifts.get(r2);
 
 
-                List<Integer> ids1 = shifts.get(r1).route;
-                List<Integer> ids2 = shifts.get(r2).route;
+                IntRoute ids1 = shifts.get(r1).route;
+                IntRoute ids2 = shifts.get(r2).route;
 
                 if (ids1.size() < 2 || ids2.size() < 2) continue;
 
@@ -82,26 +107,26 @@ public class Inter2OptStarInfeas implements Neighborhood {
                     for (int j = 1; j < ids2.size() - 1; j++) {
 
                         if (compatibility.compatible(s1, s2) || numNightShifts < MAX_NIGHT_SHIFTS) {
-                            moves.add(new Move(r1, r2, i, j, Move.MoveType.INTER_2OPT_STAR));
+                            if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
                             continue;
                         }
 
-                        if (Utils.containsNightStop(s2.route.subList(j + 1, s2.route.size()), instance) && s1.nightShift != 1) {
+                        if (s1.nightShift != 1 && s2.nightStopsBetween(j + 1, ids2.size() - 1, instance) > 0) {
                             continue;
                         }
 
-                        if (Utils.containsNightStop(s1.route.subList(i + 1, s1.route.size()), instance) && s2.nightShift != 1) {
+                        if (s2.nightShift != 1 && s1.nightStopsBetween(i + 1, ids1.size() - 1, instance) > 0) {
                             continue;
                         }
 
-                        moves.add(new Move(r1, r2, i, j, Move.MoveType.INTER_2OPT_STAR));
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
                         
                     }
                 }
 
             }
         }
-        return moves;
+        return true;
     }
 
     @Override
@@ -109,67 +134,45 @@ public class Inter2OptStarInfeas implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        List<Integer> r1 = s1.route;
-        List<Integer> r2 = s2.route;
+        IntRoute r1 = s1.route;
+        IntRoute r2 = s2.route;
 
         int i = move.index1;
         int j = move.index2;
 
-        // Build hypothetical new routes (same logic as applyMove)
-        List<Integer> newR1 = new ArrayList<>();
-        newR1.addAll(r1.subList(0, i + 1));
-        newR1.addAll(r2.subList(j + 1, r2.size()));
+        // Hypothetical new routes (same logic as applyMove), evaluated without building them:
+        // new route 1 = r1[0..i] + r2[j+1..], new route 2 = r2[0..j] + r1[i+1..]
+        double travel1 = joinedTravel(s1, i, s2, j + 1, instance, travelTimes);
+        double travel2 = joinedTravel(s2, j, s1, i + 1, instance, travelTimes);
 
-        List<Integer> newR2 = new ArrayList<>();
-        newR2.addAll(r2.subList(0, j + 1));
-        newR2.addAll(r1.subList(i + 1, r1.size()));
+        double newC1 = joinedService(s1, i, s2, j + 1);
+        double newC2 = joinedService(s2, j, s1, i + 1);
 
-        double[] new1 = computeRouteDuration(newR1, instance, travelTimes);
-        double[] new2 = computeRouteDuration(newR2, instance, travelTimes);
-
-        double newL1 = new1[0];
-        double newL2 = new2[0];
+        double newL1 = travel1 + newC1 + breakTime + prepTime;
+        double newL2 = travel2 + newC2 + breakTime + prepTime;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double newC1 = new1[1];
-        double newC2 = new2[1];
-
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
@@ -177,14 +180,13 @@ public class Inter2OptStarInfeas implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         int s1Night = s1.nightShift;
@@ -192,47 +194,30 @@ public class Inter2OptStarInfeas implements Neighborhood {
         Shift s2 = shifts.get(move.route2);
         int s2Night = s2.nightShift;
 
-        List<Integer> r1 = s1.route;
-        List<Integer> r2 = s2.route;
+        IntRoute r1 = s1.route;
+        IntRoute r2 = s2.route;
 
         int i = move.index1;
         int j = move.index2;
 
-        // Build hypothetical new routes (same logic as applyMove)
-        List<Integer> newR1 = new ArrayList<>();
-        newR1.addAll(r1.subList(0, i + 1));
-        newR1.addAll(r2.subList(j + 1, r2.size()));
-
-        List<Integer> newR2 = new ArrayList<>();
-        newR2.addAll(r2.subList(0, j + 1));
-        newR2.addAll(r1.subList(i + 1, r1.size()));
-
-        double[] new1 = computeRouteDurationDiffTimes(newR1, instance, travelTimesNight, travelTimesDay, s1Night);
-        double[] new2 = computeRouteDurationDiffTimes(newR2, instance, travelTimesNight, travelTimesDay, s2Night);
-
-        double newL1 = new1[0];
-        double newL2 = new2[0];
+        // Hypothetical new routes (same logic as applyMove), evaluated without building them:
+        // new route 1 = r1[0..i] + r2[j+1..], new route 2 = r2[0..j] + r1[i+1..]
+        TravelTimeMatrix times1 = (s1Night == 1) ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix times2 = (s2Night == 1) ? travelTimesNight : travelTimesDay;
 
-        double newC1 = new1[1];
-        double newC2 = new2[1];
+        double travel1 = joinedTravel(s1, i, s2, j + 1, instance, times1);
+        double travel2 = joinedTravel(s2, j, s1, i + 1, instance, times2);
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
+        double newC1 = joinedService(s1, i, s2, j + 1);
+        double newC2 = joinedService(s2, j, s1, i + 1);
 
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
+        double newL1 = travel1 + newC1 + breakTime + prepTime;
+        double newL2 = travel2 + newC2 + breakTime + prepTime;
 
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
         double oldViolationS1 = Math.max(0, (s1.totalTime - maxDuration - maxOvertime));
         double newViolationS1 = Math.max(0, (newL1 - maxShiftDuration - maxOvertime));
 
@@ -241,28 +226,29 @@ public class Inter2OptStarInfeas implements Neighborhood {
 
         double violationDelta = (oldViolationS1 - newViolationS1) + (oldViolationS2 -  newViolationS2);
 
-        double improvement = oldObj - newObj + penalty * violationDelta;
+        double improvement = -objectiveDelta + penalty * violationDelta;
 
         if (Math.abs(improvement) < EPS) {
             improvement = 0.0;
         }
 
         if (violationDelta < EPS) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
 
         Shift s1 = shifts.get(move.route1);
         int s1Night = s1.nightShift;
@@ -270,147 +256,58 @@ public class Inter2OptStarInfeas implements Neighborhood {
         Shift s2 = shifts.get(move.route2);
         int s2Night = s2.nightShift;
 
-        List<Integer> r1 = s1.route;
-        List<Integer> r2 = s2.route;
-
         int i = move.index1;
         int j = move.index2;
 
-        // Build new routes
-        List<Integer> newR1 = new ArrayList<>();
-        newR1.addAll(r1.subList(0, i + 1));
-        newR1.addAll(r2.subList(j + 1, r2.size()));
-
-        List<Integer> newR2 = new ArrayList<>();
-        newR2.addAll(r2.subList(0, j + 1));
-        newR2.addAll(r1.subList(i + 1, r1.size()));
+        TravelTimeMatrix times1 = (s1Night == 1) ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix times2 = (s2Night == 1) ? travelTimesNight : travelTimesDay;
 
-        s1.route = newR1;
-        s2.route = newR2;
+        // Durations of the new routes, computed before the tails are exchanged
+        double travel1 = joinedTravel(s1, i, s2, j + 1, instance, times1);
+        double travel2 = joinedTravel(s2, j, s1, i + 1, instance, times2);
+        double newC1 = joinedService(s1, i, s2, j + 1);
+        double newC2 = joinedService(s2, j, s1, i + 1);
+        double newL1 = travel1 + newC1 + breakTime + prepTime;
+        double newL2 = travel2 + newC2 + breakTime + prepTime;
 
-        double[] d1 = computeRouteDurationDiffTimes(newR1, instance, travelTimesNight, travelTimesDay, s1Night);
-        double[] d2 = computeRouteDurationDiffTimes(newR2, instance, travelTimesNight, travelTimesDay, s2Night);
+        // New routes: r1[0..i] + r2[j+1..] and r2[0..j] + r1[i+1..]
+        Shift.swapTails(s1, i + 1, s2, j + 1, instance);
 
-        s1.totalTime = d1[0];
-        s1.serviceTime = d1[1];
+        s1.totalTime = newL1;
+        s1.serviceTime = newC1;
 
-        s2.totalTime = d2[0];
-        s2.serviceTime = d2[1];
+        s2.totalTime = newL2;
+        s2.serviceTime = newC2;
 
-        s1.nightShift = Utils.containsNightStop(newR1, instance) ? 1 : 0;
-        s2.nightShift = Utils.containsNightStop(newR2, instance) ? 1 : 0;
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
 
-        return newShifts;
+        return result;
     }
 
 
-    private double[] computeRouteDuration(
-            List<Integer> route,
-            HTMInstance instance,
-            double[][] travelTimes
-    ) {
-        double t = 0;
-
-        // Depot → first
-        t += travelTimes[0][route.get(0)];
-
-        // Internal arcs
-        for (int i = 0; i < route.size() - 1; i++)
-            t += travelTimes[route.get(i)][route.get(i + 1)];
-
-        // Last → depot
-        t += travelTimes[route.get(route.size() - 1)][0];
-
-        // Service times
-        double s = 0;
-        for (int id : route) {
-            t += instance.getStops().get(id).serviceTime;
-            s += instance.getStops().get(id).serviceTime;
-        }
-
-
-        // Add break and prep time
-        t = t + breakTime + prepTime;
-
-        return new double[]{t, s};
-    }
-
-    private double[] computeRouteDurationDiffTimes(
-            List<Integer> route,
-            HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
-            int nightShift
-    ) {
-        double t = 0;
-        
-        if (nightShift == 1) {
-            // Depot → first
-        t += travelTimesNight[0][route.get(0)];
-
-        // Internal arcs
-        for (int i = 0; i < route.size() - 1; i++)
-            t += travelTimesNight[route.get(i)][route.get(i + 1)];
-
-        // Last → depot
-        t += travelTimesNight[route.get(route.size() - 1)][0];
-
-        // Service times
-        double s = 0;
-        for (int id : route) {
-            t += instance.getStops().get(id).serviceTime;
-            s += instance.getStops().get(id).serviceTime;
-        }
+    /**
+     * Travel time of the route head[0..headEnd] + tail[tailStart..], including the depot arcs.
+     * Constant time using the prefix sums of both shifts (computed once per route version and matrix).
+     */
+    private double joinedTravel(Shift head, int headEnd, Shift tail, int tailStart, HTMInstance instance, TravelTimeMatrix travelTimes) {
+        head.ensurePrefixSums(travelTimes, instance);
+        tail.ensurePrefixSums(travelTimes, instance);
 
+        IntRoute h = head.route;
+        IntRoute r = tail.route;
+        int tailEnd = r.size() - 1;
 
-        // Add break and prep time
-        t = t + breakTime + prepTime;
-
-        return new double[]{t, s};
-        }
-
-        // Depot → first
-        t += travelTimesDay[0][route.get(0)];
-
-        // Internal arcs
-        for (int i = 0; i < route.size() - 1; i++)
-            t += travelTimesDay[route.get(i)][route.get(i + 1)];
-
-        // Last → depot
-        t += travelTimesDay[route.get(route.size() - 1)][0];
-
-        // Service times
-        double s = 0;
-        for (int id : route) {
-            t += instance.getStops().get(id).serviceTime;
-            s += instance.getStops().get(id).serviceTime;
-        }
-
-
-        // Add break and prep time
-        t = t + breakTime + prepTime;
-
-        return new double[]{t, s};
+        return travelTimes.get(0, h.getInt(0))
+                + head.travelBetween(travelTimes, 0, headEnd)
+                + travelTimes.get(h.getInt(headEnd), r.getInt(tailStart))
+                + tail.travelBetween(travelTimes, tailStart, tailEnd)
+                + travelTimes.get(r.getInt(tailEnd), 0);
     }
 
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
-
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+    // Service time of the route head[0..headEnd] + tail[tailStart..], call after joinedTravel
+    private double joinedService(Shift head, int headEnd, Shift tail, int tailStart) {
+        return head.serviceBetween(0, headEnd) + tail.serviceBetween(tailStart, tail.route.size() - 1);
     }
 
     
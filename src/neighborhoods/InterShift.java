@@ -1,38 +1,78 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
+import core.NeighborLists;
 import core.Shift;
-import core.Stop;
-import core.Utils;
+import core.StopPositions;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class InterShift implements Neighborhood {
     private static final double EPS = 1e-6;
     private final int MAX_NIGHT_SHIFTS = 25;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
+
+    // Granular mode when set: only moves that place the stop next to one of its k nearest neighbors
+    private final NeighborLists neighbors;
+
+    public InterShift() {
+        this(null);
+    }
+
+    public InterShift(NeighborLists neighbors) {
+        this.neighbors = neighbors;
+    }
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        calculateGlobalSums(shifts);
         List<Move> moves = new ArrayList<>();
-        int numNightShifts = Utils.countNightShifts(shifts);
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_SHIFT);
+        int numNightShifts = context.numNightShifts;
 
         if (numNightShifts > MAX_NIGHT_SHIFTS) {
-            System.out.println("Too many night shifts: " + numNightShifts);
-            return moves;
+            return true;
+        }
+        if (neighbors != null) {
+            return forEachGranularMove(shifts, compatibility, instance, fromRoute, toRoute, visitor);
         }
 
-        for (int r1 = 0; r1 < shifts.size(); r1++) {
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
             for (int r2 = 0; r2 < shifts.size(); r2++) {
                 if (r1 == r2) continue;
+                if (context.skipPair(r1, r2)) continue;
                 Shift s1 = shifts.get(r1);
 
                 if (s1.route.size() < 4) {
@@ -42,24 +82,116 @@ public class InterShift implements Neighborhood {
                 Shift s2 = shifts.get(r2);
 
                 
-                List<Integer> ids1 = shifts.get(r1).route;
-                List<Integer> ids2 = shifts.get(r2).route;
+                IntRoute ids1 = shifts.get(r1).route;
+                IntRoute ids2 = shifts.get(r2).route;
 
                 for (int i = 1; i < ids1.size() -1; i++) {
                     
                     for (int j = 1; j < ids2.size()-1; j++) {
-                        if (numNightShifts == MAX_NIGHT_SHIFTS  && !compatibility.compatible(s1, s2)) {
-                            if (instance.getStops().get(s1.route.get(i)).nightShift == 1 && s2.nightShift != 1) {
-                                continue;
-                            }
+                        if (!generates(s1, s2, i, j, compatibility, instance, numNightShifts)) continue;
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The moves of forEachMove in granular mode, generated from the neighbors of every stop of r1 instead of
+     * all positions of all other shifts: O(k) per stop. A neighbor v at position p of s2 gives the insertions
+     * right after v and right before v; the latter only if the stop before v is not a neighbor as well, which
+     * gives the same insertion.
+     */
+    private boolean forEachGranularMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_SHIFT);
+        int numNightShifts = context.numNightShifts;
+        StopPositions positions = context.positions();
+        int types = neighbors.sameForDayAndNight() ? 1 : 2;
+
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
+            Shift s1 = shifts.get(r1);
+            if (s1.route.size() < 4) {
+                continue;
+            }
+
+            for (int i = 1; i < s1.route.size() - 1; i++) {
+                int u = s1.route.getInt(i);
+
+                for (int t = 0; t < types; t++) {
+                    for (int rank = 0; rank < neighbors.k(); rank++) {
+                        int v = neighbors.neighbor(t, u, rank);
+                        int r2 = positions.shift(v);
+                        if (r2 < 0 || r2 == r1) continue;
+
+                        Shift s2 = shifts.get(r2);
+                        // Only the lists of the target shift's type count, as in generates
+                        if (types == 2 && (s2.nightShift == 1 ? 1 : 0) != t) continue;
+                        if (context.skipPair(r1, r2)) continue;
+
+                        IntRoute ids2 = s2.route;
+                        int p = positions.position(v);
+
+                        int j = p + 1;
+                        if (j < ids2.size() - 1 && generates(s1, s2, i, j, compatibility, instance, numNightShifts)) {
+                            if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
                         }
 
-                        moves.add(new Move(r1, r2, i, j, Move.MoveType.INTER_SHIFT));
+                        j = p;
+                        if (!neighbors.isNeighbor(s2.nightShift, u, ids2.getInt(j - 1))
+                                && generates(s1, s2, i, j, compatibility, instance, numNightShifts)) {
+                            if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                        }
                     }
                 }
             }
         }
-        return moves;
+        return true;
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        int m = shifts.size();
+        if (m < 2 || context.numNightShifts > MAX_NIGHT_SHIFTS) return null;
+
+        int r1 = rnd.nextInt(m);
+        int r2 = rnd.nextInt(m - 1);
+        if (r2 >= r1) r2++;
+
+        Shift s1 = shifts.get(r1);
+        Shift s2 = shifts.get(r2);
+        if (s1.route.size() < 4 || s2.route.size() < 3) return null;
+
+        int i = 1 + rnd.nextInt(s1.route.size() - 2);
+        int j = 1 + rnd.nextInt(s2.route.size() - 2);
+        if (!generates(s1, s2, i, j, compatibility, instance, context.numNightShifts)) return null;
+
+        return new Move(r1, r2, i, j, Move.MoveType.INTER_SHIFT);
+    }
+
+    // Whether forEachMove generates moving stop i of s1 to position j of s2: granular mode and the night-shift cap
+    private boolean generates(Shift s1, Shift s2, int i, int j, RouteCompatibility compatibility, HTMInstance instance, int numNightShifts) {
+        if (neighbors != null) {
+            // Granular: the stop must end up next to one of its neighbors in s2
+            int u = s1.route.getInt(i);
+            if (!neighbors.isNeighbor(s2.nightShift, u, s2.route.getInt(j - 1))
+                    && !neighbors.isNeighbor(s2.nightShift, u, s2.route.getInt(j))) {
+                return false;
+            }
+        }
+
+        if (numNightShifts == MAX_NIGHT_SHIFTS  && !compatibility.compatible(s1, s2)) {
+            if (instance.nightFlag[s1.route.getInt(i)] == 1 && s2.nightShift != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The moves between two shifts and their new lengths only depend on these two shifts
+    @Override
+    public boolean cacheableByRoutePair() {
+        return true;
     }
 
     @Override
@@ -67,71 +199,54 @@ public class InterShift implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        int node = s1.route.get(move.index1);
+        int node = s1.route.getInt(move.index1);
 
-        Stop stop = instance.getStops().get(node);
+        double service = instance.serviceTime[node];
 
-        double service = stop.serviceTime;
-
-        int prev1 = (move.index1 == 0) ? 0 : s1.route.get(move.index1 - 1);
-        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.get(move.index1 + 1);
+        int prev1 = (move.index1 == 0) ? 0 : s1.route.getInt(move.index1 - 1);
+        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.getInt(move.index1 + 1);
 
         double deltaRemove =
-                -travelTimes[prev1][node]
-                        - travelTimes[node][next1]
-                        + travelTimes[prev1][next1];
+                -travelTimes.get(prev1, node)
+                        - travelTimes.get(node, next1)
+                        + travelTimes.get(prev1, next1);
 
-        int prev2 = (move.index2 == 0) ? 0 : s2.route.get(move.index2 - 1);
-        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.get(move.index2);
+        int prev2 = (move.index2 == 0) ? 0 : s2.route.getInt(move.index2 - 1);
+        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.getInt(move.index2);
 
         double deltaInsert =
-                -travelTimes[prev2][next2]
-                        + travelTimes[prev2][node]
-                        + travelTimes[node][next2];
+                -travelTimes.get(prev2, next2)
+                        + travelTimes.get(prev2, node)
+                        + travelTimes.get(node, next2);
 
         double newL1 = s1.totalTime - service + deltaRemove;
         double newL2 = s2.totalTime + service + deltaInsert;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
         double newC1 = s1.serviceTime - service;
         double newC2 = s2.serviceTime + service;
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement, newL1, newC1, newL2, newC2);
     }
 
     @Override
@@ -139,129 +254,94 @@ public class InterShift implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        int node = s1.route.get(move.index1);
-
-        Stop stop = instance.getStops().get(node);
+        int node = s1.route.getInt(move.index1);
 
-        double service = stop.serviceTime;
+        double service = instance.serviceTime[node];
 
-        int prev1 = (move.index1 == 0) ? 0 : s1.route.get(move.index1 - 1);
-        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.get(move.index1 + 1);
+        int prev1 = (move.index1 == 0) ? 0 : s1.route.getInt(move.index1 - 1);
+        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.getInt(move.index1 + 1);
 
         double deltaRemove = 0.0;
         if (s1.nightShift == 1) {
             deltaRemove =
-                -travelTimesNight[prev1][node]
-                        - travelTimesNight[node][next1]
-                        + travelTimesNight[prev1][next1];
+                -travelTimesNight.get(prev1, node)
+                        - travelTimesNight.get(node, next1)
+                        + travelTimesNight.get(prev1, next1);
         } else {
             deltaRemove =
-                -travelTimesDay[prev1][node]
-                        - travelTimesDay[node][next1]
-                        + travelTimesDay[prev1][next1];
+                -travelTimesDay.get(prev1, node)
+                        - travelTimesDay.get(node, next1)
+                        + travelTimesDay.get(prev1, next1);
         }
 
-        int prev2 = (move.index2 == 0) ? 0 : s2.route.get(move.index2 - 1);
-        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.get(move.index2);
+        int prev2 = (move.index2 == 0) ? 0 : s2.route.getInt(move.index2 - 1);
+        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.getInt(move.index2);
 
         double deltaInsert = 0.0;
 
         // Use night or day travel times 
-        if (s2.nightShift == 1 || instance.getStops().get(node).nightShift == 1) {
+        if (s2.nightShift == 1 || instance.nightFlag[node] == 1) {
             deltaInsert =
-                -travelTimesNight[prev2][next2]
-                        + travelTimesNight[prev2][node]
-                        + travelTimesNight[node][next2];
+                -travelTimesNight.get(prev2, next2)
+                        + travelTimesNight.get(prev2, node)
+                        + travelTimesNight.get(node, next2);
         } else {
             deltaInsert =
-                -travelTimesDay[prev2][next2]
-                        + travelTimesDay[prev2][node]
-                        + travelTimesDay[node][next2];
+                -travelTimesDay.get(prev2, next2)
+                        + travelTimesDay.get(prev2, node)
+                        + travelTimesDay.get(node, next2);
         }
 
         double newL1 = s1.totalTime - service + deltaRemove;
         double newL2 = s2.totalTime + service + deltaInsert;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
         double newC1 = s1.serviceTime - service;
         double newC2 = s2.serviceTime + service;
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement, newL1, newC1, newL2, newC2);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
 
         Shift s1 = newShifts.get(move.route1);
         Shift s2 = newShifts.get(move.route2);
 
-        int node = s1.route.remove(move.index1);
-        s2.route.add(move.index2, node);
-        s1.nightShift = Utils.containsNightStop(s1.route, instance) ? 1 : 0;
-        s2.nightShift = Utils.containsNightStop(s2.route, instance) ? 1 : 0;
-
-        return newShifts;
-    }
-
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
+        int node = s1.removeStopAt(move.index1, instance);
+        s2.insertStop(move.index2, node, instance);
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
 
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+        return result;
     }
 }
@@ -1,27 +1,31 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
 import core.Shift;
-import core.Stop;
-import core.Utils;
+import core.TravelTimeMatrix;
 import milp.TSP;
 import search.*;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Moves a stop from a shift longer than maxDuration + maxOvertime into a shift that fits.
+ *
+ * @deprecated SmartFeas and Utils.makeFeasible repair with search.EjectionChainRepair, which follows a move
+ * into a full shift with further moves instead of scanning every violated and feasible pair.
+ */
+@Deprecated
 public class InterShiftInfeas implements Neighborhood {
     private static final double EPS = 1e-6;
     private final int MAX_NIGHT_SHIFTS = 25;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
     private final double maxDuration;
     private final double maxOvertime;
     private final double penalty;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
 
     public InterShiftInfeas(double maxDuration, double maxOvertime, double penalty) {
         this.penalty = penalty;
@@ -30,20 +34,45 @@ public class InterShiftInfeas implements Neighborhood {
     }
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
+        List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
         
-        calculateGlobalSums(shifts);
 
-        List<Move> moves = new ArrayList<>();
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_SHIFT);
 
-        int numNightShifts = Utils.countNightShifts(shifts);
+        int numNightShifts = context.numNightShifts;
         int numShifts = shifts.size();
         int numViolated = 0;
 
         boolean[] violated = new boolean[numShifts];
 
         if (numNightShifts > MAX_NIGHT_SHIFTS) {
-            System.out.println("Too many night shifts: " + numNightShifts);
-            return moves;
+            return true;
         }
 
 
@@ -55,14 +84,14 @@ public class InterShiftInfeas implements Neighborhood {
         }
 
         if (numViolated == 0) {
-            return moves;
+            return true;
         }
 
 
         // System.out.println("Using intershift");
         // System.out.println("number of shifts: " + numShifts + " violated: " + numViolated);
 
-        for (int violatedIdx = 0; violatedIdx < numShifts; violatedIdx++) {
+        for (int violatedIdx = fromRoute; violatedIdx < toRoute; violatedIdx++) {
 
             if (!(violated[violatedIdx])) {
                 continue;
@@ -80,6 +109,8 @@ public class InterShiftInfeas implements Neighborhood {
                     continue;
                 }
 
+                if (context.skipPair(violatedIdx, feasibleIdx)) continue;
+
                 Shift feasibleShift = shifts.get(feasibleIdx);
                 
                 // if (violatedShift.route.size() < 2) {
@@ -91,22 +122,22 @@ public class InterShiftInfeas implements Neighborhood {
                     for (int j = 1; j < feasibleShift.route.size() - 1; j++) {
 
                         if (numNightShifts < MAX_NIGHT_SHIFTS || compatibility.compatible(violatedShift, feasibleShift)) {
-                            moves.add(new Move(violatedIdx, feasibleIdx, i, j, Move.MoveType.INTER_SHIFT));
+                            if (!visitor.visit(cursor.set(violatedIdx, feasibleIdx, i, j))) return false;
                             continue;
                         }
 
-                        if (instance.getStops().get(violatedShift.route.get(i)).nightShift == 1 && feasibleShift.nightShift != 1) {
+                        if (instance.nightFlag[violatedShift.route.getInt(i)] == 1 && feasibleShift.nightShift != 1) {
                             continue;
                         }
 
-                        moves.add(new Move(violatedIdx, feasibleIdx, i, j, Move.MoveType.INTER_SHIFT));
+                        if (!visitor.visit(cursor.set(violatedIdx, feasibleIdx, i, j))) return false;
                         
                     }
                 }
             }
         }
 
-        return moves;
+        return true;
     }
 
     @Override
@@ -114,44 +145,41 @@ public class InterShiftInfeas implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        int node = s1.route.get(move.index1);
-
-        Stop stop = instance.getStops().get(node);
+        int node = s1.route.getInt(move.index1);
 
-        double service = stop.serviceTime;
+        double service = instance.serviceTime[node];
 
-        int prev1 = (move.index1 == 0) ? 0 : s1.route.get(move.index1 - 1);
-        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.get(move.index1 + 1);
+        int prev1 = (move.index1 == 0) ? 0 : s1.route.getInt(move.index1 - 1);
+        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.getInt(move.index1 + 1);
 
         double deltaRemove =
-                -travelTimes[prev1][node]
-                        - travelTimes[node][next1]
-                        + travelTimes[prev1][next1];
+                -travelTimes.get(prev1, node)
+                        - travelTimes.get(node, next1)
+                        + travelTimes.get(prev1, next1);
 
-        int prev2 = (move.index2 == 0) ? 0 : s2.route.get(move.index2 - 1);
-        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.get(move.index2);
+        int prev2 = (move.index2 == 0) ? 0 : s2.route.getInt(move.index2 - 1);
+        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.getInt(move.index2);
 
         double deltaInsert =
-                -travelTimes[prev2][next2]
-                        + travelTimes[prev2][node]
-                        + travelTimes[node][next2];
+                -travelTimes.get(prev2, next2)
+                        + travelTimes.get(prev2, node)
+                        + travelTimes.get(node, next2);
 
         double newL1 = s1.totalTime - service + deltaRemove;
         double newL2 = s2.totalTime + service + deltaInsert;
 
         // if (newL2 > maxShiftDuration) {
-        //     return new Evaluation(0, false);
+        //     return Evaluation.INFEASIBLE;
         // }
 
         double oldViolationS1 = Math.max(0, (s1.totalTime - maxDuration - maxOvertime));
@@ -166,36 +194,22 @@ public class InterShiftInfeas implements Neighborhood {
         double newC1 = s1.serviceTime - service;
         double newC2 = s2.serviceTime + service;
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj + penalty * violationDelta;
+        double improvement = -objectiveDelta + penalty * violationDelta;
         
         if (Math.abs(improvement) < EPS) {
             improvement = 0.0;
         }
 
         if (Math.abs(violationDelta) < EPS) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
@@ -203,86 +217,68 @@ public class InterShiftInfeas implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        int node = s1.route.get(move.index1);
-
-        Stop stop = instance.getStops().get(node);
+        int node = s1.route.getInt(move.index1);
 
-        double service = stop.serviceTime;
+        double service = instance.serviceTime[node];
 
-        int prev1 = (move.index1 == 0) ? 0 : s1.route.get(move.index1 - 1);
-        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.get(move.index1 + 1);
+        int prev1 = (move.index1 == 0) ? 0 : s1.route.getInt(move.index1 - 1);
+        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.getInt(move.index1 + 1);
 
         double deltaRemove = 0.0;
         if (s1.nightShift == 1) {
             deltaRemove =
-                -travelTimesNight[prev1][node]
-                        - travelTimesNight[node][next1]
-                        + travelTimesNight[prev1][next1];
+                -travelTimesNight.get(prev1, node)
+                        - travelTimesNight.get(node, next1)
+                        + travelTimesNight.get(prev1, next1);
         } else {
             deltaRemove =
-                -travelTimesDay[prev1][node]
-                        - travelTimesDay[node][next1]
-                        + travelTimesDay[prev1][next1];
+                -travelTimesDay.get(prev1, node)
+                        - travelTimesDay.get(node, next1)
+                        + travelTimesDay.get(prev1, next1);
         }
 
-        int prev2 = (move.index2 == 0) ? 0 : s2.route.get(move.index2 - 1);
-        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.get(move.index2);
+        int prev2 = (move.index2 == 0) ? 0 : s2.route.getInt(move.index2 - 1);
+        int next2 = (move.index2 == s2.route.size()) ? 0 : s2.route.getInt(move.index2);
 
         double deltaInsert = 0.0;
 
         // Use night or day travel times 
-        if (s2.nightShift == 1 || instance.getStops().get(node).nightShift == 1) {
+        if (s2.nightShift == 1 || instance.nightFlag[node] == 1) {
             deltaInsert =
-                -travelTimesNight[prev2][next2]
-                        + travelTimesNight[prev2][node]
-                        + travelTimesNight[node][next2];
+                -travelTimesNight.get(prev2, next2)
+                        + travelTimesNight.get(prev2, node)
+                        + travelTimesNight.get(node, next2);
         } else {
             deltaInsert =
-                -travelTimesDay[prev2][next2]
-                        + travelTimesDay[prev2][node]
-                        + travelTimesDay[node][next2];
+                -travelTimesDay.get(prev2, next2)
+                        + travelTimesDay.get(prev2, node)
+                        + travelTimesDay.get(node, next2);
         }
 
         double newL1 = s1.totalTime - service + deltaRemove;
         double newL2 = s2.totalTime + service + deltaInsert;
 
         // if (newL2 > maxShiftDuration + 5) {
-        //     return new Evaluation(0, false);
+        //     return Evaluation.INFEASIBLE;
         // }
 
         double newC1 = s1.serviceTime - service;
         double newC2 = s2.serviceTime + service;
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
         double oldViolationS1 = Math.max(0, (s1.totalTime - maxDuration - maxOvertime));
         double newViolationS1 = Math.max(0, (newL1 - maxShiftDuration - maxOvertime));
@@ -292,56 +288,38 @@ public class InterShiftInfeas implements Neighborhood {
 
         double violationDelta = (oldViolationS1 - newViolationS1) + (oldViolationS2 -  newViolationS2);
 
-        double improvement = oldObj - newObj + penalty * violationDelta;
+        double improvement = -objectiveDelta + penalty * violationDelta;
 
         if (Math.abs(improvement) < EPS) {
             improvement = 0.0;
         }
 
         if (violationDelta < EPS) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
 
         Shift s1 = newShifts.get(move.route1);
         Shift s2 = newShifts.get(move.route2);
 
-        int node = s1.route.remove(move.index1);
-        s2.route.add(move.index2, node);
-        s1.nightShift = Utils.containsNightStop(s1.route, instance) ? 1 : 0;
-        s2.nightShift = Utils.containsNightStop(s2.route, instance) ? 1 : 0;
-
-        return newShifts;
-    }
-
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
+        int node = s1.removeStopAt(move.index1, instance);
+        s2.insertStop(move.index2, node, instance);
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
 
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+        return result;
     }
 }
@@ -1,64 +1,237 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
+import core.NeighborLists;
 import core.Shift;
-import core.Stop;
-import core.Utils;
+import core.StopPositions;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class InterSwap implements Neighborhood {
     private static final double EPS = 1e-6;
     private final int MAX_NIGHT_SHIFTS = 25;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
+
+    // Granular mode when set: only moves that place one of the swapped stops next to one of its k nearest neighbors
+    private final NeighborLists neighbors;
+
+    public InterSwap() {
+        this(null);
+    }
+
+    public InterSwap(NeighborLists neighbors) {
+        this.neighbors = neighbors;
+    }
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        calculateGlobalSums(shifts);
         List<Move> moves = new ArrayList<>();
-        int numNightShifts = Utils.countNightShifts(shifts);
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_SWAP);
+        int numNightShifts = context.numNightShifts;
 
         if (numNightShifts > MAX_NIGHT_SHIFTS) {
-            System.out.println("Too many night shifts: " + numNightShifts);
-            return moves;
+            return true;
+        }
+        if (neighbors != null) {
+            return forEachGranularMove(shifts, instance, fromRoute, toRoute, visitor);
         }
 
-        for (int r1 = 0; r1 < shifts.size(); r1++) {
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
             for (int r2 = r1 + 1; r2 < shifts.size(); r2++) {
+                if (context.skipPair(r1, r2)) continue;
 
                 Shift s1 = shifts.get(r1);
                 Shift s2 = shifts.get(r2);
 
 
-                List<Integer> ids1 = shifts.get(r1).route;
-                List<Integer> ids2 = shifts.get(r2).route;
+                IntRoute ids1 = shifts.get(r1).route;
+                IntRoute ids2 = shifts.get(r2).route;
 
                 for (int i = 1; i < ids1.size() -1; i++) {
                     for (int j = 1; j < ids2.size()-1; j++) {
-                        if (numNightShifts == MAX_NIGHT_SHIFTS) {
+                        if (!generates(s1, s2, i, j, instance, numNightShifts)) continue;
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
 
-                            if (instance.getStops().get(s1.route.get(i)).nightShift == 1 && s2.nightShift == 0) {
-                                continue;
-                            }
+    /**
+     * The moves of forEachMove in granular mode, O(k) per stop of r1: first the swaps that place stop u of s1
+     * next to one of its neighbors v in s2 (u takes the place after or before v), then those that place a stop
+     * w of s2 next to a stop x of s1 that w has as a neighbor (w takes the place after or before x). A swap is
+     * generated by the first of these four cases that applies to it.
+     */
+    private boolean forEachGranularMove(List<Shift> shifts, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTER_SWAP);
+        int numNightShifts = context.numNightShifts;
+        StopPositions positions = context.positions();
+        int types = neighbors.sameForDayAndNight() ? 1 : 2;
+
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
+            Shift s1 = shifts.get(r1);
+            IntRoute ids1 = s1.route;
+
+            for (int i = 1; i < ids1.size() - 1; i++) {
+                int u = ids1.getInt(i);
+
+                for (int t = 0; t < types; t++) {
+                    for (int rank = 0; rank < neighbors.k(); rank++) {
+                        int v = neighbors.neighbor(t, u, rank);
+                        int r2 = positions.shift(v);
+                        if (r2 <= r1) continue;
+
+                        Shift s2 = shifts.get(r2);
+                        // Only the lists of the target shift's type count, as in generates
+                        if (types == 2 && (s2.nightShift == 1 ? 1 : 0) != t) continue;
+                        if (context.skipPair(r1, r2)) continue;
+
+                        IntRoute ids2 = s2.route;
+                        int p = positions.position(v);
+
+                        int j = p + 1;
+                        if (j < ids2.size() - 1 && generates(s1, s2, i, j, instance, numNightShifts)) {
+                            if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                        }
 
-                            if (instance.getStops().get(s2.route.get(j)).nightShift == 1 && s1.nightShift == 0) {
-                                continue;
-                            }
+                        j = p - 1;
+                        if (j >= 1 && !neighbors.isNeighbor(s2.nightShift, u, ids2.getInt(j - 1))
+                                && generates(s1, s2, i, j, instance, numNightShifts)) {
+                            if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
                         }
-                        
-                        moves.add(new Move(r1, r2, i, j, Move.MoveType.INTER_SWAP));
+                    }
+                }
+            }
+
+            for (int q = 1; q < ids1.size() - 1; q++) {
+                int x = ids1.getInt(q);
+
+                for (int idx = 0; idx < neighbors.numNeighborOf(s1.nightShift, x); idx++) {
+                    int w = neighbors.neighborOf(s1.nightShift, x, idx);
+                    int r2 = positions.shift(w);
+                    if (r2 <= r1) continue;
+                    if (context.skipPair(r1, r2)) continue;
+
+                    Shift s2 = shifts.get(r2);
+                    int j = positions.position(w);
+
+                    int i = q + 1;
+                    if (i < ids1.size() - 1 && !placesNearNeighbor(s1, s2, i, j)
+                            && generates(s1, s2, i, j, instance, numNightShifts)) {
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
+                    }
+
+                    i = q - 1;
+                    if (i >= 1 && !placesNearNeighbor(s1, s2, i, j)
+                            && !neighbors.isNeighbor(s1.nightShift, w, ids1.getInt(i - 1))
+                            && generates(s1, s2, i, j, instance, numNightShifts)) {
+                        if (!visitor.visit(cursor.set(r1, r2, i, j))) return false;
                     }
                 }
             }
         }
-        return moves;
+        return true;
+    }
+
+    // Whether swapping stop i of s1 with stop j of s2 places the former next to one of its neighbors
+    private boolean placesNearNeighbor(Shift s1, Shift s2, int i, int j) {
+        int u = s1.route.getInt(i);
+        return neighbors.isNeighbor(s2.nightShift, u, s2.route.getInt(j - 1))
+                || neighbors.isNeighbor(s2.nightShift, u, s2.route.getInt(j + 1));
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        int m = shifts.size();
+        if (m < 2 || context.numNightShifts > MAX_NIGHT_SHIFTS) return null;
+
+        // forEachMove only generates the pairs with r1 < r2
+        int a = rnd.nextInt(m);
+        int b = rnd.nextInt(m - 1);
+        if (b >= a) b++;
+        int r1 = Math.min(a, b);
+        int r2 = Math.max(a, b);
+
+        Shift s1 = shifts.get(r1);
+        Shift s2 = shifts.get(r2);
+        if (s1.route.size() < 3 || s2.route.size() < 3) return null;
+
+        int i = 1 + rnd.nextInt(s1.route.size() - 2);
+        int j = 1 + rnd.nextInt(s2.route.size() - 2);
+        if (!generates(s1, s2, i, j, instance, context.numNightShifts)) return null;
+
+        return new Move(r1, r2, i, j, Move.MoveType.INTER_SWAP);
+    }
+
+    // Whether forEachMove generates swapping stop i of s1 with stop j of s2: granular mode and the night-shift cap
+    private boolean generates(Shift s1, Shift s2, int i, int j, HTMInstance instance, int numNightShifts) {
+        IntRoute ids1 = s1.route;
+        IntRoute ids2 = s2.route;
+
+        if (neighbors != null) {
+            // Granular: one of the swapped stops must end up next to one of its neighbors
+            int u = ids1.getInt(i);
+            int w = ids2.getInt(j);
+            if (!neighbors.isNeighbor(s2.nightShift, u, ids2.getInt(j - 1))
+                    && !neighbors.isNeighbor(s2.nightShift, u, ids2.getInt(j + 1))
+                    && !neighbors.isNeighbor(s1.nightShift, w, ids1.getInt(i - 1))
+                    && !neighbors.isNeighbor(s1.nightShift, w, ids1.getInt(i + 1))) {
+                return false;
+            }
+        }
+
+        if (numNightShifts == MAX_NIGHT_SHIFTS) {
+
+            if (instance.nightFlag[ids1.getInt(i)] == 1 && s2.nightShift == 0) {
+                return false;
+            }
+
+            if (instance.nightFlag[ids2.getInt(j)] == 1 && s1.nightShift == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The moves between two shifts and their new lengths only depend on these two shifts
+    @Override
+    public boolean cacheableByRoutePair() {
+        return true;
     }
 
     @Override
@@ -66,41 +239,37 @@ public class InterSwap implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        int node1 = s1.route.get(move.index1);
-        int node2 = s2.route.get(move.index2);
-
-        Stop stop1 = instance.getStops().get(node1);
-        Stop stop2 = instance.getStops().get(node2);
+        int node1 = s1.route.getInt(move.index1);
+        int node2 = s2.route.getInt(move.index2);
 
-        double service1 = stop1.serviceTime;
-        double service2 = stop2.serviceTime;
+        double service1 = instance.serviceTime[node1];
+        double service2 = instance.serviceTime[node2];
 
         // Neighbors in route 1
-        int prev1 = (move.index1 == 0) ? 0 : s1.route.get(move.index1 - 1);
-        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.get(move.index1 + 1);
+        int prev1 = (move.index1 == 0) ? 0 : s1.route.getInt(move.index1 - 1);
+        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.getInt(move.index1 + 1);
 
         // Neighbors in route 2
-        int prev2 = (move.index2 == 0) ? 0 : s2.route.get(move.index2 - 1);
-        int next2 = (move.index2 == s2.route.size() - 1) ? 0 : s2.route.get(move.index2 + 1);
+        int prev2 = (move.index2 == 0) ? 0 : s2.route.getInt(move.index2 - 1);
+        int next2 = (move.index2 == s2.route.size() - 1) ? 0 : s2.route.getInt(move.index2 + 1);
 
         // Old arcs
-        double oldR1 = travelTimes[prev1][node1] + travelTimes[node1][next1];
-        double oldR2 = travelTimes[prev2][node2] + travelTimes[node2][next2];
+        double oldR1 = travelTimes.get(prev1, node1) + travelTimes.get(node1, next1);
+        double oldR2 = travelTimes.get(prev2, node2) + travelTimes.get(node2, next2);
 
         // New arcs after swap
-        double newR1 = travelTimes[prev1][node2] + travelTimes[node2][next1];
-        double newR2 = travelTimes[prev2][node1] + travelTimes[node1][next2];
+        double newR1 = travelTimes.get(prev1, node2) + travelTimes.get(node2, next1);
+        double newR2 = travelTimes.get(prev2, node1) + travelTimes.get(node1, next2);
 
         double deltaR1 = oldR1 - newR1;
         double deltaR2 = oldR2 - newR2;
@@ -109,34 +278,20 @@ public class InterSwap implements Neighborhood {
         double newL2 = s2.totalTime - service2 + service1 - deltaR2;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
         double newC1 = s1.serviceTime - service1 + service2;
         double newC2 = s2.serviceTime - service2 + service1;
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement, newL1, newC1, newL2, newC2);
 
     }
 
@@ -145,64 +300,60 @@ public class InterSwap implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s1 = shifts.get(move.route1);
         Shift s2 = shifts.get(move.route2);
 
-        int node1 = s1.route.get(move.index1);
-        int node2 = s2.route.get(move.index2);
+        int node1 = s1.route.getInt(move.index1);
+        int node2 = s2.route.getInt(move.index2);
 
-        Stop stop1 = instance.getStops().get(node1);
-        Stop stop2 = instance.getStops().get(node2);
-
-        double service1 = stop1.serviceTime;
-        double service2 = stop2.serviceTime;
+        double service1 = instance.serviceTime[node1];
+        double service2 = instance.serviceTime[node2];
 
         // Neighbors in route 1
-        int prev1 = (move.index1 == 0) ? 0 : s1.route.get(move.index1 - 1);
-        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.get(move.index1 + 1);
+        int prev1 = (move.index1 == 0) ? 0 : s1.route.getInt(move.index1 - 1);
+        int next1 = (move.index1 == s1.route.size() - 1) ? 0 : s1.route.getInt(move.index1 + 1);
 
         // Neighbors in route 2
-        int prev2 = (move.index2 == 0) ? 0 : s2.route.get(move.index2 - 1);
-        int next2 = (move.index2 == s2.route.size() - 1) ? 0 : s2.route.get(move.index2 + 1);
+        int prev2 = (move.index2 == 0) ? 0 : s2.route.getInt(move.index2 - 1);
+        int next2 = (move.index2 == s2.route.size() - 1) ? 0 : s2.route.getInt(move.index2 + 1);
 
         // Old arcs
         // Old arcs
         double oldR1 = 0.0;
         double oldR2 = 0.0;
         if (s1.nightShift == 1) {
-            oldR1 = travelTimesNight[prev1][node1] + travelTimesNight[node1][next1];
+            oldR1 = travelTimesNight.get(prev1, node1) + travelTimesNight.get(node1, next1);
         } else {
-            oldR1 = travelTimesDay[prev1][node1] + travelTimesDay[node1][next1];
+            oldR1 = travelTimesDay.get(prev1, node1) + travelTimesDay.get(node1, next1);
         }
 
         if (s2.nightShift == 1) {
-            oldR2 = travelTimesNight[prev2][node2] + travelTimesNight[node2][next2];
+            oldR2 = travelTimesNight.get(prev2, node2) + travelTimesNight.get(node2, next2);
         } else {
-            oldR2 = travelTimesDay[prev2][node2] + travelTimesDay[node2][next2];
+            oldR2 = travelTimesDay.get(prev2, node2) + travelTimesDay.get(node2, next2);
         }
 
         // New arcs after swap
         double newR1 = 0.0;
         double newR2 = 0.0;
-        if (s1.nightShift == 1 || instance.getStops().get(node2).nightShift == 1) {
-            newR1 = travelTimesNight[prev1][node2] + travelTimesNight[node2][next1];
+        if (s1.nightShift == 1 || instance.nightFlag[node2] == 1) {
+            newR1 = travelTimesNight.get(prev1, node2) + travelTimesNight.get(node2, next1);
         } else {
-            newR1 = travelTimesDay[prev1][node2] + travelTimesDay[node2][next1];
+            newR1 = travelTimesDay.get(prev1, node2) + travelTimesDay.get(node2, next1);
         }
 
-        if (s2.nightShift == 1 || instance.getStops().get(node1).nightShift == 1) {
-            newR2 = travelTimesNight[prev2][node1] + travelTimesNight[node1][next2];
+        if (s2.nightShift == 1 || instance.nightFlag[node1] == 1) {
+            newR2 = travelTimesNight.get(prev2, node1) + travelTimesNight.get(node1, next2);
         } else {
-            newR2 = travelTimesDay[prev2][node1] + travelTimesDay[node1][next2];
+            newR2 = travelTimesDay.get(prev2, node1) + travelTimesDay.get(node1, next2);
         }
 
         double deltaR1 = oldR1 - newR1;
@@ -212,78 +363,46 @@ public class InterSwap implements Neighborhood {
         double newL2 = s2.totalTime - service2 + service1 - deltaR2;
 
         if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
         double newC1 = s1.serviceTime - service1 + service2;
         double newC2 = s2.serviceTime - service2 + service1;
 
-        double L1 = s1.totalTime, L2 = s2.totalTime;
-        double C1 = s1.serviceTime, C2 = s2.serviceTime;
-
-        double sumLNew  = sumL  - L1 - L2 + newL1 + newL2;
-        double sumL2New = sumL2 - L1*L1 - L2*L2 + newL1*newL1 + newL2*newL2;
-
-        double sumCNew  = sumC  - C1 - C2 + newC1 + newC2;
-        double sumC2New = sumC2 - C1*C1 - C2*C2 + newC1*newC1 + newC2*newC2;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
 
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-        double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
         if (Math.abs(improvement) < EPS) improvement = 0.0;
 
-        return new Evaluation(improvement, true);
+        return result.set(improvement, newL1, newC1, newL2, newC2);
 
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
 
         Shift s1 = newShifts.get(move.route1);
         Shift s2 = newShifts.get(move.route2);
 
-        int node1 = s1.route.get(move.index1);
-        int node2 = s2.route.get(move.index2);
+        int node1 = s1.route.getInt(move.index1);
+        int node2 = s2.route.getInt(move.index2);
 
         // Swap the nodes
-        s1.route.set(move.index1, node2);
-        s2.route.set(move.index2, node1);
-        s1.nightShift = Utils.containsNightStop(s1.route, instance) ? 1 : 0;
-        s2.nightShift = Utils.containsNightStop(s2.route, instance) ? 1 : 0;
-
-        return newShifts;
-    }
-
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
+        s1.setStopAt(move.index1, node2, instance);
+        s2.setStopAt(move.index2, node1, instance);
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
 
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+        return result;
     }
 }
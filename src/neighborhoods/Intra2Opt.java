@@ -1,39 +1,75 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
 import core.Shift;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class Intra2Opt implements Neighborhood {
     private static final double EPS = 1e-6;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        calculateGlobalSums(shifts);
         List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        context = ScanContext.of(shifts);
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+    }
 
-        for (int r = 0; r < shifts.size(); r++) {
-            List<Integer> ids = shifts.get(r).route;
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTRA_2OPT);
+
+        for (int r = fromRoute; r < toRoute; r++) {
+            IntRoute ids = shifts.get(r).route;
 
             if (ids.size()< 3) continue;
+            if (context.skipPair(r, r)) continue;
 
             for (int i = 1; i < ids.size() - 2; i++) {
                 for (int j = i + 1; j < ids.size() -1; j++) {
-                    moves.add(new Move(r, r, i, j, Move.MoveType.INTRA_2OPT));
+                    if (!visitor.visit(cursor.set(r, r, i, j))) return false;
                 }
             }
         }
-        return moves;
+        return true;
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        if (shifts.isEmpty()) return null;
+        int r = rnd.nextInt(shifts.size());
+        IntRoute ids = shifts.get(r).route;
+        if (ids.size() < 4) return null;
+
+        // Two distinct positions among the stops, reversed between them
+        int a = 1 + rnd.nextInt(ids.size() - 2);
+        int b = 1 + rnd.nextInt(ids.size() - 3);
+        if (b >= a) b++;
+        return new Move(r, r, Math.min(a, b), Math.max(a, b), Move.MoveType.INTRA_2OPT);
     }
 
     @Override
@@ -41,47 +77,40 @@ public class Intra2Opt implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s = shifts.get(move.route1);
-        List<Integer> ids = s.route;
+        IntRoute ids = s.route;
         int n = ids.size();
 
         int i = move.index1;
         int j = move.index2;
 
         if (n < 3) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        int a = (i == 0) ? 0 : ids.get(i - 1);
-        int b = ids.get(i);
-        int c = ids.get(j);
-        int d = (j == n - 1) ? 0 : ids.get(j + 1);
+        int a = (i == 0) ? 0 : ids.getInt(i - 1);
+        int b = ids.getInt(i);
+        int c = ids.getInt(j);
+        int d = (j == n - 1) ? 0 : ids.getInt(j + 1);
 
         // External edges
         double deltaExt =
-                travelTimes[a][b] +
-                        travelTimes[c][d] -
-                        travelTimes[a][c] -
-                        travelTimes[b][d];
-
-        // Internal edges (forward vs reversed)
-        double origInternal = 0.0;
-        double revInternal = 0.0;
-
-        for (int k = i; k < j; k++) {
-            int u = ids.get(k);
-            int v = ids.get(k + 1);
-            origInternal += travelTimes[u][v];
-            revInternal += travelTimes[v][u];
-        }
+                travelTimes.get(a, b) +
+                        travelTimes.get(c, d) -
+                        travelTimes.get(a, c) -
+                        travelTimes.get(b, d);
+
+        // Internal edges (forward vs reversed), constant time from the prefix sums
+        s.ensurePrefixSums(travelTimes, instance);
+        double origInternal = s.travelBetween(travelTimes, i, j);
+        double revInternal = s.reverseTravelBetween(travelTimes, i, j);
 
         double deltaInternal = origInternal - revInternal;
 
@@ -92,24 +121,15 @@ public class Intra2Opt implements Neighborhood {
         double newL = oldL - deltaTravel;
 
         if (newL > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double sumLNew  = sumL  - oldL + newL;
-        double sumL2New = sumL2 - oldL * oldL + newL * newL;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
+        double objectiveDelta = objective.delta(oldL, s.serviceTime, newL, s.serviceTime);
 
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCOld;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
 
         if (Math.abs(improvement) < EPS) improvement = 0.0;
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
@@ -117,51 +137,44 @@ public class Intra2Opt implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s = shifts.get(move.route1);
         
-        double[][] travelTimes = s.nightShift == 1 ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix travelTimes = s.nightShift == 1 ? travelTimesNight : travelTimesDay;
 
-        List<Integer> ids = s.route;
+        IntRoute ids = s.route;
         int n = ids.size();
 
         int i = move.index1;
         int j = move.index2;
 
         if (n < 3) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        int a = (i == 0) ? 0 : ids.get(i - 1);
-        int b = ids.get(i);
-        int c = ids.get(j);
-        int d = (j == n - 1) ? 0 : ids.get(j + 1);
+        int a = (i == 0) ? 0 : ids.getInt(i - 1);
+        int b = ids.getInt(i);
+        int c = ids.getInt(j);
+        int d = (j == n - 1) ? 0 : ids.getInt(j + 1);
 
         // External edges
         double deltaExt =
-                travelTimes[a][b] +
-                        travelTimes[c][d] -
-                        travelTimes[a][c] -
-                        travelTimes[b][d];
-
-        // Internal edges (forward vs reversed)
-        double origInternal = 0.0;
-        double revInternal = 0.0;
-
-        for (int k = i; k < j; k++) {
-            int u = ids.get(k);
-            int v = ids.get(k + 1);
-            origInternal += travelTimes[u][v];
-            revInternal += travelTimes[v][u];
-        }
+                travelTimes.get(a, b) +
+                        travelTimes.get(c, d) -
+                        travelTimes.get(a, c) -
+                        travelTimes.get(b, d);
+
+        // Internal edges (forward vs reversed), constant time from the prefix sums
+        s.ensurePrefixSums(travelTimes, instance);
+        double origInternal = s.travelBetween(travelTimes, i, j);
+        double revInternal = s.reverseTravelBetween(travelTimes, i, j);
 
         double deltaInternal = origInternal - revInternal;
 
@@ -172,63 +185,35 @@ public class Intra2Opt implements Neighborhood {
         double newL = oldL - deltaTravel;
 
         if (newL > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double sumLNew  = sumL  - oldL + newL;
-        double sumL2New = sumL2 - oldL * oldL + newL * newL;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCOld;
+        double objectiveDelta = objective.delta(oldL, s.serviceTime, newL, s.serviceTime);
 
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
 
         if (Math.abs(improvement) < EPS) improvement = 0.0;
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1);
 
         Shift s = newShifts.get(move.route1);
         int i = move.index1;
         int j = move.index2;
 
         // Reverse the segment [i, j]
-        Collections.reverse(s.route.subList(i, j + 1));
+        s.reverseStops(i, j);
 
-        return newShifts;
-    }
-
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
-
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+        return result;
     }
 }
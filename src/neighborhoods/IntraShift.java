@@ -1,39 +1,76 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
 import core.Shift;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class IntraShift implements Neighborhood {
     private static final double EPS = 1e-6;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        calculateGlobalSums(shifts);
         List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        context = ScanContext.of(shifts);
+    }
 
-        for (int r = 0; r < shifts.size(); r++) {
-            List<Integer> ids = shifts.get(r).route;
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTRA_SHIFT);
+
+        for (int r = fromRoute; r < toRoute; r++) {
+            IntRoute ids = shifts.get(r).route;
 
             if (ids.size() <= 2) continue;
+            if (context.skipPair(r, r)) continue;
 
             for (int i = 1; i < ids.size() - 1; i++) {          // exclude depot at 0 and n-1
                 for (int j = 1; j < ids.size() - 1; j++) {      // exclude depot at 0 and n-1
                     if (i == j) continue;
-                    moves.add(new Move(r, r, i, j, Move.MoveType.INTRA_SHIFT));
+                    if (!visitor.visit(cursor.set(r, r, i, j))) return false;
                 }
             }
         }
-        return moves;
+        return true;
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        if (shifts.isEmpty()) return null;
+        int r = rnd.nextInt(shifts.size());
+        IntRoute ids = shifts.get(r).route;
+        if (ids.size() < 4) return null;
+
+        // Stop i moves to position j, j != i
+        int i = 1 + rnd.nextInt(ids.size() - 2);
+        int j = 1 + rnd.nextInt(ids.size() - 3);
+        if (j >= i) j++;
+        return new Move(r, r, i, j, Move.MoveType.INTRA_SHIFT);
     }
 
 
@@ -42,45 +79,40 @@ public class IntraShift implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s = shifts.get(move.route1);
-        List<Integer> ids = s.route;
+        IntRoute ids = s.route;
         int n = ids.size();
 
         int i = move.index1;
         int j = move.index2;
 
-        int node = ids.get(i);
+        int node = ids.getInt(i);
 
 
         // Neighbors around removal position
-        int prevI = (i == 0) ? 0 : ids.get(i - 1);
-        int nextI = (i == n - 1) ? 0 : ids.get(i + 1);
+        int prevI = (i == 0) ? 0 : ids.getInt(i - 1);
+        int nextI = (i == n - 1) ? 0 : ids.getInt(i + 1);
 
         double deltaRemove =
-                travelTimes[prevI][node] +
-                        travelTimes[node][nextI] -
-                        travelTimes[prevI][nextI];
-
-        // Build list without the removed node
-        List<Integer> idsRemoved = new ArrayList<>(ids);
-        idsRemoved.remove(i);
+                travelTimes.get(prevI, node) +
+                        travelTimes.get(node, nextI) -
+                        travelTimes.get(prevI, nextI);
 
-        // Neighbors around insertion position
-        int prevJ = (j == 0) ? 0 : idsRemoved.get(j - 1);
-        int nextJ = (j == idsRemoved.size()) ? 0 : idsRemoved.get(j);
+        // Neighbors around insertion position, indexed in the route without the removed node
+        int prevJ = (j == 0) ? 0 : removedAt(ids, i, j - 1);
+        int nextJ = (j == n - 1) ? 0 : removedAt(ids, i, j);
 
         double deltaInsert =
-                travelTimes[prevJ][nextJ] -
-                        travelTimes[prevJ][node] -
-                        travelTimes[node][nextJ];
+                travelTimes.get(prevJ, nextJ) -
+                        travelTimes.get(prevJ, node) -
+                        travelTimes.get(node, nextJ);
 
         double deltaTravel  = deltaRemove + deltaInsert;
 
@@ -89,24 +121,15 @@ public class IntraShift implements Neighborhood {
         double newL = oldL - deltaTravel;
 
         if (newL > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double sumLNew  = sumL  - oldL + newL;
-        double sumL2New = sumL2 - oldL * oldL + newL * newL;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
+        double objectiveDelta = objective.delta(oldL, s.serviceTime, newL, s.serviceTime);
 
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCOld;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
 
         if (Math.abs(improvement) < EPS) improvement = 0.0;
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
@@ -114,49 +137,44 @@ public class IntraShift implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s = shifts.get(move.route1);
 
-        double[][] travelTimes = s.nightShift == 1 ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix travelTimes = s.nightShift == 1 ? travelTimesNight : travelTimesDay;
         
-        List<Integer> ids = s.route;
+        IntRoute ids = s.route;
         int n = ids.size();
 
         int i = move.index1;
         int j = move.index2;
 
-        int node = ids.get(i);
+        int node = ids.getInt(i);
 
 
         // Neighbors around removal position
-        int prevI = (i == 0) ? 0 : ids.get(i - 1);
-        int nextI = (i == n - 1) ? 0 : ids.get(i + 1);
+        int prevI = (i == 0) ? 0 : ids.getInt(i - 1);
+        int nextI = (i == n - 1) ? 0 : ids.getInt(i + 1);
 
         double deltaRemove =
-                travelTimes[prevI][node] +
-                        travelTimes[node][nextI] -
-                        travelTimes[prevI][nextI];
-
-        // Build list without the removed node
-        List<Integer> idsRemoved = new ArrayList<>(ids);
-        idsRemoved.remove(i);
+                travelTimes.get(prevI, node) +
+                        travelTimes.get(node, nextI) -
+                        travelTimes.get(prevI, nextI);
 
-        // Neighbors around insertion position
-        int prevJ = (j == 0) ? 0 : idsRemoved.get(j - 1);
-        int nextJ = (j == idsRemoved.size()) ? 0 : idsRemoved.get(j);
+        // Neighbors around insertion position, indexed in the route without the removed node
+        int prevJ = (j == 0) ? 0 : removedAt(ids, i, j - 1);
+        int nextJ = (j == n - 1) ? 0 : removedAt(ids, i, j);
 
         double deltaInsert =
-                travelTimes[prevJ][nextJ] -
-                        travelTimes[prevJ][node] -
-                        travelTimes[node][nextJ];
+                travelTimes.get(prevJ, nextJ) -
+                        travelTimes.get(prevJ, node) -
+                        travelTimes.get(node, nextJ);
 
         double deltaTravel  = deltaRemove + deltaInsert;
 
@@ -165,63 +183,40 @@ public class IntraShift implements Neighborhood {
         double newL = oldL - deltaTravel;
 
         if (newL > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double sumLNew  = sumL  - oldL + newL;
-        double sumL2New = sumL2 - oldL * oldL + newL * newL;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
+        double objectiveDelta = objective.delta(oldL, s.serviceTime, newL, s.serviceTime);
 
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCOld;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
 
         if (Math.abs(improvement) < EPS) improvement = 0.0;
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1);
 
         Shift s = newShifts.get(move.route1);
         int i = move.index1;
         int j = move.index2;
 
-        int node = s.route.remove(i);
-        s.route.add(j, node);
+        int node = s.removeStopAt(i, instance);
+        s.insertStop(j, node, instance);
 
-        return newShifts;
+        return result;
     }
 
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
-
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+    // Element k of the route after removing position removed, without building that route
+    private static int removedAt(IntRoute ids, int removed, int k) {
+        return ids.getInt(k < removed ? k : k + 1);
     }
 }
@@ -1,38 +1,74 @@
 package neighborhoods;
 
 import core.HTMInstance;
+import core.IntRoute;
 import core.Shift;
+import core.TravelTimeMatrix;
 import search.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class IntraSwap implements Neighborhood {
     private static final double EPS = 1e-6;
 
-    private double sumL = 0.0;
-    private double sumL2 = 0.0;
-    private double sumC = 0.0;
-    private double sumC2 = 0.0;
-    private int m = 0;
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
 
     @Override
     public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
-        calculateGlobalSums(shifts);
-
         List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
 
-        for (int r = 0; r < shifts.size(); r++) {
-            List<Integer> ids = shifts.get(r).route;
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
 
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        context = ScanContext.of(shifts);
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+
+        Move cursor = new Move(0, 0, 0, 0, Move.MoveType.INTRA_SWAP);
+
+        for (int r = fromRoute; r < toRoute; r++) {
+            if (context.skipPair(r, r)) continue;
+            IntRoute ids = shifts.get(r).route;
 
             for (int i = 1; i < ids.size() - 2; i++) {
                 for (int j = i + 1; j < ids.size() -1; j++) {
-                    moves.add(new Move(r, r, i, j, Move.MoveType.INTRA_SWAP));
+                    if (!visitor.visit(cursor.set(r, r, i, j))) return false;
                 }
             }
         }
-        return moves;
+        return true;
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        if (shifts.isEmpty()) return null;
+        int r = rnd.nextInt(shifts.size());
+        IntRoute ids = shifts.get(r).route;
+        if (ids.size() < 4) return null;
+
+        // Two distinct stops, i before j
+        int a = 1 + rnd.nextInt(ids.size() - 2);
+        int b = 1 + rnd.nextInt(ids.size() - 3);
+        if (b >= a) b++;
+        return new Move(r, r, Math.min(a, b), Math.max(a, b), Move.MoveType.INTRA_SWAP);
     }
 
     @Override
@@ -40,58 +76,57 @@ public class IntraSwap implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimes,
+            TravelTimeMatrix travelTimes,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s = shifts.get(move.route1);
-        List<Integer> ids = s.route;
+        IntRoute ids = s.route;
         int n = ids.size();
 
         int i = move.index1;
         int j = move.index2;
 
-        int nodeI = ids.get(i);
-        int nodeJ = ids.get(j);
+        int nodeI = ids.getInt(i);
+        int nodeJ = ids.getInt(j);
 
         // Neighbors around i
-        int prevI = (i == 0) ? 0 : ids.get(i - 1);
-        int nextI = (i == n - 1) ? 0 : ids.get(i + 1);
+        int prevI = (i == 0) ? 0 : ids.getInt(i - 1);
+        int nextI = (i == n - 1) ? 0 : ids.getInt(i + 1);
 
         // Neighbors around j
-        int prevJ = (j == 0) ? 0 : ids.get(j - 1);
-        int nextJ = (j == n - 1) ? 0 : ids.get(j + 1);
+        int prevJ = (j == 0) ? 0 : ids.getInt(j - 1);
+        int nextJ = (j == n - 1) ? 0 : ids.getInt(j + 1);
 
         double oldCost, newCost;
 
         if (j == i + 1) {
             // Adjacent swap case
             oldCost =
-                    travelTimes[prevI][nodeI] +
-                            travelTimes[nodeI][nodeJ] +
-                            travelTimes[nodeJ][nextJ];
+                    travelTimes.get(prevI, nodeI) +
+                            travelTimes.get(nodeI, nodeJ) +
+                            travelTimes.get(nodeJ, nextJ);
 
             newCost =
-                    travelTimes[prevI][nodeJ] +
-                            travelTimes[nodeJ][nodeI] +
-                            travelTimes[nodeI][nextJ];
+                    travelTimes.get(prevI, nodeJ) +
+                            travelTimes.get(nodeJ, nodeI) +
+                            travelTimes.get(nodeI, nextJ);
         } else {
             // Non-adjacent swap
             oldCost =
-                    travelTimes[prevI][nodeI] +
-                            travelTimes[nodeI][nextI] +
-                            travelTimes[prevJ][nodeJ] +
-                            travelTimes[nodeJ][nextJ];
+                    travelTimes.get(prevI, nodeI) +
+                            travelTimes.get(nodeI, nextI) +
+                            travelTimes.get(prevJ, nodeJ) +
+                            travelTimes.get(nodeJ, nextJ);
 
             newCost =
-                    travelTimes[prevI][nodeJ] +
-                            travelTimes[nodeJ][nextI] +
-                            travelTimes[prevJ][nodeI] +
-                            travelTimes[nodeI][nextJ];
+                    travelTimes.get(prevI, nodeJ) +
+                            travelTimes.get(nodeJ, nextI) +
+                            travelTimes.get(prevJ, nodeI) +
+                            travelTimes.get(nodeI, nextJ);
         }
 
         double deltaTravel = oldCost - newCost;
@@ -101,24 +136,15 @@ public class IntraSwap implements Neighborhood {
         double newL = oldL - deltaTravel;
 
         if (newL > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double sumLNew  = sumL  - oldL + newL;
-        double sumL2New = sumL2 - oldL * oldL + newL * newL;
-
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCOld;
+        double objectiveDelta = objective.delta(oldL, s.serviceTime, newL, s.serviceTime);
 
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
 
         if (Math.abs(improvement) < EPS) improvement = 0.0;
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
@@ -126,62 +152,61 @@ public class IntraSwap implements Neighborhood {
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration,
-            ObjectiveFunction objectiveFunction
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
     ) {
-        Objective.BalancedObj obj = (Objective.BalancedObj) objectiveFunction;
-        double lambdaL = obj.lambdaL;
-        double lambdaC = obj.lambdaC;
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
 
         Shift s = shifts.get(move.route1);
 
-        double[][] travelTimes = s.nightShift == 1 ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix travelTimes = s.nightShift == 1 ? travelTimesNight : travelTimesDay;
         
-        List<Integer> ids = s.route;
+        IntRoute ids = s.route;
         int n = ids.size();
 
         int i = move.index1;
         int j = move.index2;
 
-        int nodeI = ids.get(i);
-        int nodeJ = ids.get(j);
+        int nodeI = ids.getInt(i);
+        int nodeJ = ids.getInt(j);
 
         // Neighbors around i
-        int prevI = (i == 0) ? 0 : ids.get(i - 1);
-        int nextI = (i == n - 1) ? 0 : ids.get(i + 1);
+        int prevI = (i == 0) ? 0 : ids.getInt(i - 1);
+        int nextI = (i == n - 1) ? 0 : ids.getInt(i + 1);
 
         // Neighbors around j
-        int prevJ = (j == 0) ? 0 : ids.get(j - 1);
-        int nextJ = (j == n - 1) ? 0 : ids.get(j + 1);
+        int prevJ = (j == 0) ? 0 : ids.getInt(j - 1);
+        int nextJ = (j == n - 1) ? 0 : ids.getInt(j + 1);
 
         double oldCost, newCost;
 
         if (j == i + 1) {
             // Adjacent swap case
             oldCost =
-                    travelTimes[prevI][nodeI] +
-                            travelTimes[nodeI][nodeJ] +
-                            travelTimes[nodeJ][nextJ];
+                    travelTimes.get(prevI, nodeI) +
+                            travelTimes.get(nodeI, nodeJ) +
+                            travelTimes.get(nodeJ, nextJ);
 
             newCost =
-                    travelTimes[prevI][nodeJ] +
-                            travelTimes[nodeJ][nodeI] +
-                            travelTimes[nodeI][nextJ];
+                    travelTimes.get(prevI, nodeJ) +
+                            travelTimes.get(nodeJ, nodeI) +
+                            travelTimes.get(nodeI, nextJ);
         } else {
             // Non-adjacent swap
             oldCost =
-                    travelTimes[prevI][nodeI] +
-                            travelTimes[nodeI][nextI] +
-                            travelTimes[prevJ][nodeJ] +
-                            travelTimes[nodeJ][nextJ];
+                    travelTimes.get(prevI, nodeI) +
+                            travelTimes.get(nodeI, nextI) +
+                            travelTimes.get(prevJ, nodeJ) +
+                            travelTimes.get(nodeJ, nextJ);
 
             newCost =
-                    travelTimes[prevI][nodeJ] +
-                            travelTimes[nodeJ][nextI] +
-                            travelTimes[prevJ][nodeI] +
-                            travelTimes[nodeI][nextJ];
+                    travelTimes.get(prevI, nodeJ) +
+                            travelTimes.get(nodeJ, nextI) +
+                            travelTimes.get(prevJ, nodeI) +
+                            travelTimes.get(nodeI, nextJ);
         }
 
         double deltaTravel = oldCost - newCost;
@@ -191,67 +216,35 @@ public class IntraSwap implements Neighborhood {
         double newL = oldL - deltaTravel;
 
         if (newL > maxShiftDuration) {
-            return new Evaluation(0, false);
+            return Evaluation.INFEASIBLE;
         }
 
-        double sumLNew  = sumL  - oldL + newL;
-        double sumL2New = sumL2 - oldL * oldL + newL * newL;
+        double objectiveDelta = objective.delta(oldL, s.serviceTime, newL, s.serviceTime);
 
-        double sseLOld = sumL2 - (sumL * sumL) / m;
-        double sseCOld = sumC2 - (sumC * sumC) / m;
-
-        double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
-
-        double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
-        double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCOld;
-
-        double improvement = oldObj - newObj;
+        double improvement = -objectiveDelta;
 
         if (Math.abs(improvement) < EPS) improvement = 0.0;
-        return new Evaluation(improvement, true);
+        return result.set(improvement);
     }
 
     @Override
-    public List<Shift> applyMove(
+    public MoveResult applyMove(
             Move move,
             List<Shift> shifts,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> newShifts = new ArrayList<>(shifts);
+        MoveResult result = MoveResult.before(newShifts, move.route1);
 
         Shift s = newShifts.get(move.route1);
         int i = move.index1;
         int j = move.index2;
 
-        int nodeI = s.route.get(i);
-        int nodeJ = s.route.get(j);
-
         // Swap
-        s.route.set(i, nodeJ);
-        s.route.set(j, nodeI);
+        s.swapStops(i, j);
 
-        return newShifts;
-    }
-
-    private void calculateGlobalSums(List<Shift> shifts) {
-        m = (shifts == null) ? 0 : shifts.size();
-
-        sumL = sumL2 = 0.0;
-        sumC = sumC2 = 0.0;
-
-        for (Shift s : shifts) {
-            if (s == null) continue;
-
-            double L = s.totalTime;
-            double C = s.serviceTime;
-
-            sumL  += L;
-            sumL2 += L * L;
-
-            sumC  += C;
-            sumC2 += C * C;
-        }
+        return result;
     }
 }
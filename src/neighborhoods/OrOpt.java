@@ -0,0 +1,389 @@
+package neighborhoods;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.NeighborLists;
+import core.Shift;
+import core.TravelTimeMatrix;
+import search.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Or-opt: moves a segment of 2 up to maxSegmentLength consecutive stops to another place in the same shift or
+ * into another shift, optionally reversed.
+ *
+ * index1 is the first stop of the segment and index2 the gap it goes to, between positions index2 - 1 and
+ * index2 of the target route before the move; variant holds the segment length and the reversal (see
+ * variant()). Moves between shifts never empty the source shift. Every move is evaluated in constant time from
+ * the prefix sums of the shifts. With day and night matrices this is exact also when a shift gains its first
+ * night stop or loses its last one: that shift is evaluated on the matrix it switches to.
+ */
+public class OrOpt implements Neighborhood {
+    private static final double EPS = 1e-6;
+    private static final int MIN_SEGMENT_LENGTH = 2;
+    private final int MAX_NIGHT_SHIFTS = 25;
+
+    public final double breakTime = 30.0;
+    public final double prepTime = 30.0;
+
+    // Global sums of the current scan, replaced (never modified) by prepareScan
+    private volatile ScanContext context = ScanContext.EMPTY;
+
+    private final int maxSegmentLength;
+    private final boolean reversal;
+
+    // Granular mode when set: only moves that put an end of the segment next to one of its k nearest neighbors
+    private final NeighborLists neighbors;
+
+    public OrOpt() {
+        this(3, true, null);
+    }
+
+    public OrOpt(int maxSegmentLength, boolean reversal) {
+        this(maxSegmentLength, reversal, null);
+    }
+
+    public OrOpt(int maxSegmentLength, boolean reversal, NeighborLists neighbors) {
+        if (maxSegmentLength < MIN_SEGMENT_LENGTH) {
+            throw new IllegalArgumentException("Or-opt segments have at least " + MIN_SEGMENT_LENGTH + " stops, got maximum " + maxSegmentLength);
+        }
+        this.maxSegmentLength = maxSegmentLength;
+        this.reversal = reversal;
+        this.neighbors = neighbors;
+    }
+
+    // Move.variant of a segment of the given length, reversed or not
+    static int variant(int length, boolean reversed) {
+        return 2 * length + (reversed ? 1 : 0);
+    }
+
+    static int segmentLength(Move move) {
+        return move.variant >> 1;
+    }
+
+    static boolean reversed(Move move) {
+        return (move.variant & 1) == 1;
+    }
+
+    @Override
+    public List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance) {
+        List<Move> moves = new ArrayList<>();
+        forEachMove(shifts, compatibility, instance, m -> moves.add(m.copy()));
+        return moves;
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        prepareScan(shifts);
+        return forEachMove(shifts, compatibility, instance, 0, shifts.size(), visitor);
+    }
+
+    @Override
+    public void prepareScan(List<Shift> shifts) {
+        prepareScan(ScanContext.of(shifts));
+    }
+
+    @Override
+    public void prepareScan(ScanContext context) {
+        this.context = context;
+
+        if (context.numNightShifts > MAX_NIGHT_SHIFTS) {
+            System.out.println("Too many night shifts: " + context.numNightShifts);
+        }
+    }
+
+    @Override
+    public boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        Move cursor = new Move(0, 0, 0, 0, 0, Move.MoveType.OR_OPT);
+        int numNightShifts = context.numNightShifts;
+
+        if (numNightShifts > MAX_NIGHT_SHIFTS) {
+            return true;
+        }
+
+        for (int r1 = fromRoute; r1 < toRoute; r1++) {
+            Shift s1 = shifts.get(r1);
+            int n1 = s1.route.size();
+
+            for (int r2 = 0; r2 < shifts.size(); r2++) {
+                if (context.skipPair(r1, r2)) continue;
+                Shift s2 = shifts.get(r2);
+                int n2 = s2.route.size();
+
+                for (int i = 1; i < n1 - 1; i++) {
+                    for (int length = MIN_SEGMENT_LENGTH; length <= maxSegmentLength; length++) {
+                        if (!fits(n1, r1 == r2, i, length)) break;
+
+                        for (int j = 1; j < n2; j++) {
+                            if (r1 == r2 && j >= i && j <= i + length) continue;
+                            for (int rev = 0; rev <= (reversal ? 1 : 0); rev++) {
+                                if (!generates(s1, s2, r1 == r2, i, length, j, rev == 1, compatibility, instance, numNightShifts)) continue;
+                                if (!visitor.visit(cursor.set(r1, r2, i, j, variant(length, rev == 1)))) return false;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        int m = shifts.size();
+        if (m == 0 || context.numNightShifts > MAX_NIGHT_SHIFTS) return null;
+
+        int r1 = rnd.nextInt(m);
+        int r2 = rnd.nextInt(m);
+        Shift s1 = shifts.get(r1);
+        Shift s2 = shifts.get(r2);
+
+        int length = MIN_SEGMENT_LENGTH + rnd.nextInt(maxSegmentLength - MIN_SEGMENT_LENGTH + 1);
+        boolean rev = reversal && rnd.nextBoolean();
+        int n1 = s1.route.size();
+        if (n1 - 1 - length < 1) return null;
+
+        int i = 1 + rnd.nextInt(n1 - 1 - length);
+        if (!fits(n1, r1 == r2, i, length)) return null;
+        int j = 1 + rnd.nextInt(s2.route.size() - 1);
+        if (r1 == r2 && j >= i && j <= i + length) return null;
+        if (!generates(s1, s2, r1 == r2, i, length, j, rev, compatibility, instance, context.numNightShifts)) return null;
+
+        return new Move(r1, r2, i, j, variant(length, rev), Move.MoveType.OR_OPT);
+    }
+
+    // Whether the segment of the given length at i lies within the stops, leaving a stop behind if it changes shifts
+    private static boolean fits(int n1, boolean intra, int i, int length) {
+        int last = i + length - 1;
+        if (last > n1 - 2) return false;
+        return intra || n1 - 2 - length >= 1;
+    }
+
+    // Whether forEachMove generates the move: granular mode and the night-shift cap
+    private boolean generates(Shift s1, Shift s2, boolean intra, int i, int length, int j, boolean rev,
+                              RouteCompatibility compatibility, HTMInstance instance, int numNightShifts) {
+        IntRoute ids1 = s1.route;
+        IntRoute ids2 = s2.route;
+        int last = i + length - 1;
+
+        if (neighbors != null) {
+            // Granular: an end of the segment must end up next to one of its neighbors
+            int head = rev ? ids1.getInt(last) : ids1.getInt(i);
+            int tail = rev ? ids1.getInt(i) : ids1.getInt(last);
+            if (!neighbors.isNeighbor(s2.nightShift, head, ids2.getInt(j - 1))
+                    && !neighbors.isNeighbor(s2.nightShift, tail, ids2.getInt(j))) {
+                return false;
+            }
+        }
+
+        if (!intra && numNightShifts == MAX_NIGHT_SHIFTS && !compatibility.compatible(s1, s2)) {
+            // A day shift may not receive night stops when the cap is reached
+            if (s2.nightShift != 1 && s1.nightStopsBetween(i, last, instance) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The moves between two shifts and their new lengths only depend on these two shifts
+    @Override
+    public boolean cacheableByRoutePair() {
+        return true;
+    }
+
+    @Override
+    public Evaluation evaluateMove(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimes,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
+    ) {
+        return evaluate(move, shifts, instance, travelTimes, travelTimes, maxShiftDuration, objectiveFunction, result);
+    }
+
+    @Override
+    public Evaluation evaluateMoveDiffTimes(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
+    ) {
+        return evaluate(move, shifts, instance, travelTimesNight, travelTimesDay, maxShiftDuration, objectiveFunction, result);
+    }
+
+    // With a single matrix, pass it as both the night and the day matrix
+    private Evaluation evaluate(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            Evaluation result
+    ) {
+        ObjectiveFunction.State objective = context.objective(objectiveFunction);
+
+        Shift s1 = shifts.get(move.route1);
+        int i = move.index1;
+        int j = move.index2;
+        int last = i + segmentLength(move) - 1;
+        boolean rev = reversed(move);
+
+        if (move.route1 == move.route2) {
+            TravelTimeMatrix travelTimes = (s1.nightShift == 1) ? travelTimesNight : travelTimesDay;
+            s1.ensurePrefixSums(travelTimes, instance);
+            IntRoute ids = s1.route;
+
+            int prev = ids.getInt(i - 1);
+            int first = ids.getInt(i);
+            int lastStop = ids.getInt(last);
+            int next = ids.getInt(last + 1);
+            int a = ids.getInt(j - 1);
+            int b = ids.getInt(j);
+            int head = rev ? lastStop : first;
+            int tail = rev ? first : lastStop;
+
+            // Close the gap of the segment, open the gap (a, b), which still exists once the segment is out
+            double deltaTravel = travelTimes.get(prev, next) - travelTimes.get(prev, first) - travelTimes.get(lastStop, next)
+                    + travelTimes.get(a, head) + travelTimes.get(tail, b) - travelTimes.get(a, b);
+            if (rev) {
+                deltaTravel += s1.reverseTravelBetween(travelTimes, i, last) - s1.travelBetween(travelTimes, i, last);
+            }
+
+            double newL = s1.totalTime + deltaTravel;
+            if (newL > maxShiftDuration) {
+                return Evaluation.INFEASIBLE;
+            }
+
+            double improvement = -objective.delta(s1.totalTime, s1.serviceTime, newL, s1.serviceTime);
+            if (Math.abs(improvement) < EPS) improvement = 0.0;
+            return result.set(improvement, newL, s1.serviceTime, Double.NaN, Double.NaN);
+        }
+
+        Shift s2 = shifts.get(move.route2);
+
+        // Night status after the move decides the matrix each shift is driven on
+        int segmentNight = s1.nightStopsBetween(i, last, instance);
+        boolean night1 = s1.nightShift == 1 && s1.nightStops(instance) > segmentNight;
+        boolean night2 = s2.nightShift == 1 || segmentNight > 0;
+        TravelTimeMatrix times1 = night1 ? travelTimesNight : travelTimesDay;
+        TravelTimeMatrix times2 = night2 ? travelTimesNight : travelTimesDay;
+
+        double segmentService = s1.serviceBetween(i, last);
+        double newC1 = s1.serviceTime - segmentService;
+        double newC2 = s2.serviceTime + segmentService;
+        double newL1 = travelWithout(s1, i, last, instance, times1) + newC1 + breakTime + prepTime;
+        double newL2 = travelWith(s2, j, s1, i, last, rev, instance, times2) + newC2 + breakTime + prepTime;
+
+        if (newL1 > maxShiftDuration || newL2 > maxShiftDuration) {
+            return Evaluation.INFEASIBLE;
+        }
+
+        double objectiveDelta = objective.delta(
+                s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                newL1, newC1, newL2, newC2);
+
+        double improvement = -objectiveDelta;
+        if (Math.abs(improvement) < EPS) improvement = 0.0;
+
+        return result.set(improvement, newL1, newC1, newL2, newC2);
+    }
+
+    @Override
+    public MoveResult applyMove(
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        List<Shift> newShifts = new ArrayList<>(shifts);
+        int i = move.index1;
+        int j = move.index2;
+        int length = segmentLength(move);
+        boolean rev = reversed(move);
+
+        if (move.route1 == move.route2) {
+            MoveResult result = MoveResult.before(newShifts, move.route1);
+            Shift s = newShifts.get(move.route1);
+            int[] segment = removeSegment(s, i, length, instance);
+            // The gap index2 lies before or after the segment, which is no longer in the route
+            insertSegment(s, (j < i) ? j : j - length, segment, rev, instance);
+            s.updateNightShift(instance);
+            return result;
+        }
+
+        MoveResult result = MoveResult.before(newShifts, move.route1, move.route2);
+        Shift s1 = newShifts.get(move.route1);
+        Shift s2 = newShifts.get(move.route2);
+
+        int[] segment = removeSegment(s1, i, length, instance);
+        insertSegment(s2, j, segment, rev, instance);
+        s1.updateNightShift(instance);
+        s2.updateNightShift(instance);
+
+        return result;
+    }
+
+    private static int[] removeSegment(Shift s, int from, int length, HTMInstance instance) {
+        int[] segment = new int[length];
+        for (int k = 0; k < length; k++) {
+            segment[k] = s.removeStopAt(from, instance);
+        }
+        return segment;
+    }
+
+    private static void insertSegment(Shift s, int at, int[] segment, boolean rev, HTMInstance instance) {
+        for (int k = 0; k < segment.length; k++) {
+            s.insertStop(at + k, rev ? segment[segment.length - 1 - k] : segment[k], instance);
+        }
+    }
+
+    // Travel time of the route of s without positions from..to, including the depot arcs
+    private double travelWithout(Shift s, int from, int to, HTMInstance instance, TravelTimeMatrix travelTimes) {
+        s.ensurePrefixSums(travelTimes, instance);
+        IntRoute ids = s.route;
+        int end = ids.size() - 1;
+
+        return travelTimes.get(0, ids.getInt(0))
+                + s.travelBetween(travelTimes, 0, from - 1)
+                + travelTimes.get(ids.getInt(from - 1), ids.getInt(to + 1))
+                + s.travelBetween(travelTimes, to + 1, end)
+                + travelTimes.get(ids.getInt(end), 0);
+    }
+
+    // Travel time of the route of target with positions from..to of source (reversed or not) in gap j
+    private double travelWith(Shift target, int j, Shift source, int from, int to, boolean rev,
+                              HTMInstance instance, TravelTimeMatrix travelTimes) {
+        target.ensurePrefixSums(travelTimes, instance);
+        source.ensurePrefixSums(travelTimes, instance);
+        IntRoute ids = target.route;
+        IntRoute seg = source.route;
+        int end = ids.size() - 1;
+
+        int head = rev ? seg.getInt(to) : seg.getInt(from);
+        int tail = rev ? seg.getInt(from) : seg.getInt(to);
+        double segmentTravel = rev
+                ? source.reverseTravelBetween(travelTimes, from, to)
+                : source.travelBetween(travelTimes, from, to);
+
+        return travelTimes.get(0, ids.getInt(0))
+                + target.travelBetween(travelTimes, 0, j - 1)
+                + travelTimes.get(ids.getInt(j - 1), head)
+                + segmentTravel
+                + travelTimes.get(tail, ids.getInt(j))
+                + target.travelBetween(travelTimes, j, end)
+                + travelTimes.get(ids.getInt(end), 0);
+    }
+}
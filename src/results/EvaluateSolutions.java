@@ -18,10 +18,10 @@ public class EvaluateSolutions {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         ObjectiveFunction objectiveBasic = Objective.totalLength();
 
@@ -0,0 +1,228 @@
+package search;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.TravelTimePair;
+import core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Adaptive large neighborhood search (Ropke and Pisinger).
+ *
+ * Every iteration removes a random number of stops in [minRemoved, maxRemoved] with a destroy operator and
+ * inserts them again with a repair operator. The acceptance function decides on the new solution, just as for
+ * a move in LocalSearch (improvement = old objective - new objective). Both operators are drawn by roulette
+ * wheel over adaptive weights: during a segment of SEGMENT_LENGTH iterations an operator collects a score
+ * whenever its solution is a new best, an improvement or an accepted other solution, and at the end of the
+ * segment its weight moves towards its average score by the reaction factor.
+ */
+public class AdaptiveLargeNeighborhoodSearch {
+    private static final double EPS = 1e-6;
+
+    private static final int SEGMENT_LENGTH = 100;
+    private static final double REACTION_FACTOR = 0.1;
+    private static final double SCORE_NEW_BEST = 33;
+    private static final double SCORE_IMPROVED = 9;
+    private static final double SCORE_ACCEPTED = 13;
+    // Keeps unsuccessful operators selectable
+    private static final double MIN_WEIGHT = 0.01;
+
+    private final List<DestroyOperator> destroyOperators;
+    private final List<RepairOperator> repairOperators;
+    private final AcceptanceFunction acceptanceFunction;
+    private final AnnealingSchedule schedule;
+    private final int maxIterations;
+    private final int minRemoved;
+    private final int maxRemoved;
+    private final double maxShiftDuration;
+    private final ObjectiveFunction objectiveFunction;
+    private final long seed;
+
+    private long timeLimitMillis = 0;
+    private ImprovementListener improvementListener = null;
+
+    private final double[] destroyWeights;
+    private final double[] repairWeights;
+    private int iterations;
+    private double bestObjective;
+
+    public AdaptiveLargeNeighborhoodSearch(
+            List<DestroyOperator> destroyOperators,
+            List<RepairOperator> repairOperators,
+            AcceptanceFunction acceptanceFunction,
+            int maxIterations,
+            int minRemoved,
+            int maxRemoved,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            long seed
+    ) {
+        if (destroyOperators.isEmpty() || repairOperators.isEmpty()) {
+            throw new IllegalArgumentException("ALNS needs at least one destroy and one repair operator");
+        }
+        if (minRemoved < 1 || maxRemoved < minRemoved) {
+            throw new IllegalArgumentException("Number of removed stops must satisfy 1 <= min <= max, got " + minRemoved + " and " + maxRemoved);
+        }
+        this.destroyOperators = new ArrayList<>(destroyOperators);
+        this.repairOperators = new ArrayList<>(repairOperators);
+        // Every search works on its own copy of an annealing schedule, as in LocalSearch
+        if (acceptanceFunction instanceof AnnealingSchedule) {
+            this.schedule = ((AnnealingSchedule) acceptanceFunction).copy();
+            this.acceptanceFunction = this.schedule;
+        } else {
+            this.schedule = null;
+            this.acceptanceFunction = acceptanceFunction;
+        }
+        this.maxIterations = maxIterations;
+        this.minRemoved = minRemoved;
+        this.maxRemoved = maxRemoved;
+        this.maxShiftDuration = maxShiftDuration;
+        this.objectiveFunction = objectiveFunction;
+        this.seed = seed;
+        this.destroyWeights = new double[destroyOperators.size()];
+        this.repairWeights = new double[repairOperators.size()];
+    }
+
+    // Stops a run once it has taken the given wall-clock time; 0 for no limit
+    public void setTimeLimit(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("Time limit must be non-negative, got " + timeLimitMillis);
+        }
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    public void setImprovementListener(ImprovementListener improvementListener) {
+        this.improvementListener = improvementListener;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
+    // Operator weights at the end of the last run, in the order of the constructor lists
+    public double[] getDestroyWeights() {
+        return destroyWeights.clone();
+    }
+
+    public double[] getRepairWeights() {
+        return repairWeights.clone();
+    }
+
+    public List<Shift> run(List<Shift> initialShifts, HTMInstance instance, TravelTimePair travelTimes) {
+        return run(initialShifts, instance, travelTimes.night, travelTimes.day);
+    }
+
+    /**
+     * Runs the search from the given (feasible) shifts, which are not modified, and returns the best
+     * solution it found.
+     */
+    public List<Shift> run(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + timeLimitMillis * 1_000_000L;
+        Random rnd = new Random(seed);
+
+        List<Shift> current = Utils.deepCopyShifts(initialShifts);
+        Utils.recomputeAllShiftsDiffTimes(current, instance, travelTimesNight, travelTimesDay);
+        double currentObjective = objectiveFunction.shifts(current);
+        List<Shift> best = current;
+        bestObjective = currentObjective;
+
+        int numStops = 0;
+        for (Shift s : current) {
+            numStops += Math.max(0, s.route.size() - 2);
+        }
+
+        Arrays.fill(destroyWeights, 1.0);
+        Arrays.fill(repairWeights, 1.0);
+        double[] destroyScores = new double[destroyWeights.length];
+        double[] repairScores = new double[repairWeights.length];
+        int[] destroyUses = new int[destroyWeights.length];
+        int[] repairUses = new int[repairWeights.length];
+
+        for (iterations = 0; iterations < maxIterations; iterations++) {
+            if (timeLimitMillis > 0 && System.nanoTime() >= deadline) break;
+            if (schedule != null) schedule.updateTemperature(iterations);
+
+            int d = roulette(destroyWeights, rnd);
+            int r = roulette(repairWeights, rnd);
+            int count = Math.min(numStops, minRemoved + rnd.nextInt(maxRemoved - minRemoved + 1));
+
+            List<Shift> candidate = Utils.deepCopyShifts(current);
+            int[] removed = destroyOperators.get(d).destroy(candidate, count, instance, travelTimesNight, travelTimesDay, rnd);
+            Utils.recomputeAllShiftsDiffTimes(candidate, instance, travelTimesNight, travelTimesDay);
+
+            double score = 0.0;
+            if (repairOperators.get(r).repair(candidate, removed, instance, travelTimesNight, travelTimesDay, maxShiftDuration, rnd)) {
+                double objective = objectiveFunction.shifts(candidate);
+                double improvement = currentObjective - objective;
+                if (Math.abs(improvement) < EPS) improvement = 0.0;
+
+                if (objective < bestObjective - EPS) {
+                    score = SCORE_NEW_BEST;
+                    current = candidate;
+                    currentObjective = objective;
+                    best = candidate;
+                    bestObjective = objective;
+                    if (improvementListener != null) {
+                        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+                        improvementListener.improved(Collections.unmodifiableList(best), bestObjective, iterations + 1, elapsedMillis);
+                    }
+                } else if (acceptanceFunction.accept(improvement)) {
+                    score = (improvement > 0) ? SCORE_IMPROVED : SCORE_ACCEPTED;
+                    current = candidate;
+                    currentObjective = objective;
+                }
+            }
+
+            destroyScores[d] += score;
+            destroyUses[d]++;
+            repairScores[r] += score;
+            repairUses[r]++;
+            if ((iterations + 1) % SEGMENT_LENGTH == 0) {
+                updateWeights(destroyWeights, destroyScores, destroyUses);
+                updateWeights(repairWeights, repairScores, repairUses);
+            }
+        }
+
+        // The best solution is never modified after it was found: later candidates are copies of it
+        return best;
+    }
+
+    private static int roulette(double[] weights, Random rnd) {
+        double total = 0.0;
+        for (double w : weights) total += w;
+
+        double x = rnd.nextDouble() * total;
+        for (int k = 0; k < weights.length - 1; k++) {
+            x -= weights[k];
+            if (x < 0) return k;
+        }
+        return weights.length - 1;
+    }
+
+    // Moves the weights of the operators used in the segment towards their average score, and resets the segment
+    private static void updateWeights(double[] weights, double[] scores, int[] uses) {
+        for (int k = 0; k < weights.length; k++) {
+            if (uses[k] > 0) {
+                weights[k] = Math.max(MIN_WEIGHT, (1 - REACTION_FACTOR) * weights[k] + REACTION_FACTOR * scores[k] / uses[k]);
+            }
+            scores[k] = 0.0;
+            uses[k] = 0;
+        }
+    }
+}
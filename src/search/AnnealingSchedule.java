@@ -0,0 +1,85 @@
+package search;
+
+import java.util.Random;
+
+/**
+ * Simulated annealing acceptance with its own temperature schedule and random number generator.
+ *
+ * The temperature combines a linear decrease from startTemp to endTemp with an oscillating component
+ * (nPeriods periods over maxIterations). Every LocalSearch works on its own copy, so several SA runs can
+ * execute concurrently and each run is reproducible from its seed.
+ */
+public class AnnealingSchedule implements AcceptanceFunction {
+    public static final long DEFAULT_SEED = 10;
+
+    private final double startTemp;
+    private final double endTemp;
+    private final int maxIterations;
+    private final int nPeriods;
+    private final long seed;
+
+    private final Random rnd;
+    private double temperature;
+
+    public AnnealingSchedule(double startTemp, double endTemp, int maxIterations, int nPeriods, long seed) {
+        this.startTemp = startTemp;
+        this.endTemp = endTemp;
+        this.maxIterations = maxIterations;
+        this.nPeriods = nPeriods;
+        this.seed = seed;
+        this.rnd = new Random(seed);
+        this.temperature = startTemp;
+    }
+
+    public AnnealingSchedule(double startTemp, double endTemp, int maxIterations, int nPeriods) {
+        this(startTemp, endTemp, maxIterations, nPeriods, DEFAULT_SEED);
+    }
+
+    // Same schedule and seed, with the temperature and random number generator reset
+    public AnnealingSchedule copy() {
+        return new AnnealingSchedule(startTemp, endTemp, maxIterations, nPeriods, seed);
+    }
+
+    @Override
+    public boolean accept(double improvement) {
+        if (improvement > 0) return true;
+        if (improvement == 0.0) return false;
+
+        double prob = Math.exp(improvement / temperature);
+        return rnd.nextDouble() < prob;
+    }
+
+    public void updateTemperature(int iteration) {
+
+        double v = iteration;
+        double vLNS = maxIterations;
+
+        // Linear component
+        double T_linear = startTemp +
+                (endTemp - startTemp) * (v / vLNS);
+
+        // Oscillating component
+        double T_osc = startTemp +
+                (endTemp - startTemp) *
+                Math.pow(
+                    Math.sin(Math.PI * nPeriods * v / vLNS),
+                    2
+                );
+
+        // Combined temperature
+        temperature = Math.sqrt(T_linear * T_osc);
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // The generator of this schedule, also used to draw the moves of a sampling run so one seed fixes the run
+    Random random() {
+        return rnd;
+    }
+}
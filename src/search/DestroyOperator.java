@@ -0,0 +1,26 @@
+package search;
+
+import java.util.List;
+import java.util.Random;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+
+/**
+ * Destroy step of the adaptive large neighborhood search: takes stops out of the shifts.
+ */
+public interface DestroyOperator {
+    /**
+     * Removes about count stops from the shifts, in place, and returns them. The routes change but the
+     * lengths of the shifts are not recomputed; the search does that before the repair.
+     */
+    int[] destroy(
+            List<Shift> shifts,
+            int count,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            Random rnd
+    );
+}
@@ -0,0 +1,64 @@
+package search;
+
+/**
+ * Don't-look bits per neighborhood and stop, plus the change times of the shifts.
+ *
+ * Every applied move advances a clock and stamps the shifts it changed. When all moves of a neighborhood
+ * that start at a stop (the stop at route1/index1) were evaluated and none was accepted, the stop is stamped
+ * with the current clock; when that holds for every stop of a shift, the shift itself is stamped too. A move
+ * from stop u in shift r1 to shift r2 can then be skipped as long as neither r1 nor r2 changed since u was
+ * stamped, since it was rejected before and nothing it depends on has changed. This is exact for objectives
+ * that are sums over the shifts (e.g. total length); for objectives with global terms, like the balanced
+ * objective, other moves shift those terms slightly and the bits are a heuristic.
+ *
+ * Written by the scans of one search only: the parallel scan stamps disjoint shifts and stops.
+ */
+final class DontLookBits {
+    private long clock = 1;
+    // Stamps older than this are void, e.g. after a change of the night-shift count
+    private long validFrom = 1;
+
+    private final long[] changedAt;
+    private final long[][] stopLookedAt;
+    private final long[][] shiftLookedAt;
+
+    DontLookBits(int numNeighborhoods, int numStops, int numShifts) {
+        this.changedAt = new long[numShifts];
+        this.stopLookedAt = new long[numNeighborhoods][numStops];
+        this.shiftLookedAt = new long[numNeighborhoods][numShifts];
+    }
+
+    // Marks the shifts a move changed, so the moves involving them are evaluated again
+    void shiftsChanged(int... shifts) {
+        clock++;
+        for (int r : shifts) {
+            changedAt[r] = clock;
+        }
+    }
+
+    // Clears all bits, for changes that affect which moves are generated at all
+    void clear() {
+        clock++;
+        validFrom = clock;
+    }
+
+    // True if every move of the neighborhood from shift r1 to shift r2 can be skipped
+    boolean skipPair(int neighborhood, int r1, int r2) {
+        long t = shiftLookedAt[neighborhood][r1];
+        return t >= validFrom && t >= changedAt[r1] && t >= changedAt[r2];
+    }
+
+    // True if the moves of the neighborhood from stop (in shift r1) to shift r2 can be skipped
+    boolean skipStop(int neighborhood, int stop, int r1, int r2) {
+        long t = stopLookedAt[neighborhood][stop];
+        return t >= validFrom && t >= changedAt[r1] && t >= changedAt[r2];
+    }
+
+    void lookedAtStop(int neighborhood, int stop) {
+        stopLookedAt[neighborhood][stop] = clock;
+    }
+
+    void lookedAtShift(int neighborhood, int r) {
+        shiftLookedAt[neighborhood][r] = clock;
+    }
+}
@@ -0,0 +1,350 @@
+package search;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Repairs shifts that are longer than maxDuration + maxOvertime with ejection chains: a stop of a too long shift
+ * moves into shift X; if X is then too long itself, X ejects another stop into shift Y, and so on, up to maxDepth
+ * moves. A chain is complete when its last shift fits; among the complete chains that shorten the violated
+ * shift the one that adds the least total duration is applied, preferring chains after which the violated shift
+ * fits. This repeats, most violated shift first, until
+ * every shift fits or no violated shift has a complete chain left.
+ *
+ * On every level only the breadth cheapest moves that end the chain and the breadth cheapest moves that need a
+ * further ejection are explored. Durations are kept per shift and updated by the arc and service differences of
+ * a move, so the search does not recompute routes; only a shift that gains its first night stop or loses its
+ * last one is driven again on the other matrix. A move never raises the number of night shifts above
+ * MAX_NIGHT_SHIFTS and never empties a shift. The shifts are modified in place, as by Utils.makeFeasible.
+ *
+ * Any shift can receive a stop, day or night: a night stop moved into a day shift makes it a night shift,
+ * and a night shift that loses its last night stop becomes a day shift.
+ */
+public class EjectionChainRepair {
+    private static final double EPS = 1e-6;
+    private static final int MAX_NIGHT_SHIFTS = 25;
+
+    private final double maxDuration;
+    private final double maxOvertime;
+    private final int maxDepth;
+    private final int breadth;
+
+    public EjectionChainRepair(double maxDuration, double maxOvertime) {
+        this(maxDuration, maxOvertime, 3, 5);
+    }
+
+    /**
+     * @param maxDepth most stop moves in one chain
+     * @param breadth  moves explored per level, separately for the moves that end the chain and the others
+     */
+    public EjectionChainRepair(double maxDuration, double maxOvertime, int maxDepth, int breadth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Chain depth must be positive, got " + maxDepth);
+        }
+        if (breadth < 1) {
+            throw new IllegalArgumentException("Chain breadth must be positive, got " + breadth);
+        }
+        this.maxDuration = maxDuration;
+        this.maxOvertime = maxOvertime;
+        this.maxDepth = maxDepth;
+        this.breadth = breadth;
+    }
+
+    /**
+     * Repairs the shifts in place and returns the number of stops moved; check the shifts afterwards
+     * (e.g. Utils.feasibleTime) to see whether every shift fits.
+     */
+    public int repair(List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) {
+        return new Repair(shifts, instance, travelTimesNight, travelTimesDay).run();
+    }
+
+    // One stop move of a chain: the stop at position from of shift source goes to position to of shift target
+    private static final class Step {
+        int source;
+        int from;
+        int target;
+        int to;
+        // Durations of source and target before and after the move
+        double sourceBefore;
+        double targetBefore;
+        double sourceDuration;
+        double targetDuration;
+        double cost;
+
+        Step copy() {
+            Step s = new Step();
+            s.source = source;
+            s.from = from;
+            s.target = target;
+            s.to = to;
+            s.sourceBefore = sourceBefore;
+            s.targetBefore = targetBefore;
+            s.sourceDuration = sourceDuration;
+            s.targetDuration = targetDuration;
+            s.cost = cost;
+            return s;
+        }
+    }
+
+    // State of a single repair call, so that one EjectionChainRepair can be shared between threads
+    private final class Repair {
+        private final List<Shift> shifts;
+        private final HTMInstance instance;
+        private final TravelTimeMatrix travelTimesNight;
+        private final TravelTimeMatrix travelTimesDay;
+        private final double limit = maxDuration + maxOvertime;
+
+        private final double[] duration;
+        private final double[] service;
+        private final boolean[] night;
+        private final boolean[] inChain;
+        private final boolean[] touched;
+        private int numNightShifts;
+
+        private final Step[] chain = new Step[maxDepth];
+        private Step[] bestChain;
+        private int bestLength;
+        private boolean bestFits;
+        private double bestCost;
+
+        Repair(List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay) {
+            this.shifts = shifts;
+            this.instance = instance;
+            this.travelTimesNight = travelTimesNight;
+            this.travelTimesDay = travelTimesDay;
+
+            int m = shifts.size();
+            duration = new double[m];
+            service = new double[m];
+            night = new boolean[m];
+            inChain = new boolean[m];
+            touched = new boolean[m];
+            for (int k = 0; k < m; k++) {
+                Shift s = shifts.get(k);
+                duration[k] = s.totalTime;
+                service[k] = s.serviceTime;
+                night[k] = s.nightShift == 1;
+                if (night[k]) numNightShifts++;
+            }
+        }
+
+        int run() {
+            int moved = 0;
+            Integer[] order = new Integer[shifts.size()];
+
+            while (true) {
+                int numViolated = 0;
+                for (int k = 0; k < shifts.size(); k++) {
+                    if (duration[k] > limit) order[numViolated++] = k;
+                }
+                if (numViolated == 0) break;
+                Arrays.sort(order, 0, numViolated, Comparator.comparingDouble((Integer k) -> -duration[k]));
+
+                int length = 0;
+                for (int v = 0; v < numViolated && length == 0; v++) {
+                    length = bestChainFrom(order[v]);
+                }
+                // No violated shift has a complete chain left
+                if (length == 0) break;
+
+                for (Step step : bestChain) {
+                    apply(step);
+                    touched[step.source] = true;
+                    touched[step.target] = true;
+                }
+                moved += length;
+            }
+
+            for (int k = 0; k < shifts.size(); k++) {
+                if (touched[k]) Utils.recomputeShiftDiffTimes(shifts.get(k), instance, travelTimesNight, travelTimesDay);
+            }
+            return moved;
+        }
+
+        // Searches the cheapest complete chain that shortens the violated shift; returns its length, 0 if none
+        private int bestChainFrom(int violated) {
+            bestChain = null;
+            bestLength = 0;
+            bestFits = false;
+            bestCost = Double.POSITIVE_INFINITY;
+
+            inChain[violated] = true;
+            extend(violated, -1, 0, 0.0);
+            inChain[violated] = false;
+            return bestLength;
+        }
+
+        /**
+         * Tries the moves of a stop out of source (not the stop at position kept, which the chain just put
+         * there) as move depth of the chain, whose moves so far cost costSoFar.
+         */
+        private void extend(int source, int kept, int depth, double costSoFar) {
+            List<Step> closing = new ArrayList<>();
+            List<Step> open = new ArrayList<>();
+            candidates(source, kept, depth == 0, closing, open);
+
+            for (Step step : closing) {
+                double cost = costSoFar + step.cost;
+                // Chains after which the violated shift fits come first, then shorter chains: both keep the number
+                // of moved stops low
+                boolean fits = ((depth == 0) ? step : chain[0]).sourceDuration <= limit;
+                if (fits != bestFits ? fits
+                        : depth + 1 != bestLength ? bestLength == 0 || depth + 1 < bestLength
+                        : cost < bestCost - EPS) {
+                    chain[depth] = step;
+                    bestFits = fits;
+                    bestCost = cost;
+                    bestLength = depth + 1;
+                    bestChain = new Step[bestLength];
+                    for (int d = 0; d <= depth; d++) bestChain[d] = chain[d].copy();
+                }
+            }
+            if (depth + 1 >= maxDepth) return;
+
+            for (Step step : open) {
+                chain[depth] = step;
+                boolean[] status = apply(step);
+                inChain[step.target] = true;
+                extend(step.target, step.to, depth + 1, costSoFar + step.cost);
+                inChain[step.target] = false;
+                undo(step, status);
+            }
+        }
+
+        // The cheapest moves out of source, split into moves whose target fits (closing) and moves whose target doesn't
+        private void candidates(int source, int kept, boolean root, List<Step> closing, List<Step> open) {
+            Shift s = shifts.get(source);
+            IntRoute ids = s.route;
+            // Never empty a shift
+            if (ids.size() <= 3) return;
+
+            for (int p = 1; p < ids.size() - 1; p++) {
+                if (p == kept) continue;
+                int u = ids.getInt(p);
+                boolean sourceNight = s.nightStops(instance) - instance.nightFlag[u] > 0;
+                TravelTimeMatrix sourceTimes = sourceNight ? travelTimesNight : travelTimesDay;
+
+                double sourceDuration = baseDuration(source, sourceNight)
+                        + sourceTimes.get(ids.getInt(p - 1), ids.getInt(p + 1))
+                        - sourceTimes.get(ids.getInt(p - 1), u)
+                        - sourceTimes.get(u, ids.getInt(p + 1))
+                        - instance.serviceTime[u];
+                // The violated shift must get shorter, every later shift of the chain must fit once it ejected a stop
+                if (root ? sourceDuration >= duration[source] - EPS : sourceDuration > limit) continue;
+                double sourceCost = sourceDuration - duration[source];
+
+                for (int target = 0; target < shifts.size(); target++) {
+                    if (inChain[target]) continue;
+                    Shift t = shifts.get(target);
+                    boolean targetNight = t.nightStops(instance) + instance.nightFlag[u] > 0;
+
+                    int nightShifts = numNightShifts + flip(night[source], sourceNight) + flip(night[target], targetNight);
+                    if (nightShifts > MAX_NIGHT_SHIFTS && nightShifts > numNightShifts) continue;
+
+                    TravelTimeMatrix targetTimes = targetNight ? travelTimesNight : travelTimesDay;
+                    double base = baseDuration(target, targetNight) + instance.serviceTime[u];
+                    IntRoute tids = t.route;
+                    int bestGap = -1;
+                    double bestDuration = Double.POSITIVE_INFINITY;
+                    for (int j = 1; j < tids.size(); j++) {
+                        int a = tids.getInt(j - 1);
+                        int b = tids.getInt(j);
+                        double d = base + targetTimes.get(a, u) + targetTimes.get(u, b) - targetTimes.get(a, b);
+                        if (d < bestDuration) {
+                            bestDuration = d;
+                            bestGap = j;
+                        }
+                    }
+                    if (bestGap < 0) continue;
+
+                    Step step = new Step();
+                    step.source = source;
+                    step.from = p;
+                    step.target = target;
+                    step.to = bestGap;
+                    step.sourceBefore = duration[source];
+                    step.targetBefore = duration[target];
+                    step.sourceDuration = sourceDuration;
+                    step.targetDuration = bestDuration;
+                    step.cost = sourceCost + bestDuration - duration[target];
+                    keepCheapest(bestDuration <= limit ? closing : open, step);
+                }
+            }
+        }
+
+        // Adds the step if it is among the breadth cheapest of the list, kept sorted by cost
+        private void keepCheapest(List<Step> steps, Step step) {
+            if (steps.size() == breadth && step.cost >= steps.get(breadth - 1).cost) return;
+            int at = steps.size();
+            while (at > 0 && steps.get(at - 1).cost > step.cost) at--;
+            steps.add(at, step);
+            if (steps.size() > breadth) steps.remove(breadth);
+        }
+
+        // Duration of shift k before a change that leaves it a night shift or not; the route is driven again on
+        // the other matrix if its night status changes
+        private double baseDuration(int k, boolean nightAfter) {
+            if (nightAfter == night[k]) return duration[k];
+
+            TravelTimeMatrix travelTimes = nightAfter ? travelTimesNight : travelTimesDay;
+            IntRoute ids = shifts.get(k).route;
+            Shift s = shifts.get(k);
+            int last = ids.size() - 1;
+            double travel = travelTimes.get(0, ids.getInt(0)) + travelTimes.get(ids.getInt(last), 0);
+            for (int p = 0; p < last; p++) {
+                travel += travelTimes.get(ids.getInt(p), ids.getInt(p + 1));
+            }
+            return travel + service[k] + s.breakTime + s.prepTime;
+        }
+
+        private int flip(boolean before, boolean after) {
+            return (after ? 1 : 0) - (before ? 1 : 0);
+        }
+
+        // Applies the step and returns the night status of source and target before it, for undo
+        private boolean[] apply(Step step) {
+            boolean[] status = {night[step.source], night[step.target]};
+            Shift source = shifts.get(step.source);
+            Shift target = shifts.get(step.target);
+
+            int u = source.removeStopAt(step.from, instance);
+            target.insertStop(step.to, u, instance);
+
+            duration[step.source] = step.sourceDuration;
+            duration[step.target] = step.targetDuration;
+            service[step.source] -= instance.serviceTime[u];
+            service[step.target] += instance.serviceTime[u];
+            setNight(step.source, source.nightStops(instance) > 0);
+            setNight(step.target, target.nightStops(instance) > 0);
+            return status;
+        }
+
+        private void undo(Step step, boolean[] status) {
+            Shift source = shifts.get(step.source);
+            Shift target = shifts.get(step.target);
+
+            int u = target.removeStopAt(step.to, instance);
+            source.insertStop(step.from, u, instance);
+
+            duration[step.source] = step.sourceBefore;
+            duration[step.target] = step.targetBefore;
+            service[step.source] += instance.serviceTime[u];
+            service[step.target] -= instance.serviceTime[u];
+            setNight(step.source, status[0]);
+            setNight(step.target, status[1]);
+        }
+
+        private void setNight(int k, boolean value) {
+            if (night[k] != value) numNightShifts += value ? 1 : -1;
+            night[k] = value;
+        }
+    }
+}
@@ -1,11 +1,60 @@
 package search;
 
+/**
+ * Result of Neighborhood.evaluateMove. A scan evaluates hundreds of thousands of moves, so the neighborhoods
+ * fill in a buffer owned by the caller (see set) instead of allocating a result per move; copy the values out
+ * before the next evaluation into the same buffer.
+ */
 public class Evaluation {
-    public final double improvement;
-    public final boolean feasible;
+    public double improvement;
+    public boolean feasible;
+
+    // New length and service time of route1 and route2 after the move, NaN if the neighborhood does not report them
+    public double newL1;
+    public double newC1;
+    public double newL2;
+    public double newC2;
+
+    // Shared result for rejected moves; the only instance that is never filled in
+    public static final Evaluation INFEASIBLE = new Evaluation(0, false);
+
+    // Empty buffer for the evaluations of a scan
+    public Evaluation() {
+        this(0, false);
+    }
 
     public Evaluation(double improvement, boolean feasible) {
+        this(improvement, feasible, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public Evaluation(double improvement, boolean feasible, double newL1, double newC1, double newL2, double newC2) {
         this.improvement = improvement;
         this.feasible = feasible;
+        this.newL1 = newL1;
+        this.newC1 = newC1;
+        this.newL2 = newL2;
+        this.newC2 = newC2;
+    }
+
+    // Copy that stays valid once this buffer is filled in again
+    public Evaluation copy() {
+        return (this == INFEASIBLE) ? this : new Evaluation(improvement, feasible, newL1, newC1, newL2, newC2);
+    }
+
+    // Fills in a feasible move without the new shift lengths and returns this buffer
+    public Evaluation set(double improvement) {
+        return set(improvement, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    // Fills in a feasible move and returns this buffer
+    public Evaluation set(double improvement, double newL1, double newC1, double newL2, double newC2) {
+        assert this != INFEASIBLE : "Evaluation.INFEASIBLE is shared and must not be filled in";
+        this.improvement = improvement;
+        this.feasible = true;
+        this.newL1 = newL1;
+        this.newC1 = newC1;
+        this.newL2 = newL2;
+        this.newC2 = newC2;
+        return this;
     }
 }
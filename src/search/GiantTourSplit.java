@@ -0,0 +1,127 @@
+package search;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Split for the hybrid genetic search: cuts a giant tour (all stops in one sequence, without the depot) into
+ * consecutive shifts with the smallest total length, for that order of the stops.
+ *
+ * A shift with a night stop is a night shift and is driven on the night matrix, so the dynamic program keeps
+ * the number of night shifts used as a second index and never uses more than maxNightShifts. With prefix sums
+ * along the tour for both matrices every candidate shift is evaluated in O(1), and the candidates ending at a
+ * stop are only scanned back while service and inner travel time fit in a shift (both only grow), so a split
+ * takes O(n * B * K) for n stops, at most B stops per shift and K night shifts: linear in the tour length.
+ */
+final class GiantTourSplit {
+    // Break and preparation time that every Shift adds to its travel and service time
+    private static final double SHIFT_OVERHEAD = 60.0;
+
+    private final HTMInstance instance;
+    private final TravelTimeMatrix travelTimesNight;
+    private final TravelTimeMatrix travelTimesDay;
+    private final double maxShiftDuration;
+    private final int maxNightShifts;
+
+    GiantTourSplit(
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            int maxNightShifts
+    ) {
+        this.instance = instance;
+        this.travelTimesNight = travelTimesNight;
+        this.travelTimesDay = travelTimesDay;
+        this.maxShiftDuration = maxShiftDuration;
+        this.maxNightShifts = maxNightShifts;
+    }
+
+    /**
+     * The optimal shifts for the tour, recomputed, or null if the stops cannot be covered in this order
+     * (some stop alone is too long, or the night stops need more than maxNightShifts shifts).
+     */
+    List<Shift> split(int[] tour) {
+        int n = tour.length;
+        // Travel time from tour[0] to tour[p] along the tour, service time and night stops of tour[0..p-1]
+        double[] travelNight = new double[n];
+        double[] travelDay = new double[n];
+        double[] service = new double[n + 1];
+        int[] nightStops = new int[n + 1];
+        for (int p = 0; p < n; p++) {
+            int u = tour[p];
+            if (p > 0) {
+                travelNight[p] = travelNight[p - 1] + travelTimesNight.get(tour[p - 1], u);
+                travelDay[p] = travelDay[p - 1] + travelTimesDay.get(tour[p - 1], u);
+            }
+            service[p + 1] = service[p] + instance.serviceTime[u];
+            nightStops[p + 1] = nightStops[p] + instance.nightFlag[u];
+        }
+
+        // length[k][j]: shortest split of the first j stops with k night shifts; from[k][j]: start of its last shift
+        int layers = maxNightShifts + 1;
+        double[][] length = new double[layers][n + 1];
+        int[][] from = new int[layers][n + 1];
+        for (double[] row : length) Arrays.fill(row, Double.POSITIVE_INFINITY);
+        length[0][0] = 0.0;
+
+        for (int b = 0; b < n; b++) {
+            int last = tour[b];
+            for (int a = b; a >= 0; a--) {
+                int first = tour[a];
+                double routeService = service[b + 1] - service[a];
+                double inner = Math.min(travelNight[b] - travelNight[a], travelDay[b] - travelDay[a]);
+                if (routeService + inner + SHIFT_OVERHEAD > maxShiftDuration) break;
+
+                boolean night = nightStops[b + 1] - nightStops[a] > 0;
+                double travel = night
+                        ? travelTimesNight.get(0, first) + travelNight[b] - travelNight[a] + travelTimesNight.get(last, 0)
+                        : travelTimesDay.get(0, first) + travelDay[b] - travelDay[a] + travelTimesDay.get(last, 0);
+                double duration = travel + routeService + SHIFT_OVERHEAD;
+                if (duration > maxShiftDuration) continue;
+
+                int shift = night ? 1 : 0;
+                for (int k = shift; k < layers; k++) {
+                    double candidate = length[k - shift][a] + duration;
+                    if (candidate < length[k][b + 1]) {
+                        length[k][b + 1] = candidate;
+                        from[k][b + 1] = a;
+                    }
+                }
+            }
+        }
+
+        int bestK = -1;
+        for (int k = 0; k < layers; k++) {
+            if (length[k][n] < Double.POSITIVE_INFINITY && (bestK < 0 || length[k][n] < length[bestK][n])) bestK = k;
+        }
+        if (bestK < 0) return null;
+
+        List<Shift> shifts = new ArrayList<>();
+        int k = bestK;
+        for (int j = n; j > 0; ) {
+            int a = from[k][j];
+            IntRoute route = new IntRoute(j - a + 2);
+            route.addInt(0);
+            for (int p = a; p < j; p++) route.addInt(tour[p]);
+            route.addInt(0);
+
+            Shift s = new Shift(route, 0.0, 0.0, (nightStops[j] - nightStops[a] > 0) ? 1 : 0);
+            Utils.recomputeShiftDiffTimes(s, instance, travelTimesNight, travelTimesDay);
+            shifts.add(s);
+            k -= s.nightShift;
+            j = a;
+        }
+        // Built backwards; keep the order of the tour
+        Collections.reverse(shifts);
+        return shifts;
+    }
+}
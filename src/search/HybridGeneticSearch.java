@@ -0,0 +1,455 @@
+package search;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.TravelTimePair;
+import core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Hybrid genetic search (Vidal et al.) over giant tours.
+ *
+ * An individual is a giant tour over all stops together with the educated solution it stands for. Offspring
+ * come from order crossover (OX) of two parents chosen by binary tournament, are decoded into shifts by
+ * GiantTourSplit and educated by a LocalSearch from the factory; the tour of the educated solution (its shifts
+ * one after the other) replaces the offspring tour. Survivor selection keeps the populationSize individuals
+ * with the best biased fitness, which ranks both the objective and the contribution to diversity (average
+ * broken-pairs distance to the NB_CLOSE most similar individuals), removing clones first.
+ *
+ * The offspring of a generation are created in parallel. Their parents and random seeds are drawn up front,
+ * so a run does not depend on the number of threads.
+ */
+public class HybridGeneticSearch {
+    private static final int NB_ELITE = 4;
+    private static final int NB_CLOSE = 5;
+    private static final int MAX_NIGHT_SHIFTS = 25;
+    // Candidates per step of the randomized nearest-neighbor tours of the initial population
+    private static final int INITIAL_CANDIDATES = 3;
+
+    private final Supplier<LocalSearch> educationFactory;
+    private final int populationSize;
+    private final int generationSize;
+    private final int maxGenerations;
+    private final int numThreads;
+    private final double maxShiftDuration;
+    private final ObjectiveFunction objectiveFunction;
+    private final long seed;
+
+    private long timeLimitMillis = 0;
+    private ImprovementListener improvementListener = null;
+
+    private int generations;
+    private double bestObjective;
+
+    // A giant tour and the solution it stands for, with the neighbors of every stop for the distance
+    private static final class Individual {
+        final int[] tour;
+        final List<Shift> shifts;
+        final double objective;
+        final int[] successor;
+        final int[] predecessor;
+
+        Individual(int[] tour, List<Shift> shifts, double objective, int numStops) {
+            this.tour = tour;
+            this.shifts = shifts;
+            this.objective = objective;
+            this.successor = new int[numStops];
+            this.predecessor = new int[numStops];
+            for (Shift s : shifts) {
+                IntRoute route = s.route;
+                for (int p = 1; p < route.size() - 1; p++) {
+                    successor[route.getInt(p)] = route.getInt(p + 1);
+                    predecessor[route.getInt(p)] = route.getInt(p - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param educationFactory creates the local search that educates one offspring; called once per offspring,
+     *                         possibly concurrently, so every search must get its own neighborhoods
+     * @param populationSize   individuals kept after survivor selection
+     * @param generationSize   offspring created per generation
+     */
+    public HybridGeneticSearch(
+            Supplier<LocalSearch> educationFactory,
+            int populationSize,
+            int generationSize,
+            int maxGenerations,
+            int numThreads,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            long seed
+    ) {
+        if (populationSize < 2 || generationSize < 1) {
+            throw new IllegalArgumentException("Need a population of at least 2 and at least 1 offspring per generation, got "
+                    + populationSize + " and " + generationSize);
+        }
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive, got " + numThreads);
+        }
+        this.educationFactory = educationFactory;
+        this.populationSize = populationSize;
+        this.generationSize = generationSize;
+        this.maxGenerations = maxGenerations;
+        this.numThreads = numThreads;
+        this.maxShiftDuration = maxShiftDuration;
+        this.objectiveFunction = objectiveFunction;
+        this.seed = seed;
+    }
+
+    // Stops a run after the generation during which the given wall-clock time ran out; 0 for no limit
+    public void setTimeLimit(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("Time limit must be non-negative, got " + timeLimitMillis);
+        }
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    public void setImprovementListener(ImprovementListener improvementListener) {
+        this.improvementListener = improvementListener;
+    }
+
+    public int getGenerations() {
+        return generations;
+    }
+
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
+    public List<Shift> run(List<Shift> initialShifts, HTMInstance instance, TravelTimePair travelTimes) {
+        return run(initialShifts, instance, travelTimes.night, travelTimes.day);
+    }
+
+    /**
+     * Runs the search with the (educated) initial shifts as first individual and randomized nearest-neighbor
+     * tours for the rest of the initial population, and returns the best solution found. The stops to plan
+     * are those of the initial shifts.
+     */
+    public List<Shift> run(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + timeLimitMillis * 1_000_000L;
+        Random rnd = new Random(seed);
+        GiantTourSplit split = new GiantTourSplit(instance, travelTimesNight, travelTimesDay, maxShiftDuration, MAX_NIGHT_SHIFTS);
+
+        List<Individual> population = new ArrayList<>();
+        Individual best;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Callable<Individual>> tasks = new ArrayList<>();
+            List<Shift> start = Utils.deepCopyShifts(initialShifts);
+            tasks.add(() -> educate(start, instance, travelTimesNight, travelTimesDay));
+            int[] stops = tourOf(initialShifts);
+            for (int i = 1; i < populationSize + generationSize; i++) {
+                long taskSeed = rnd.nextLong();
+                tasks.add(() -> {
+                    List<Shift> shifts = split.split(randomTour(stops, instance, travelTimesNight, travelTimesDay, new Random(taskSeed)));
+                    return (shifts == null) ? null : educate(shifts, instance, travelTimesNight, travelTimesDay);
+                });
+            }
+            addAll(population, runAll(executor, tasks));
+            if (population.isEmpty()) {
+                throw new IllegalStateException("No feasible individual in the initial population");
+            }
+            best = bestOf(population);
+            bestObjective = best.objective;
+            notifyImprovement(best, 0, startNanos);
+            survivorSelection(population);
+
+            for (generations = 0; generations < maxGenerations; generations++) {
+                if (timeLimitMillis > 0 && System.nanoTime() >= deadline) break;
+
+                double[] fitness = biasedFitness(population, distances(population));
+                tasks.clear();
+                for (int i = 0; i < generationSize; i++) {
+                    Individual a = tournament(population, fitness, rnd);
+                    Individual b = tournament(population, fitness, rnd);
+                    long taskSeed = rnd.nextLong();
+                    tasks.add(() -> {
+                        int[] child = orderCrossover(a.tour, b.tour, new Random(taskSeed));
+                        List<Shift> shifts = split.split(child);
+                        return (shifts == null) ? null : educate(shifts, instance, travelTimesNight, travelTimesDay);
+                    });
+                }
+                addAll(population, runAll(executor, tasks));
+
+                Individual generationBest = bestOf(population);
+                if (generationBest.objective < best.objective) {
+                    best = generationBest;
+                    bestObjective = best.objective;
+                    notifyImprovement(best, generations + 1, startNanos);
+                }
+                survivorSelection(population);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return Utils.deepCopyShifts(best.shifts);
+    }
+
+    private Individual educate(
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        LocalSearch search = educationFactory.get();
+        List<Shift> educated = search.runDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeAllShiftsDiffTimes(educated, instance, travelTimesNight, travelTimesDay);
+        return new Individual(tourOf(educated), educated, objectiveFunction.shifts(educated), instance.serviceTime.length);
+    }
+
+    // The stops of the shifts one after the other, night shifts first so the split can cut them off again
+    private static int[] tourOf(List<Shift> shifts) {
+        int size = 0;
+        for (Shift s : shifts) size += Math.max(0, s.route.size() - 2);
+
+        int[] tour = new int[size];
+        int k = 0;
+        for (int night = 1; night >= 0; night--) {
+            for (Shift s : shifts) {
+                if (s.nightShift != night) continue;
+                for (int p = 1; p < s.route.size() - 1; p++) tour[k++] = s.route.getInt(p);
+            }
+        }
+        return tour;
+    }
+
+    /**
+     * Randomized nearest-neighbor tour: the night stops first, then the day stops, each time moving to one of
+     * the INITIAL_CANDIDATES nearest stops not visited yet (on the matrix of the stop's kind).
+     */
+    private static int[] randomTour(int[] stops, HTMInstance instance, TravelTimeMatrix travelTimesNight,
+                                    TravelTimeMatrix travelTimesDay, Random rnd) {
+        int[] tour = new int[stops.length];
+        int k = 0;
+        for (int night = 1; night >= 0; night--) {
+            TravelTimeMatrix travelTimes = (night == 1) ? travelTimesNight : travelTimesDay;
+            List<Integer> open = new ArrayList<>();
+            for (int u : stops) {
+                if (instance.nightFlag[u] == night) open.add(u);
+            }
+            if (open.isEmpty()) continue;
+
+            int current = open.remove(rnd.nextInt(open.size()));
+            tour[k++] = current;
+            int[] candidates = new int[INITIAL_CANDIDATES];
+            while (!open.isEmpty()) {
+                // Indices into open of the nearest stops, by insertion into a small sorted array
+                int count = 0;
+                for (int i = 0; i < open.size(); i++) {
+                    double t = travelTimes.get(current, open.get(i));
+                    if (count == INITIAL_CANDIDATES && t >= travelTimes.get(current, open.get(candidates[count - 1]))) continue;
+                    int pos = (count < INITIAL_CANDIDATES) ? count++ : count - 1;
+                    while (pos > 0 && travelTimes.get(current, open.get(candidates[pos - 1])) > t) {
+                        candidates[pos] = candidates[pos - 1];
+                        pos--;
+                    }
+                    candidates[pos] = i;
+                }
+                current = open.remove(candidates[rnd.nextInt(count)]);
+                tour[k++] = current;
+            }
+        }
+        return tour;
+    }
+
+    // Order crossover: a random slice of the first parent, the other stops in the order of the second parent
+    private static int[] orderCrossover(int[] first, int[] second, Random rnd) {
+        int n = first.length;
+        int[] child = new int[n];
+        if (n == 0) return child;
+
+        int from = rnd.nextInt(n);
+        int to = rnd.nextInt(n);
+        if (to < from) {
+            int tmp = from;
+            from = to;
+            to = tmp;
+        }
+
+        int maxStop = 0;
+        for (int u : first) maxStop = Math.max(maxStop, u);
+        boolean[] taken = new boolean[maxStop + 1];
+        for (int p = from; p <= to; p++) {
+            child[p] = first[p];
+            taken[first[p]] = true;
+        }
+
+        // Fill the rest cyclically after the slice, in the order of the second parent starting after the slice
+        int write = (to + 1) % n;
+        for (int i = 0; i < n; i++) {
+            int u = second[(to + 1 + i) % n];
+            if (taken[u]) continue;
+            child[write] = u;
+            write = (write + 1) % n;
+        }
+        return child;
+    }
+
+    private static List<Individual> runAll(ExecutorService executor, List<Callable<Individual>> tasks) {
+        List<Individual> result = new ArrayList<>();
+        try {
+            List<Future<Individual>> futures = executor.invokeAll(tasks);
+            for (Future<Individual> future : futures) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating offspring", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Creating an offspring failed", e.getCause());
+        }
+        return result;
+    }
+
+    // Adds the feasible offspring (splits that failed give null)
+    private static void addAll(List<Individual> population, List<Individual> offspring) {
+        for (Individual individual : offspring) {
+            if (individual != null) population.add(individual);
+        }
+    }
+
+    private static Individual bestOf(List<Individual> population) {
+        Individual best = population.get(0);
+        for (Individual individual : population) {
+            if (individual.objective < best.objective) best = individual;
+        }
+        return best;
+    }
+
+    private static Individual tournament(List<Individual> population, double[] fitness, Random rnd) {
+        int a = rnd.nextInt(population.size());
+        int b = rnd.nextInt(population.size());
+        return population.get(fitness[a] <= fitness[b] ? a : b);
+    }
+
+    /**
+     * Broken-pairs distance: the fraction of stops whose neighbors differ between the two solutions, counting
+     * an edge as kept also when it is traversed the other way.
+     */
+    private static double distance(Individual x, Individual y) {
+        int broken = 0;
+        for (int u : x.tour) {
+            int next = x.successor[u];
+            if (next != y.successor[u] && next != y.predecessor[u]) broken++;
+            // A shift that starts at u in x but not in y
+            if (x.predecessor[u] == 0 && y.predecessor[u] != 0 && y.successor[u] != 0) broken++;
+        }
+        return (x.tour.length == 0) ? 0.0 : (double) broken / x.tour.length;
+    }
+
+    private static double[][] distances(List<Individual> population) {
+        int size = population.size();
+        double[][] d = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                d[i][j] = d[j][i] = distance(population.get(i), population.get(j));
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Biased fitness of every individual (lower is better): its rank by objective plus, weighted by
+     * 1 - NB_ELITE / size, its rank by diversity contribution, both scaled to [0, 1].
+     */
+    private static double[] biasedFitness(List<Individual> population, double[][] d) {
+        int size = population.size();
+        double[] fitness = new double[size];
+        if (size == 1) return fitness;
+
+        double[] contribution = new double[size];
+        for (int i = 0; i < size; i++) {
+            double[] row = d[i].clone();
+            row[i] = Double.POSITIVE_INFINITY;
+            Arrays.sort(row);
+            int close = Math.min(NB_CLOSE, size - 1);
+            for (int c = 0; c < close; c++) contribution[i] += row[c];
+            contribution[i] /= close;
+        }
+
+        Integer[] byObjective = new Integer[size];
+        Integer[] byContribution = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            byObjective[i] = i;
+            byContribution[i] = i;
+        }
+        Arrays.sort(byObjective, (a, b) -> Double.compare(population.get(a).objective, population.get(b).objective));
+        Arrays.sort(byContribution, (a, b) -> Double.compare(contribution[b], contribution[a]));
+
+        double diversityWeight = 1.0 - (double) Math.min(NB_ELITE, size) / size;
+        for (int r = 0; r < size; r++) {
+            fitness[byObjective[r]] += (double) r / (size - 1);
+            fitness[byContribution[r]] += diversityWeight * r / (size - 1);
+        }
+        return fitness;
+    }
+
+    // Removes individuals until populationSize are left: clones first, then the worst biased fitness
+    private void survivorSelection(List<Individual> population) {
+        if (population.size() <= populationSize) return;
+        double[][] d = distances(population);
+        List<Integer> alive = new ArrayList<>();
+        for (int i = 0; i < population.size(); i++) alive.add(i);
+
+        while (alive.size() > populationSize) {
+            List<Individual> current = new ArrayList<>();
+            double[][] currentD = new double[alive.size()][alive.size()];
+            for (int i = 0; i < alive.size(); i++) {
+                current.add(population.get(alive.get(i)));
+                for (int j = 0; j < alive.size(); j++) currentD[i][j] = d[alive.get(i)][alive.get(j)];
+            }
+            double[] fitness = biasedFitness(current, currentD);
+
+            int worst = -1;
+            boolean worstIsClone = false;
+            for (int i = 0; i < current.size(); i++) {
+                boolean clone = false;
+                for (int j = 0; j < current.size(); j++) {
+                    if (j != i && currentD[i][j] == 0.0) {
+                        clone = true;
+                        break;
+                    }
+                }
+                if (worst < 0 || (clone && !worstIsClone) || (clone == worstIsClone && fitness[i] > fitness[worst])) {
+                    worst = i;
+                    worstIsClone = clone;
+                }
+            }
+            alive.remove(worst);
+        }
+
+        List<Individual> survivors = new ArrayList<>();
+        for (int i : alive) survivors.add(population.get(i));
+        population.clear();
+        population.addAll(survivors);
+    }
+
+    private void notifyImprovement(Individual best, int generation, long startNanos) {
+        if (improvementListener == null) return;
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+        improvementListener.improved(Collections.unmodifiableList(best.shifts), best.objective, generation, elapsedMillis);
+    }
+}
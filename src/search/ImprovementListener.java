@@ -0,0 +1,19 @@
+package search;
+
+import core.Shift;
+
+import java.util.List;
+
+/**
+ * Notified by LocalSearch whenever a run finds a new best solution.
+ */
+@FunctionalInterface
+public interface ImprovementListener {
+    /**
+     * @param shifts        read-only view of the new best solution, only valid during the call (copy it to keep it)
+     * @param objective     its objective value
+     * @param moveCount     number of moves applied so far
+     * @param elapsedMillis time since the start of the run
+     */
+    void improved(List<Shift> shifts, double objective, int moveCount, long elapsedMillis);
+}
@@ -0,0 +1,143 @@
+package search;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.TravelTimePair;
+import core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Island model: runs several LocalSearch islands (e.g. simulated annealing with different temperatures and
+ * seeds) on their own threads from the same initial solution, and returns the best solution over all islands.
+ *
+ * Every migrationInterval iterations an island posts its best solution to a MigrationMailbox and reads the one
+ * of its predecessor on a ring (island i reads island i - 1). If that solution is better than its own best,
+ * the island continues from a copy of it. The islands never wait for each other, so a fast island can read an
+ * older solution of a slow one.
+ */
+public class IslandSearch {
+    private static final double EPS = 1e-6;
+
+    private final int numIslands;
+    private final int migrationInterval;
+    private final IntFunction<LocalSearch> islandFactory;
+
+    private long timeLimitMillis = 0;
+
+    private final double[] islandObjectives;
+    private int bestIsland = -1;
+    private int migrations = 0;
+
+    /**
+     * @param migrationInterval iterations of an island between two migrations
+     * @param islandFactory     creates the search of island i, with its own neighborhoods, schedule and seed
+     *                          (neighborhoods keep per-scan state, so islands cannot share them)
+     */
+    public IslandSearch(int numIslands, int migrationInterval, IntFunction<LocalSearch> islandFactory) {
+        if (numIslands < 1) {
+            throw new IllegalArgumentException("Island search needs at least one island, got " + numIslands);
+        }
+        if (migrationInterval < 1) {
+            throw new IllegalArgumentException("Migration interval must be positive, got " + migrationInterval);
+        }
+        this.numIslands = numIslands;
+        this.migrationInterval = migrationInterval;
+        this.islandFactory = islandFactory;
+        this.islandObjectives = new double[numIslands];
+    }
+
+    // Wall-clock limit for every island; 0 for none
+    public void setTimeLimit(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("Time limit must be non-negative, got " + timeLimitMillis);
+        }
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    // Best objective of every island in the last run
+    public double[] getIslandObjectives() {
+        return islandObjectives.clone();
+    }
+
+    public int getBestIsland() {
+        return bestIsland;
+    }
+
+    public double getBestObjective() {
+        return islandObjectives[bestIsland];
+    }
+
+    // Number of times an island continued from the solution of another island in the last run
+    public int getMigrations() {
+        return migrations;
+    }
+
+    public List<Shift> run(List<Shift> initialShifts, HTMInstance instance, TravelTimePair travelTimes) {
+        return run(initialShifts, instance, travelTimes.night, travelTimes.day);
+    }
+
+    /**
+     * Runs all islands (LocalSearch.runDiffTimes) on copies of the initial shifts and returns the best result.
+     */
+    public List<Shift> run(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        MigrationMailbox mailbox = new MigrationMailbox(numIslands);
+        AtomicInteger migrationCount = new AtomicInteger();
+        LocalSearch[] islands = new LocalSearch[numIslands];
+        List<Future<List<Shift>>> futures = new ArrayList<>();
+        List<List<Shift>> results = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numIslands);
+        try {
+            for (int i = 0; i < numIslands; i++) {
+                int island = i;
+                int predecessor = (i + numIslands - 1) % numIslands;
+                LocalSearch search = islandFactory.apply(i);
+                islands[i] = search;
+                if (timeLimitMillis > 0) search.setTimeLimit(timeLimitMillis);
+                search.setMigration(migrationInterval, (best, bestObjective) -> {
+                    mailbox.post(island, best, bestObjective);
+                    MigrationMailbox.Snapshot incoming = mailbox.read(predecessor);
+                    if (incoming == null || !(incoming.objective < bestObjective - EPS)) return null;
+                    migrationCount.incrementAndGet();
+                    return incoming.shifts;
+                });
+
+                List<Shift> start = Utils.deepCopyShifts(initialShifts);
+                futures.add(executor.submit(() -> search.runDiffTimes(start, instance, travelTimesNight, travelTimesDay)));
+            }
+
+            for (Future<List<Shift>> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the islands", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Island failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        bestIsland = 0;
+        for (int i = 0; i < numIslands; i++) {
+            islandObjectives[i] = islands[i].getBestObjective();
+            if (islandObjectives[i] < islandObjectives[bestIsland]) bestIsland = i;
+        }
+        migrations = migrationCount.get();
+        return results.get(bestIsland);
+    }
+}
@@ -1,13 +1,18 @@
 package search;
 
 import core.HTMInstance;
+import core.IntRoute;
 import core.Shift;
+import core.TravelTimeMatrix;
+import core.TravelTimePair;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import core.Utils;
 
 
@@ -15,18 +20,140 @@ import core.Utils;
 public class LocalSearch {
     private final List<Neighborhood> neighborhoods;
     private final AcceptanceFunction acceptanceFunction;
+    private final AnnealingSchedule schedule;
     private final RouteCompatibility compatibility;
     private final ImprovementChoice improvementChoice;
     private final int maxIterations;
     private final double maxShiftDuration;
     private final ObjectiveFunction objectiveFunction;
     private boolean useSimulatedAnnealing;
+    private boolean sampledAnnealing = false;
     private int moveCount = 0;
+    private boolean checkIncremental = false;
+    private ForkJoinPool pool = null;
+    private String tracePrefix = "src/results/results_SA_feasible";
+
+    // Sum of the shift lengths in minutes, kept up to date from the dirty shifts of every applied move
+    private double totalLength = 0.0;
+    // Number of night shifts, kept up to date the same way and handed to the neighborhoods for the night-shift cap
+    private int numNightShifts = 0;
+    // Incremental state of the objective, committed after every applied move
+    private ObjectiveFunction.State objectiveState = null;
+    // Don't-look bits of the current run, null if not used
+    private boolean useDontLookBits = false;
+    private DontLookBits dontLook = null;
+    // Best move per route pair of each cacheable neighborhood in the current run, null if not used
+    private boolean useRoutePairCache = false;
+    private RoutePairCache[] pairCaches = null;
+
+    // Wall-clock limit of a run in milliseconds (0 for none), and start and deadline of the current run
+    private long timeLimitMillis = 0;
+    private long startNanos;
+    private long deadlineNanos;
+    private ImprovementListener improvementListener = null;
+
+    // Exchange of solutions with other searches, every migrationInterval iterations; null if the search runs alone
+    private Migration migration = null;
+    private int migrationInterval = 0;
+
+    // Best solution of the current run: bestShifts holds a copy of each of its shifts, changedSinceBest marks
+    // the shifts of the current solution that differ from it, so only those are copied at a new best
+    private double bestObjective;
+    private Shift[] bestShifts;
+    private boolean[] changedSinceBest;
 
     public int getMoveCount() {
         return moveCount;
     }
 
+    /**
+     * Enables the parallel best-improvement scan: with ImprovementChoice.BEST (and without simulated annealing)
+     * the moves of a neighborhood are evaluated on the given pool, split by route1. The chosen move is the
+     * same as in the sequential scan. The acceptance function must be thread-safe. Pass null to scan sequentially.
+     */
+    public void setParallel(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Prefix of the files the SA temperatures and objectives are written to after runDiffTimes
+     * (prefix + "_alltemps.txt" and prefix + "_allobj.txt"). Pass null to not write them, e.g. for concurrent runs.
+     */
+    public void setTraceOutput(String tracePrefix) {
+        this.tracePrefix = tracePrefix;
+    }
+
+    /**
+     * Debug mode: after every move, compare the incrementally updated shifts and running sums
+     * with a full recompute of all shifts (slow, only meant for testing neighborhoods).
+     */
+    public void setCheckIncremental(boolean checkIncremental) {
+        this.checkIncremental = checkIncremental;
+    }
+
+    /**
+     * Don't-look bits (not used with simulated annealing): after a move, each neighborhood only re-evaluates
+     * the moves that involve a shift changed since it last rejected them, instead of the whole solution.
+     * Exact for objectives that are sums over the shifts; with the balanced objective a rejected move can
+     * become improving through the global terms alone, which the bits ignore.
+     */
+    public void setDontLookBits(boolean useDontLookBits) {
+        this.useDontLookBits = useDontLookBits;
+    }
+
+    /**
+     * Route-pair cache for ImprovementChoice.BEST without simulated annealing: neighborhoods that are
+     * cacheableByRoutePair keep the best move per pair of shifts, and after a move only the pairs with a changed
+     * shift are scanned again. The other pairs contribute their cached move, re-evaluated with the current
+     * objective state.
+     */
+    public void setRoutePairCache(boolean useRoutePairCache) {
+        this.useRoutePairCache = useRoutePairCache;
+    }
+
+    /**
+     * Sampling-based simulated annealing (only with useSimulatedAnnealing): instead of generating and shuffling
+     * the move lists every iteration, each iteration draws one random move of a random neighborhood and
+     * evaluates only that one. maxIterations then counts these draws and the run always uses all of them.
+     */
+    public void setSampledAnnealing(boolean sampledAnnealing) {
+        this.sampledAnnealing = sampledAnnealing;
+    }
+
+    /**
+     * Stops a run once it has taken the given wall-clock time, checked between neighborhood scans (and every
+     * 1024 draws of a sampling run). Pass 0 for no limit.
+     */
+    public void setTimeLimit(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("Time limit must be non-negative, got " + timeLimitMillis);
+        }
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    // Called with every new best solution of a run; pass null to remove
+    public void setImprovementListener(ImprovementListener improvementListener) {
+        this.improvementListener = improvementListener;
+    }
+
+    /**
+     * Lets the search exchange solutions with other searches (see IslandSearch): every interval iterations
+     * (draws, for sampled annealing) it hands its best solution to the migration and continues from the
+     * solution it gets back, if any.
+     */
+    public void setMigration(int interval, Migration migration) {
+        if (migration != null && interval < 1) {
+            throw new IllegalArgumentException("Migration interval must be positive, got " + interval);
+        }
+        this.migrationInterval = interval;
+        this.migration = migration;
+    }
+
+    // Objective value of the best solution of the last run, which is the solution run returns
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
     public LocalSearch(
             List<Neighborhood> neighborhoods,
             AcceptanceFunction acceptanceFunction,
@@ -37,8 +164,16 @@ public class LocalSearch {
             ObjectiveFunction objectiveFunction,
             boolean useSimulatedAnnealing
     ) {
-        this.neighborhoods = neighborhoods;
-        this.acceptanceFunction = acceptanceFunction;
+        // Own copy of the list, since simulated annealing shuffles it
+        this.neighborhoods = new ArrayList<>(neighborhoods);
+        // Own copy of the annealing schedule, so several searches can run at the same time
+        if (acceptanceFunction instanceof AnnealingSchedule) {
+            this.schedule = ((AnnealingSchedule) acceptanceFunction).copy();
+            this.acceptanceFunction = this.schedule;
+        } else {
+            this.schedule = null;
+            this.acceptanceFunction = acceptanceFunction;
+        }
         this.compatibility = compatibility;
         this.improvementChoice = improvementChoice;
         this.maxIterations = maxIterations;
@@ -47,21 +182,46 @@ public class LocalSearch {
         this.useSimulatedAnnealing = useSimulatedAnnealing;
     }
 
+    /** @deprecated Use {@link #run(List, HTMInstance, TravelTimeMatrix)}. */
+    @Deprecated
     public List<Shift> run(
             List<Shift> initialShifts,
             HTMInstance instance,
             double[][] travelTimes
+    ) {
+        return run(initialShifts, instance, TravelTimeMatrix.of(travelTimes));
+    }
+
+    public List<Shift> run(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimes
     ) {
         List<Shift> shifts = new ArrayList<>(initialShifts);
+        Utils.recomputeAllShifts(shifts, instance, travelTimes);
+        totalLength = sumLengths(shifts);
+        numNightShifts = Utils.countNightShifts(shifts);
+        objectiveState = objectiveFunction.state(shifts);
+        dontLook = (useDontLookBits && !useSimulatedAnnealing)
+                ? new DontLookBits(neighborhoods.size(), instance.serviceTime.length, shifts.size())
+                : null;
+        pairCaches = createPairCaches(shifts.size());
+        startRun(shifts);
+        if (useSimulatedAnnealing && sampledAnnealing) {
+            return runSampled(shifts, instance, travelTimes, travelTimes, false);
+        }
         boolean improved = true;
         int iteration = 0;
 
-        while (improved && iteration < maxIterations) {
+        while (improved && iteration < maxIterations && !timeUp()) {
             iteration++;
             
-            if (useSimulatedAnnealing) {
-                Acceptance.updateTemperature(iteration);
-                //System.out.println("Temperature: " + Acceptance.getTemperature());
+            if (useSimulatedAnnealing && schedule != null) {
+                schedule.updateTemperature(iteration);
+                //System.out.println("Temperature: " + schedule.getTemperature());
+            }
+            if (migrationDue(iteration)) {
+                shifts = migrate(shifts, instance, travelTimes, travelTimes, false);
             }
 
             improved = false;
@@ -70,61 +230,34 @@ public class LocalSearch {
                 Random rnd = new Random(1000*maxIterations+iteration);
                 Collections.shuffle(neighborhoods, rnd);
             }
-            for (Neighborhood n : neighborhoods) {
+            for (int k = 0; k < neighborhoods.size(); k++) {
+                Neighborhood n = neighborhoods.get(k);
+                MoveScan scan;
 
-                List<Move> moves = n.generateMoves(shifts, compatibility, instance);
-        
                 if (useSimulatedAnnealing) {
+                    scan = new MoveScan(n, -1, shifts, instance, travelTimes, travelTimes, false);
+                    List<Move> moves = n.generateMoves(shifts, compatibility, instance);
                     Collections.shuffle(moves, new Random(iteration));
-                }
-
-                Move bestMove = null;
-                double bestImprovement = Double.NEGATIVE_INFINITY;
-        
-                for (Move m : moves) {
-                    Evaluation eval = n.evaluateMove(
-                            m,
-                            shifts,
-                            instance,
-                            travelTimes,
-                            maxShiftDuration,
-                            objectiveFunction
-                    );
-        
-                    if (!eval.feasible) continue;
-                    double improvement = eval.improvement;
-
-                    if (!acceptanceFunction.accept(improvement)) continue;
-                    
-
-                    // FIRST improvement
-                    if (improvementChoice == ImprovementChoice.FIRST) {
-                        // System.out.println("Neighborhood: " + n.getClass().getSimpleName());
-                        // System.out.println("Improvement of iteration " + iteration + ": " + improvement);
-                        
-                        shifts = n.applyMove(m, shifts, instance, travelTimes, travelTimes);
-                        Utils.recomputeAllShifts(shifts, instance, travelTimes);
-                        improved = true;
-                        moveCount++;
-                        break;
-                    }
-        
-                    if (improvementChoice == ImprovementChoice.BEST) {
-                        if (improvement > bestImprovement) {
-                            bestImprovement = improvement;
-                            bestMove = m;
-                        }
+                    for (Move m : moves) {
+                        if (!scan.visit(m)) break;
                     }
+                } else if (pool != null && improvementChoice == ImprovementChoice.BEST) {
+                    scan = scanParallel(n, k, shifts, instance, travelTimes, travelTimes, false);
+                } else {
+                    // Streams the moves without materializing them, stops at the first accepted move under FIRST
+                    scan = new MoveScan(n, k, shifts, instance, travelTimes, travelTimes, false);
+                    beginPairCacheScan(k);
+                    n.prepareScan(scanContext(shifts, k));
+                    if (n.forEachMove(shifts, compatibility, instance, 0, shifts.size(), scan)) scan.finish();
                 }
+                selectFromPairCache(k, scan, shifts);
 
-                if (improvementChoice == ImprovementChoice.BEST && bestMove != null) {
+                if (scan.bestMove != null) {
                     // System.out.println("Neighborhood: " + n.getClass().getSimpleName());
-                    // System.out.println("Improvement of iteration " + iteration + ": " + bestImprovement);
-        
-                    shifts = n.applyMove(bestMove, shifts, instance, travelTimes, travelTimes);
-                    Utils.recomputeAllShifts(shifts, instance, travelTimes);
+                    // System.out.println("Improvement of iteration " + iteration + ": " + scan.bestImprovement);
+
+                    shifts = applyIncremental(n, scan.bestMove, scan.bestImprovement, shifts, instance, travelTimes, travelTimes, false);
                     improved = true;
-                    moveCount++;
                 }
 
                 if (iteration % 100 == 0) {
@@ -135,27 +268,61 @@ public class LocalSearch {
             }
         }
         
-        return shifts;
+        return bestSolution(shifts);
     }
 
+    /** @deprecated Use {@link #runDiffTimes(List, HTMInstance, TravelTimeMatrix, TravelTimeMatrix)}. */
+    @Deprecated
     public List<Shift> runDiffTimes(
             List<Shift> initialShifts,
             HTMInstance instance,
             double[][] travelTimesNight,
             double[][] travelTimesDay
+    ) {
+        return runDiffTimes(initialShifts, instance, TravelTimeMatrix.of(travelTimesNight), TravelTimeMatrix.of(travelTimesDay));
+    }
+
+    public List<Shift> runDiffTimes(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimePair travelTimes
+    ) {
+        return runDiffTimes(initialShifts, instance, travelTimes.night, travelTimes.day);
+    }
+
+    public List<Shift> runDiffTimes(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) {
         List<Shift> shifts = new ArrayList<>(initialShifts);
+        Utils.recomputeAllShiftsDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
+        totalLength = sumLengths(shifts);
+        numNightShifts = Utils.countNightShifts(shifts);
+        objectiveState = objectiveFunction.state(shifts);
+        dontLook = (useDontLookBits && !useSimulatedAnnealing)
+                ? new DontLookBits(neighborhoods.size(), instance.serviceTime.length, shifts.size())
+                : null;
+        pairCaches = createPairCaches(shifts.size());
+        startRun(shifts);
+        if (useSimulatedAnnealing && sampledAnnealing) {
+            return runSampled(shifts, instance, travelTimesNight, travelTimesDay, true);
+        }
         boolean improved = true;
         int iteration = 0;
         List<Double> allTemperatures = new ArrayList<>();
         List<Double> allObjectives = new ArrayList<>();
 
-        while (improved && iteration < maxIterations) {
+        while (improved && iteration < maxIterations && !timeUp()) {
             iteration++;
-            if (useSimulatedAnnealing) {
-                Acceptance.updateTemperature(iteration);
-                // System.out.println("Temperature: " + Acceptance.getTemperature());
-                allTemperatures.add(Acceptance.getTemperature());
+            if (useSimulatedAnnealing && schedule != null) {
+                schedule.updateTemperature(iteration);
+                // System.out.println("Temperature: " + schedule.getTemperature());
+                allTemperatures.add(schedule.getTemperature());
+            }
+            if (migrationDue(iteration)) {
+                shifts = migrate(shifts, instance, travelTimesNight, travelTimesDay, true);
             }
 
             improved = false;
@@ -164,86 +331,586 @@ public class LocalSearch {
                 Random rnd = new Random(1000*maxIterations+iteration);
                 Collections.shuffle(neighborhoods, rnd);
             }
-            for (Neighborhood n : neighborhoods) {
-
-                List<Move> moves = n.generateMoves(shifts, compatibility, instance);
+            for (int k = 0; k < neighborhoods.size(); k++) {
+                Neighborhood n = neighborhoods.get(k);
+                MoveScan scan;
 
-                
                 if (useSimulatedAnnealing) {
+                    scan = new MoveScan(n, -1, shifts, instance, travelTimesNight, travelTimesDay, true);
+                    List<Move> moves = n.generateMoves(shifts, compatibility, instance);
                     Collections.shuffle(moves, new Random(iteration));
-                }
-        
-                Move bestMove = null;
-                double bestImprovement = Double.NEGATIVE_INFINITY;
-        
-                for (Move m : moves) {
-                    Evaluation eval = n.evaluateMoveDiffTimes(
-                            m,
-                            shifts,
-                            instance,
-                            travelTimesNight,
-                            travelTimesDay,
-                            maxShiftDuration,
-                            objectiveFunction
-                    );
-        
-                    if (!eval.feasible) continue;
-                    double improvement = eval.improvement;
-
-                    if (!acceptanceFunction.accept(improvement)) continue;
-
-                    // FIRST improvement
-                    if (improvementChoice == ImprovementChoice.FIRST) {
-                        // System.out.println("Neighborhood: " + n.getClass().getSimpleName());
-                        // System.out.println("Improvement of iteration " + iteration + ": " + improvement);
-                        
-                        shifts = n.applyMove(m, shifts, instance, travelTimesNight, travelTimesDay);
-                        Utils.recomputeAllShiftsDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
-                        improved = true;
-                        moveCount++;
-                        break;
-                    }
-        
-                    if (improvementChoice == ImprovementChoice.BEST) {
-                        if (improvement > bestImprovement) {
-                            bestImprovement = improvement;
-                            bestMove = m;
-                        }
+                    for (Move m : moves) {
+                        if (!scan.visit(m)) break;
                     }
+                } else if (pool != null && improvementChoice == ImprovementChoice.BEST) {
+                    scan = scanParallel(n, k, shifts, instance, travelTimesNight, travelTimesDay, true);
+                } else {
+                    // Streams the moves without materializing them, stops at the first accepted move under FIRST
+                    scan = new MoveScan(n, k, shifts, instance, travelTimesNight, travelTimesDay, true);
+                    beginPairCacheScan(k);
+                    n.prepareScan(scanContext(shifts, k));
+                    if (n.forEachMove(shifts, compatibility, instance, 0, shifts.size(), scan)) scan.finish();
                 }
+                selectFromPairCache(k, scan, shifts);
 
-                if (improvementChoice == ImprovementChoice.BEST && bestMove != null) {
+                if (scan.bestMove != null) {
                     // System.out.println("Neighborhood: " + n.getClass().getSimpleName());
-                    // System.out.println("Improvement of iteration " + iteration + ": " + bestImprovement);
-        
-                    shifts = n.applyMove(bestMove, shifts, instance, travelTimesNight, travelTimesDay);
-                    Utils.recomputeAllShiftsDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
+                    // System.out.println("Improvement of iteration " + iteration + ": " + scan.bestImprovement);
+
+                    shifts = applyIncremental(n, scan.bestMove, scan.bestImprovement, shifts, instance, travelTimesNight, travelTimesDay, true);
                     improved = true;
-                    moveCount++;
                 }
 
                 if (iteration % 100 == 0) {
                     // System.out.println("Objective at iteration " + iteration + " is: " + Utils.totalObjective(shifts));
                 }
 
-                allObjectives.add(Utils.totalObjective(shifts));
+                allObjectives.add(totalLength / 60.0);
         
                 if (improved) break; 
             }
         
         }
-        if (useSimulatedAnnealing) {
+        if (useSimulatedAnnealing && tracePrefix != null) {
             try {
-                temperaturesToFile(allTemperatures, "src/results/results_SA_feasible_alltemps.txt");
+                temperaturesToFile(allTemperatures, tracePrefix + "_alltemps.txt");
+
+                temperaturesToFile(allObjectives, tracePrefix + "_allobj.txt");
+            } catch (IOException e) {
+                throw new UncheckedIOException("\nFailed to temperatures to a file", e);
+            }
+        }
+        return bestSolution(shifts);
+    }
+
+    /**
+     * Sampling-based simulated annealing: every iteration draws a neighborhood and one of its moves
+     * (Neighborhood.sampleMove) and applies the move if the acceptance function accepts it. The temperature
+     * follows the schedule over the maxIterations draws; the scan contexts are only renewed after a move.
+     */
+    private List<Shift> runSampled(
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            boolean diffTimes
+    ) {
+        Random rnd = (schedule != null) ? schedule.random() : new Random(AnnealingSchedule.DEFAULT_SEED);
+        boolean trace = diffTimes && tracePrefix != null;
+        int traceInterval = Math.max(1, maxIterations / 10000);
+        List<Double> allTemperatures = new ArrayList<>();
+        List<Double> allObjectives = new ArrayList<>();
+        boolean prepared = false;
+        Evaluation evaluation = new Evaluation();
 
-                temperaturesToFile(allObjectives, "src/results/results_SA_feasible_allobj.txt");
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            if ((iteration & 1023) == 0 && timeUp()) break;
+            if (schedule != null) {
+                schedule.updateTemperature(iteration);
+            }
+            if (migrationDue(iteration)) {
+                List<Shift> migrated = migrate(shifts, instance, travelTimesNight, travelTimesDay, diffTimes);
+                if (migrated != shifts) {
+                    shifts = migrated;
+                    prepared = false;
+                }
+            }
+            if (trace && iteration % traceInterval == 0) {
+                allTemperatures.add(schedule != null ? schedule.getTemperature() : 0.0);
+                allObjectives.add(totalLength / 60.0);
+            }
+
+            if (!prepared) {
+                for (int k = 0; k < neighborhoods.size(); k++) {
+                    neighborhoods.get(k).prepareScan(scanContext(shifts, k));
+                }
+                prepared = true;
+            }
+
+            Neighborhood n = neighborhoods.get(rnd.nextInt(neighborhoods.size()));
+            Move move = n.sampleMove(shifts, compatibility, instance, rnd);
+            if (move == null) continue;
+
+            Evaluation eval = diffTimes
+                    ? n.evaluateMoveDiffTimes(move, shifts, instance, travelTimesNight, travelTimesDay, maxShiftDuration, objectiveFunction, evaluation)
+                    : n.evaluateMove(move, shifts, instance, travelTimesDay, maxShiftDuration, objectiveFunction, evaluation);
+            if (!eval.feasible || !acceptanceFunction.accept(eval.improvement)) continue;
+
+            shifts = applyIncremental(n, move, eval.improvement, shifts, instance, travelTimesNight, travelTimesDay, diffTimes);
+            prepared = false;
+        }
+
+        if (trace) {
+            try {
+                temperaturesToFile(allTemperatures, tracePrefix + "_alltemps.txt");
+                temperaturesToFile(allObjectives, tracePrefix + "_allobj.txt");
             } catch (IOException e) {
                 throw new UncheckedIOException("\nFailed to temperatures to a file", e);
             }
         }
-        return shifts;
+        return bestSolution(shifts);
+    }
+
+    /**
+     * Evaluates the visited moves of one neighborhood and remembers the move to apply: the first accepted
+     * move under FIRST (stopping the enumeration), or the accepted move with the largest improvement under BEST.
+     *
+     * With don't-look bits, moves from stops whose bit is set are skipped, and every finished row (the moves of
+     * one route1, which all neighborhoods generate consecutively) sets the bits of its stops without an
+     * accepted move.
+     */
+    private class MoveScan implements MoveVisitor {
+        private final Neighborhood neighborhood;
+        private final int neighborhoodIndex;
+        private final List<Shift> shifts;
+        private final HTMInstance instance;
+        private final TravelTimeMatrix travelTimesNight;
+        private final TravelTimeMatrix travelTimesDay;
+        private final boolean diffTimes;
+        private final DontLookBits bits;
+        private final RoutePairCache cache;
+        // Filled in by every evaluation of the scan; the cache copies what it keeps
+        private final Evaluation evaluation = new Evaluation();
+
+        Move bestMove = null;
+        double bestImprovement = Double.NEGATIVE_INFINITY;
+
+        // Row being scanned, and per position of its route whether a move from that stop was accepted
+        private int row = -1;
+        private boolean rowAccepted = false;
+        private boolean[] acceptedAt = new boolean[0];
+
+        MoveScan(
+                Neighborhood neighborhood,
+                int neighborhoodIndex,
+                List<Shift> shifts,
+                HTMInstance instance,
+                TravelTimeMatrix travelTimesNight,
+                TravelTimeMatrix travelTimesDay,
+                boolean diffTimes
+        ) {
+            this.neighborhood = neighborhood;
+            this.neighborhoodIndex = neighborhoodIndex;
+            this.shifts = shifts;
+            this.instance = instance;
+            this.travelTimesNight = travelTimesNight;
+            this.travelTimesDay = travelTimesDay;
+            this.diffTimes = diffTimes;
+            this.bits = (neighborhoodIndex >= 0) ? dontLook : null;
+            this.cache = (neighborhoodIndex >= 0 && pairCaches != null) ? pairCaches[neighborhoodIndex] : null;
+        }
+
+        @Override
+        public boolean visit(Move m) {
+            int stop = -1;
+            if (bits != null) {
+                if (m.route1 != row) startRow(m.route1);
+                IntRoute route = shifts.get(m.route1).route;
+                if (m.index1 > 0 && m.index1 < route.size() - 1) {
+                    stop = route.getInt(m.index1);
+                    if (bits.skipStop(neighborhoodIndex, stop, m.route1, m.route2)) return true;
+                }
+            }
+
+            Evaluation eval = diffTimes
+                    ? neighborhood.evaluateMoveDiffTimes(m, shifts, instance, travelTimesNight, travelTimesDay, maxShiftDuration, objectiveFunction, evaluation)
+                    : neighborhood.evaluateMove(m, shifts, instance, travelTimesDay, maxShiftDuration, objectiveFunction, evaluation);
+
+            if (!eval.feasible) return true;
+            double improvement = eval.improvement;
+
+            // The cache keeps the best feasible move of the pair, whether or not it is accepted now
+            if (cache != null) cache.record(m, eval);
+
+            if (!acceptanceFunction.accept(improvement)) return true;
+
+            if (bits != null) {
+                rowAccepted = true;
+                if (stop >= 0) acceptedAt[m.index1] = true;
+            }
+
+            // FIRST improvement
+            if (improvementChoice == ImprovementChoice.FIRST) {
+                bestMove = m.copy();
+                bestImprovement = improvement;
+                return false;
+            }
+
+            if (improvementChoice == ImprovementChoice.BEST && improvement > bestImprovement) {
+                bestImprovement = improvement;
+                bestMove = m.copy();
+            }
+            return true;
+        }
+
+        private void startRow(int route1) {
+            finishRow();
+            row = route1;
+            rowAccepted = false;
+            int size = shifts.get(route1).route.size();
+            if (acceptedAt.length < size) acceptedAt = new boolean[size];
+            else Arrays.fill(acceptedAt, 0, size, false);
+        }
+
+        private void finishRow() {
+            if (row < 0) return;
+            IntRoute route = shifts.get(row).route;
+            for (int p = 1; p < route.size() - 1; p++) {
+                if (!acceptedAt[p]) bits.lookedAtStop(neighborhoodIndex, route.getInt(p));
+            }
+            if (!rowAccepted) bits.lookedAtShift(neighborhoodIndex, row);
+            row = -1;
+        }
+
+        // Call once the enumeration ran to the end, to set the bits of the last row
+        void finish() {
+            if (bits != null) finishRow();
+        }
+    }
+
+    private MoveScan scanParallel(
+            Neighborhood n,
+            int neighborhoodIndex,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            boolean diffTimes
+    ) {
+        beginPairCacheScan(neighborhoodIndex);
+        n.prepareScan(scanContext(shifts, neighborhoodIndex));
+
+        // The evaluations fill missing prefix sums lazily, do it up front so the tasks only read the shifts
+        for (Shift s : shifts) {
+            s.ensurePrefixSums(travelTimesNight, instance);
+            s.ensurePrefixSums(travelTimesDay, instance);
+        }
+
+        int leafSize = Math.max(1, shifts.size() / (4 * pool.getParallelism()));
+        return pool.invoke(new ScanTask(n, neighborhoodIndex, shifts, instance, travelTimesNight, travelTimesDay, diffTimes, 0, shifts.size(), leafSize));
     }
 
+    /**
+     * Best-improvement scan of the moves with route1 in [fromRoute, toRoute), split in halves until leafSize.
+     */
+    private class ScanTask extends RecursiveTask<MoveScan> {
+        private static final long serialVersionUID = 1L;
+
+        private final Neighborhood neighborhood;
+        private final int neighborhoodIndex;
+        private final List<Shift> shifts;
+        private final HTMInstance instance;
+        private final TravelTimeMatrix travelTimesNight;
+        private final TravelTimeMatrix travelTimesDay;
+        private final boolean diffTimes;
+        private final int fromRoute;
+        private final int toRoute;
+        private final int leafSize;
+
+        ScanTask(
+                Neighborhood neighborhood,
+                int neighborhoodIndex,
+                List<Shift> shifts,
+                HTMInstance instance,
+                TravelTimeMatrix travelTimesNight,
+                TravelTimeMatrix travelTimesDay,
+                boolean diffTimes,
+                int fromRoute,
+                int toRoute,
+                int leafSize
+        ) {
+            this.neighborhood = neighborhood;
+            this.neighborhoodIndex = neighborhoodIndex;
+            this.shifts = shifts;
+            this.instance = instance;
+            this.travelTimesNight = travelTimesNight;
+            this.travelTimesDay = travelTimesDay;
+            this.diffTimes = diffTimes;
+            this.fromRoute = fromRoute;
+            this.toRoute = toRoute;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected MoveScan compute() {
+            if (toRoute - fromRoute <= leafSize) {
+                MoveScan scan = new MoveScan(neighborhood, neighborhoodIndex, shifts, instance, travelTimesNight, travelTimesDay, diffTimes);
+                if (neighborhood.forEachMove(shifts, compatibility, instance, fromRoute, toRoute, scan)) scan.finish();
+                return scan;
+            }
+
+            int mid = (fromRoute + toRoute) >>> 1;
+            ScanTask left = new ScanTask(neighborhood, neighborhoodIndex, shifts, instance, travelTimesNight, travelTimesDay, diffTimes, fromRoute, mid, leafSize);
+            ScanTask right = new ScanTask(neighborhood, neighborhoodIndex, shifts, instance, travelTimesNight, travelTimesDay, diffTimes, mid, toRoute, leafSize);
+            left.fork();
+            MoveScan rightBest = right.compute();
+            MoveScan leftBest = left.join();
+
+            // Ties go to the left half, whose moves come first in the sequential order
+            if (rightBest.bestMove != null && rightBest.bestImprovement > leftBest.bestImprovement) {
+                return rightBest;
+            }
+            return leftBest;
+        }
+    }
+
+    /**
+     * Applies a move and recomputes only the shifts it changed, updating the running length sum.
+     *
+     * @param improvement the improvement reported by evaluateMove, only used in the debug check
+     * @param diffTimes   whether the shifts use the night/day matrices (runDiffTimes) or a single matrix
+     */
+    private List<Shift> applyIncremental(
+            Neighborhood n,
+            Move move,
+            double improvement,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            boolean diffTimes
+    ) {
+        double objectiveBefore = checkIncremental ? objectiveFunction.shifts(shifts) : 0.0;
+
+        MoveResult result = n.applyMove(move, shifts, instance, travelTimesNight, travelTimesDay);
+        if (diffTimes) {
+            Utils.recomputeShiftsDiffTimes(result.shifts, result.dirtyShifts, instance, travelTimesNight, travelTimesDay);
+        } else {
+            Utils.recomputeShifts(result.shifts, result.dirtyShifts, instance, travelTimesDay);
+        }
+        totalLength += result.lengthDelta();
+        numNightShifts += result.nightShiftDelta();
+        objectiveState.commit(result);
+        if (pairCaches != null) {
+            for (RoutePairCache cache : pairCaches) {
+                if (cache == null) continue;
+                if (result.nightShiftDelta() != 0) {
+                    cache.invalidateAll();
+                } else {
+                    for (int r : result.dirtyShifts) cache.invalidateShift(r);
+                }
+            }
+        }
+        if (dontLook != null) {
+            dontLook.shiftsChanged(result.dirtyShifts);
+            // The night-shift cap decides which moves the inter-shift neighborhoods generate at all
+            if (result.nightShiftDelta() != 0) dontLook.clear();
+        }
+        moveCount++;
+        trackBest(result);
+
+        if (checkIncremental) {
+            checkAgainstFullRecompute(n, result, improvement, objectiveBefore, instance, travelTimesNight, travelTimesDay, diffTimes);
+        }
+        return result.shifts;
+    }
+
+    private void checkAgainstFullRecompute(
+            Neighborhood n,
+            MoveResult result,
+            double improvement,
+            double objectiveBefore,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            boolean diffTimes
+    ) {
+        double tol = 1e-6;
+        String name = n.getClass().getSimpleName();
+
+        List<Shift> full = Utils.deepCopyShifts(result.shifts);
+        if (diffTimes) {
+            Utils.recomputeAllShiftsDiffTimes(full, instance, travelTimesNight, travelTimesDay);
+        } else {
+            Utils.recomputeAllShifts(full, instance, travelTimesDay);
+        }
+
+        for (int i = 0; i < full.size(); i++) {
+            Shift inc = result.shifts.get(i);
+            Shift ref = full.get(i);
+            if (Math.abs(inc.totalTime - ref.totalTime) > tol
+                    || Math.abs(inc.serviceTime - ref.serviceTime) > tol
+                    || inc.nightShift != ref.nightShift
+                    || inc.nightStops(instance) != ref.nightStops(instance)) {
+                throw new IllegalStateException("Incremental update after " + name + " differs from full recompute for shift " + i
+                        + ": totalTime " + inc.totalTime + " vs " + ref.totalTime
+                        + ", serviceTime " + inc.serviceTime + " vs " + ref.serviceTime
+                        + ", nightShift " + inc.nightShift + " vs " + ref.nightShift
+                        + ", nightStops " + inc.nightStops(instance) + " vs " + ref.nightStops(instance));
+            }
+        }
+
+        double fullLength = sumLengths(full);
+        if (Math.abs(totalLength - fullLength) > tol) {
+            throw new IllegalStateException("Running length sum after " + name + " is " + totalLength + ", full recompute gives " + fullLength);
+        }
+
+        double fullObjective = objectiveFunction.shifts(full);
+        if (Math.abs(objectiveState.value() - fullObjective) > tol * Math.max(1.0, Math.abs(fullObjective))) {
+            throw new IllegalStateException("Objective state after " + name + " is " + objectiveState.value() + ", full recompute gives " + fullObjective);
+        }
+
+        int fullNightShifts = Utils.countNightShifts(full);
+        if (numNightShifts != fullNightShifts) {
+            throw new IllegalStateException("Running night-shift count after " + name + " is " + numNightShifts + ", full recompute gives " + fullNightShifts);
+        }
+
+        // The evaluation uses the matrices of the shifts before the move, so a shift switching between
+        // day and night can make the realised improvement differ from the evaluated one
+        double realised = objectiveBefore - objectiveFunction.shifts(full);
+        if (Math.abs(realised - improvement) > tol) {
+            System.out.println("Warning: " + name + " evaluated improvement " + improvement + " but realised " + realised);
+        }
+    }
+
+    // Starts the clock of a run and takes the initial solution as its best solution
+    private void startRun(List<Shift> shifts) {
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + timeLimitMillis * 1_000_000L;
+
+        bestObjective = objectiveState.value();
+        bestShifts = new Shift[shifts.size()];
+        changedSinceBest = new boolean[shifts.size()];
+        for (int r = 0; r < shifts.size(); r++) {
+            bestShifts[r] = copyShift(shifts.get(r));
+        }
+    }
+
+    private boolean timeUp() {
+        return timeLimitMillis > 0 && System.nanoTime() >= deadlineNanos;
+    }
+
+    // After an applied move: a new best solution only copies the shifts changed since the previous best
+    private void trackBest(MoveResult result) {
+        for (int r : result.dirtyShifts) {
+            changedSinceBest[r] = true;
+        }
+        updateBest(result.shifts);
+    }
+
+    private void updateBest(List<Shift> shifts) {
+        double value = objectiveState.value();
+        if (!(value < bestObjective)) return;
+
+        bestObjective = value;
+        for (int r = 0; r < changedSinceBest.length; r++) {
+            if (!changedSinceBest[r]) continue;
+            bestShifts[r] = copyShift(shifts.get(r));
+            changedSinceBest[r] = false;
+        }
+
+        if (improvementListener != null) {
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            improvementListener.improved(Collections.unmodifiableList(shifts), value, moveCount, elapsedMillis);
+        }
+    }
+
+    private boolean migrationDue(int iteration) {
+        return migration != null && iteration % migrationInterval == 0;
+    }
+
+    /**
+     * Hands the best solution so far to the migration. If it returns a solution, the search continues from a
+     * copy of it, with all incremental state rebuilt, and takes it as its best solution if it is better.
+     */
+    private List<Shift> migrate(
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            boolean diffTimes
+    ) {
+        List<Shift> immigrant = migration.migrate(Collections.unmodifiableList(bestSolution(shifts)), bestObjective);
+        if (immigrant == null) return shifts;
+        if (immigrant.size() != changedSinceBest.length) {
+            throw new IllegalArgumentException("Migrated solution has " + immigrant.size() + " shifts, the search has " + changedSinceBest.length);
+        }
+
+        List<Shift> adopted = Utils.deepCopyShifts(immigrant);
+        if (diffTimes) {
+            Utils.recomputeAllShiftsDiffTimes(adopted, instance, travelTimesNight, travelTimesDay);
+        } else {
+            Utils.recomputeAllShifts(adopted, instance, travelTimesDay);
+        }
+        totalLength = sumLengths(adopted);
+        numNightShifts = Utils.countNightShifts(adopted);
+        objectiveState = objectiveFunction.state(adopted);
+        if (dontLook != null) {
+            dontLook = new DontLookBits(neighborhoods.size(), instance.serviceTime.length, adopted.size());
+        }
+        pairCaches = createPairCaches(adopted.size());
+
+        Arrays.fill(changedSinceBest, true);
+        updateBest(adopted);
+        return adopted;
+    }
+
+    // The best solution of the run: the current one if nothing changed since, otherwise its saved copies
+    private List<Shift> bestSolution(List<Shift> shifts) {
+        List<Shift> best = null;
+        for (int r = 0; r < changedSinceBest.length; r++) {
+            if (!changedSinceBest[r]) continue;
+            if (best == null) best = new ArrayList<>(shifts);
+            best.set(r, bestShifts[r]);
+        }
+        return (best == null) ? shifts : best;
+    }
+
+    private static Shift copyShift(Shift s) {
+        // The Shift constructor copies the route
+        return new Shift(s.route, s.travelTime, s.serviceTime, s.nightShift);
+    }
+
+    // Context of a scan of the current solution by the k-th neighborhood, from the counters kept by this search
+    private ScanContext scanContext(List<Shift> shifts, int k) {
+        RoutePairCache cache = (pairCaches == null) ? null : pairCaches[k];
+        return ScanContext.of(shifts, numNightShifts, objectiveFunction, objectiveState, dontLook, cache, k);
+    }
+
+    private RoutePairCache[] createPairCaches(int m) {
+        if (!useRoutePairCache || useSimulatedAnnealing || improvementChoice != ImprovementChoice.BEST) return null;
+
+        RoutePairCache[] caches = new RoutePairCache[neighborhoods.size()];
+        for (int k = 0; k < caches.length; k++) {
+            if (neighborhoods.get(k).cacheableByRoutePair()) caches[k] = new RoutePairCache(m);
+        }
+        return caches;
+    }
+
+    private void beginPairCacheScan(int k) {
+        if (pairCaches != null && pairCaches[k] != null) pairCaches[k].beginScan();
+    }
+
+    /**
+     * Once the k-th neighborhood is scanned, replaces the choice of the scan by the best accepted move over all
+     * cached route pairs, the freshly scanned ones included. Ties go to the first pair in the scan order.
+     */
+    private void selectFromPairCache(int k, MoveScan scan, List<Shift> shifts) {
+        if (pairCaches == null || pairCaches[k] == null) return;
+        RoutePairCache cache = pairCaches[k];
+        cache.endScan();
+
+        Move bestMove = null;
+        double bestImprovement = Double.NEGATIVE_INFINITY;
+        for (int idx = 0; idx < cache.size(); idx++) {
+            if (cache.move(idx) == null) continue;
+            double improvement = cache.improvement(idx, shifts, objectiveState);
+            if (improvement > bestImprovement && acceptanceFunction.accept(improvement)) {
+                bestMove = cache.move(idx);
+                bestImprovement = improvement;
+            }
+        }
+        scan.bestMove = (bestMove == null) ? null : bestMove.copy();
+        scan.bestImprovement = bestImprovement;
+    }
+
+    private static double sumLengths(List<Shift> shifts) {
+        double total = 0.0;
+        for (Shift s : shifts) {
+            total += s.totalTime;
+        }
+        return total;
+    }
 
 public static void temperaturesToFile(List<Double> values, String filename) throws IOException {
     try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
@@ -0,0 +1,19 @@
+package search;
+
+import core.Shift;
+
+import java.util.List;
+
+/**
+ * Exchange of solutions between searches that run side by side, called by LocalSearch on its own thread.
+ */
+@FunctionalInterface
+public interface Migration {
+    /**
+     * @param best          read-only view of the best solution of the calling search, only valid during the call
+     *                      (copy it to keep it)
+     * @param bestObjective its objective value
+     * @return a solution for the search to continue from (it is copied), or null to continue as before
+     */
+    List<Shift> migrate(List<Shift> best, double bestObjective);
+}
@@ -0,0 +1,85 @@
+package search;
+
+import core.Shift;
+import core.Utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free mailbox for the solutions that islands exchange: one slot per island holding the best solution the
+ * island has posted, which the other islands read without blocking it.
+ *
+ * A posted solution is copied into an immutable snapshot, and a slot is only replaced (by compare-and-set)
+ * with a better snapshot, so readers never see a partially written solution and never copy under a lock.
+ */
+public final class MigrationMailbox {
+    private static final double EPS = 1e-6;
+
+    /**
+     * Immutable solution in the mailbox; its shifts must not be modified, so readers copy them.
+     */
+    public static final class Snapshot {
+        public final List<Shift> shifts;
+        public final double objective;
+        public final int island;
+
+        private Snapshot(List<Shift> shifts, double objective, int island) {
+            this.shifts = shifts;
+            this.objective = objective;
+            this.island = island;
+        }
+    }
+
+    private final AtomicReferenceArray<Snapshot> slots;
+
+    public MigrationMailbox(int numIslands) {
+        if (numIslands < 1) {
+            throw new IllegalArgumentException("Mailbox needs at least one island, got " + numIslands);
+        }
+        this.slots = new AtomicReferenceArray<>(numIslands);
+    }
+
+    public int size() {
+        return slots.length();
+    }
+
+    /**
+     * Posts a solution of the given island, copying it, unless the island already posted one at least as good.
+     * Returns whether the slot was replaced.
+     */
+    public boolean post(int island, List<Shift> shifts, double objective) {
+        Snapshot current = slots.get(island);
+        if (current != null && current.objective <= objective + EPS) return false;
+
+        Snapshot snapshot = new Snapshot(Collections.unmodifiableList(Utils.deepCopyShifts(shifts)), objective, island);
+        // Only the island itself posts to its slot, but a reset may race with it
+        while (true) {
+            current = slots.get(island);
+            if (current != null && current.objective <= objective + EPS) return false;
+            if (slots.compareAndSet(island, current, snapshot)) return true;
+        }
+    }
+
+    // Latest solution posted by the given island, null if it has not posted one yet
+    public Snapshot read(int island) {
+        return slots.get(island);
+    }
+
+    // Best solution posted by any island, null if none has posted yet
+    public Snapshot best() {
+        Snapshot best = null;
+        for (int i = 0; i < slots.length(); i++) {
+            Snapshot s = slots.get(i);
+            if (s != null && (best == null || s.objective < best.objective)) best = s;
+        }
+        return best;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+}
@@ -2,28 +2,62 @@ package search;
 
 import java.util.Objects;
 
+/**
+ * A move is identified by two routes and two positions; their meaning depends on the neighborhood. Neighborhoods
+ * whose moves need more than that (e.g. a segment length) encode it in variant, which is 0 for the others.
+ *
+ * The fields are only reassigned through set(), by the neighborhoods when they stream moves into a
+ * MoveVisitor through a single reused cursor. Keep a copy() of such a move if it must outlive the visit.
+ */
 public class Move {
-    public final int route1;
-    public final int route2;
-    public final int index1;
-    public final int index2;
-    public final MoveType type;
+    public int route1;
+    public int route2;
+    public int index1;
+    public int index2;
+    public int variant;
+    public MoveType type;
 
     public Move(int route1, int route2, int index1, int index2, MoveType type) {
+        this(route1, route2, index1, index2, 0, type);
+    }
+
+    public Move(int route1, int route2, int index1, int index2, int variant, MoveType type) {
         this.route1 = route1;
         this.route2 = route2;
         this.index1 = index1;
         this.index2 = index2;
+        this.variant = variant;
         this.type = type;
     }
 
+    // Repositions this move (used as a cursor); the type is kept
+    public Move set(int route1, int route2, int index1, int index2) {
+        this.route1 = route1;
+        this.route2 = route2;
+        this.index1 = index1;
+        this.index2 = index2;
+        return this;
+    }
+
+    public Move set(int route1, int route2, int index1, int index2, int variant) {
+        set(route1, route2, index1, index2);
+        this.variant = variant;
+        return this;
+    }
+
+    public Move copy() {
+        return new Move(route1, route2, index1, index2, variant, type);
+    }
+
     public enum MoveType {
         INTER_SHIFT,
         INTER_SWAP,
         INTRA_SWAP,
         INTRA_SHIFT,
         INTRA_2OPT,
-        INTER_2OPT_STAR
+        INTER_2OPT_STAR,
+        OR_OPT,
+        CROSS_EXCHANGE
     }
 
     @Override
@@ -35,11 +69,12 @@ public class Move {
                route2 == move.route2 &&
                index1 == move.index1 &&
                index2 == move.index2 &&
+               variant == move.variant &&
                type == move.type;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(route1, route2, index1, index2, type);
+        return Objects.hash(route1, route2, index1, index2, variant, type);
     }
 }
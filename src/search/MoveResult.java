@@ -0,0 +1,71 @@
+package search;
+
+import core.Shift;
+
+import java.util.List;
+
+/**
+ * Outcome of Neighborhood.applyMove: the shift list after the move plus the indices of the shifts
+ * the move changed, together with their total time, service time and night flag from before the move.
+ *
+ * Only the dirty shifts have to be recomputed afterwards; lengthDelta/serviceDelta/nightShiftDelta then
+ * give the exact change of the summed shift lengths, service times and the number of night shifts.
+ */
+public class MoveResult {
+    public final List<Shift> shifts;
+    public final int[] dirtyShifts;
+    public final double[] oldLength;
+    public final double[] oldService;
+    public final int[] oldNight;
+
+    public MoveResult(List<Shift> shifts, double[] oldLength, double[] oldService, int[] oldNight, int... dirtyShifts) {
+        this.shifts = shifts;
+        this.dirtyShifts = dirtyShifts;
+        this.oldLength = oldLength;
+        this.oldService = oldService;
+        this.oldNight = oldNight;
+    }
+
+    /**
+     * Captures the current lengths of the given shifts, call before the move changes them.
+     */
+    public static MoveResult before(List<Shift> shifts, int... dirtyShifts) {
+        double[] oldLength = new double[dirtyShifts.length];
+        double[] oldService = new double[dirtyShifts.length];
+        int[] oldNight = new int[dirtyShifts.length];
+        for (int k = 0; k < dirtyShifts.length; k++) {
+            Shift s = shifts.get(dirtyShifts[k]);
+            oldLength[k] = s.totalTime;
+            oldService[k] = s.serviceTime;
+            oldNight[k] = s.nightShift;
+        }
+        return new MoveResult(shifts, oldLength, oldService, oldNight, dirtyShifts);
+    }
+
+    // Change of the summed total times of the dirty shifts (valid once they are recomputed)
+    public double lengthDelta() {
+        double delta = 0.0;
+        for (int k = 0; k < dirtyShifts.length; k++) {
+            delta += shifts.get(dirtyShifts[k]).totalTime - oldLength[k];
+        }
+        return delta;
+    }
+
+    // Change of the summed service times of the dirty shifts (valid once they are recomputed)
+    public double serviceDelta() {
+        double delta = 0.0;
+        for (int k = 0; k < dirtyShifts.length; k++) {
+            delta += shifts.get(dirtyShifts[k]).serviceTime - oldService[k];
+        }
+        return delta;
+    }
+
+    // Change of the number of night shifts among the dirty shifts (valid once they are recomputed)
+    public int nightShiftDelta() {
+        int delta = 0;
+        for (int k = 0; k < dirtyShifts.length; k++) {
+            delta += shifts.get(dirtyShifts[k]).nightShift - oldNight[k];
+        }
+        return delta;
+    }
+}
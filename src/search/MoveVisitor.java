@@ -0,0 +1,10 @@
+package search;
+
+/**
+ * Receives the moves streamed by Neighborhood.forEachMove.
+ */
+@FunctionalInterface
+public interface MoveVisitor {
+    // The move is a cursor reused by the neighborhood; return false to stop the enumeration
+    boolean visit(Move move);
+}
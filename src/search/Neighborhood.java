@@ -1,13 +1,88 @@
 package search;
 import java.util.List;
+import java.util.Random;
 
 import core.HTMInstance;
 import core.Shift;
+import core.TravelTimeMatrix;
 
 public interface Neighborhood {
     List<Move> generateMoves(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance);
-    Evaluation evaluateMove(Move move, List<Shift> shifts, HTMInstance instance, double[][] travelTimes, double maxShiftDuration, ObjectiveFunction objectiveFunction);
-    Evaluation evaluateMoveDiffTimes(Move move, List<Shift> shifts, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay, double maxShiftDuration, ObjectiveFunction objectiveFunction);
-    List<Shift> applyMove(Move move, List<Shift> shifts, HTMInstance instance, double[][] travelTimesNight, double[][] travelTimesDay);
+
+    /**
+     * Streams the moves of generateMoves, in the same order, into the visitor without materializing them.
+     * The move passed to the visitor is a reused cursor. Returns false if the visitor stopped the enumeration.
+     */
+    default boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, MoveVisitor visitor) {
+        for (Move m : generateMoves(shifts, compatibility, instance)) {
+            if (!visitor.visit(m)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the per-scan context (e.g. the global sums of the objective) that the evaluations of the
+     * following moves use. forEachMove calls it; call it directly before using the ranged forEachMove.
+     */
+    default void prepareScan(List<Shift> shifts) {
+    }
+
+    /**
+     * prepareScan with a context supplied by the caller, e.g. a search that keeps the night-shift count and
+     * the objective state up to date itself (see ScanContext.of), so the scan is set up in constant time.
+     */
+    default void prepareScan(ScanContext context) {
+        prepareScan(context.shifts());
+    }
+
+    /**
+     * Streams only the moves whose route1 lies in [fromRoute, toRoute), in the order of forEachMove.
+     * Does not call prepareScan, so disjoint ranges can be scanned concurrently.
+     */
+    default boolean forEachMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, int fromRoute, int toRoute, MoveVisitor visitor) {
+        for (Move m : generateMoves(shifts, compatibility, instance)) {
+            if (m.route1 < fromRoute || m.route1 >= toRoute) continue;
+            if (!visitor.visit(m)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Draws one move at random for sampling-based simulated annealing, after prepareScan: the routes and
+     * positions are drawn uniformly, and null is returned if forEachMove would not generate the drawn move (the
+     * caller then simply draws again). The default picks from generateMoves, a full enumeration per draw, so
+     * neighborhoods used with sampling should override it.
+     */
+    default Move sampleMove(List<Shift> shifts, RouteCompatibility compatibility, HTMInstance instance, Random rnd) {
+        List<Move> moves = generateMoves(shifts, compatibility, instance);
+        return moves.isEmpty() ? null : moves.get(rnd.nextInt(moves.size()));
+    }
+
+    /**
+     * True if the moves of a route pair, whether they are generated and their Evaluation.newL/newC, only depend
+     * on the two shifts (and the night-shift count). A best-improvement search may then cache the best move
+     * per route pair and only re-apply the objective to it while neither shift changes.
+     */
+    default boolean cacheableByRoutePair() {
+        return false;
+    }
+
+    /**
+     * Evaluates the move into result, a buffer the caller reuses for the moves of a scan, and returns it, or
+     * Evaluation.INFEASIBLE if the move breaks the maximum shift duration.
+     */
+    Evaluation evaluateMove(Move move, List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimes, double maxShiftDuration, ObjectiveFunction objectiveFunction, Evaluation result);
+    Evaluation evaluateMoveDiffTimes(Move move, List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay, double maxShiftDuration, ObjectiveFunction objectiveFunction, Evaluation result);
+
+    // As above into a new Evaluation, for callers that keep the result
+    default Evaluation evaluateMove(Move move, List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimes, double maxShiftDuration, ObjectiveFunction objectiveFunction) {
+        return evaluateMove(move, shifts, instance, travelTimes, maxShiftDuration, objectiveFunction, new Evaluation());
+    }
+
+    default Evaluation evaluateMoveDiffTimes(Move move, List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay, double maxShiftDuration, ObjectiveFunction objectiveFunction) {
+        return evaluateMoveDiffTimes(move, shifts, instance, travelTimesNight, travelTimesDay, maxShiftDuration, objectiveFunction, new Evaluation());
+    }
+    // Applies the move in place; the result lists the shifts that changed and still have to be recomputed
+    MoveResult applyMove(Move move, List<Shift> shifts, HTMInstance instance, TravelTimeMatrix travelTimesNight, TravelTimeMatrix travelTimesDay);
 }
 
@@ -41,6 +41,398 @@ public class Objective {
 
             return sumL + lambdaL * sseL + lambdaC * sseC;
         }
+
+        @Override
+        public ObjectiveFunction.State state(List<Shift> shifts) {
+            return new BalancedState(lambdaL, lambdaC, shifts);
+        }
+    }
+
+    /**
+     * Sums of L, L^2, C and C^2 over the shifts; the SSE terms follow from them, so a change of k shifts
+     * is evaluated in O(k).
+     */
+    private static final class BalancedState implements ObjectiveFunction.State {
+        private final double lambdaL;
+        private final double lambdaC;
+        private final int m;
+
+        private double sumL, sumL2;
+        private double sumC, sumC2;
+
+        BalancedState(double lambdaL, double lambdaC, List<Shift> shifts) {
+            this.lambdaL = lambdaL;
+            this.lambdaC = lambdaC;
+            this.m = (shifts == null) ? 0 : shifts.size();
+            if (shifts == null) return;
+
+            for (Shift s : shifts) {
+                if (s == null) continue;
+
+                double L = s.totalTime;
+                double C = s.serviceTime;
+
+                sumL  += L;
+                sumL2 += L * L;
+
+                sumC  += C;
+                sumC2 += C * C;
+            }
+        }
+
+        private double objective(double sumL, double sumL2, double sumC, double sumC2) {
+            double sseL = sumL2 - (sumL * sumL) / m;
+            double sseC = sumC2 - (sumC * sumC) / m;
+            return sumL + lambdaL * sseL + lambdaC * sseC;
+        }
+
+        @Override
+        public double value() {
+            return m == 0 ? 0.0 : objective(sumL, sumL2, sumC, sumC2);
+        }
+
+        @Override
+        public double delta(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            double sumLNew = sumL, sumL2New = sumL2;
+            double sumCNew = sumC, sumC2New = sumC2;
+            for (int k = 0; k < oldL.length; k++) {
+                sumLNew  += newL[k] - oldL[k];
+                sumL2New += newL[k] * newL[k] - oldL[k] * oldL[k];
+                sumCNew  += newC[k] - oldC[k];
+                sumC2New += newC[k] * newC[k] - oldC[k] * oldC[k];
+            }
+            return objective(sumLNew, sumL2New, sumCNew, sumC2New) - objective(sumL, sumL2, sumC, sumC2);
+        }
+
+        @Override
+        public double delta(double oldL, double oldC, double newL, double newC) {
+            double sseLOld = sumL2 - (sumL * sumL) / m;
+            double sseCOld = sumC2 - (sumC * sumC) / m;
+
+            double sumLNew  = sumL  - oldL + newL;
+            double sumL2New = sumL2 - oldL * oldL + newL * newL;
+            double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
+
+            // Moves within a shift keep its service time, the service term then stays exactly the same
+            double sseCNew = sseCOld;
+            if (newC != oldC) {
+                double sumCNew  = sumC  - oldC + newC;
+                double sumC2New = sumC2 - oldC * oldC + newC * newC;
+                sseCNew = sumC2New - (sumCNew * sumCNew) / m;
+            }
+
+            double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
+            double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
+            return newObj - oldObj;
+        }
+
+        @Override
+        public double delta(double oldL1, double oldC1, double oldL2, double oldC2,
+                            double newL1, double newC1, double newL2, double newC2) {
+            double sumLNew  = sumL  - oldL1 - oldL2 + newL1 + newL2;
+            double sumL2New = sumL2 - oldL1 * oldL1 - oldL2 * oldL2 + newL1 * newL1 + newL2 * newL2;
+
+            double sumCNew  = sumC  - oldC1 - oldC2 + newC1 + newC2;
+            double sumC2New = sumC2 - oldC1 * oldC1 - oldC2 * oldC2 + newC1 * newC1 + newC2 * newC2;
+
+            double sseLOld = sumL2 - (sumL * sumL) / m;
+            double sseCOld = sumC2 - (sumC * sumC) / m;
+
+            double sseLNew = sumL2New - (sumLNew * sumLNew) / m;
+            double sseCNew = sumC2New - (sumCNew * sumCNew) / m;
+
+            double oldObj = sumL + lambdaL * sseLOld + lambdaC * sseCOld;
+            double newObj = sumLNew + lambdaL * sseLNew + lambdaC * sseCNew;
+            return newObj - oldObj;
+        }
+
+        @Override
+        public void commit(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            for (int k = 0; k < oldL.length; k++) {
+                sumL  += newL[k] - oldL[k];
+                sumL2 += newL[k] * newL[k] - oldL[k] * oldL[k];
+                sumC  += newC[k] - oldC[k];
+                sumC2 += newC[k] * newC[k] - oldC[k] * oldC[k];
+            }
+        }
+    }
+
+    /**
+     * Sum of the shift lengths, the balanced objective without the balancing terms.
+     */
+    public static final class TotalLength implements ObjectiveFunction {
+
+        @Override
+        public double shifts(List<Shift> shifts) {
+            double sumL = 0.0;
+            if (shifts == null) return sumL;
+
+            for (Shift s : shifts) {
+                if (s == null) continue;
+                sumL += s.totalTime;
+            }
+            return sumL;
+        }
+
+        @Override
+        public ObjectiveFunction.State state(List<Shift> shifts) {
+            return new TotalLengthState(shifts(shifts));
+        }
+    }
+
+    private static final class TotalLengthState implements ObjectiveFunction.State {
+        private double sumL;
+
+        TotalLengthState(double sumL) {
+            this.sumL = sumL;
+        }
+
+        @Override
+        public double value() {
+            return sumL;
+        }
+
+        @Override
+        public double delta(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            double sumLNew = sumL;
+            for (int k = 0; k < oldL.length; k++) {
+                sumLNew += newL[k] - oldL[k];
+            }
+            return sumLNew - sumL;
+        }
+
+        @Override
+        public double delta(double oldL, double oldC, double newL, double newC) {
+            double sumLNew = sumL - oldL + newL;
+            return sumLNew - sumL;
+        }
+
+        @Override
+        public double delta(double oldL1, double oldC1, double oldL2, double oldC2,
+                            double newL1, double newC1, double newL2, double newC2) {
+            double sumLNew = sumL - oldL1 - oldL2 + newL1 + newL2;
+            return sumLNew - sumL;
+        }
+
+        @Override
+        public void commit(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            for (int k = 0; k < oldL.length; k++) {
+                sumL += newL[k] - oldL[k];
+            }
+        }
+    }
+
+    /**
+     * Length of the longest shift (makespan), plus lengthWeight times the summed shift lengths as a
+     * tie-breaker: with lengthWeight = 0 every move that does not touch the longest shift is neutral.
+     */
+    public static final class MinMax implements ObjectiveFunction {
+        public final double lengthWeight;
+
+        public MinMax(double lengthWeight) {
+            if (lengthWeight < 0) {
+                throw new IllegalArgumentException("Length weight must be non-negative, got " + lengthWeight);
+            }
+            this.lengthWeight = lengthWeight;
+        }
+
+        @Override
+        public double shifts(List<Shift> shifts) {
+            double maxL = 0.0, sumL = 0.0;
+            if (shifts == null) return 0.0;
+
+            for (Shift s : shifts) {
+                if (s == null) continue;
+                maxL = Math.max(maxL, s.totalTime);
+                sumL += s.totalTime;
+            }
+            return maxL + lengthWeight * sumL;
+        }
+
+        @Override
+        public ObjectiveFunction.State state(List<Shift> shifts) {
+            return new MinMaxState(lengthWeight, shifts);
+        }
+    }
+
+    /**
+     * Keeps the shift lengths in an indexed max-heap. A move changes the maximum only through the shifts
+     * it changes: the new maximum is the largest of their new lengths and the largest remaining length,
+     * which is found near the root of the heap, so delta takes O(k) and commit O(k log m) for k shifts.
+     */
+    private static final class MinMaxState implements ObjectiveFunction.State {
+        private final double lengthWeight;
+        private final ShiftLengthHeap heap;
+        private double sumL;
+
+        MinMaxState(double lengthWeight, List<Shift> shifts) {
+            this.lengthWeight = lengthWeight;
+            this.heap = new ShiftLengthHeap(shifts);
+            this.sumL = sumLengths(shifts);
+        }
+
+        private static double sumLengths(List<Shift> shifts) {
+            double sumL = 0.0;
+            if (shifts == null) return sumL;
+            for (Shift s : shifts) {
+                if (s != null) sumL += s.totalTime;
+            }
+            return sumL;
+        }
+
+        @Override
+        public double value() {
+            return heap.max() + lengthWeight * sumL;
+        }
+
+        private double maxAfter(double rest, double[] newL) {
+            double maxNew = rest;
+            for (double L : newL) maxNew = Math.max(maxNew, L);
+            return Math.max(maxNew, 0.0);
+        }
+
+        @Override
+        public double delta(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            double maxNew = maxAfter(heap.maxWithout(oldL), newL);
+            double sumLDelta = 0.0;
+            for (int k = 0; k < oldL.length; k++) {
+                sumLDelta += newL[k] - oldL[k];
+            }
+            return (maxNew - heap.max()) + lengthWeight * sumLDelta;
+        }
+
+        @Override
+        public double delta(double oldL, double oldC, double newL, double newC) {
+            double maxNew = Math.max(Math.max(heap.maxWithout(oldL), newL), 0.0);
+            return (maxNew - heap.max()) + lengthWeight * (newL - oldL);
+        }
+
+        @Override
+        public double delta(double oldL1, double oldC1, double oldL2, double oldC2,
+                            double newL1, double newC1, double newL2, double newC2) {
+            double rest = heap.maxWithout(oldL1, oldL2);
+            double maxNew = Math.max(Math.max(rest, Math.max(newL1, newL2)), 0.0);
+            return (maxNew - heap.max()) + lengthWeight * (newL1 + newL2 - oldL1 - oldL2);
+        }
+
+        // Without the shift indices the changed shifts are looked up by length, which takes O(m) per shift
+        @Override
+        public void commit(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            for (int k = 0; k < oldL.length; k++) {
+                heap.updateByLength(oldL[k], newL[k]);
+                sumL += newL[k] - oldL[k];
+            }
+        }
+
+        @Override
+        public void commit(MoveResult result) {
+            if (result.shifts.size() != heap.size()) {
+                heap.rebuild(result.shifts);
+                sumL = sumLengths(result.shifts);
+                return;
+            }
+            for (int k = 0; k < result.dirtyShifts.length; k++) {
+                int i = result.dirtyShifts[k];
+                Shift s = result.shifts.get(i);
+                double newL = (s == null) ? 0.0 : s.totalTime;
+                sumL += newL - heap.length(i);
+                heap.update(i, newL);
+            }
+        }
+    }
+
+    /**
+     * Total overtime: the summed excess of the shift lengths over threshold (for instance the 8h15 of
+     * BestKMovesSearchFeas.TOTAL_SHIFT_LENGTH), plus lengthWeight times the summed shift lengths. Both terms
+     * are sums over the shifts, so a change of k shifts is evaluated in O(k).
+     */
+    public static final class Overtime implements ObjectiveFunction {
+        public final double threshold;
+        public final double lengthWeight;
+
+        public Overtime(double threshold, double lengthWeight) {
+            if (lengthWeight < 0) {
+                throw new IllegalArgumentException("Length weight must be non-negative, got " + lengthWeight);
+            }
+            this.threshold = threshold;
+            this.lengthWeight = lengthWeight;
+        }
+
+        double overtime(double L) {
+            return Math.max(0.0, L - threshold);
+        }
+
+        @Override
+        public double shifts(List<Shift> shifts) {
+            double sumOvertime = 0.0, sumL = 0.0;
+            if (shifts == null) return 0.0;
+
+            for (Shift s : shifts) {
+                if (s == null) continue;
+                sumOvertime += overtime(s.totalTime);
+                sumL += s.totalTime;
+            }
+            return sumOvertime + lengthWeight * sumL;
+        }
+
+        @Override
+        public ObjectiveFunction.State state(List<Shift> shifts) {
+            return new OvertimeState(this, shifts);
+        }
+    }
+
+    private static final class OvertimeState implements ObjectiveFunction.State {
+        private final Overtime objective;
+        private double sumOvertime;
+        private double sumL;
+
+        OvertimeState(Overtime objective, List<Shift> shifts) {
+            this.objective = objective;
+            if (shifts == null) return;
+
+            for (Shift s : shifts) {
+                if (s == null) continue;
+                sumOvertime += objective.overtime(s.totalTime);
+                sumL += s.totalTime;
+            }
+        }
+
+        private double change(double oldL, double newL) {
+            return (objective.overtime(newL) - objective.overtime(oldL)) + objective.lengthWeight * (newL - oldL);
+        }
+
+        @Override
+        public double value() {
+            return sumOvertime + objective.lengthWeight * sumL;
+        }
+
+        @Override
+        public double delta(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            double delta = 0.0;
+            for (int k = 0; k < oldL.length; k++) {
+                delta += change(oldL[k], newL[k]);
+            }
+            return delta;
+        }
+
+        @Override
+        public double delta(double oldL, double oldC, double newL, double newC) {
+            return change(oldL, newL);
+        }
+
+        @Override
+        public double delta(double oldL1, double oldC1, double oldL2, double oldC2,
+                            double newL1, double newC1, double newL2, double newC2) {
+            return change(oldL1, newL1) + change(oldL2, newL2);
+        }
+
+        @Override
+        public void commit(double[] oldL, double[] oldC, double[] newL, double[] newC) {
+            for (int k = 0; k < oldL.length; k++) {
+                sumOvertime += objective.overtime(newL[k]) - objective.overtime(oldL[k]);
+                sumL += newL[k] - oldL[k];
+            }
+        }
     }
 
     public static ObjectiveFunction balancedObj(double lambdaL, double lambdaC) {
@@ -48,7 +440,15 @@ public class Objective {
     }
 
     public static ObjectiveFunction totalLength() {
-        return new BalancedObj(0.0, 0.0);
+        return new TotalLength();
+    }
+
+    public static ObjectiveFunction minMax(double lengthWeight) {
+        return new MinMax(lengthWeight);
+    }
+
+    public static ObjectiveFunction overtime(double threshold, double lengthWeight) {
+        return new Overtime(threshold, lengthWeight);
     }
 
-}
\ No newline at end of file
+}
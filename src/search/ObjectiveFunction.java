@@ -3,7 +3,59 @@ package search;
 import core.Shift;
 import java.util.List;
 
-@FunctionalInterface
+/**
+ * Objective of a solution, to be minimised.
+ *
+ * Besides the full evaluation, every objective provides an incremental State. The neighborhoods only
+ * report the length and service time of the shifts a move changes; the state turns these into the
+ * change of the objective, so the neighborhoods do not depend on the objective they evaluate.
+ */
 public interface ObjectiveFunction {
     double shifts(List<Shift> shifts);
-}
\ No newline at end of file
+
+    // Incremental state describing the given solution
+    State state(List<Shift> shifts);
+
+    /**
+     * Incremental objective state. delta only reads the state and may be called concurrently; commit
+     * changes it and must not overlap with other calls.
+     */
+    interface State {
+        // Objective value of the solution the state describes
+        double value();
+
+        /**
+         * Change of the objective (new minus old) if the changed shifts go from length oldL[k] and service
+         * time oldC[k] to newL[k] and newC[k], in O(number of changed shifts).
+         */
+        double delta(double[] oldL, double[] oldC, double[] newL, double[] newC);
+
+        // delta for a move that changes one shift
+        default double delta(double oldL, double oldC, double newL, double newC) {
+            return delta(new double[]{oldL}, new double[]{oldC}, new double[]{newL}, new double[]{newC});
+        }
+
+        // delta for a move that changes two shifts
+        default double delta(double oldL1, double oldC1, double oldL2, double oldC2,
+                             double newL1, double newC1, double newL2, double newC2) {
+            return delta(new double[]{oldL1, oldL2}, new double[]{oldC1, oldC2},
+                    new double[]{newL1, newL2}, new double[]{newC1, newC2});
+        }
+
+        // Applies the change of the given shifts to the state
+        void commit(double[] oldL, double[] oldC, double[] newL, double[] newC);
+
+        // Commits an applied move, once its dirty shifts are recomputed
+        default void commit(MoveResult result) {
+            int k = result.dirtyShifts.length;
+            double[] newL = new double[k];
+            double[] newC = new double[k];
+            for (int i = 0; i < k; i++) {
+                Shift s = result.shifts.get(result.dirtyShifts[i]);
+                newL[i] = s.totalTime;
+                newC[i] = s.serviceTime;
+            }
+            commit(result.oldLength, result.oldService, newL, newC);
+        }
+    }
+}
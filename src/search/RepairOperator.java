@@ -0,0 +1,28 @@
+package search;
+
+import java.util.List;
+import java.util.Random;
+
+import core.HTMInstance;
+import core.Shift;
+import core.TravelTimeMatrix;
+
+/**
+ * Repair step of the adaptive large neighborhood search: puts removed stops back into the shifts.
+ */
+public interface RepairOperator {
+    /**
+     * Inserts all removed stops into the shifts, in place, keeping every shift within maxShiftDuration and
+     * the number of night shifts within its cap. The shifts it changes are recomputed. Returns false if some
+     * stop fits nowhere; the shifts are then only partially repaired and must be discarded.
+     */
+    boolean repair(
+            List<Shift> shifts,
+            int[] removed,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            double maxShiftDuration,
+            Random rnd
+    );
+}
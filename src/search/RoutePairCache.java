@@ -0,0 +1,117 @@
+package search;
+
+import core.Shift;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Best move per route pair of one neighborhood, for the best-improvement search.
+ *
+ * For every pair (route1, route2) the cache keeps the move with the largest improvement found when the
+ * pair was last scanned, together with the new length and service time of both shifts. As long as neither
+ * shift changes these stay the same, so a scan only generates the moves of invalidated pairs and takes the
+ * cached moves of the other pairs, whose improvement is recomputed from the current objective state. For
+ * objectives that are sums over the shifts the result is the same as a full scan; with global terms, such
+ * as the balanced objective, the move that was best within a pair is not re-ranked when the terms change.
+ *
+ * Filled by the scans of one search only; the parallel scan records disjoint rows.
+ */
+final class RoutePairCache {
+    private static final double EPS = 1e-6;
+
+    private final int m;
+    private final boolean[] valid;
+    private final Move[] move;
+    // Improvement when recorded, only used to pick the best move of a pair during its scan
+    private final double[] recorded;
+    private final double[] newL1, newC1, newL2, newC2;
+
+    RoutePairCache(int m) {
+        this.m = m;
+        this.valid = new boolean[m * m];
+        this.move = new Move[m * m];
+        this.recorded = new double[m * m];
+        this.newL1 = new double[m * m];
+        this.newC1 = new double[m * m];
+        this.newL2 = new double[m * m];
+        this.newC2 = new double[m * m];
+    }
+
+    boolean isValid(int r1, int r2) {
+        return valid[r1 * m + r2];
+    }
+
+    // Invalidates every pair with shift r, after a move changed it
+    void invalidateShift(int r) {
+        for (int other = 0; other < m; other++) {
+            valid[r * m + other] = false;
+            valid[other * m + r] = false;
+        }
+    }
+
+    // Invalidates the pairs of shifts a and b, in both orders
+    void invalidatePair(int a, int b) {
+        valid[a * m + b] = false;
+        valid[b * m + a] = false;
+    }
+
+    void invalidateAll() {
+        Arrays.fill(valid, false);
+    }
+
+    // Clears the invalid pairs, which the following scan fills
+    void beginScan() {
+        for (int idx = 0; idx < valid.length; idx++) {
+            if (valid[idx]) continue;
+            move[idx] = null;
+            recorded[idx] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    // Records a feasible evaluated move (a cursor and a reused buffer, copied if kept) of a pair that is being scanned
+    void record(Move m, Evaluation eval) {
+        int idx = m.route1 * this.m + m.route2;
+        if (valid[idx] || !(eval.improvement > recorded[idx])) return;
+
+        move[idx] = m.copy();
+        recorded[idx] = eval.improvement;
+        newL1[idx] = eval.newL1;
+        newC1[idx] = eval.newC1;
+        newL2[idx] = eval.newL2;
+        newC2[idx] = eval.newC2;
+    }
+
+    // All pairs are up to date once a scan has run to the end
+    void endScan() {
+        Arrays.fill(valid, true);
+    }
+
+    int size() {
+        return move.length;
+    }
+
+    // Cached move of the pair with the given index, null if the pair has no feasible move
+    Move move(int idx) {
+        return move[idx];
+    }
+
+    // Improvement of the cached move of a pair under the current objective state (the pair must hold a move)
+    double improvement(int idx, List<Shift> shifts, ObjectiveFunction.State objective) {
+        Move candidate = move[idx];
+        Shift s1 = shifts.get(candidate.route1);
+        double objectiveDelta;
+        if (candidate.route1 == candidate.route2) {
+            objectiveDelta = objective.delta(s1.totalTime, s1.serviceTime, newL1[idx], newC1[idx]);
+        } else {
+            Shift s2 = shifts.get(candidate.route2);
+            objectiveDelta = objective.delta(
+                    s1.totalTime, s1.serviceTime, s2.totalTime, s2.serviceTime,
+                    newL1[idx], newC1[idx], newL2[idx], newC2[idx]);
+        }
+
+        double improvement = -objectiveDelta;
+        if (Math.abs(improvement) < EPS) improvement = 0.0;
+        return improvement;
+    }
+}
@@ -0,0 +1,112 @@
+package search;
+
+import core.Shift;
+import core.StopPositions;
+import core.Utils;
+
+import java.util.List;
+
+/**
+ * Per-scan data of a solution that the neighborhoods need to generate and evaluate moves: the number of
+ * shifts and night shifts, the incremental state of the objective, the positions of the stops and, if the
+ * search keeps them, the don't-look bits of the scanning neighborhood.
+ *
+ * Set once per scan (Neighborhood.prepareScan) and only read afterwards, so the moves of a scan can be
+ * evaluated concurrently.
+ */
+public final class ScanContext {
+    public static final ScanContext EMPTY = new ScanContext(null, 0, null, null, null, null, -1);
+
+    public final int m;
+    public final int numNightShifts;
+
+    private final List<Shift> shifts;
+    private volatile ObjectiveCache objective;
+    private volatile StopPositions positions;
+
+    // Don't-look bits and route-pair cache of the scanning neighborhood, null if the search does not use them
+    private final DontLookBits dontLook;
+    private final RoutePairCache pairCache;
+    private final int neighborhood;
+
+    // Objective state for one objective function; replaced as a whole, so readers see a consistent pair
+    private static final class ObjectiveCache {
+        final ObjectiveFunction function;
+        final ObjectiveFunction.State state;
+
+        ObjectiveCache(ObjectiveFunction function, ObjectiveFunction.State state) {
+            this.function = function;
+            this.state = state;
+        }
+    }
+
+    private ScanContext(List<Shift> shifts, int numNightShifts, ObjectiveFunction function, ObjectiveFunction.State state,
+                        DontLookBits dontLook, RoutePairCache pairCache, int neighborhood) {
+        this.shifts = shifts;
+        this.m = (shifts == null) ? 0 : shifts.size();
+        this.numNightShifts = numNightShifts;
+        this.objective = (function == null) ? null : new ObjectiveCache(function, state);
+        this.dontLook = dontLook;
+        this.pairCache = pairCache;
+        this.neighborhood = neighborhood;
+    }
+
+    public static ScanContext of(List<Shift> shifts) {
+        if (shifts == null) return EMPTY;
+        return new ScanContext(shifts, Utils.countNightShifts(shifts), null, null, null, null, -1);
+    }
+
+    /**
+     * Context with the night-shift count and objective state a search keeps up to date itself, so setting up
+     * a scan takes constant time.
+     */
+    public static ScanContext of(List<Shift> shifts, int numNightShifts, ObjectiveFunction function, ObjectiveFunction.State state) {
+        return new ScanContext(shifts, numNightShifts, function, state, null, null, -1);
+    }
+
+    // As above, for the scan of the given neighborhood of a search that keeps don't-look bits or a route-pair cache
+    static ScanContext of(List<Shift> shifts, int numNightShifts, ObjectiveFunction function, ObjectiveFunction.State state,
+                          DontLookBits dontLook, RoutePairCache pairCache, int neighborhood) {
+        return new ScanContext(shifts, numNightShifts, function, state, dontLook, pairCache, neighborhood);
+    }
+
+    public List<Shift> shifts() {
+        return shifts;
+    }
+
+    /**
+     * True if the neighborhood does not have to generate the moves from shift r1 to shift r2: neither shift
+     * changed since they were all rejected (don't-look bits) or since the best of them was cached. Always
+     * false if the search uses neither.
+     */
+    public boolean skipPair(int r1, int r2) {
+        return (dontLook != null && dontLook.skipPair(neighborhood, r1, r2))
+                || (pairCache != null && pairCache.isValid(r1, r2));
+    }
+
+    /**
+     * Shift and position of every stop of the scanned solution, built on first use by the granular
+     * neighborhoods. Racing scan threads may each build it; the results are equal.
+     */
+    public StopPositions positions() {
+        StopPositions result = positions;
+        if (result == null) {
+            result = new StopPositions(shifts);
+            positions = result;
+        }
+        return result;
+    }
+
+    /**
+     * The objective state of the scanned solution for the given objective function, built from the shifts
+     * on first use if the context was not created with one.
+     */
+    public ObjectiveFunction.State objective(ObjectiveFunction function) {
+        ObjectiveCache cache = objective;
+        if (cache == null || cache.function != function) {
+            cache = new ObjectiveCache(function, function.state(shifts));
+            objective = cache;
+        }
+        return cache.state;
+    }
+}
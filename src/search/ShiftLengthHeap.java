@@ -0,0 +1,189 @@
+package search;
+
+import core.Shift;
+
+import java.util.List;
+
+/**
+ * Indexed max-heap over the shift lengths, used by the min-max objective.
+ *
+ * heap[p] is the shift at heap position p and pos[i] the heap position of shift i, so the length of a
+ * known shift is updated in O(log m). The longest shift is at the root, and the largest length once a
+ * few shifts are taken out is found by visiting only the top of the heap.
+ */
+final class ShiftLengthHeap {
+    private int size;
+    private int[] heap;
+    private int[] pos;
+    private double[] length;
+
+    ShiftLengthHeap(List<Shift> shifts) {
+        rebuild(shifts);
+    }
+
+    void rebuild(List<Shift> shifts) {
+        size = (shifts == null) ? 0 : shifts.size();
+        heap = new int[size];
+        pos = new int[size];
+        length = new double[size];
+        for (int i = 0; i < size; i++) {
+            Shift s = shifts.get(i);
+            length[i] = (s == null) ? 0.0 : s.totalTime;
+            heap[i] = i;
+            pos[i] = i;
+        }
+        for (int p = size / 2 - 1; p >= 0; p--) {
+            siftDown(p);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    double length(int shift) {
+        return length[shift];
+    }
+
+    // Length of the longest shift, 0 if there are none
+    double max() {
+        return size == 0 ? 0.0 : length[heap[0]];
+    }
+
+    void update(int shift, double newLength) {
+        double oldLength = length[shift];
+        length[shift] = newLength;
+        if (newLength > oldLength) siftUp(pos[shift]);
+        else if (newLength < oldLength) siftDown(pos[shift]);
+    }
+
+    /**
+     * Sets the length of some shift that currently has length oldLength, for callers that only know the
+     * lengths. Scans all shifts, so O(m).
+     */
+    void updateByLength(double oldLength, double newLength) {
+        for (int i = 0; i < size; i++) {
+            if (length[i] == oldLength) {
+                update(i, newLength);
+                return;
+            }
+        }
+        throw new IllegalStateException("No shift of length " + oldLength + " in the heap");
+    }
+
+    // Largest length if one shift of length removed is taken out, NEGATIVE_INFINITY if none is left
+    double maxWithout(double removed) {
+        if (size == 0) return Double.NEGATIVE_INFINITY;
+
+        double top = length[heap[0]];
+        if (top != removed) return top;
+
+        // The second largest length is one of the children of the root
+        double second = Double.NEGATIVE_INFINITY;
+        if (size > 1) second = length[heap[1]];
+        if (size > 2) second = Math.max(second, length[heap[2]]);
+        return second;
+    }
+
+    /**
+     * Largest length if one shift of length a and another of length b are taken out, NEGATIVE_INFINITY if
+     * none is left. The two-shift moves call this for every evaluation, so it walks the root, its children and
+     * the children of one of them without allocating.
+     */
+    double maxWithout(double a, double b) {
+        if (size == 0) return Double.NEGATIVE_INFINITY;
+
+        double top = length[heap[0]];
+        if (top == a) return maxBelowRootWithout(b);
+        if (top == b) return maxBelowRootWithout(a);
+        return top;
+    }
+
+    // Largest length below the root if one shift of length removed is taken out as well
+    private double maxBelowRootWithout(double removed) {
+        if (size < 2) return Double.NEGATIVE_INFINITY;
+
+        int larger = (size > 2 && length[heap[2]] > length[heap[1]]) ? 2 : 1;
+        double value = length[heap[larger]];
+        if (value != removed) return value;
+
+        // The next largest length is the other child of the root or a child of the one taken out
+        int other = 3 - larger;
+        double next = Double.NEGATIVE_INFINITY;
+        if (other < size) next = length[heap[other]];
+        if (2 * larger + 1 < size) next = Math.max(next, length[heap[2 * larger + 1]]);
+        if (2 * larger + 2 < size) next = Math.max(next, length[heap[2 * larger + 2]]);
+        return next;
+    }
+
+    /**
+     * Largest length if one shift of each of the given lengths is taken out, NEGATIVE_INFINITY if none is
+     * left. Visits the heap in decreasing order of length, so only O(k) positions near the root for k
+     * removed lengths.
+     */
+    double maxWithout(double[] removed) {
+        if (removed.length == 1) return maxWithout(removed[0]);
+        if (removed.length == 2) return maxWithout(removed[0], removed[1]);
+
+        boolean[] used = new boolean[removed.length];
+        // Every visited position is replaced by its two children, so at most k + 2 candidates remain open
+        int[] open = new int[removed.length + 2];
+        int numOpen = 0;
+        if (size > 0) open[numOpen++] = 0;
+
+        while (numOpen > 0) {
+            int best = 0;
+            for (int o = 1; o < numOpen; o++) {
+                if (length[heap[open[o]]] > length[heap[open[best]]]) best = o;
+            }
+            int p = open[best];
+            double value = length[heap[p]];
+
+            int match = -1;
+            for (int r = 0; r < removed.length; r++) {
+                if (!used[r] && removed[r] == value) {
+                    match = r;
+                    break;
+                }
+            }
+            if (match < 0) return value;
+            used[match] = true;
+
+            open[best] = open[--numOpen];
+            if (2 * p + 1 < size) open[numOpen++] = 2 * p + 1;
+            if (2 * p + 2 < size) open[numOpen++] = 2 * p + 2;
+        }
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    private void siftUp(int p) {
+        int shift = heap[p];
+        double value = length[shift];
+        while (p > 0) {
+            int parent = (p - 1) / 2;
+            if (length[heap[parent]] >= value) break;
+            place(heap[parent], p);
+            p = parent;
+        }
+        place(shift, p);
+    }
+
+    private void siftDown(int p) {
+        int shift = heap[p];
+        double value = length[shift];
+        while (true) {
+            int child = 2 * p + 1;
+            if (child >= size) break;
+            if (child + 1 < size && length[heap[child + 1]] > length[heap[child]]) child++;
+            if (length[heap[child]] <= value) break;
+            place(heap[child], p);
+            p = child;
+        }
+        place(shift, p);
+    }
+
+    private void place(int shift, int p) {
+        heap[p] = shift;
+        pos[shift] = p;
+    }
+}
@@ -0,0 +1,475 @@
+package search;
+
+import core.HTMInstance;
+import core.IntRoute;
+import core.Shift;
+import core.TravelTimeMatrix;
+import core.TravelTimePair;
+import core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tabu search over the existing neighborhoods.
+ *
+ * Every iteration applies the best admissible move over all neighborhoods, also when it makes the solution
+ * worse, so the search walks out of a local optimum instead of stopping there. Admissibility is attribute based:
+ * a move that takes stop u out of shift r makes (u, r) tabu for a random tenure, and a move that puts a stop
+ * back into a shift it is tabu for is only admissible if it leads to a solution better than the best one so far
+ * (aspiration). Moves within a shift put their stops back into the same shift, so a stop moved within a shift
+ * is not moved within it again during its tenure.
+ *
+ * Neighborhoods that are cacheableByRoutePair keep the best non-tabu and the best tabu move per route pair in two
+ * RoutePairCaches: after a move only the pairs of the changed shifts, and the pairs whose tabu attributes expired,
+ * are scanned again. The cached tabu move of a pair is taken if it meets the aspiration criterion under the
+ * current objective, so a pair still offers its non-tabu move once aspiration no longer holds. The other
+ * neighborhoods are scanned completely every iteration.
+ */
+public class TabuSearch {
+    private static final double EPS = 1e-6;
+
+    private final List<Neighborhood> neighborhoods;
+    private final RouteCompatibility compatibility;
+    private final int maxIterations;
+    private final int maxNonImproving;
+    private final int tenureMin;
+    private final int tenureMax;
+    private final double maxShiftDuration;
+    private final ObjectiveFunction objectiveFunction;
+    private final long seed;
+
+    private long timeLimitMillis = 0;
+    private ImprovementListener improvementListener = null;
+
+    // State of the current run
+    private int m;
+    private int iteration;
+    private int moveCount;
+    private int numNightShifts;
+    private ObjectiveFunction.State objectiveState;
+    private RoutePairCache[] pairCaches;
+    // Best tabu move per pair, invalidated together with pairCaches so both are scanned at the same time
+    private RoutePairCache[] tabuCaches;
+
+    // tabuUntil[stop * m + shift]: putting the stop into the shift is tabu while iteration < tabuUntil
+    private int[] tabuUntil;
+    // Shift of every stop, for the pairs to rescan when an attribute expires
+    private int[] shiftOf;
+    // Attributes (stop * m + shift) by the iteration they expire at, modulo tenureMax + 1
+    private int[][] expiring;
+    private int[] numExpiring;
+
+    // Stops a move puts into another (or the same) shift, filled by movedStops
+    private final int[] movedStop = new int[2];
+    private final int[] movedFrom = new int[2];
+    private final int[] movedTo = new int[2];
+
+    private double bestObjective;
+    private Shift[] bestShifts;
+    private boolean[] changedSinceBest;
+
+    /**
+     * @param maxIterations   maximum number of applied moves
+     * @param maxNonImproving stop after this many moves without a new best solution
+     * @param tenureMin       smallest number of iterations an attribute stays tabu
+     * @param tenureMax       largest number of iterations an attribute stays tabu (drawn uniformly per attribute)
+     */
+    public TabuSearch(
+            List<Neighborhood> neighborhoods,
+            RouteCompatibility compatibility,
+            int maxIterations,
+            int maxNonImproving,
+            int tenureMin,
+            int tenureMax,
+            double maxShiftDuration,
+            ObjectiveFunction objectiveFunction,
+            long seed
+    ) {
+        if (tenureMin < 1 || tenureMax < tenureMin) {
+            throw new IllegalArgumentException("Tabu tenure must satisfy 1 <= min <= max, got " + tenureMin + " and " + tenureMax);
+        }
+        this.neighborhoods = new ArrayList<>(neighborhoods);
+        this.compatibility = compatibility;
+        this.maxIterations = maxIterations;
+        this.maxNonImproving = maxNonImproving;
+        this.tenureMin = tenureMin;
+        this.tenureMax = tenureMax;
+        this.maxShiftDuration = maxShiftDuration;
+        this.objectiveFunction = objectiveFunction;
+        this.seed = seed;
+    }
+
+    // Stops a run once it has taken the given wall-clock time; 0 for no limit
+    public void setTimeLimit(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("Time limit must be non-negative, got " + timeLimitMillis);
+        }
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    public void setImprovementListener(ImprovementListener improvementListener) {
+        this.improvementListener = improvementListener;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
+    public List<Shift> run(List<Shift> initialShifts, HTMInstance instance, TravelTimePair travelTimes) {
+        return run(initialShifts, instance, travelTimes.night, travelTimes.day);
+    }
+
+    /**
+     * Runs the tabu search from the given shifts with the night and day matrices, and returns the best solution
+     * it found.
+     */
+    public List<Shift> run(
+            List<Shift> initialShifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        List<Shift> shifts = new ArrayList<>(initialShifts);
+        Utils.recomputeAllShiftsDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
+        startRun(shifts, instance);
+
+        long deadline = System.nanoTime() + timeLimitMillis * 1_000_000L;
+        long startNanos = System.nanoTime();
+        Random rnd = new Random(seed);
+        int nonImproving = 0;
+
+        for (iteration = 0; iteration < maxIterations && nonImproving < maxNonImproving; iteration++) {
+            if (timeLimitMillis > 0 && System.nanoTime() >= deadline) break;
+            expireAttributes();
+
+            // Best admissible move over all neighborhoods; ties go to the first neighborhood
+            Neighborhood bestNeighborhood = null;
+            Move bestMove = null;
+            double bestImprovement = Double.NEGATIVE_INFINITY;
+
+            for (int k = 0; k < neighborhoods.size(); k++) {
+                Neighborhood n = neighborhoods.get(k);
+                TabuScan scan = scan(k, n, shifts, instance, travelTimesNight, travelTimesDay);
+                if (scan.bestMove != null && scan.bestImprovement > bestImprovement) {
+                    bestNeighborhood = n;
+                    bestMove = scan.bestMove;
+                    bestImprovement = scan.bestImprovement;
+                }
+            }
+            if (bestMove == null) break;
+
+            shifts = apply(bestNeighborhood, bestMove, shifts, instance, travelTimesNight, travelTimesDay, rnd);
+
+            double value = objectiveState.value();
+            if (value < bestObjective) {
+                saveBest(shifts, value, startNanos);
+                nonImproving = 0;
+            } else {
+                nonImproving++;
+            }
+        }
+
+        return bestSolution(shifts);
+    }
+
+    private void startRun(List<Shift> shifts, HTMInstance instance) {
+        m = shifts.size();
+        moveCount = 0;
+        numNightShifts = Utils.countNightShifts(shifts);
+        objectiveState = objectiveFunction.state(shifts);
+
+        pairCaches = new RoutePairCache[neighborhoods.size()];
+        tabuCaches = new RoutePairCache[neighborhoods.size()];
+        for (int k = 0; k < pairCaches.length; k++) {
+            if (!neighborhoods.get(k).cacheableByRoutePair()) continue;
+            pairCaches[k] = new RoutePairCache(m);
+            tabuCaches[k] = new RoutePairCache(m);
+        }
+
+        int n = instance.serviceTime.length;
+        tabuUntil = new int[n * m];
+        shiftOf = new int[n];
+        for (int r = 0; r < m; r++) {
+            assignStops(shifts.get(r), r);
+        }
+        expiring = new int[tenureMax + 1][8];
+        numExpiring = new int[tenureMax + 1];
+
+        bestObjective = objectiveState.value();
+        bestShifts = new Shift[m];
+        changedSinceBest = new boolean[m];
+        for (int r = 0; r < m; r++) {
+            bestShifts[r] = copyShift(shifts.get(r));
+        }
+    }
+
+    /**
+     * Scans one neighborhood for its best admissible move. A cached neighborhood only generates the moves of its
+     * invalidated route pairs and then takes the best cached move, re-evaluated with the current objective state:
+     * the non-tabu move of a pair, or its tabu move if that leads to a new best solution.
+     */
+    private TabuScan scan(
+            int k,
+            Neighborhood n,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
+    ) {
+        RoutePairCache cache = pairCaches[k];
+        RoutePairCache tabuCache = tabuCaches[k];
+        TabuScan scan = new TabuScan(n, cache, tabuCache, shifts, instance, travelTimesNight, travelTimesDay);
+
+        if (cache != null) {
+            cache.beginScan();
+            tabuCache.beginScan();
+        }
+        n.prepareScan(ScanContext.of(shifts, numNightShifts, objectiveFunction, objectiveState, null, cache, k));
+        n.forEachMove(shifts, compatibility, instance, 0, shifts.size(), scan);
+        if (cache == null) return scan;
+
+        cache.endScan();
+        tabuCache.endScan();
+        for (int idx = 0; idx < cache.size(); idx++) {
+            Move candidate = cache.move(idx);
+            if (candidate != null) {
+                double improvement = cache.improvement(idx, shifts, objectiveState);
+                if (improvement > scan.bestImprovement && admissible(candidate, improvement, shifts)) {
+                    scan.bestMove = candidate;
+                    scan.bestImprovement = improvement;
+                }
+            }
+
+            // Aspiration depends on the current and the best objective, so it is checked now and not when recorded
+            Move tabuCandidate = tabuCache.move(idx);
+            if (tabuCandidate != null) {
+                double improvement = tabuCache.improvement(idx, shifts, objectiveState);
+                if (improvement > scan.bestImprovement && admissible(tabuCandidate, improvement, shifts)) {
+                    scan.bestMove = tabuCandidate;
+                    scan.bestImprovement = improvement;
+                }
+            }
+        }
+        return scan;
+    }
+
+    // Keeps the best admissible move of a neighborhood, or records the moves in its caches by their tabu status
+    private class TabuScan implements MoveVisitor {
+        private final Neighborhood neighborhood;
+        private final RoutePairCache cache;
+        private final RoutePairCache tabuCache;
+        private final List<Shift> shifts;
+        private final HTMInstance instance;
+        private final TravelTimeMatrix travelTimesNight;
+        private final TravelTimeMatrix travelTimesDay;
+        private final Evaluation evaluation = new Evaluation();
+
+        Move bestMove = null;
+        double bestImprovement = Double.NEGATIVE_INFINITY;
+
+        TabuScan(
+                Neighborhood neighborhood,
+                RoutePairCache cache,
+                RoutePairCache tabuCache,
+                List<Shift> shifts,
+                HTMInstance instance,
+                TravelTimeMatrix travelTimesNight,
+                TravelTimeMatrix travelTimesDay
+        ) {
+            this.neighborhood = neighborhood;
+            this.cache = cache;
+            this.tabuCache = tabuCache;
+            this.shifts = shifts;
+            this.instance = instance;
+            this.travelTimesNight = travelTimesNight;
+            this.travelTimesDay = travelTimesDay;
+        }
+
+        @Override
+        public boolean visit(Move m) {
+            Evaluation eval = neighborhood.evaluateMoveDiffTimes(m, shifts, instance, travelTimesNight, travelTimesDay, maxShiftDuration, objectiveFunction, evaluation);
+            if (!eval.feasible) return true;
+
+            if (cache != null) {
+                if (tabu(m, shifts)) tabuCache.record(m, eval);
+                else cache.record(m, eval);
+            } else if (eval.improvement > bestImprovement && admissible(m, eval.improvement, shifts)) {
+                bestImprovement = eval.improvement;
+                bestMove = m.copy();
+            }
+            return true;
+        }
+    }
+
+    // Not tabu, or tabu but leading to a new best solution
+    private boolean admissible(Move move, double improvement, List<Shift> shifts) {
+        return objectiveState.value() - improvement < bestObjective - EPS || !tabu(move, shifts);
+    }
+
+    // Whether the move puts one of its stops back into a shift it is tabu for
+    private boolean tabu(Move move, List<Shift> shifts) {
+        int count = movedStops(move, shifts);
+        for (int k = 0; k < count; k++) {
+            if (tabuUntil[movedStop[k] * m + movedTo[k]] > iteration) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The stops that carry the tabu attributes of a move, with the shift they leave and the shift they go to.
+     * For 2-opt* the tails change shifts, for Or-opt and CROSS-exchange the segments; their first stops stand
+     * for them.
+     */
+    private int movedStops(Move move, List<Shift> shifts) {
+        IntRoute a = shifts.get(move.route1).route;
+        IntRoute b = shifts.get(move.route2).route;
+
+        switch (move.type) {
+            case INTER_SHIFT:
+                return moved(0, a.getInt(move.index1), move.route1, move.route2);
+            case INTER_SWAP:
+            case CROSS_EXCHANGE:
+                moved(0, a.getInt(move.index1), move.route1, move.route2);
+                return moved(1, b.getInt(move.index2), move.route2, move.route1);
+            case INTER_2OPT_STAR: {
+                int count = 0;
+                if (move.index1 + 1 < a.size() - 1) count = moved(count, a.getInt(move.index1 + 1), move.route1, move.route2);
+                if (move.index2 + 1 < b.size() - 1) count = moved(count, b.getInt(move.index2 + 1), move.route2, move.route1);
+                return count;
+            }
+            case INTRA_SHIFT:
+                return moved(0, a.getInt(move.index1), move.route1, move.route1);
+            case OR_OPT:
+                return moved(0, a.getInt(move.index1), move.route1, move.route2);
+            case INTRA_SWAP:
+            case INTRA_2OPT:
+                moved(0, a.getInt(move.index1), move.route1, move.route1);
+                return moved(1, a.getInt(move.index2), move.route1, move.route1);
+            default:
+                return 0;
+        }
+    }
+
+    private int moved(int k, int stop, int from, int to) {
+        movedStop[k] = stop;
+        movedFrom[k] = from;
+        movedTo[k] = to;
+        return k + 1;
+    }
+
+    // Applies the move and makes its stops tabu for the shifts they left
+    private List<Shift> apply(
+            Neighborhood n,
+            Move move,
+            List<Shift> shifts,
+            HTMInstance instance,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
+            Random rnd
+    ) {
+        int count = movedStops(move, shifts);
+        int[] stops = Arrays.copyOf(movedStop, count);
+        int[] from = Arrays.copyOf(movedFrom, count);
+
+        MoveResult result = n.applyMove(move, shifts, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeShiftsDiffTimes(result.shifts, result.dirtyShifts, instance, travelTimesNight, travelTimesDay);
+        numNightShifts += result.nightShiftDelta();
+        objectiveState.commit(result);
+        moveCount++;
+
+        for (int r : result.dirtyShifts) {
+            assignStops(result.shifts.get(r), r);
+            changedSinceBest[r] = true;
+        }
+        for (int k = 0; k < pairCaches.length; k++) {
+            if (pairCaches[k] == null) continue;
+            if (result.nightShiftDelta() != 0) {
+                pairCaches[k].invalidateAll();
+                tabuCaches[k].invalidateAll();
+            } else {
+                for (int r : result.dirtyShifts) {
+                    pairCaches[k].invalidateShift(r);
+                    tabuCaches[k].invalidateShift(r);
+                }
+            }
+        }
+
+        for (int k = 0; k < count; k++) {
+            int tenure = tenureMin + rnd.nextInt(tenureMax - tenureMin + 1);
+            addAttribute(stops[k] * m + from[k], iteration + 1 + tenure);
+        }
+        return result.shifts;
+    }
+
+    private void addAttribute(int key, int until) {
+        tabuUntil[key] = until;
+        int bucket = until % expiring.length;
+        if (numExpiring[bucket] == expiring[bucket].length) {
+            expiring[bucket] = Arrays.copyOf(expiring[bucket], 2 * expiring[bucket].length);
+        }
+        expiring[bucket][numExpiring[bucket]++] = key;
+    }
+
+    // Attributes that expire now make moves admissible again, so their route pairs are scanned again
+    private void expireAttributes() {
+        int bucket = iteration % expiring.length;
+        for (int e = 0; e < numExpiring[bucket]; e++) {
+            int key = expiring[bucket][e];
+            if (tabuUntil[key] != iteration) continue; // extended since
+
+            int stop = key / m;
+            int shift = key % m;
+            for (int k = 0; k < pairCaches.length; k++) {
+                if (pairCaches[k] == null) continue;
+                pairCaches[k].invalidatePair(shiftOf[stop], shift);
+                tabuCaches[k].invalidatePair(shiftOf[stop], shift);
+            }
+        }
+        numExpiring[bucket] = 0;
+    }
+
+    private void assignStops(Shift s, int r) {
+        IntRoute route = s.route;
+        for (int p = 1; p < route.size() - 1; p++) {
+            shiftOf[route.getInt(p)] = r;
+        }
+    }
+
+    // A new best solution only copies the shifts changed since the previous best
+    private void saveBest(List<Shift> shifts, double value, long startNanos) {
+        bestObjective = value;
+        for (int r = 0; r < m; r++) {
+            if (!changedSinceBest[r]) continue;
+            bestShifts[r] = copyShift(shifts.get(r));
+            changedSinceBest[r] = false;
+        }
+
+        if (improvementListener != null) {
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            improvementListener.improved(Collections.unmodifiableList(shifts), value, moveCount, elapsedMillis);
+        }
+    }
+
+    private List<Shift> bestSolution(List<Shift> shifts) {
+        List<Shift> best = null;
+        for (int r = 0; r < m; r++) {
+            if (!changedSinceBest[r]) continue;
+            if (best == null) best = new ArrayList<>(shifts);
+            best.set(r, bestShifts[r]);
+        }
+        return (best == null) ? shifts : best;
+    }
+
+    private static Shift copyShift(Shift s) {
+        // The Shift constructor copies the route
+        return new Shift(s.route, s.travelTime, s.serviceTime, s.nightShift);
+    }
+}
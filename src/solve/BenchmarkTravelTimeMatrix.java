@@ -0,0 +1,110 @@
+package solve;
+
+import core.BinaryTravelTimes;
+import core.TravelTimeMatrix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Micro benchmark comparing arc lookups on the jagged double[][] layout with the flat TravelTimeMatrix, both
+ * converted in memory (TravelTimeMatrix.of) and loaded from a binary file (TravelTimeMatrix.read) as the drivers do.
+ *
+ * Mimics the access pattern of the neighborhoods: random routes of ~17 stops over a 1000x1000 matrix,
+ * summing the arcs of every route many times. Warm-up rounds are run first so both variants are JIT compiled.
+ */
+public class BenchmarkTravelTimeMatrix {
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int nRoutes = 60;
+        int routeLength = 17;
+        int repetitions = 20000;
+        int warmupRounds = 5;
+        int measuredRounds = 10;
+
+        Random rnd = new Random(42);
+
+        double[][] jagged = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                jagged[i][j] = (i == j) ? 0.0 : 1.0 + 40.0 * rnd.nextDouble();
+            }
+        }
+        TravelTimeMatrix flat = TravelTimeMatrix.of(jagged);
+
+        Path binary = Files.createTempFile("travel_times", BinaryTravelTimes.EXTENSION);
+        TravelTimeMatrix loaded;
+        try {
+            BinaryTravelTimes.write(jagged, binary);
+            loaded = TravelTimeMatrix.read(binary.toString());
+        } finally {
+            Files.delete(binary);
+        }
+
+        int[][] routes = new int[nRoutes][routeLength + 2];
+        for (int r = 0; r < nRoutes; r++) {
+            for (int k = 1; k <= routeLength; k++) {
+                routes[r][k] = 1 + rnd.nextInt(n - 1);
+            }
+        }
+
+        double sink = 0.0;
+        for (int round = 0; round < warmupRounds; round++) {
+            sink += sumJagged(jagged, routes, repetitions);
+            sink += sumFlat(flat, routes, repetitions);
+            sink += sumFlat(loaded, routes, repetitions);
+        }
+
+        long jaggedNanos = 0;
+        long flatNanos = 0;
+        long loadedNanos = 0;
+        for (int round = 0; round < measuredRounds; round++) {
+            long start = System.nanoTime();
+            sink += sumJagged(jagged, routes, repetitions);
+            jaggedNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += sumFlat(flat, routes, repetitions);
+            flatNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += sumFlat(loaded, routes, repetitions);
+            loadedNanos += System.nanoTime() - start;
+        }
+
+        long lookups = (long) measuredRounds * repetitions * nRoutes * (routeLength + 1);
+        System.out.printf("Matrix size:        %d x %d%n", n, n);
+        System.out.printf("double[][]:         %.3f ns/lookup%n", (double) jaggedNanos / lookups);
+        System.out.printf("TravelTimeMatrix:   %.3f ns/lookup%n", (double) flatNanos / lookups);
+        System.out.printf("  read from binary: %.3f ns/lookup%n", (double) loadedNanos / lookups);
+        System.out.printf("Speedup:            %.2fx%n", (double) jaggedNanos / flatNanos);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static double sumJagged(double[][] travelTimes, int[][] routes, int repetitions) {
+        double total = 0.0;
+        for (int rep = 0; rep < repetitions; rep++) {
+            for (int[] route : routes) {
+                for (int k = 0; k < route.length - 1; k++) {
+                    total += travelTimes[route[k]][route[k + 1]];
+                }
+            }
+        }
+        return total;
+    }
+
+    private static double sumFlat(TravelTimeMatrix travelTimes, int[][] routes, int repetitions) {
+        double total = 0.0;
+        for (int rep = 0; rep < repetitions; rep++) {
+            for (int[] route : routes) {
+                for (int k = 0; k < route.length - 1; k++) {
+                    total += travelTimes.get(route[k], route[k + 1]);
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -2,6 +2,7 @@ package solve;
 
 import core.HTMInstance;
 import core.Shift;
+import core.TravelTimeMatrix;
 import core.Utils;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,6 +16,7 @@ import neighborhoods.IntraSwap;
 import search.Compatibility;
 import search.Evaluation;
 import search.Move;
+import search.MoveResult;
 import search.Neighborhood;
 import search.Objective;
 import search.ObjectiveFunction;
@@ -49,8 +51,8 @@ public class BestKMovesSearchFeas {
         // -------------------------------------------------
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay   = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = Utils.readTravelTimeMatrix(travelNightPath);
+        TravelTimeMatrix travelTimesDay   = Utils.readTravelTimeMatrix(travelDayPath);
 
         List<Shift> shifts = Utils.readShiftsFromCSVDiffTimes(
                 initialShiftsPath, travelTimesNight, travelTimesDay
@@ -95,15 +97,16 @@ public class BestKMovesSearchFeas {
             System.out.println("\n===== MOVE " + iter + " =====");
             printMoveDetails(best, shifts);
 
-            shifts = best.neighborhood.applyMove(
+            MoveResult result = best.neighborhood.applyMove(
                     best.move,
                     shifts,
                     instance,
                     travelTimesNight,
                     travelTimesDay
             );
+            shifts = result.shifts;
 
-            Utils.recomputeAllShiftsDiffTimes(shifts, instance, travelTimesNight, travelTimesDay);
+            Utils.recomputeShiftsDiffTimes(shifts, result.dirtyShifts, instance, travelTimesNight, travelTimesDay);
 
             double newObjectiveMinutes = totalLengthMinutes(shifts);
             double actualImprovementMinutes = oldObjectiveMinutes - newObjectiveMinutes;
@@ -145,21 +148,21 @@ public class BestKMovesSearchFeas {
             List<Neighborhood> neighborhoods,
             RouteCompatibility compatibility,
             HTMInstance instance,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             double maxShiftDuration
     ) {
-        BestMoveResult best = null;
+        // Holder so the visitor below can update the best move found so far
+        BestMoveResult[] best = new BestMoveResult[1];
 
         ObjectiveFunction objective = Objective.balancedObj(0.0, 0.0);
+        Evaluation evaluation = new Evaluation();
 
         for (Neighborhood neighborhood : neighborhoods) {
-            List<Move> moves = neighborhood.generateMoves(shifts, compatibility);
-
             // System.out.println("\nChecking neighborhood: " + neighborhood.getClass().getSimpleName());
-            // System.out.println("Number of candidate moves: " + moves.size());
 
-            for (Move move : moves) {
+            // Moves and evaluations are streamed through reused buffers, only the improving ones are copied
+            neighborhood.forEachMove(shifts, compatibility, instance, move -> {
                 Evaluation eval = neighborhood.evaluateMoveDiffTimes(
                         move,
                         shifts,
@@ -167,11 +170,12 @@ public class BestKMovesSearchFeas {
                         travelTimesNight,
                         travelTimesDay,
                         maxShiftDuration,
-                        objective
+                        objective,
+                        evaluation
                 );
 
                 if (!eval.feasible) {
-                    continue;
+                    return true;
                 }
 
                 // Delete this if 15 minutes is allowed for more shifts (way faster that way)
@@ -182,16 +186,17 @@ public class BestKMovesSearchFeas {
                         instance,
                         travelTimesNight,
                         travelTimesDay)) {
-                    continue;
+                    return true;
                 }
 
-                if (best == null || eval.improvement > best.evaluation.improvement + EPS) {
-                    best = new BestMoveResult(neighborhood, move, eval);
+                if (best[0] == null || eval.improvement > best[0].evaluation.improvement + EPS) {
+                    best[0] = new BestMoveResult(neighborhood, move.copy(), eval.copy());
                 }
-            }
+                return true;
+            });
         }
 
-        return best;
+        return best[0];
     }
 
     public static List<Neighborhood> buildNeighborhoods(List<String> names) {
@@ -320,8 +325,8 @@ public static boolean isMoveAllowedUnder480Rule(
         Neighborhood neighborhood,
         Move move,
         HTMInstance instance,
-        double[][] travelTimesNight,
-        double[][] travelTimesDay
+        TravelTimeMatrix travelTimesNight,
+        TravelTimeMatrix travelTimesDay
 ) {
     String nbh = neighborhood.getClass().getSimpleName();
 
@@ -329,8 +334,9 @@ public static boolean isMoveAllowedUnder480Rule(
         Shift s = shifts.get(move.route1);
 
         List<Shift> candidate = Utils.deepCopyShifts(shifts);
-        candidate = neighborhood.applyMove(move, candidate, instance, travelTimesNight, travelTimesDay);
-        Utils.recomputeAllShiftsDiffTimes(candidate, instance, travelTimesNight, travelTimesDay);
+        MoveResult result = neighborhood.applyMove(move, candidate, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeShiftsDiffTimes(result.shifts, result.dirtyShifts, instance, travelTimesNight, travelTimesDay);
+        candidate = result.shifts;
 
         double oldL = s.totalTime;
         double newL = candidate.get(move.route1).totalTime;
@@ -343,8 +349,9 @@ public static boolean isMoveAllowedUnder480Rule(
         Shift s2 = shifts.get(move.route2);
 
         List<Shift> candidate = Utils.deepCopyShifts(shifts);
-        candidate = neighborhood.applyMove(move, candidate, instance, travelTimesNight, travelTimesDay);
-        Utils.recomputeAllShiftsDiffTimes(candidate, instance, travelTimesNight, travelTimesDay);
+        MoveResult result = neighborhood.applyMove(move, candidate, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeShiftsDiffTimes(result.shifts, result.dirtyShifts, instance, travelTimesNight, travelTimesDay);
+        candidate = result.shifts;
 
         double oldL1 = s1.totalTime;
         double oldL2 = s2.totalTime;
@@ -23,8 +23,8 @@ public class CheckSetOfRoutes {
         new File(outputDir).mkdirs();
 
         // Load travel times once
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay   = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay   = TravelTimeMatrix.read(travelDayPath);
 
         File folder = new File(instanceDir);
         File[] files = folder.listFiles((dir, name) -> name.endsWith(".txt"));
@@ -63,16 +63,9 @@ public class CheckSetOfRoutes {
         
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
         double[] trafficFlatPenalties = {1.1, 1.2, 1.3, 1.4, 1.5};
-        int n = travelTimesNight.length;
         for (double penalty : trafficFlatPenalties) {
-            double[][] newDayTT = new double[n][n];
-            double[][] newNightTT = new double[n][n];
-            for (int i = 0; i <n; i++) {
-                for (int j = 0; j <n; j++) {
-                newDayTT[i][j] = travelTimesDay[i][j]*penalty;
-                newNightTT[i][j] = travelTimesNight[i][j]*penalty;
-                }
-            }
+            TravelTimeMatrix newDayTT = travelTimesDay.scaled(penalty);
+            TravelTimeMatrix newNightTT = travelTimesNight.scaled(penalty);
             System.out.println("\n====================================");
             System.out.println("Running scenario penalty: " + penalty);
             System.out.println("====================================");
@@ -84,8 +77,8 @@ public class CheckSetOfRoutes {
     public static void solveScenario(
             HTMInstance instance,
             String initialSolutionPath,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay,
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay,
             String outputFile
     ) throws Exception {
 
@@ -141,11 +134,9 @@ public class CheckSetOfRoutes {
         // ---- Simulated Annealing ----
         int maxIterations = 100000;
 
-        Acceptance.initSimulatedAnnealing(0.5, 0, maxIterations, 5);
-
         LocalSearch lsSA = new LocalSearch(
                 neighborhoods,
-                Acceptance.simulatedAnnealing(),
+                Acceptance.simulatedAnnealing(0.5, 0, maxIterations, 5),
                 compatibility,
                 ImprovementChoice.FIRST,
                 maxIterations,
@@ -0,0 +1,210 @@
+package solve;
+
+import core.Shift;
+import core.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Runs a grid of independent experiments concurrently and streams one row per finished configuration
+ * into a summary CSV.
+ *
+ * Every task gets its own deep copy of the initial shifts. A row starts with the key columns of its
+ * configuration; with resume enabled, configurations whose key already appears in the summary CSV are
+ * skipped, so an interrupted grid can be continued by running it again. A row cut short by the interruption
+ * does not count as finished: the resumed run removes an unfinished last line and runs its configuration again.
+ *
+ * @param <C> the configuration type
+ */
+public class ExperimentRunner<C> {
+
+    @FunctionalInterface
+    public interface Experiment<C> {
+        /**
+         * Runs one configuration on its own copy of the initial shifts.
+         *
+         * @return the result columns of the summary row (without the key columns), comma separated
+         */
+        String run(C config, List<Shift> shifts) throws Exception;
+    }
+
+    private final String summaryPath;
+    private final String header;
+    private final int threads;
+    private final boolean resume;
+
+    /**
+     * @param summaryPath the summary CSV
+     * @param header      header line of the summary CSV, key columns first
+     * @param threads     number of configurations that run at the same time
+     * @param resume      skip configurations already in the summary CSV (otherwise it is overwritten)
+     */
+    public ExperimentRunner(String summaryPath, String header, int threads, boolean resume) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive, got " + threads);
+        }
+        this.summaryPath = summaryPath;
+        this.header = header;
+        this.threads = threads;
+        this.resume = resume;
+    }
+
+    public ExperimentRunner(String summaryPath, String header, boolean resume) {
+        this(summaryPath, header, Runtime.getRuntime().availableProcessors(), resume);
+    }
+
+    /**
+     * Runs all configurations that are not finished yet.
+     *
+     * @param configs    the grid
+     * @param key        the key columns of a configuration, comma separated, as they appear in the summary CSV
+     * @param initial    initial shifts, copied for every task and never modified
+     * @param experiment the experiment to run per configuration
+     * @return the number of configurations that failed (their rows are missing, so a resume retries them)
+     */
+    public int run(List<C> configs, Function<C, String> key, List<Shift> initial, Experiment<C> experiment) throws IOException, InterruptedException {
+        int keyColumns = configs.isEmpty() ? 0 : key.apply(configs.get(0)).split(",").length;
+        Set<String> finished = resume ? readFinishedKeys(summaryPath, keyColumns) : new HashSet<>();
+
+        List<C> todo = new ArrayList<>();
+        for (C config : configs) {
+            if (!finished.contains(key.apply(config))) todo.add(config);
+        }
+        System.out.println("Experiments: " + configs.size() + " configurations, " + (configs.size() - todo.size())
+                + " already in " + summaryPath + ", running " + todo.size() + " on " + threads + " threads");
+
+        File summaryFile = new File(summaryPath);
+        if (summaryFile.getParentFile() != null) summaryFile.getParentFile().mkdirs();
+        boolean writeHeader = !resume || !summaryFile.exists() || summaryFile.length() == 0;
+        if (!writeHeader) {
+            // An interrupted run may have left a partial last line; new rows must not continue it
+            removeUnfinishedLine(summaryFile);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ExecutorCompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        int failed = 0;
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(summaryPath, !writeHeader))) {
+            if (writeHeader) {
+                writer.println(header);
+                writer.flush();
+            }
+
+            for (C config : todo) {
+                completion.submit(() -> {
+                    String k = key.apply(config);
+                    try {
+                        List<Shift> shifts = Utils.deepCopyShifts(initial);
+                        return k + "," + experiment.run(config, shifts);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Configuration " + k + " failed", e);
+                    }
+                });
+            }
+
+            // Rows are written in the order the configurations finish
+            for (int done = 0; done < todo.size(); done++) {
+                try {
+                    String row = completion.take().get();
+                    writer.println(row);
+                    writer.flush();
+                    System.out.println("Finished " + (done + 1) + "/" + todo.size() + ": " + row);
+                } catch (ExecutionException e) {
+                    failed++;
+                    Throwable cause = e.getCause();
+                    System.out.println(cause.getMessage() + ": " + cause.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed;
+    }
+
+    /**
+     * Reads the complete data rows of a summary CSV (without the header), split on commas. A row cut short by
+     * an interrupted run is skipped: it has another number of columns than the header, or it is the last line
+     * and was never ended.
+     */
+    public static List<String[]> readRows(String summaryPath) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        File file = new File(summaryPath);
+        if (!file.exists()) return rows;
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        if (lines.isEmpty()) return rows;
+        if (!endsWithNewline(file)) {
+            System.out.println("Skipping unfinished last row in " + summaryPath + ": " + lines.get(lines.size() - 1));
+            lines.remove(lines.size() - 1);
+            if (lines.isEmpty()) return rows;
+        }
+
+        int columns = lines.get(0).split(",", -1).length;
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            String[] row = line.split(",", -1);
+            if (row.length != columns) {
+                System.out.println("Skipping incomplete row in " + summaryPath + ": " + line);
+                continue;
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Keys of the complete rows already in the summary CSV: the first keyColumns columns of every row
+    private static Set<String> readFinishedKeys(String summaryPath, int keyColumns) throws IOException {
+        Set<String> keys = new HashSet<>();
+        for (String[] row : readRows(summaryPath)) {
+            keys.add(String.join(",", Arrays.copyOf(row, keyColumns)));
+        }
+        return keys;
+    }
+
+    // Cuts the file after its last line break
+    private static void removeUnfinishedLine(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') break;
+                end--;
+            }
+            if (end < raf.length()) {
+                System.out.println("Removing unfinished last row of " + file);
+                raf.setLength(end);
+            }
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        if (file.length() == 0) return true;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(file.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+}
@@ -8,6 +8,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class FindingBestOrderLocalSearch {
     static final double shiftLength = 7*60;
@@ -21,10 +24,10 @@ public class FindingBestOrderLocalSearch {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         //ObjectiveFunction objectiveBalanced = Objective.balancedObj(0.05, 0.05);
         ObjectiveFunction objectiveBasic = Objective.totalLength();
@@ -78,47 +81,67 @@ public class FindingBestOrderLocalSearch {
         int runCount = 0;
 
         
+        // The runs are independent: each gets fresh neighborhood objects and its own copy of the initial
+        // solution, so they run concurrently. Results are processed in run order to keep the output stable.
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<List<Neighborhood>> runOrders = new ArrayList<>();
+        List<ImprovementChoice> runChoices = new ArrayList<>();
+        List<Future<List<Shift>>> runResults = new ArrayList<>();
+
         for (int i = 171; i < allOrders.size(); i++) {
             List<Neighborhood> order = allOrders.get(i);
             for (ImprovementChoice choice : choices) {
-                runCount++;
-                System.out.println("\nRun: " + runCount);
-
-                // Copy initial solution
-                List<Shift> initialCopy = Utils.deepCopyShifts(initial);
-
-                ObjectiveFunction objectiveFunction = Objective.totalLength();
-
-                LocalSearch ls = new LocalSearch(
-                        order,
-                        acceptGreedy,
-                        compatibility,
-                        choice,
-                        1000,           // max iterations
-                        totalShiftLength,
-                        objectiveFunction,
-                        false
-                );
-
-                List<Shift> result = ls.runDiffTimes(initialCopy, instance, travelTimesNight, travelTimesDay);
-                Utils.recomputeAllShiftsDiffTimes(result, instance, travelTimesNight, travelTimesDay);
-
-                double obj = objectiveBasic.shifts(result)/60.0;
-
-                if (obj < bestObj) {
-                    bestObj = obj;
-                    bestSolution = result;
-                    bestOrder = new ArrayList<>(order);
-                    bestChoice = choice;
-                    System.out.printf("New best found! Obj = %.6f | Choice = %s | Run %d%n", bestObj, bestChoice, runCount);
-                    double bestImprovement = initialObj - bestObj;
-                    System.out.println("Best improvement: " + bestImprovement);
-                    double realBestImprovement = real_init_obj_value - bestObj;
-                    System.out.println("Real best improvement: " + realBestImprovement);
-                    System.out.println("Best neighborhood order:");
-                    for (Neighborhood n : bestOrder) {
-                        System.out.println(" - " + n.getClass().getSimpleName());
-                    }
+                runOrders.add(order);
+                runChoices.add(choice);
+
+                runResults.add(executor.submit(() -> {
+                    // Copy initial solution
+                    List<Shift> initialCopy = Utils.deepCopyShifts(initial);
+
+                    ObjectiveFunction objectiveFunction = Objective.totalLength();
+
+                    LocalSearch ls = new LocalSearch(
+                            freshNeighborhoods(order),
+                            acceptGreedy,
+                            compatibility,
+                            choice,
+                            1000,           // max iterations
+                            totalShiftLength,
+                            objectiveFunction,
+                            false
+                    );
+
+                    List<Shift> result = ls.runDiffTimes(initialCopy, instance, travelTimesNight, travelTimesDay);
+                    Utils.recomputeAllShiftsDiffTimes(result, instance, travelTimesNight, travelTimesDay);
+                    return result;
+                }));
+            }
+        }
+        executor.shutdown();
+
+        for (int k = 0; k < runResults.size(); k++) {
+            List<Neighborhood> order = runOrders.get(k);
+            ImprovementChoice choice = runChoices.get(k);
+            runCount++;
+            System.out.println("\nRun: " + runCount);
+
+            List<Shift> result = runResults.get(k).get();
+
+            double obj = objectiveBasic.shifts(result)/60.0;
+
+            if (obj < bestObj) {
+                bestObj = obj;
+                bestSolution = result;
+                bestOrder = new ArrayList<>(order);
+                bestChoice = choice;
+                System.out.printf("New best found! Obj = %.6f | Choice = %s | Run %d%n", bestObj, bestChoice, runCount);
+                double bestImprovement = initialObj - bestObj;
+                System.out.println("Best improvement: " + bestImprovement);
+                double realBestImprovement = real_init_obj_value - bestObj;
+                System.out.println("Real best improvement: " + realBestImprovement);
+                System.out.println("Best neighborhood order:");
+                for (Neighborhood n : bestOrder) {
+                    System.out.println(" - " + n.getClass().getSimpleName());
                 }
             }
         }
@@ -135,6 +158,15 @@ public class FindingBestOrderLocalSearch {
         Utils.checkFeasibility(bestSolution, instance, totalShiftLength);
     }
 
+    // New instances of the neighborhoods of an order, so concurrent runs do not share their scan state
+    public static List<Neighborhood> freshNeighborhoods(List<Neighborhood> order) throws ReflectiveOperationException {
+        List<Neighborhood> fresh = new ArrayList<>();
+        for (Neighborhood n : order) {
+            fresh.add(n.getClass().getDeclaredConstructor().newInstance());
+        }
+        return fresh;
+    }
+
     public static void generatePermutations(List<Neighborhood> arr, int k, List<List<Neighborhood>> result) {
         if (k == arr.size()) {
             result.add(new ArrayList<>(arr));
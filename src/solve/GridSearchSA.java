@@ -16,14 +16,40 @@ public class GridSearchSA {
                                      String travelDayPath,
                                      String initialCSVPath,
                                      String resultFolder) throws Exception {
+        runGridSearch(instancePath, travelNightPath, travelDayPath, initialCSVPath, resultFolder, false);
+    }
+
+    /**
+     * @param resume continue an interrupted grid search: configurations already in the summary CSV are skipped
+     */
+    public static void runGridSearch(String instancePath,
+                                     String travelNightPath,
+                                     String travelDayPath,
+                                     String initialCSVPath,
+                                     String resultFolder,
+                                     boolean resume) throws Exception {
+        runGridSearch(instancePath, travelNightPath, travelDayPath, initialCSVPath, resultFolder, resume, 0);
+    }
+
+    /**
+     * @param timeLimitMillis wall-clock limit per configuration (0 for none); a run stopped by it reports the
+     *                        best solution it found
+     */
+    public static void runGridSearch(String instancePath,
+                                     String travelNightPath,
+                                     String travelDayPath,
+                                     String initialCSVPath,
+                                     String resultFolder,
+                                     boolean resume,
+                                     long timeLimitMillis) throws Exception {
 
         // Create result folder if it does not exist
         new File(resultFolder).mkdirs();
 
         // Load instance and travel times
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         ObjectiveFunction objectiveTotalLength = Objective.totalLength();
 
@@ -31,16 +57,6 @@ public class GridSearchSA {
         List<Shift> initial = Utils.readShiftsFromCSVDiffTimes(initialCSVPath, travelTimesNight, travelTimesDay);
         double initialObjValue = objectiveTotalLength.shifts(initial) / 60.0;
 
-        // Define neighborhoods
-        List<Neighborhood> neighborhoods = Arrays.asList(
-                new Inter2OptStar(),
-                new InterShift(),
-                new IntraShift(),
-                new Intra2Opt(),
-                new IntraSwap(),
-                new InterSwap()
-        );
-
         RouteCompatibility compatibility = Compatibility.sameNightShift();
         boolean useSimulatedAnnealing = true;
 
@@ -51,27 +67,43 @@ public class GridSearchSA {
 
         double Tf = 0;
 
-        // Tracking best solution
-        double bestObjective = Double.MAX_VALUE;
-        double bestT0 = 0;
-        int bestMaxIter = 0;
-        int bestOsc = 0;
-
-        // Prepare summary CSV
-        String summaryPath = resultFolder + "/grid_search_summary2.csv";
-        PrintWriter summaryWriter = new PrintWriter(new FileWriter(summaryPath));
-        summaryWriter.println("T0,maxIter,osc,finalObjective,improvement,runtimeSeconds");
-
+        List<double[]> configs = new ArrayList<>();
         for (int maxIter : maxIterations) {
             for (double T0 : initialTemps) {
                 for (int osc : oscillations) {
+                    configs.add(new double[]{T0, maxIter, osc});
+                }
+            }
+        }
+
+        // Every configuration has its own neighborhoods, annealing schedule and copy of the initial shifts,
+        // so the configurations run concurrently and each result only depends on its own parameters
+        String summaryPath = resultFolder + "/grid_search_summary2.csv";
+        ExperimentRunner<double[]> runner = new ExperimentRunner<>(
+                summaryPath, "T0,maxIter,osc,finalObjective,improvement,runtimeSeconds", resume);
+
+        int failed = runner.run(configs,
+                config -> config[0] + "," + (int) config[1] + "," + (int) config[2],
+                initial,
+                (config, initialCopy) -> {
+                    double T0 = config[0];
+                    int maxIter = (int) config[1];
+                    int osc = (int) config[2];
 
                     System.out.println("\n=== Running SA with T0=" + T0 +
                             ", maxIter=" + maxIter +
                             ", osc=" + osc + " ===");
 
-                    Acceptance.initSimulatedAnnealing(T0, Tf, maxIter, osc);
-                    AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing();
+                    List<Neighborhood> neighborhoods = Arrays.asList(
+                            new Inter2OptStar(),
+                            new InterShift(),
+                            new IntraShift(),
+                            new Intra2Opt(),
+                            new IntraSwap(),
+                            new InterSwap()
+                    );
+
+                    AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing(T0, Tf, maxIter, osc);
 
                     LocalSearch ls = new LocalSearch(
                             neighborhoods,
@@ -83,8 +115,8 @@ public class GridSearchSA {
                             objectiveTotalLength,
                             useSimulatedAnnealing
                     );
-
-                    List<Shift> initialCopy = Utils.deepCopyShifts(initial);
+                    ls.setTraceOutput(null);
+                    ls.setTimeLimit(timeLimitMillis);
 
                     long startTime = System.currentTimeMillis();
 
@@ -108,7 +140,8 @@ public class GridSearchSA {
                     double newObjValue = objectiveTotalLength.shifts(improved) / 60.0;
                     double improvement = initialObjValue - newObjValue;
 
-                    System.out.println("Final objective: " + newObjValue +
+                    System.out.println("T0=" + T0 + ", maxIter=" + maxIter + ", osc=" + osc +
+                            " | Final objective: " + newObjValue +
                             " | Improvement: " + improvement +
                             " | Time: " + runtimeSeconds + "s");
 
@@ -119,28 +152,29 @@ public class GridSearchSA {
                     );
                     Utils.resultsToCSV(improved, instance, resultFile);
 
-                    // Write to summary table
-                    summaryWriter.println(T0 + "," +
-                            maxIter + "," +
-                            osc + "," +
-                            newObjValue + "," +
-                            improvement + "," +
-                            runtimeSeconds);
-
-                    // Update best solution
-                    if (newObjValue < bestObjective) {
-                        bestObjective = newObjValue;
-                        bestT0 = T0;
-                        bestMaxIter = maxIter;
-                        bestOsc = osc;
-                    }
-                }
+                    return newObjValue + "," + improvement + "," + runtimeSeconds;
+                });
+
+        // Best configuration over the whole summary, including the rows of earlier (resumed) runs
+        double bestObjective = Double.MAX_VALUE;
+        String bestT0 = "";
+        String bestMaxIter = "";
+        String bestOsc = "";
+
+        for (String[] row : ExperimentRunner.readRows(summaryPath)) {
+            double newObjValue = Double.parseDouble(row[3]);
+            if (newObjValue < bestObjective) {
+                bestObjective = newObjValue;
+                bestT0 = row[0];
+                bestMaxIter = row[1];
+                bestOsc = row[2];
             }
         }
 
-        summaryWriter.close();
-
         System.out.println("\n===== GRID SEARCH COMPLETE =====");
+        if (failed > 0) {
+            System.out.println(failed + " configurations failed, run again with resume to retry them");
+        }
         System.out.println("Best objective: " + bestObjective);
         System.out.println("best improvement: " + (initialObjValue-bestObjective));
         System.out.println("Best parameters:");
@@ -13,7 +13,7 @@ import java.util.*;
 public class LetJasperDoHisShit {
         static final double totalShiftLength = 8 * 60;
 
-        public static void listFilesForFolder(final File folder, double[][] nightTT, double[][] dayTT, HTMInstance instance) throws IOException {
+        public static void listFilesForFolder(final File folder, TravelTimeMatrix nightTT, TravelTimeMatrix dayTT, HTMInstance instance) throws IOException {
                     for (final File fileEntry : folder.listFiles()) {
                             String name = fileEntry.getPath();
                             System.out.println(name);
@@ -27,8 +27,8 @@ public class LetJasperDoHisShit {
         
                 String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
                 String travelDayPath   = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
-                double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-                double[][] travelTimesDay   = Utils.readTravelTimes(travelDayPath);
+                TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+                TravelTimeMatrix travelTimesDay   = TravelTimeMatrix.read(travelDayPath);
         
                 File folder = new File(initSolutionDir);
                 HTMInstance instance = Utils.readInstance("src/core/scenario_instances/txt_files/summer.txt", "feasible", "Night_shift");
@@ -20,8 +20,8 @@ public class ScenarioAnalysis {
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Type_halte");
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         String solution_path = "data/results/HTM.csv";
 
@@ -31,8 +31,8 @@ public class ScenarioAnalysis {
     public static void checkSensitivity(
             HTMInstance instance,
             String solution_path,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) throws Exception {
         
         List<Shift> initial = Utils.readShiftsFromCSVDiffTimes(solution_path, travelTimesNight, travelTimesDay);
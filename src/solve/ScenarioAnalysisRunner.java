@@ -32,8 +32,8 @@ public class ScenarioAnalysisRunner {
         String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         PrintWriter writer = new PrintWriter(new File(outputCSV));
 
@@ -51,28 +51,19 @@ public class ScenarioAnalysisRunner {
 
     static void runWinterExperiments(
         PrintWriter writer,
-        double[][] night,
-        double[][] day
+        TravelTimeMatrix night,
+        TravelTimeMatrix day
 ) throws Exception {
 
     double[] trafficFlatPenalties = {1.1, 1.2, 1.3, 1.4, 1.5};
 
-    int n = night.length;
-
     for(String sol : solutions){
 
         for(double penalty : trafficFlatPenalties){
 
             // Scale travel times
-            double[][] newDayTT = new double[n][n];
-            double[][] newNightTT = new double[n][n];
-
-            for(int i = 0; i < n; i++){
-                for(int j = 0; j < n; j++){
-                    newDayTT[i][j] = day[i][j] * penalty;
-                    newNightTT[i][j] = night[i][j] * penalty;
-                }
-            }
+            TravelTimeMatrix newDayTT = day.scaled(penalty);
+            TravelTimeMatrix newNightTT = night.scaled(penalty);
 
             String instancePath = "src/core/data_all_feas_typeHalte.txt";
 
@@ -114,8 +105,8 @@ public class ScenarioAnalysisRunner {
 }
     static void runAutumnExperiments(
             PrintWriter writer,
-            double[][] night,
-            double[][] day
+            TravelTimeMatrix night,
+            TravelTimeMatrix day
     ) throws Exception {
 
         for(String sol : solutions){
@@ -216,8 +207,8 @@ public class ScenarioAnalysisRunner {
 
     static void runSummerExperiments(
             PrintWriter writer,
-            double[][] night,
-            double[][] day
+            TravelTimeMatrix night,
+            TravelTimeMatrix day
     ) throws Exception {
 
         int[] summerPenalties = {3,5,10};
@@ -268,8 +259,8 @@ public class ScenarioAnalysisRunner {
     static Result checkSensitivity(
             HTMInstance instance,
             String solution_path,
-            double[][] travelTimesNight,
-            double[][] travelTimesDay
+            TravelTimeMatrix travelTimesNight,
+            TravelTimeMatrix travelTimesDay
     ) throws Exception {
 
         List<Shift> initial =
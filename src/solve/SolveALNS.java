@@ -0,0 +1,85 @@
+package solve;
+import core.*;
+import alns.*;
+import search.*;
+
+import java.util.*;
+
+
+public class SolveALNS {
+    static final double totalShiftLength = 8*60;
+
+    public static void main(String[] args) throws Exception {
+        String instancePath = "src/core/data_all_feas_typeHalte.txt";
+
+        String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
+        String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
+
+        HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
+
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
+
+        ObjectiveFunction objectiveTotalLength = Objective.totalLength();
+
+        // Start from the initial solution, the large neighborhood replaces the local search
+        List<Shift> initial = Utils.readShiftsFromCSVDiffTimes("src/results/HTM_data_initRes_typeHalte.csv", travelTimesNight, travelTimesDay);
+        Utils.makeFeasible(initial, instance, travelTimesNight, travelTimesDay);
+
+        double initial_obj_value = objectiveTotalLength.shifts(initial)/60.0;
+        System.out.println("Initial solution:");
+        System.out.println("Total shifts: " + initial.size());
+        System.out.println("Total objective value: " + initial_obj_value);
+
+        List<DestroyOperator> destroyOperators = Arrays.asList(
+            new RandomRemoval(),
+            new WorstRemoval(),
+            new ShawRemoval(),
+            new RouteRemoval()
+        );
+        List<RepairOperator> repairOperators = Arrays.asList(
+            new GreedyInsertion(),
+            new RegretInsertion(2),
+            new RegretInsertion(3)
+        );
+
+        int max_iterations = 20000;
+        int min_removed = 20;
+        int max_removed = 50;
+        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing(5, 0, max_iterations, 1);
+
+        AdaptiveLargeNeighborhoodSearch alns = new AdaptiveLargeNeighborhoodSearch(
+                destroyOperators,
+                repairOperators,
+                acceptSA,
+                max_iterations,
+                min_removed,
+                max_removed,
+                totalShiftLength,
+                objectiveTotalLength,
+                0
+        );
+        // Optional time budget in minutes
+        if (args.length > 0) alns.setTimeLimit((long) (Double.parseDouble(args[0]) * 60_000));
+        alns.setImprovementListener((shifts, objective, iterations, millis) ->
+                System.out.println("New best " + objective/60.0 + " after " + iterations + " iterations, " + millis/1000.0 + " s"));
+
+        long startTime = System.currentTimeMillis();
+        System.out.println("Running ALNS...");
+        List<Shift> improved = alns.run(initial, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeAllShiftsDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
+
+        double new_obj_value = objectiveTotalLength.shifts(improved)/60.0;
+        System.out.println("\nALNS complete.");
+        System.out.println("New objective value: " + new_obj_value);
+        System.out.println("Improvement: " + (initial_obj_value - new_obj_value));
+        System.out.println("Iterations: " + alns.getIterations());
+        System.out.println("Destroy weights: " + Arrays.toString(alns.getDestroyWeights()));
+        System.out.println("Repair weights: " + Arrays.toString(alns.getRepairWeights()));
+        double timeTaken = (System.currentTimeMillis()-startTime)/1000.0;
+        System.out.println("Time taken: " + (timeTaken) + " s" );
+
+        Utils.printShiftStatistics(improved, instance, totalShiftLength);
+        Utils.checkFeasibility(improved, instance, totalShiftLength);
+    }
+}
@@ -19,10 +19,10 @@ public class SolveAllScenarios {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Type_halte");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         //ObjectiveFunction objectiveBalanced = Objective.balancedObj(0.05, 0.05);
         ObjectiveFunction objectiveBasic = Objective.totalLength();
@@ -98,8 +98,7 @@ public class SolveAllScenarios {
 
         // Now do SA 
         int max_iterations = 100000;
-        Acceptance.initSimulatedAnnealing(0.5, 0, max_iterations, 5);
-        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing();
+        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing(0.5, 0, max_iterations, 5);
         ObjectiveFunction objectiveTotalLength = Objective.totalLength();
 
         boolean useSimulatedAnnealing = true;
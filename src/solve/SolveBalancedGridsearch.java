@@ -3,8 +3,6 @@ import core.*;
 import neighborhoods.*; 
 import search.*;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.util.*;
 import milp.*;
 
@@ -21,20 +19,10 @@ public class SolveBalancedGridsearch {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
-
-        // NORMAL LOCAL SEARCH 
-        List<Neighborhood> neighborhoods = Arrays.asList(
-            new Intra2Opt(),
-            new InterSwap(),
-            new IntraSwap(),
-            new IntraShift(),
-            new Inter2OptStar(),
-            new InterShift()
-        );
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         AcceptanceFunction acceptGreedy = Acceptance.greedy();
 
@@ -55,21 +43,42 @@ public class SolveBalancedGridsearch {
          double[] lambdaLs = {0.0, 0.0005, 0.001, 0.0015, 0.002, 0.0025, 0.003, 0.0035, 0.004, 0.0045, 0.005, 0.0055, 0.006, 0.0065, 0.007, 0.0075, 0.008, 0.0085, 0.009, 0.0095, 0.01};
          double[] ratios = {1.0, 0.5, 1.0/3.0, 0.25, 0.2};
 
+        List<double[]> grid = new ArrayList<>();
+        for (double lambdaL : lambdaLs) {
+            for (double ratio : ratios) {
+                grid.add(new double[]{lambdaL, ratio});
+            }
+        }
 
-        // To save results 
+        // To save results; rerun with resume = true to continue an interrupted grid
         String outputFile = "src/results/GridSearchBalanced.csv";
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            writer.write("LambdaL,LambdaC,ratio,objective,travelTime,minShiftLength,maxShiftLength,varShiftLength,minCleaning,maxCleaning");
-            writer.newLine();
-
-            for (double lambdaL : lambdaLs) {
-            for (double ratio : ratios) {
+        boolean resume = args.length > 0 && Boolean.parseBoolean(args[0]);
+
+        // The configurations already use every core, so the TSP of each one runs on a single Gurobi thread
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExperimentRunner<double[]> runner = new ExperimentRunner<>(outputFile,
+                "LambdaL,LambdaC,ratio,objective,travelTime,minShiftLength,maxShiftLength,varShiftLength,minCleaning,maxCleaning",
+                threads, resume);
+
+        runner.run(grid,
+                config -> config[0] + "," + (config[1] * config[0]) + "," + config[1],
+                initial,
+                (config, start) -> {
+                double lambdaL = config[0];
+                double ratio = config[1];
                 double lambdaC = ratio * lambdaL;
                 System.out.println("\nLambdaL = " + lambdaL + ", lambdaC = " + lambdaC + " (ratio " + ratio + ")");
                 ObjectiveFunction objectiveBalanced = Objective.balancedObj(lambdaL, lambdaC);
 
-                List<Shift> start = Utils.deepCopyShifts(initial);
+                // NORMAL LOCAL SEARCH, with neighborhoods of its own for every configuration
+                List<Neighborhood> neighborhoods = Arrays.asList(
+                    new Intra2Opt(),
+                    new InterSwap(),
+                    new IntraSwap(),
+                    new IntraShift(),
+                    new Inter2OptStar(),
+                    new InterShift()
+                );
 
                 LocalSearch ls_balanced = new LocalSearch(
                 neighborhoods,
@@ -81,13 +90,14 @@ public class SolveBalancedGridsearch {
                 objectiveBalanced,
                 false
                 );
+                ls_balanced.setTraceOutput(null);
 
                 List<Shift> improved_balanced = ls_balanced.runDiffTimes(start, instance, travelTimesNight, travelTimesDay);
 
                 Utils.recomputeAllShiftsDiffTimes(improved_balanced, instance, travelTimesNight, travelTimesDay);
 
                 // Now do a TSP on the Balanced 
-                TSP.optimizeAllShifts(improved_balanced, travelTimesDay, travelTimesNight, instance);
+                TSP.optimizeAllShifts(improved_balanced, travelTimesDay, travelTimesNight, instance, 1);
 
                 double obj_TSP = objectiveBasic.shifts(improved_balanced) / 60.0;
 
@@ -123,13 +133,8 @@ public class SolveBalancedGridsearch {
 
                 double varLengths = getVarShiftLengths(improved_balanced);
 
-                // Write to file 
-                writer.write(lambdaL + "," + lambdaC + "," + ratio + "," + obj_TSP + "," + (travelTime / 60.0) + "," + (minShiftLength / 60.0) + "," + (maxShiftLength / 60.0) + "," + varLengths + "," + (minCleaning / 60.0) + "," + (maxCleaning / 60.0));
-                writer.newLine();
-                writer.flush();
-                }
-            }
-        }
+                return obj_TSP + "," + (travelTime / 60.0) + "," + (minShiftLength / 60.0) + "," + (maxShiftLength / 60.0) + "," + varLengths + "," + (minCleaning / 60.0) + "," + (maxCleaning / 60.0);
+                });
     }  
 
     public static double getVarShiftLengths(List<Shift> shifts) {
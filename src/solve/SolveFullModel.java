@@ -19,16 +19,20 @@ public class SolveFullModel {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Type_halte");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
         //ObjectiveFunction objectiveBalanced = Objective.balancedObj(0.05, 0.05);
         ObjectiveFunction objectiveBasic = Objective.totalLength();
 
         double minNumberOfStops = 5;
 
+        // Optional wall-clock budget in minutes for the local search and SA phases together
+        long budgetMillis = (args.length > 0) ? (long) (Double.parseDouble(args[0]) * 60_000) : 0;
+        long budgetStart = System.currentTimeMillis();
+
         // Choose initial shifts to use 
         List<Shift> initial = Utils.readShiftsFromCSVDiffTimes("src/results/HTM_data_initRes_typeHalte.csv", travelTimesNight, travelTimesDay);
 
@@ -44,13 +48,17 @@ public class SolveFullModel {
         Utils.checkFeasibility(initial, instance, totalShiftLength);
 
         // NORMAL LOCAL SEARCH 
+        // CROSS-exchange only swaps segments next to one of the 20 nearest neighbors of their end stops
+        NeighborLists neighborLists = NeighborLists.build(travelTimesNight, travelTimesDay, 20);
         List<Neighborhood> neighborhoods = Arrays.asList(
             new InterSwap(),
             new IntraShift(),
             new IntraSwap(),
             new Inter2OptStar(),
             new Intra2Opt(),
-            new InterShift()
+            new InterShift(),
+            new OrOpt(),
+            new CrossExchange(neighborLists)
         );
 
         AcceptanceFunction acceptGreedy = Acceptance.greedy();
@@ -67,6 +75,7 @@ public class SolveFullModel {
                 objectiveBasic,
                 false
         );
+        ls.setTimeLimit(budgetMillis);
         
         long startTime = System.currentTimeMillis();
         System.out.println("\nRunning local search...");
@@ -99,8 +108,7 @@ public class SolveFullModel {
 
         // Now do SA 
         int max_iterations = 100000;
-        Acceptance.initSimulatedAnnealing(0.5, 0, max_iterations, 5);
-        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing();
+        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing(0.5, 0, max_iterations, 5);
         ObjectiveFunction objectiveTotalLength = Objective.totalLength();
 
         boolean useSimulatedAnnealing = true;
@@ -115,6 +123,10 @@ public class SolveFullModel {
                 objectiveTotalLength,
                 useSimulatedAnnealing
         );
+        if (budgetMillis > 0) {
+            // SA gets what the local search left of the budget, and returns the best solution it saw
+            ls_SA.setTimeLimit(Math.max(1, budgetMillis - (System.currentTimeMillis() - budgetStart)));
+        }
 
         System.out.println("Running OSA (phase 2)...");
         List<Shift> improved_SA = ls_SA.runDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
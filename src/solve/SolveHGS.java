@@ -0,0 +1,84 @@
+package solve;
+import core.*;
+import neighborhoods.*;
+import search.*;
+
+import java.util.*;
+
+
+public class SolveHGS {
+    static final double totalShiftLength = 8*60;
+
+    public static void main(String[] args) throws Exception {
+        String instancePath = "src/core/data_all_feas_typeHalte.txt";
+
+        String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
+        String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
+
+        HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
+
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
+
+        ObjectiveFunction objectiveTotalLength = Objective.totalLength();
+
+        // The initial solution is the first individual and fixes the stops to plan
+        List<Shift> initial = Utils.readShiftsFromCSVDiffTimes("src/results/HTM_data_initRes_typeHalte.csv", travelTimesNight, travelTimesDay);
+        Utils.makeFeasible(initial, instance, travelTimesNight, travelTimesDay);
+
+        double initial_obj_value = objectiveTotalLength.shifts(initial)/60.0;
+        System.out.println("Initial solution:");
+        System.out.println("Total shifts: " + initial.size());
+        System.out.println("Total objective value: " + initial_obj_value);
+
+        int population_size = 25;
+        int generation_size = 40;
+        int max_generations = 200;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        // Every offspring is educated by its own best-improvement local search
+        HybridGeneticSearch hgs = new HybridGeneticSearch(() -> {
+            List<Neighborhood> neighborhoods = Arrays.asList(
+                new Inter2OptStar(),
+                new InterShift(),
+                new IntraShift(),
+                new Intra2Opt(),
+                new IntraSwap(),
+                new InterSwap()
+            );
+            LocalSearch ls = new LocalSearch(
+                    neighborhoods,
+                    Acceptance.greedy(),
+                    Compatibility.sameNightShift(),
+                    ImprovementChoice.BEST,
+                    100000,
+                    totalShiftLength,
+                    objectiveTotalLength,
+                    false
+            );
+            ls.setTraceOutput(null);
+            ls.setRoutePairCache(true);
+            return ls;
+        }, population_size, generation_size, max_generations, threads, totalShiftLength, objectiveTotalLength, 0);
+        // Optional time budget in minutes
+        if (args.length > 0) hgs.setTimeLimit((long) (Double.parseDouble(args[0]) * 60_000));
+        hgs.setImprovementListener((shifts, objective, generation, millis) ->
+                System.out.println("New best " + objective/60.0 + " with " + shifts.size() + " shifts in generation " + generation + ", " + millis/1000.0 + " s"));
+
+        long startTime = System.currentTimeMillis();
+        System.out.println("Running hybrid genetic search on " + threads + " threads...");
+        List<Shift> improved = hgs.run(initial, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeAllShiftsDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
+
+        double new_obj_value = objectiveTotalLength.shifts(improved)/60.0;
+        System.out.println("\nHybrid genetic search complete.");
+        System.out.println("New objective value: " + new_obj_value);
+        System.out.println("Improvement: " + (initial_obj_value - new_obj_value));
+        System.out.println("Generations: " + hgs.getGenerations() + ", shifts: " + improved.size());
+        double timeTaken = (System.currentTimeMillis()-startTime)/1000.0;
+        System.out.println("Time taken: " + (timeTaken) + " s" );
+
+        Utils.printShiftStatistics(improved, instance, totalShiftLength);
+        Utils.checkFeasibility(improved, instance, totalShiftLength);
+    }
+}
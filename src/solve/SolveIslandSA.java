@@ -0,0 +1,86 @@
+package solve;
+import core.*;
+import neighborhoods.*;
+import search.*;
+
+import java.util.*;
+
+
+public class SolveIslandSA {
+    static final double totalShiftLength = 8*60;
+
+    public static void main(String[] args) throws Exception {
+        String instancePath = "src/core/data_all_feas_typeHalte.txt";
+
+        String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
+        String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
+
+        HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
+
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
+
+        ObjectiveFunction objectiveTotalLength = Objective.totalLength();
+
+        // Start from the local search result, as SolveSA does
+        List<Shift> initial = Utils.readShiftsFromCSVDiffTimes("src/results/results_LS_final.csv", travelTimesNight, travelTimesDay);
+        Utils.makeFeasible(initial, instance, travelTimesNight, travelTimesDay);
+
+        double initial_obj_value = objectiveTotalLength.shifts(initial)/60.0;
+        System.out.println("Initial solution:");
+        System.out.println("Total shifts: " + initial.size());
+        System.out.println("Total objective value: " + initial_obj_value);
+
+        // One island per core, each with its own temperature and seed
+        int islands = Runtime.getRuntime().availableProcessors();
+        double[] temperatures = {0.1, 0.5, 1.0, 2.0};
+        int max_iterations = 2000000;
+        int migration_interval = 100000;
+
+        IslandSearch islandSearch = new IslandSearch(islands, migration_interval, island -> {
+            List<Neighborhood> neighborhoods = Arrays.asList(
+                new Inter2OptStar(),
+                new InterShift(),
+                new IntraShift(),
+                new Intra2Opt(),
+                new IntraSwap(),
+                new InterSwap()
+            );
+            AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing(
+                    temperatures[island % temperatures.length], 0, max_iterations, 5, AnnealingSchedule.DEFAULT_SEED + island);
+
+            LocalSearch ls = new LocalSearch(
+                    neighborhoods,
+                    acceptSA,
+                    Compatibility.sameNightShift(),
+                    ImprovementChoice.FIRST,
+                    max_iterations,
+                    totalShiftLength,
+                    objectiveTotalLength,
+                    true
+            );
+            ls.setTraceOutput(null);
+            ls.setSampledAnnealing(true);
+            return ls;
+        });
+        // Optional time budget in minutes
+        if (args.length > 0) islandSearch.setTimeLimit((long) (Double.parseDouble(args[0]) * 60_000));
+
+        long startTime = System.currentTimeMillis();
+        System.out.println("Running SA on " + islands + " islands...");
+        List<Shift> improved = islandSearch.run(initial, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeAllShiftsDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
+
+        double new_obj_value = objectiveTotalLength.shifts(improved)/60.0;
+        System.out.println("\nIsland SA complete.");
+        System.out.println("New objective value: " + new_obj_value);
+        System.out.println("Improvement: " + (initial_obj_value - new_obj_value));
+        System.out.println("Best island: " + islandSearch.getBestIsland() + ", migrations: " + islandSearch.getMigrations());
+        System.out.println("Island objectives: " + Arrays.toString(islandSearch.getIslandObjectives()));
+        double timeTaken = (System.currentTimeMillis()-startTime)/1000.0;
+        System.out.println("Time taken: " + (timeTaken) + " s" );
+
+        Utils.printShiftStatistics(improved, instance, totalShiftLength);
+        Utils.checkFeasibility(improved, instance, totalShiftLength);
+    }
+}
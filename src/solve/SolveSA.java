@@ -19,10 +19,10 @@ public class SolveSA {
         String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
 
         HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
-        double[][] travelTimes = Utils.readTravelTimes(travelPath);
+        TravelTimeMatrix travelTimes = TravelTimeMatrix.read(travelPath);
 
-        double[][] travelTimesNight = Utils.readTravelTimes(travelNightPath);
-        double[][] travelTimesDay = Utils.readTravelTimes(travelDayPath);
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
 
 
         ObjectiveFunction objective = Objective.balancedObj(0.01, 0.01);
@@ -48,8 +48,7 @@ public class SolveSA {
         
         
         int max_iterations = 100000;
-        Acceptance.initSimulatedAnnealing(0.5, 0, max_iterations, 5);
-        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing();
+        AcceptanceFunction acceptSA = Acceptance.simulatedAnnealing(0.5, 0, max_iterations, 5);
 
         AcceptanceFunction acceptGreedy = Acceptance.greedy();
 
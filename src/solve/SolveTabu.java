@@ -0,0 +1,80 @@
+package solve;
+import core.*;
+import neighborhoods.*;
+import search.*;
+
+import java.util.*;
+
+
+public class SolveTabu {
+    static final double totalShiftLength = 8*60;
+
+    public static void main(String[] args) throws Exception {
+        String instancePath = "src/core/data_all_feas_typeHalte.txt";
+
+        String travelNightPath = "data/inputs/cleaned/travel_time_night_collapsedv2.txt";
+        String travelDayPath = "data/inputs/cleaned/travel_time_day_collapsedv2.txt";
+
+        HTMInstance instance = Utils.readInstance(instancePath, "feasible", "Night_shift");
+
+        TravelTimeMatrix travelTimesNight = TravelTimeMatrix.read(travelNightPath);
+        TravelTimeMatrix travelTimesDay = TravelTimeMatrix.read(travelDayPath);
+
+        ObjectiveFunction objectiveTotalLength = Objective.totalLength();
+
+        // Start from the local search result, tabu search continues where it got stuck
+        List<Shift> initial = Utils.readShiftsFromCSVDiffTimes("src/results/results_LS_final.csv", travelTimesNight, travelTimesDay);
+        Utils.makeFeasible(initial, instance, travelTimesNight, travelTimesDay);
+
+        double initial_obj_value = objectiveTotalLength.shifts(initial)/60.0;
+        System.out.println("Initial solution:");
+        System.out.println("Total shifts: " + initial.size());
+        System.out.println("Total objective value: " + initial_obj_value);
+
+        List<Neighborhood> neighborhoods = Arrays.asList(
+            new Inter2OptStar(),
+            new InterShift(),
+            new IntraShift(),
+            new Intra2Opt(),
+            new IntraSwap(),
+            new InterSwap()
+        );
+
+        int max_iterations = 5000;
+        int max_non_improving = 1000;
+        int tenure_min = 7;
+        int tenure_max = 15;
+
+        TabuSearch tabu = new TabuSearch(
+                neighborhoods,
+                Compatibility.sameNightShift(),
+                max_iterations,
+                max_non_improving,
+                tenure_min,
+                tenure_max,
+                totalShiftLength,
+                objectiveTotalLength,
+                0
+        );
+        // Optional time budget in minutes
+        if (args.length > 0) tabu.setTimeLimit((long) (Double.parseDouble(args[0]) * 60_000));
+        tabu.setImprovementListener((shifts, objective, moves, millis) ->
+                System.out.println("New best " + objective/60.0 + " after " + moves + " moves, " + millis/1000.0 + " s"));
+
+        long startTime = System.currentTimeMillis();
+        System.out.println("Running tabu search...");
+        List<Shift> improved = tabu.run(initial, instance, travelTimesNight, travelTimesDay);
+        Utils.recomputeAllShiftsDiffTimes(improved, instance, travelTimesNight, travelTimesDay);
+
+        double new_obj_value = objectiveTotalLength.shifts(improved)/60.0;
+        System.out.println("\nTabu search complete.");
+        System.out.println("New objective value: " + new_obj_value);
+        System.out.println("Improvement: " + (initial_obj_value - new_obj_value));
+        System.out.println("Moves: " + tabu.getMoveCount());
+        double timeTaken = (System.currentTimeMillis()-startTime)/1000.0;
+        System.out.println("Time taken: " + (timeTaken) + " s" );
+
+        Utils.printShiftStatistics(improved, instance, totalShiftLength);
+        Utils.checkFeasibility(improved, instance, totalShiftLength);
+    }
+}